@@ -31,6 +31,7 @@ import org.waarp.common.logging.WaarpLoggerFactory;
 import org.waarp.openr66.client.utils.OutputFormat;
 import org.waarp.openr66.commander.ClientRunner;
 import org.waarp.openr66.configuration.FileBasedConfiguration;
+import org.waarp.openr66.dao.DAOFactory;
 import org.waarp.openr66.context.ErrorCode;
 import org.waarp.openr66.context.R66Result;
 import org.waarp.openr66.context.R66Session;
@@ -123,6 +124,25 @@ public abstract class AbstractTransfer implements Runnable {
      * @return null if an error occurs or a DbTaskRunner
      */
     protected DbTaskRunner initRequest() {
+        DAOFactory daoFactory = DAOFactory.getInstance();
+        if (daoFactory != null) {
+            daoFactory.beginUnitOfWork();
+        }
+        try {
+            return initRequestInUnitOfWork();
+        } finally {
+            if (daoFactory != null) {
+                daoFactory.endUnitOfWork();
+            }
+        }
+    }
+
+    /**
+     * Load rule, partner and task within one unit of work
+     * 
+     * @return the DbTaskRunner or null if in error
+     */
+    private DbTaskRunner initRequestInUnitOfWork() {
         DbRule rule;
         try {
             rule = new DbRule(rulename);
@@ -237,6 +257,31 @@ public abstract class AbstractTransfer implements Runnable {
             logger.error(Messages.getString("Configuration.NeedCorrectConfig")); //$NON-NLS-1$
             return false;
         }
+        return getTransferParams(args);
+    }
+
+    /**
+     * Parse the parameter and set current values, once the configuration is already loaded (all
+     * values not given in args are reset to their default)
+     * 
+     * @param args
+     *            as for getParams, the first one (configuration file) being ignored
+     * @return True if all parameters were found and correct
+     */
+    protected static boolean getTransferParams(String[] args) {
+        if (args.length < 2) {
+            logger.error(_INFO_ARGS);
+            return false;
+        }
+        rhost = null;
+        localFilename = null;
+        rule = null;
+        fileInfo = null;
+        ismd5 = false;
+        nolog = false;
+        idt = DbConstant.ILLEGALVALUE;
+        ttimestart = null;
+        snormalInfoAsWarn = true;
         // Now set default values from configuration
         block = Configuration.configuration.getBLOCKSIZE();
         int i = 1;
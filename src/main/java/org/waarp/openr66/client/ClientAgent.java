@@ -0,0 +1,564 @@
+/**
+ * This file is part of Waarp Project.
+ * 
+ * Copyright 2009, Frederic Bregier, and individual contributors by the @author tags. See the
+ * COPYRIGHT.txt in the distribution for a full listing of individual contributors.
+ * 
+ * All Waarp Project is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * Waarp is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Waarp . If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.waarp.openr66.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.Timestamp;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.waarp.common.database.exception.WaarpDatabaseException;
+import org.waarp.common.digest.FilesystemBasedDigest;
+import org.waarp.common.logging.WaarpLogger;
+import org.waarp.common.logging.WaarpLoggerFactory;
+import org.waarp.common.logging.WaarpSlf4JLoggerFactory;
+import org.waarp.common.utility.WaarpStringUtils;
+import org.waarp.common.utility.WaarpThreadFactory;
+import org.waarp.openr66.client.utils.OutputFormat;
+import org.waarp.openr66.client.utils.OutputFormat.FIELDS;
+import org.waarp.openr66.client.utils.OutputFormat.OUTPUTFORMAT;
+import org.waarp.openr66.configuration.FileBasedConfiguration;
+import org.waarp.openr66.context.ErrorCode;
+import org.waarp.openr66.context.R66Result;
+import org.waarp.openr66.database.DbConstant;
+import org.waarp.openr66.database.data.DbRule;
+import org.waarp.openr66.protocol.configuration.Configuration;
+import org.waarp.openr66.protocol.configuration.Messages;
+import org.waarp.openr66.protocol.networkhandler.NetworkTransaction;
+import org.waarp.openr66.protocol.utils.ChannelUtils;
+import org.waarp.openr66.protocol.utils.R66Future;
+
+/**
+ * Long-lived local client agent.<br>
+ * <br>
+ * The configuration, the database connection, the Netty groups and the NetworkTransaction (so the
+ * connections to the partners) are initialized once and kept warm, while each DirectTransfer or
+ * SubmitTransfer request comes from a thin command line (ClientAgentRequest) through a socket
+ * bound to the loopback interface only.<br>
+ * <br>
+ * Usage: ClientAgent configFile [-agentport port] [-agentsecret file]<br>
+ * <br>
+ * At startup, the agent writes a random secret in a file readable only by its owner (by default
+ * .waarp-r66-agent-port in the user home directory), so that only the same user can submit
+ * requests.<br>
+ * <br>
+ * Protocol (DataInput/DataOutput): the request is the secret (UTF), the command name (UTF), the
+ * current directory of the caller (UTF), the number of arguments (int) then each argument (UTF),
+ * the arguments being the ones of DirectTransfer or SubmitTransfer (the configuration file being
+ * ignored); the answer is the exit code (int), then the length (int) and the UTF-8 bytes of the
+ * output.<br>
+ * <br>
+ * A relative local file is searched first in the send directory of the rule, then in the current
+ * directory of the caller, as the command line run locally would do. At most CLIENT_THREAD requests
+ * run at once and as many wait, further ones being answered as ServerOverloaded.
+ */
+public class ClientAgent implements Runnable {
+    /**
+     * Internal Logger
+     */
+    static volatile WaarpLogger logger;
+
+    /**
+     * Default local port of the agent
+     */
+    public static final int DEFAULT_PORT = 6670;
+    /**
+     * Command for a DirectTransfer
+     */
+    public static final String DIRECT = "direct";
+    /**
+     * Command for a SubmitTransfer
+     */
+    public static final String SUBMIT = "submit";
+    /**
+     * Command to stop the agent
+     */
+    public static final String STOP = "stop";
+    /**
+     * Size in bytes of the random secret
+     */
+    private static final int SECRET_SIZE = 32;
+
+    private final ServerSocket serverSocket;
+    private final File secretFile;
+    private final byte[] secret;
+    private final NetworkTransaction networkTransaction;
+    private final ThreadPoolExecutor executorService;
+    private volatile boolean running = true;
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
+
+    /**
+     * @param port
+     *            the local port to listen to (loopback only)
+     * @param secretFile
+     *            the file where to write the secret, readable only by the owner
+     * @throws IOException
+     */
+    public ClientAgent(int port, File secretFile) throws IOException {
+        this.secretFile = secretFile;
+        this.secret = createSecret(secretFile).getBytes(WaarpStringUtils.UTF8);
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+        networkTransaction = new NetworkTransaction();
+        int maxRequests = Math.max(1, Configuration.configuration.getCLIENT_THREAD());
+        executorService = new ThreadPoolExecutor(maxRequests, maxRequests, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(maxRequests), new WaarpThreadFactory("ClientAgent"));
+        executorService.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 
+     * @param args
+     * @return the agent port from -agentport argument, else DEFAULT_PORT
+     */
+    static int getAgentPort(String[] args) {
+        String port = getOption(args, "-agentport");
+        if (port == null) {
+            return DEFAULT_PORT;
+        }
+        try {
+            return Integer.parseInt(port);
+        } catch (NumberFormatException e) {
+            return DEFAULT_PORT;
+        }
+    }
+
+    /**
+     * 
+     * @param args
+     * @param port
+     * @return the secret file from -agentsecret argument, else the default one for this port
+     */
+    static File getSecretFile(String[] args, int port) {
+        String path = getOption(args, "-agentsecret");
+        if (path == null) {
+            return new File(System.getProperty("user.home"), ".waarp-r66-agent-" + port);
+        }
+        return new File(path);
+    }
+
+    private static String getOption(String[] args, String option) {
+        for (int i = 1; i < args.length - 1; i++) {
+            if (args[i].equalsIgnoreCase(option)) {
+                return args[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Create a new random secret in a file readable and writable only by the owner
+     * 
+     * @param file
+     * @return the secret
+     * @throws IOException
+     */
+    private static String createSecret(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace the secret file " + file.getPath());
+        }
+        if (!file.createNewFile() ||
+                !file.setReadable(false, false) || !file.setWritable(false, false) ||
+                !file.setExecutable(false, false) ||
+                !file.setReadable(true, true) || !file.setWritable(true, true)) {
+            file.delete();
+            throw new IOException("Cannot restrict the secret file to its owner " + file.getPath());
+        }
+        byte[] random = new byte[SECRET_SIZE];
+        new SecureRandom().nextBytes(random);
+        String value = FilesystemBasedDigest.getHex(random);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(value.getBytes(WaarpStringUtils.UTF8));
+        } finally {
+            out.close();
+        }
+        return value;
+    }
+
+    /**
+     * 
+     * @param file
+     * @return the secret written by the agent in this file
+     * @throws IOException
+     */
+    static String readSecret(File file) throws IOException {
+        byte[] bytes = new byte[(int) Math.min(file.length(), SECRET_SIZE * 4)];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return new String(bytes, WaarpStringUtils.UTF8).trim();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("Agent cannot accept new request", e);
+                }
+                break;
+            }
+            try {
+                // only the reading of the request is bounded, not the transfer itself
+                socket.setSoTimeout(Configuration.configuration.getTIMEOUTCON());
+            } catch (IOException e) {
+                logger.warn("Agent cannot set the request timeout", e);
+                closeSocket(socket);
+                continue;
+            }
+            try {
+                executorService.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(socket);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                logger.warn("Agent too busy, request refused");
+                answer(socket, ErrorCode.ServerOverloaded.ordinal(),
+                        "Client agent too busy, retry later\n");
+            }
+        }
+        stop();
+    }
+
+    /**
+     * Stop the agent, closing all the connections to the partners
+     */
+    public void stop() {
+        running = false;
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+        }
+        secretFile.delete();
+        executorService.shutdown();
+        networkTransaction.closeAll();
+    }
+
+    /**
+     * Handle one request from one thin command line
+     * 
+     * @param socket
+     */
+    private void handle(Socket socket) {
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            byte[] received = input.readUTF().getBytes(WaarpStringUtils.UTF8);
+            if (!MessageDigest.isEqual(secret, received)) {
+                logger.warn("Agent received a request with a wrong secret");
+                return;
+            }
+            String command = input.readUTF();
+            String callerDir = input.readUTF();
+            int nb = input.readInt();
+            if (nb < 0 || nb > 1000) {
+                logger.warn("Agent received an incorrect request");
+                return;
+            }
+            String[] args = new String[nb];
+            for (int i = 0; i < nb; i++) {
+                args[i] = input.readUTF();
+            }
+            int status;
+            String result;
+            if (DIRECT.equalsIgnoreCase(command) || SUBMIT.equalsIgnoreCase(command)) {
+                OutputFormat outputFormat = new OutputFormat(
+                        DIRECT.equalsIgnoreCase(command) ?
+                                DirectTransfer.class.getSimpleName() :
+                                SubmitTransfer.class.getSimpleName(), args);
+                outputFormat.setFormat(OutputFormat.getFormat(args, OUTPUTFORMAT.JSON));
+                status = transfer(DIRECT.equalsIgnoreCase(command), callerDir, args, outputFormat);
+                result = outputFormat.sysoutString();
+            } else if (STOP.equalsIgnoreCase(command)) {
+                running = false;
+                status = 0;
+                result = "";
+            } else {
+                status = 2;
+                result = "Unknown command: " + command + '\n';
+            }
+            byte[] bytes = result.getBytes(WaarpStringUtils.UTF8);
+            output.writeInt(status);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+            output.flush();
+        } catch (IOException e) {
+            logger.warn("Agent request in error", e);
+        } finally {
+            closeSocket(socket);
+            if (!running) {
+                stop();
+            }
+        }
+    }
+
+    private static void closeSocket(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * Answer directly without reading the request, then close the socket
+     * 
+     * @param socket
+     * @param status
+     * @param message
+     */
+    private static void answer(Socket socket, int status, String message) {
+        try {
+            byte[] bytes = message.getBytes(WaarpStringUtils.UTF8);
+            DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            output.writeInt(status);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+            output.flush();
+        } catch (IOException e) {
+            logger.debug("Agent cannot answer", e);
+        } finally {
+            closeSocket(socket);
+        }
+    }
+
+    /**
+     * The agent does not run in the directory of the caller, so a relative local file not found in
+     * the send directory of the rule is taken from the caller's directory, as the command line run
+     * locally would do
+     * 
+     * @param callerDir
+     *            the current directory of the caller
+     * @param filename
+     * @param sendDir
+     *            the send directory of the rule, null if not a send rule
+     * @return the filename to use for the transfer
+     */
+    static String resolveLocalFile(String callerDir, String filename, File sendDir) {
+        if (filename == null || callerDir == null || callerDir.isEmpty() ||
+                new File(filename).isAbsolute()) {
+            return filename;
+        }
+        if (sendDir == null || new File(sendDir, filename).exists()) {
+            return filename;
+        }
+        File file = new File(callerDir, filename);
+        if (file.exists()) {
+            return file.getAbsolutePath();
+        }
+        return filename;
+    }
+
+    /**
+     * 
+     * @param rule
+     * @return the send directory of this rule, null if not found or not a send rule
+     */
+    private static File getSendDir(String rule) {
+        try {
+            DbRule dbRule = new DbRule(rule);
+            if (!dbRule.isSendMode()) {
+                return null;
+            }
+            return new File(Configuration.configuration.getBaseDirectory() + dbRule.getSendPath());
+        } catch (WaarpDatabaseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Run one transfer with the warm configuration
+     * 
+     * @param direct
+     *            True for a DirectTransfer, False for a SubmitTransfer
+     * @param callerDir
+     *            the current directory of the caller
+     * @param args
+     * @param outputFormat
+     * @return the exit code as the command line would have returned it
+     */
+    private int transfer(boolean direct, String callerDir, String[] args, OutputFormat outputFormat) {
+        long time1 = System.currentTimeMillis();
+        String rhost, localFilename, rule, fileInfo;
+        boolean ismd5, nolog, snormalInfoAsWarn;
+        int block;
+        long idt;
+        Timestamp ttimestart;
+        // Parameters are static in AbstractTransfer, so parse them one at a time
+        synchronized (AbstractTransfer.class) {
+            if (!AbstractTransfer.getTransferParams(args)) {
+                outputFormat.setValue(FIELDS.status.name(), 2);
+                outputFormat.setValue(FIELDS.statusTxt.name(),
+                        Messages.getString("Configuration.WrongInit")); //$NON-NLS-1$
+                return 2;
+            }
+            rhost = AbstractTransfer.rhost;
+            localFilename = AbstractTransfer.localFilename;
+            rule = AbstractTransfer.rule;
+            fileInfo = AbstractTransfer.fileInfo;
+            ismd5 = AbstractTransfer.ismd5;
+            nolog = AbstractTransfer.nolog;
+            snormalInfoAsWarn = AbstractTransfer.snormalInfoAsWarn;
+            block = AbstractTransfer.block;
+            idt = AbstractTransfer.idt;
+            ttimestart = AbstractTransfer.ttimestart;
+        }
+        localFilename = resolveLocalFile(callerDir, localFilename, getSendDir(rule));
+        R66Future future = new R66Future(true);
+        AbstractTransfer transaction;
+        String statusPrefix;
+        if (direct) {
+            transaction = new DirectTransfer(future, rhost, localFilename, rule, fileInfo, ismd5,
+                    block, idt, networkTransaction);
+            statusPrefix = Messages.getString("Transfer.Status"); //$NON-NLS-1$
+        } else {
+            transaction = new SubmitTransfer(future, rhost, localFilename, rule, fileInfo, ismd5,
+                    block, idt, ttimestart);
+            statusPrefix = Messages.getString("SubmitTransfer.3"); //$NON-NLS-1$
+        }
+        transaction.normalInfoAsWarn = snormalInfoAsWarn;
+        transaction.run();
+        future.awaitUninterruptibly();
+        long delay = System.currentTimeMillis() - time1;
+        R66Result result = future.getResult();
+        outputFormat.setValue(FIELDS.remote.name(), rhost);
+        if (result == null || result.getRunner() == null) {
+            outputFormat.setValue(FIELDS.status.name(), 2);
+            outputFormat.setValue(FIELDS.statusTxt.name(),
+                    statusPrefix + Messages.getString("Transfer.FailedNoId")); //$NON-NLS-1$
+            if (future.getCause() != null) {
+                outputFormat.setValue(FIELDS.error.name(), future.getCause().getMessage());
+            }
+            logger.error(outputFormat.loggerOut(), future.getCause());
+            return future.isSuccess() ? 0 : ErrorCode.Unknown.ordinal();
+        }
+        outputFormat.setValueString(result.getRunner().getJson());
+        outputFormat.setValue("delay", delay);
+        if (future.isSuccess()) {
+            if (direct) {
+                outputFormat.setValue("filefinal",
+                        (result.getFile() != null ? result.getFile().toString() : "no file"));
+            }
+            if (result.getRunner().getErrorInfo() == ErrorCode.Warning) {
+                outputFormat.setValue(FIELDS.status.name(), 1);
+                outputFormat.setValue(FIELDS.statusTxt.name(),
+                        statusPrefix + Messages.getString("RequestInformation.Warned")); //$NON-NLS-1$
+            } else {
+                outputFormat.setValue(FIELDS.status.name(), 0);
+                outputFormat.setValue(FIELDS.statusTxt.name(),
+                        statusPrefix + Messages.getString("RequestInformation.Success")); //$NON-NLS-1$
+            }
+            if (transaction.normalInfoAsWarn) {
+                logger.warn(outputFormat.loggerOut());
+            } else {
+                logger.info(outputFormat.loggerOut());
+            }
+            if (direct && (nolog || result.getRunner().shallIgnoreSave())) {
+                // In case of success, delete the runner
+                try {
+                    result.getRunner().delete();
+                } catch (WaarpDatabaseException e) {
+                    logger.warn("Cannot apply nolog to     " + result.getRunner().toShortString(),
+                            e);
+                }
+            }
+            return 0;
+        }
+        if (result.getRunner().getErrorInfo() == ErrorCode.Warning) {
+            outputFormat.setValue(FIELDS.status.name(), 1);
+            outputFormat.setValue(FIELDS.statusTxt.name(),
+                    statusPrefix + Messages.getString("RequestInformation.Warned")); //$NON-NLS-1$
+        } else {
+            outputFormat.setValue(FIELDS.status.name(), 2);
+            outputFormat.setValue(FIELDS.statusTxt.name(),
+                    statusPrefix + Messages.getString("RequestInformation.Failure")); //$NON-NLS-1$
+        }
+        if (future.getCause() != null) {
+            outputFormat.setValue(FIELDS.error.name(), future.getCause().getMessage());
+        }
+        if (result.getRunner().getErrorInfo() == ErrorCode.Warning) {
+            logger.warn(outputFormat.loggerOut(), future.getCause());
+        } else {
+            logger.error(outputFormat.loggerOut(), future.getCause());
+        }
+        return result.getCode().ordinal();
+    }
+
+    public static void main(String[] args) {
+        WaarpLoggerFactory.setDefaultFactory(new WaarpSlf4JLoggerFactory(null));
+        if (logger == null) {
+            logger = WaarpLoggerFactory.getLogger(ClientAgent.class);
+        }
+        if (AbstractTransfer.logger == null) {
+            AbstractTransfer.logger = logger;
+        }
+        if (args.length < 1 || !FileBasedConfiguration
+                .setClientConfigurationFromXml(Configuration.configuration, args[0])) {
+            logger.error(Messages.getString("Configuration.NeedCorrectConfig")); //$NON-NLS-1$
+            if (DbConstant.admin != null && DbConstant.admin.isActive()) {
+                DbConstant.admin.close();
+            }
+            ChannelUtils.stopLogger();
+            System.exit(2);
+        }
+        int port = getAgentPort(args);
+        Configuration.configuration.pipelineInit();
+        ClientAgent agent;
+        try {
+            agent = new ClientAgent(port, getSecretFile(args, port));
+        } catch (IOException e) {
+            logger.error("Agent cannot listen on port " + port, e);
+            Configuration.configuration.clientStop(true);
+            System.exit(2);
+            return;
+        }
+        logger.warn("Client agent ready on local port " + port);
+        agent.run();
+        if (DbConstant.admin != null && DbConstant.admin.isActive()) {
+            DbConstant.admin.close();
+        }
+        System.exit(0);
+    }
+}
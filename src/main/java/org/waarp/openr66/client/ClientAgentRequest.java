@@ -0,0 +1,127 @@
+/**
+ * This file is part of Waarp Project.
+ * 
+ * Copyright 2009, Frederic Bregier, and individual contributors by the @author tags. See the
+ * COPYRIGHT.txt in the distribution for a full listing of individual contributors.
+ * 
+ * All Waarp Project is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * Waarp is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Waarp . If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.waarp.openr66.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import org.waarp.common.utility.WaarpStringUtils;
+
+/**
+ * Thin command line forwarding a DirectTransfer or a SubmitTransfer to the local ClientAgent,
+ * therefore without loading the configuration nor initializing the network.<br>
+ * <br>
+ * Usage: ClientAgentRequest direct|submit|stop configFile [DirectTransfer or SubmitTransfer
+ * arguments] [-agentport port] [-agentsecret file]<br>
+ * <br>
+ * The secret written by the agent is sent with each request, with the current directory so that
+ * the agent finds relative local files as the command run locally would. If no agent is listening or its
+ * secret cannot be read, the command is run locally as DirectTransfer or SubmitTransfer would.
+ */
+public class ClientAgentRequest {
+    /**
+     * Timeout to connect to the local agent
+     */
+    private static final int CONNECT_TIMEOUT = 1000;
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Need at least: direct|submit|stop configFile [arguments]");
+            System.exit(2);
+        }
+        String command = args[0];
+        String[] transferArgs = new String[args.length - 1];
+        System.arraycopy(args, 1, transferArgs, 0, transferArgs.length);
+        int port = ClientAgent.getAgentPort(transferArgs);
+        String secret;
+        try {
+            secret = ClientAgent.readSecret(ClientAgent.getSecretFile(transferArgs, port));
+        } catch (IOException e) {
+            // no agent started by this user
+            runLocally(command, transferArgs);
+            return;
+        }
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getByName(null), port), CONNECT_TIMEOUT);
+        } catch (IOException e) {
+            // no agent listening
+            closeSocket(socket);
+            runLocally(command, transferArgs);
+            return;
+        }
+        int status;
+        try {
+            DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            output.writeUTF(secret);
+            output.writeUTF(command);
+            // the agent does not share the current directory of this command
+            output.writeUTF(new File("").getAbsolutePath());
+            output.writeInt(transferArgs.length);
+            for (String arg : transferArgs) {
+                output.writeUTF(arg);
+            }
+            output.flush();
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            status = input.readInt();
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            System.out.print(new String(bytes, WaarpStringUtils.UTF8));
+        } catch (IOException e) {
+            System.err.println("Error while talking to the client agent: " + e.getMessage());
+            status = 66;
+        } finally {
+            closeSocket(socket);
+        }
+        System.exit(status);
+    }
+
+    private static void closeSocket(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * No agent available: run the command as a standard one
+     * 
+     * @param command
+     * @param transferArgs
+     */
+    private static void runLocally(String command, String[] transferArgs) {
+        if (ClientAgent.DIRECT.equalsIgnoreCase(command)) {
+            DirectTransfer.main(transferArgs);
+        } else if (ClientAgent.SUBMIT.equalsIgnoreCase(command)) {
+            SubmitTransfer.main(transferArgs);
+        } else if (ClientAgent.STOP.equalsIgnoreCase(command)) {
+            System.exit(0);
+        } else {
+            System.err.println("Unknown command: " + command);
+            System.exit(2);
+        }
+    }
+}
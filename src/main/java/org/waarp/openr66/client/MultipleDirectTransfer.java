@@ -20,11 +20,16 @@ package org.waarp.openr66.client;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.waarp.common.command.exception.CommandAbstractException;
 import org.waarp.common.database.exception.WaarpDatabaseException;
 import org.waarp.common.logging.WaarpLoggerFactory;
 import org.waarp.common.logging.WaarpSlf4JLoggerFactory;
+import org.waarp.common.utility.WaarpThreadFactory;
 import org.waarp.openr66.client.utils.OutputFormat;
 import org.waarp.openr66.client.utils.OutputFormat.FIELDS;
 import org.waarp.openr66.context.ErrorCode;
@@ -54,6 +59,10 @@ import org.waarp.openr66.protocol.utils.R66Future;
  * -to host2 -file file2<br>
  * -to host3 -file file1<br>
  * -to host3 -file file2<br>
+ * <br>
+ * Option -limitParallel n allows up to n transfers to run concurrently (default: 1, one after the other). In send mode,
+ * the transfers are then ordered file by file, such that all transfers of one file run together and share the reads
+ * of the file from the system cache.<br>
  * 
  * @author Frederic Bregier
  * 
@@ -62,6 +71,42 @@ public class MultipleDirectTransfer extends DirectTransfer {
     private int errorMultiple = 0;
     private int doneMultiple = 0;
     private List<OutputFormat> results = new ArrayList<OutputFormat>();
+    private int limitParallel = 1;
+
+    static protected int slimitParallel = 1;
+
+    /**
+     * One transfer among all the transfers to do
+     */
+    private class TransferJob implements Runnable {
+        private final String host;
+        private final String filename;
+        private final R66Future future = new R66Future(true);
+        private long delay = 0;
+
+        private TransferJob(String host, String filename) {
+            this.host = host;
+            this.filename = filename;
+        }
+
+        public void run() {
+            logger.info("Launch transfer to " + host + " with file " + filename);
+            long time1 = System.currentTimeMillis();
+            try {
+                DirectTransfer transaction = new DirectTransfer(future,
+                        host, filename, rule, fileInfo, ismd5, block, idt,
+                        networkTransaction);
+                transaction.normalInfoAsWarn = normalInfoAsWarn;
+                logger.debug("rhost: " + host + ":" + transaction.remoteHost);
+                transaction.run();
+                future.awaitUninterruptibly();
+            } catch (Throwable e) {
+                logger.error("Error during transfer to " + host + " with file " + filename, e);
+                future.setFailure(e);
+            }
+            delay = System.currentTimeMillis() - time1;
+        }
+    }
 
     public MultipleDirectTransfer(R66Future future, String remoteHost,
             String filename, String rulename, String fileinfo, boolean isMD5, int blocksize,
@@ -155,110 +200,149 @@ public class MultipleDirectTransfer extends DirectTransfer {
         if (dbrule.isSendMode()) {
             files = getLocalFiles(dbrule, localfilenames);
         }
-        for (String host : rhosts) {
-            host = host.trim();
-            if (host != null && !host.isEmpty()) {
-                if (dbrule.isRecvMode()) {
-                    files = getRemoteFiles(dbrule, localfilenames, host, networkTransaction);
+        List<TransferJob> jobs = new ArrayList<TransferJob>();
+        if (dbrule.isSendMode() && limitParallel > 1) {
+            // file by file, so that the concurrent transfers of one file share the system cache
+            for (String filename : files) {
+                filename = filename.trim();
+                if (filename != null && !filename.isEmpty()) {
+                    for (String host : rhosts) {
+                        host = host.trim();
+                        if (host != null && !host.isEmpty()) {
+                            jobs.add(new TransferJob(host, filename));
+                        }
+                    }
+                }
+            }
+        } else {
+            for (String host : rhosts) {
+                host = host.trim();
+                if (host != null && !host.isEmpty()) {
+                    if (dbrule.isRecvMode()) {
+                        files = getRemoteFiles(dbrule, localfilenames, host, networkTransaction);
+                    }
+                    for (String filename : files) {
+                        filename = filename.trim();
+                        if (filename != null && !filename.isEmpty()) {
+                            jobs.add(new TransferJob(host, filename));
+                        }
+                    }
+                }
+            }
+        }
+        ExecutorService executor = null;
+        List<Future<?>> executions = null;
+        if (limitParallel > 1 && jobs.size() > 1) {
+            executor = Executors.newFixedThreadPool(Math.min(limitParallel, jobs.size()),
+                    new WaarpThreadFactory("MultipleDirectTransfer"));
+            executions = new ArrayList<Future<?>>(jobs.size());
+            for (TransferJob job : jobs) {
+                executions.add(executor.submit(job));
+            }
+        }
+        try {
+            for (int i = 0; i < jobs.size(); i++) {
+                TransferJob job = jobs.get(i);
+                if (executor == null) {
+                    job.run();
+                } else {
+                    try {
+                        executions.get(i).get();
+                    } catch (InterruptedException e) {
+                        logger.error("Interrupted while waiting for transfers", e);
+                        job.future.cancel();
+                    } catch (ExecutionException e) {
+                        job.future.setFailure(e.getCause());
+                    }
                 }
-                for (String filename : files) {
-                    filename = filename.trim();
-                    if (filename != null && !filename.isEmpty()) {
-                        logger.info("Launch transfer to " + host + " with file " + filename);
-                        long time1 = System.currentTimeMillis();
-                        R66Future future = new R66Future(true);
-                        DirectTransfer transaction = new DirectTransfer(future,
-                                host, filename, rule, fileInfo, ismd5, block, idt,
-                                networkTransaction);
-                        transaction.normalInfoAsWarn = normalInfoAsWarn;
-                        logger.debug("rhost: " + host + ":" + transaction.remoteHost);
-                        transaction.run();
-                        future.awaitUninterruptibly();
-                        long time2 = System.currentTimeMillis();
-                        logger.debug("finish transfer: " + future.isSuccess());
-                        long delay = time2 - time1;
-                        R66Result result = future.getResult();
-                        OutputFormat outputFormat = new OutputFormat("Unique "
-                                + MultipleDirectTransfer.class.getSimpleName(), null);
-                        if (future.isSuccess()) {
-                            if (result.getRunner().getErrorInfo() == ErrorCode.Warning) {
-                                outputFormat.setValue(FIELDS.status.name(), 1);
-                                outputFormat
-                                        .setValue(
-                                                FIELDS.statusTxt.name(),
-                                                Messages.getString("Transfer.Status") + Messages.getString("RequestInformation.Warned")); //$NON-NLS-1$
-                            } else {
-                                outputFormat.setValue(FIELDS.status.name(), 0);
-                                outputFormat
-                                        .setValue(
-                                                FIELDS.statusTxt.name(),
-                                                Messages.getString("Transfer.Status") + Messages.getString("RequestInformation.Success")); //$NON-NLS-1$
-                            }
-                            outputFormat.setValue(FIELDS.remote.name(), host);
-                            outputFormat.setValueString(result.getRunner().getJson());
-                            outputFormat.setValue("filefinal", (result.getFile() != null ? result.getFile().toString()
-                                    : "no file"));
-                            outputFormat.setValue("delay", delay);
-                            getResults().add(outputFormat);
-                            setDoneMultiple(getDoneMultiple() + 1);
-                            if (transaction.normalInfoAsWarn) {
-                                logger.warn(outputFormat.loggerOut());
-                            } else {
-                                logger.info(outputFormat.loggerOut());
-                            }
-                            if (nolog || result.getRunner().shallIgnoreSave()) {
-                                // In case of success, delete the runner
-                                try {
-                                    result.getRunner().delete();
-                                } catch (WaarpDatabaseException e) {
-                                    logger.warn("Cannot apply nolog to     " + result.getRunner().toShortString(),
-                                            e);
-                                }
-                            }
-                        } else {
-                            if (result == null || result.getRunner() == null) {
-                                outputFormat.setValue(FIELDS.status.name(), 2);
-                                outputFormat.setValue(FIELDS.statusTxt.name(),
-                                        Messages.getString("Transfer.FailedNoId")); //$NON-NLS-1$
-                                outputFormat.setValue(FIELDS.remote.name(), host);
-                                logger.error(outputFormat.loggerOut(), future.getCause());
-                                outputFormat.setValue(FIELDS.error.name(), future.getCause().getMessage());
-                                outputFormat.sysout();
-                                networkTransaction.closeAll();
-                                System.exit(ErrorCode.Unknown.ordinal());
-                            }
-                            if (result.getRunner().getErrorInfo() == ErrorCode.Warning) {
-                                outputFormat.setValue(FIELDS.status.name(), 1);
-                                outputFormat
-                                        .setValue(
-                                                FIELDS.statusTxt.name(),
-                                                Messages.getString("Transfer.Status") + Messages.getString("RequestInformation.Warned")); //$NON-NLS-1$
-                            } else {
-                                outputFormat.setValue(FIELDS.status.name(), 2);
-                                outputFormat
-                                        .setValue(
-                                                FIELDS.statusTxt.name(),
-                                                Messages.getString("Transfer.Status") + Messages.getString("RequestInformation.Failure")); //$NON-NLS-1$
-                            }
-                            outputFormat.setValue(FIELDS.remote.name(), host);
-                            outputFormat.setValueString(result.getRunner().getJson());
-                            if (result.getRunner().getErrorInfo() == ErrorCode.Warning) {
-                                logger.warn(outputFormat.loggerOut(), future.getCause());
-                            } else {
-                                logger.error(outputFormat.loggerOut(), future.getCause());
-                            }
-                            outputFormat.setValue(FIELDS.error.name(), future.getCause().getMessage());
-                            getResults().add(outputFormat);
-                            setErrorMultiple(getErrorMultiple() + 1);
-                            inError = true;
-                            if (result != null) {
-                                inError = true;
-                                resultError = result;
-                            }
+                R66Future future = job.future;
+                String host = job.host;
+                logger.debug("finish transfer: " + future.isSuccess());
+                long delay = job.delay;
+                R66Result result = future.getResult();
+                OutputFormat outputFormat = new OutputFormat("Unique "
+                        + MultipleDirectTransfer.class.getSimpleName(), null);
+                if (future.isSuccess()) {
+                    if (result.getRunner().getErrorInfo() == ErrorCode.Warning) {
+                        outputFormat.setValue(FIELDS.status.name(), 1);
+                        outputFormat
+                                .setValue(
+                                        FIELDS.statusTxt.name(),
+                                        Messages.getString("Transfer.Status") + Messages.getString("RequestInformation.Warned")); //$NON-NLS-1$
+                    } else {
+                        outputFormat.setValue(FIELDS.status.name(), 0);
+                        outputFormat
+                                .setValue(
+                                        FIELDS.statusTxt.name(),
+                                        Messages.getString("Transfer.Status") + Messages.getString("RequestInformation.Success")); //$NON-NLS-1$
+                    }
+                    outputFormat.setValue(FIELDS.remote.name(), host);
+                    outputFormat.setValueString(result.getRunner().getJson());
+                    outputFormat.setValue("filefinal", (result.getFile() != null ? result.getFile().toString()
+                            : "no file"));
+                    outputFormat.setValue("delay", delay);
+                    getResults().add(outputFormat);
+                    setDoneMultiple(getDoneMultiple() + 1);
+                    if (normalInfoAsWarn) {
+                        logger.warn(outputFormat.loggerOut());
+                    } else {
+                        logger.info(outputFormat.loggerOut());
+                    }
+                    if (nolog || result.getRunner().shallIgnoreSave()) {
+                        // In case of success, delete the runner
+                        try {
+                            result.getRunner().delete();
+                        } catch (WaarpDatabaseException e) {
+                            logger.warn("Cannot apply nolog to     " + result.getRunner().toShortString(),
+                                    e);
                         }
                     }
+                } else {
+                    if (result == null || result.getRunner() == null) {
+                        outputFormat.setValue(FIELDS.status.name(), 2);
+                        outputFormat.setValue(FIELDS.statusTxt.name(),
+                                Messages.getString("Transfer.FailedNoId")); //$NON-NLS-1$
+                        outputFormat.setValue(FIELDS.remote.name(), host);
+                        logger.error(outputFormat.loggerOut(), future.getCause());
+                        outputFormat.setValue(FIELDS.error.name(), future.getCause().getMessage());
+                        outputFormat.sysout();
+                        networkTransaction.closeAll();
+                        System.exit(ErrorCode.Unknown.ordinal());
+                    }
+                    if (result.getRunner().getErrorInfo() == ErrorCode.Warning) {
+                        outputFormat.setValue(FIELDS.status.name(), 1);
+                        outputFormat
+                                .setValue(
+                                        FIELDS.statusTxt.name(),
+                                        Messages.getString("Transfer.Status") + Messages.getString("RequestInformation.Warned")); //$NON-NLS-1$
+                    } else {
+                        outputFormat.setValue(FIELDS.status.name(), 2);
+                        outputFormat
+                                .setValue(
+                                        FIELDS.statusTxt.name(),
+                                        Messages.getString("Transfer.Status") + Messages.getString("RequestInformation.Failure")); //$NON-NLS-1$
+                    }
+                    outputFormat.setValue(FIELDS.remote.name(), host);
+                    outputFormat.setValueString(result.getRunner().getJson());
+                    if (result.getRunner().getErrorInfo() == ErrorCode.Warning) {
+                        logger.warn(outputFormat.loggerOut(), future.getCause());
+                    } else {
+                        logger.error(outputFormat.loggerOut(), future.getCause());
+                    }
+                    outputFormat.setValue(FIELDS.error.name(), future.getCause().getMessage());
+                    getResults().add(outputFormat);
+                    setErrorMultiple(getErrorMultiple() + 1);
+                    inError = true;
+                    if (result != null) {
+                        inError = true;
+                        resultError = result;
+                    }
                 }
             }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
         }
         if (inError) {
             if (resultError != null) {
@@ -270,6 +354,33 @@ public class MultipleDirectTransfer extends DirectTransfer {
         }
     }
 
+    /**
+     * Parse the parameter and set current values, adding -limitParallel to the standard ones
+     * 
+     * @param args
+     * @param submitOnly
+     * @return True if all parameters were found and correct
+     */
+    protected static boolean getParams(String[] args, boolean submitOnly) {
+        if (!AbstractTransfer.getParams(args, submitOnly)) {
+            logger.error(Messages.getString("MultipleDirectTransfer.0")); //$NON-NLS-1$
+            return false;
+        }
+        for (int i = 1; i < args.length - 1; i++) {
+            if (args[i].equalsIgnoreCase("-limitParallel")) {
+                i++;
+                try {
+                    slimitParallel = Integer.parseInt(args[i]);
+                } catch (NumberFormatException e) {
+                    logger.error(Messages.getString("AbstractTransfer.20") + i); //$NON-NLS-1$
+                    logger.error(Messages.getString("MultipleDirectTransfer.0")); //$NON-NLS-1$
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     public static void main(String[] args) {
         WaarpLoggerFactory.setDefaultFactory(new WaarpSlf4JLoggerFactory(null));
         if (logger == null) {
@@ -297,6 +408,7 @@ public class MultipleDirectTransfer extends DirectTransfer {
                             rule, fileInfo, ismd5, block, idt,
                             networkTransaction);
             multipleDirectTransfer.normalInfoAsWarn = snormalInfoAsWarn;
+            multipleDirectTransfer.setLimitParallel(slimitParallel);
             multipleDirectTransfer.run();
             future.awaitUninterruptibly();
             long time2 = System.currentTimeMillis();
@@ -381,6 +493,20 @@ public class MultipleDirectTransfer extends DirectTransfer {
         this.doneMultiple = doneMultiple;
     }
 
+    /**
+     * @return the maximum number of concurrent transfers
+     */
+    public int getLimitParallel() {
+        return limitParallel;
+    }
+
+    /**
+     * @param limitParallel the maximum number of concurrent transfers to set (1 for one after the other)
+     */
+    public void setLimitParallel(int limitParallel) {
+        this.limitParallel = limitParallel;
+    }
+
     /**
      * @return the results
      */
@@ -20,9 +20,18 @@ package org.waarp.openr66.client;
 import java.io.File;
 import java.io.FileFilter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.dom4j.Document;
@@ -48,14 +57,21 @@ import org.waarp.openr66.configuration.FileBasedConfiguration;
 import org.waarp.openr66.context.ErrorCode;
 import org.waarp.openr66.context.R66Result;
 import org.waarp.openr66.context.task.SpooledInformTask;
+import org.waarp.openr66.dao.DAOFactory;
+import org.waarp.openr66.dao.Filter;
+import org.waarp.openr66.dao.TransferDAO;
+import org.waarp.openr66.dao.database.DBTransferDAO;
+import org.waarp.openr66.dao.exception.DAOException;
 import org.waarp.openr66.database.DbConstant;
 import org.waarp.openr66.database.data.DbRule;
 import org.waarp.openr66.database.data.DbTaskRunner;
+import org.waarp.openr66.pojo.Transfer;
 import org.waarp.openr66.protocol.configuration.Configuration;
 import org.waarp.openr66.protocol.configuration.Messages;
 import org.waarp.openr66.protocol.localhandler.packet.BusinessRequestPacket;
 import org.waarp.openr66.protocol.networkhandler.NetworkTransaction;
 import org.waarp.openr66.protocol.utils.ChannelUtils;
+import org.waarp.openr66.protocol.utils.FileBundle;
 import org.waarp.openr66.protocol.utils.R66Future;
 import org.waarp.openr66.protocol.utils.R66ShutdownHook;
 
@@ -90,6 +106,19 @@ import org.waarp.openr66.protocol.utils.R66ShutdownHook;
  * -limitParallel limit to specify the number of concurrent actions in -direct mode only<br>
  * -minimalSize limit to specify the minimal size of each file that will be transferred (default: no limit)<br>
  * -notlogWarn | -logWarn to deactivate or activate (default) the logging in Warn mode of Send/Remove information of the spool<br>
+ * -parallelHosts limit to specify the number of hosts a file or a bundle is sent to concurrently (default: 1, one host
+ * after the other)<br>
+ * -bundleCount count to bundle up to count small files in one single transfer (default: 0, no bundle)<br>
+ * -bundleSize size to bundle files up to size bytes in one single transfer (default: 0, no limit)<br>
+ * -bundleDelay delay in ms to wait before sending an incomplete bundle (default: 1000 ms)<br>
+ * -bundleDir directory where bundles are built (default: the directory of the status file)<br>
+ * <br>
+ * In bundle mode (bundleCount > 1 or bundleSize > 0), ready files are grouped in one archive (see {@link FileBundle})
+ * sent as one transfer, the receiving rule using the UNBUNDLE task to extract the files. Since the R66 send path
+ * reads a regular file, the archive is built in bundleDir: it is deleted after the transfer in direct mode, and once
+ * all its submitted transfers are done in submit mode (kept if a transfer is in error, for a restart). At startup, the
+ * bundles left in bundleDir by a previous run are matched again with their transfers through the original filename
+ * of the runners, and deleted if no transfer uses them anymore.<br>
  * 
  * @author Frederic Bregier
  * 
@@ -150,12 +179,24 @@ public class SpooledDirectoryTransfer implements Runnable {
 
     protected final boolean normalInfoAsWarn;
 
+    protected final int parallelHosts;
+
+    protected final int bundleCount;
+
+    protected final long bundleSize;
+
+    protected final long bundleDelay;
+
+    protected final String bundleDir;
+
     protected final NetworkTransaction networkTransaction;
 
     protected FileMonitor monitor = null;
 
-    private long sent = 0;
-    private long error = 0;
+    protected ExecutorService hostExecutor = null;
+
+    private volatile long sent = 0;
+    private volatile long error = 0;
 
     /**
      * @param future
@@ -186,6 +227,52 @@ public class SpooledDirectoryTransfer implements Runnable {
             long elapse, boolean submit, boolean nolog, boolean recursive,
             long elapseWaarp, boolean parallel, int limitParallel,
             List<String> waarphost, long minimalSize, boolean logWarn, NetworkTransaction networkTransaction) {
+        this(future, name, directory, statusfile, stopfile, rulename, fileinfo, isMD5, remoteHosts, blocksize,
+                regex, elapse, submit, nolog, recursive, elapseWaarp, parallel, limitParallel, waarphost,
+                minimalSize, logWarn, 1, 0, 0, 0, null, networkTransaction);
+    }
+
+    /**
+     * @param future
+     * @param name
+     * @param directory
+     * @param statusfile
+     * @param stopfile
+     * @param rulename
+     * @param fileinfo
+     * @param isMD5
+     * @param remoteHosts
+     * @param blocksize
+     * @param regex
+     * @param elapse
+     * @param submit
+     * @param nolog
+     * @param recursive
+     * @param elapseWaarp
+     * @param parallel
+     * @param waarphost
+     * @param minimalSize
+     * @param parallelHosts
+     *            maximum number of hosts a file is sent to concurrently
+     * @param bundleCount
+     *            maximum number of files in one bundle (0 for no limit)
+     * @param bundleSize
+     *            maximum cumulated size of files in one bundle (0 for no limit)
+     * @param bundleDelay
+     *            maximum delay in ms before sending an incomplete bundle
+     * @param bundleDir
+     *            directory where bundles are built (null for the directory of the status file)
+     * @param networkTransaction
+     */
+    public SpooledDirectoryTransfer(R66Future future, String name, List<String> directory,
+            String statusfile, String stopfile, String rulename,
+            String fileinfo, boolean isMD5,
+            List<String> remoteHosts, int blocksize, String regex,
+            long elapse, boolean submit, boolean nolog, boolean recursive,
+            long elapseWaarp, boolean parallel, int limitParallel,
+            List<String> waarphost, long minimalSize, boolean logWarn, int parallelHosts,
+            int bundleCount, long bundleSize, long bundleDelay, String bundleDir,
+            NetworkTransaction networkTransaction) {
         if (logger == null) {
             logger = WaarpLoggerFactory.getLogger(SpooledDirectoryTransfer.class);
         }
@@ -215,9 +302,26 @@ public class SpooledDirectoryTransfer implements Runnable {
         this.waarpHosts = waarphost;
         this.minimalSize = minimalSize;
         this.normalInfoAsWarn = logWarn;
+        this.parallelHosts = parallelHosts;
+        this.bundleCount = bundleCount;
+        this.bundleSize = bundleSize;
+        this.bundleDelay = bundleDelay > 0 ? bundleDelay : 1000;
+        if (bundleDir == null) {
+            File parent = new File(statusfile).getAbsoluteFile().getParentFile();
+            this.bundleDir = parent != null ? parent.getAbsolutePath() : System.getProperty("java.io.tmpdir");
+        } else {
+            this.bundleDir = bundleDir;
+        }
         this.networkTransaction = networkTransaction;
     }
 
+    /**
+     * @return True if files are to be bundled before being sent
+     */
+    public boolean isBundleMode() {
+        return bundleCount > 1 || bundleSize > 0;
+    }
+
     @Override
     public void run() {
         if (submit && !DbConstant.admin.isActive()) {
@@ -300,7 +404,14 @@ public class SpooledDirectoryTransfer implements Runnable {
             filter = new RegexFileFilter(minimalSize);
         }
         // Will be used if no parallelism
-        FileMonitorCommandRunnableFuture commandValidFile = new SpooledRunner(null);
+        FileMonitorCommandRunnableFuture commandValidFile;
+        SpooledBundler bundler = null;
+        if (isBundleMode()) {
+            bundler = new SpooledBundler();
+            commandValidFile = bundler;
+        } else {
+            commandValidFile = new SpooledRunner(null);
+        }
         FileMonitorCommandRunnableFuture waarpRemovedCommand = new FileMonitorCommandRunnableFuture() {
             public void run(FileItem file) {
                 if (normalInfoAsWarn) {
@@ -325,7 +436,10 @@ public class SpooledDirectoryTransfer implements Runnable {
             return;
         }
         commandValidFile.setMonitor(monitor);
-        if (parallel) {
+        if (bundler != null) {
+            bundler.recoverSubmittedBundles();
+        }
+        if (parallel && bundler == null) {
             FileMonitorCommandFactory factory = new FileMonitorCommandFactory() {
 
                 @Override
@@ -404,10 +518,38 @@ public class SpooledDirectoryTransfer implements Runnable {
                 " rulename:" + rulename + " fileinfo:" + fileinfo + " hosts:" + remoteHosts + " regex:" + regexFilter
                 + " minimalSize:" + minimalSize + " waarp:" + waarpHosts +
                 " elapse:" + elapseTime + " waarpElapse:" + elapseWaarpTime + " parallel:" + parallel
-                + " limitParallel:" + limitParallelTasks +
-                " submit:" + submit + " recursive:" + recurs);
+                + " limitParallel:" + limitParallelTasks + " parallelHosts:" + parallelHosts +
+                " submit:" + submit + " recursive:" + recurs +
+                (bundler != null ? " bundleCount:" + bundleCount + " bundleSize:" + bundleSize
+                        + " bundleDelay:" + bundleDelay + " bundleDir:" + bundleDir : ""));
+        if (parallelHosts > 1 && remoteHosts.size() > 1) {
+            hostExecutor = Executors.newFixedThreadPool(Math.min(parallelHosts, remoteHosts.size()),
+                    new WaarpThreadFactory("SpooledFanOut_" + name));
+        }
+        ScheduledExecutorService bundleTimer = null;
+        if (bundler != null) {
+            final SpooledBundler bundlerArg = bundler;
+            bundleTimer = Executors.newSingleThreadScheduledExecutor(
+                    new WaarpThreadFactory("SpooledBundle_" + name));
+            bundleTimer.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    bundlerArg.checkDelay();
+                    bundlerArg.checkSubmittedBundles();
+                }
+            }, bundleDelay, Math.max(bundleDelay / 2, 100), TimeUnit.MILLISECONDS);
+        }
         monitor.start();
         monitor.waitForStopFile();
+        if (bundler != null) {
+            bundleTimer.shutdownNow();
+            // pending files are not marked as used, so they will be taken again at next start
+            logger.info("Files not bundled at stop: " + bundler.getPendingCount());
+            // submitted bundles still in use are kept in bundleDir for the server
+            bundler.checkSubmittedBundles();
+        }
+        if (hostExecutor != null) {
+            hostExecutor.shutdown();
+        }
         this.future.setSuccess();
         if (Configuration.configuration.getShutdownConfiguration().serviceFuture != null) {
             Configuration.configuration.getShutdownConfiguration().serviceFuture.setSuccess();
@@ -436,204 +578,662 @@ public class SpooledDirectoryTransfer implements Runnable {
             }
             boolean finalStatus = false;
             int ko = 0;
-            long specialId = remoteHosts.size() > 1 ? DbConstant.ILLEGALVALUE : fileItem.specialId;
+            long[] specialId = new long[] {
+                    remoteHosts.size() > 1 ? DbConstant.ILLEGALVALUE : fileItem.specialId };
+            String filename = fileItem.file.getAbsolutePath();
             try {
-                for (String host : remoteHosts) {
-                    host = host.trim();
-                    if (host != null && !host.isEmpty()) {
-                        String filename = fileItem.file.getAbsolutePath();
-                        logger.info("Launch transfer to " + host + " with file " + filename);
-                        R66Future future = new R66Future(true);
-                        String text = null;
-                        if (submit) {
-                            text = "Submit Transfer: ";
-                            SubmitTransfer transaction = new SubmitTransfer(future,
-                                    host, filename, rulename, fileinfo, isMD5, blocksize,
-                                    specialId, null);
-                            transaction.normalInfoAsWarn = normalInfoAsWarn;
-                            logger.info(text + host);
-                            transaction.run();
-                        } else {
-                            if (specialId != DbConstant.ILLEGALVALUE) {
-                                boolean direct = false;
-                                // Transfer try at least once
-                                text = "Request Transfer try Restart: " + specialId + " " + filename + " ";
-                                try {
-                                    String srequester = Configuration.configuration.getHostId(DbConstant.admin.getSession(),
-                                            host);
-                                    // Try restart
-                                    RequestTransfer transaction = new RequestTransfer(future, specialId, host,
-                                            srequester,
-                                            false, false, true, networkTransaction);
-                                    transaction.normalInfoAsWarn = normalInfoAsWarn;
-                                    logger.info(text + host);
-                                    // special task
-                                    transaction.run();
-                                    future.awaitUninterruptibly();
-                                    if (!future.isSuccess()) {
-                                        direct = true;
-                                        text = "Request Transfer Cancelled and Restart: " + specialId + " " + filename
-                                                + " ";
-                                        future = new R66Future(true);
-                                        // Cancel
-                                        RequestTransfer transaction2 = new RequestTransfer(future, specialId, host,
-                                                srequester,
-                                                true, false, false, networkTransaction);
-                                        transaction.normalInfoAsWarn = normalInfoAsWarn;
-                                        logger.warn(text + host);
-                                        transaction2.run();
-                                        // special task
-                                        future.awaitUninterruptibly();
-                                        if (!DbConstant.admin.isActive()) {
-                                            DbTaskRunner.removeNoDbSpecialId(specialId);
-                                        }
-                                    }
-                                } catch (WaarpDatabaseException e) {
-                                    direct = true;
-                                    if (DbConstant.admin.getSession() != null) {
-                                        DbConstant.admin.getSession().checkConnectionNoException();
-                                    }
-                                    logger.warn(Messages.getString("RequestTransfer.5") + host, e); //$NON-NLS-1$
-                                }
-                                if (direct) {
-                                    text = "Direct Transfer: ";
-                                    future = new R66Future(true);
-                                    DirectTransfer transaction = new DirectTransfer(future,
-                                            host, filename, rulename, fileinfo, isMD5, blocksize,
-                                            DbConstant.ILLEGALVALUE, networkTransaction);
-                                    transaction.normalInfoAsWarn = normalInfoAsWarn;
-                                    logger.info(text + host);
-                                    transaction.run();
-                                }
+                if (hostExecutor != null && remoteHosts.size() > 1) {
+                    ko = fanOut(filename);
+                    finalStatus = true;
+                } else {
+                    for (String host : remoteHosts) {
+                        host = host.trim();
+                        if (host != null && !host.isEmpty()) {
+                            if (transferToHost(host, filename, specialId)) {
+                                finalStatus = true;
                             } else {
-                                text = "Direct Transfer: ";
-                                DirectTransfer transaction = new DirectTransfer(future,
-                                        host, filename, rulename, fileinfo, isMD5, blocksize,
-                                        DbConstant.ILLEGALVALUE, networkTransaction);
-                                transaction.normalInfoAsWarn = normalInfoAsWarn;
-                                logger.info(text + host);
-                                transaction.run();
+                                ko++;
                             }
                         }
+                    }
+                }
+            } catch (Throwable e) {
+                // catch any exception
+                logger.error("Error in SpooledDirectory", e);
+                finalStatus = false;
+            }
+            long finalId = remoteHosts.size() > 1 ? DbConstant.ILLEGALVALUE : specialId[0];
+            if (ko > 0) {
+                // If at least one is in error, the transfer is in error so should be redone
+                finalStatus = false;
+            }
+            finalize(finalStatus, finalId);
+        }
+
+        /**
+         * Send the file to all hosts concurrently, using at most parallelHosts simultaneous transfers. Since the
+         * transfers of the same file run at the same time, the file is read from disk once and then shared through
+         * the system cache.
+         * 
+         * @param filename
+         * @return the number of hosts in error
+         * @throws InterruptedException
+         */
+        private int fanOut(final String filename) throws InterruptedException {
+            long start = System.currentTimeMillis();
+            List<String> hosts = new ArrayList<String>(remoteHosts.size());
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(remoteHosts.size());
+            for (String host : remoteHosts) {
+                final String rhost = host.trim();
+                if (rhost != null && !rhost.isEmpty()) {
+                    hosts.add(rhost);
+                    results.add(hostExecutor.submit(new Callable<Boolean>() {
+                        public Boolean call() {
+                            return transferToHost(rhost, filename, new long[] { DbConstant.ILLEGALVALUE });
+                        }
+                    }));
+                }
+            }
+            List<String> hostsInError = new ArrayList<String>();
+            for (int i = 0; i < results.size(); i++) {
+                boolean success;
+                try {
+                    success = results.get(i).get();
+                } catch (ExecutionException e) {
+                    logger.error("Error in SpooledDirectory to " + hosts.get(i), e.getCause());
+                    success = false;
+                }
+                if (!success) {
+                    hostsInError.add(hosts.get(i));
+                }
+            }
+            int ko = hostsInError.size();
+            String info = "Transfers of " + filename + " to " + hosts.size() + " hosts: " + (hosts.size() - ko)
+                    + " success, " + ko + " error " + hostsInError + " in "
+                    + (System.currentTimeMillis() - start) + " ms";
+            if (ko > 0) {
+                logger.error(info);
+            } else if (normalInfoAsWarn) {
+                logger.warn(info);
+            } else {
+                logger.info(info);
+            }
+            return ko;
+        }
+
+        /**
+         * Transfer the file to one host
+         * 
+         * @param host
+         * @param filename
+         * @param specialId
+         *            the Id to try to restart (updated with the Id of the transfer)
+         * @return True if the transfer is a success
+         */
+        private boolean transferToHost(String host, String filename, long[] specialId) {
+            boolean success = false;
+            logger.info("Launch transfer to " + host + " with file " + filename);
+            R66Future future = new R66Future(true);
+            String text = null;
+            if (submit) {
+                text = "Submit Transfer: ";
+                SubmitTransfer transaction = new SubmitTransfer(future,
+                        host, filename, rulename, fileinfo, isMD5, blocksize,
+                        specialId[0], null);
+                transaction.normalInfoAsWarn = normalInfoAsWarn;
+                logger.info(text + host);
+                transaction.run();
+            } else {
+                if (specialId[0] != DbConstant.ILLEGALVALUE) {
+                    boolean direct = false;
+                    // Transfer try at least once
+                    text = "Request Transfer try Restart: " + specialId[0] + " " + filename + " ";
+                    try {
+                        String srequester = Configuration.configuration.getHostId(DbConstant.admin.getSession(),
+                                host);
+                        // Try restart
+                        RequestTransfer transaction = new RequestTransfer(future, specialId[0], host,
+                                srequester,
+                                false, false, true, networkTransaction);
+                        transaction.normalInfoAsWarn = normalInfoAsWarn;
+                        logger.info(text + host);
+                        // special task
+                        transaction.run();
                         future.awaitUninterruptibly();
+                        if (!future.isSuccess()) {
+                            direct = true;
+                            text = "Request Transfer Cancelled and Restart: " + specialId[0] + " " + filename
+                                    + " ";
+                            future = new R66Future(true);
+                            // Cancel
+                            RequestTransfer transaction2 = new RequestTransfer(future, specialId[0], host,
+                                    srequester,
+                                    true, false, false, networkTransaction);
+                            transaction.normalInfoAsWarn = normalInfoAsWarn;
+                            logger.warn(text + host);
+                            transaction2.run();
+                            // special task
+                            future.awaitUninterruptibly();
+                            if (!DbConstant.admin.isActive()) {
+                                DbTaskRunner.removeNoDbSpecialId(specialId[0]);
+                            }
+                        }
+                    } catch (WaarpDatabaseException e) {
+                        direct = true;
+                        if (DbConstant.admin.getSession() != null) {
+                            DbConstant.admin.getSession().checkConnectionNoException();
+                        }
+                        logger.warn(Messages.getString("RequestTransfer.5") + host, e); //$NON-NLS-1$
+                    }
+                    if (direct) {
+                        text = "Direct Transfer: ";
+                        future = new R66Future(true);
+                        DirectTransfer transaction = new DirectTransfer(future,
+                                host, filename, rulename, fileinfo, isMD5, blocksize,
+                                DbConstant.ILLEGALVALUE, networkTransaction);
+                        transaction.normalInfoAsWarn = normalInfoAsWarn;
+                        logger.info(text + host);
+                        transaction.run();
+                    }
+                } else {
+                    text = "Direct Transfer: ";
+                    DirectTransfer transaction = new DirectTransfer(future,
+                            host, filename, rulename, fileinfo, isMD5, blocksize,
+                            DbConstant.ILLEGALVALUE, networkTransaction);
+                    transaction.normalInfoAsWarn = normalInfoAsWarn;
+                    logger.info(text + host);
+                    transaction.run();
+                }
+            }
+            future.awaitUninterruptibly();
+            R66Result r66result = future.getResult();
+            if (future.isSuccess()) {
+                success = true;
+                addSent(1);
+                DbTaskRunner runner = null;
+                if (r66result != null) {
+                    runner = r66result.getRunner();
+                    if (runner != null) {
+                        specialId[0] = runner.getSpecialId();
+                        String status = Messages.getString("RequestInformation.Success"); //$NON-NLS-1$
+                        if (runner.getErrorInfo() == ErrorCode.Warning) {
+                            status = Messages.getString("RequestInformation.Warned"); //$NON-NLS-1$
+                        }
+                        if (normalInfoAsWarn) {
+                            logger.warn(text + " status: " + status + "     "
+                                    + runner.toShortString()
+                                    + "     <REMOTE>" + host + "</REMOTE>"
+                                    + "     <FILEFINAL>" +
+                                    (r66result.getFile() != null ?
+                                            r66result.getFile().toString() + "</FILEFINAL>"
+                                            : "no file"));
+                        } else {
+                            logger.info(text + " status: " + status + "     "
+                                    + runner.toShortString()
+                                    + "     <REMOTE>" + host + "</REMOTE>"
+                                    + "     <FILEFINAL>" +
+                                    (r66result.getFile() != null ?
+                                            r66result.getFile().toString() + "</FILEFINAL>"
+                                            : "no file"));
+                        }
+                        if (nolog && !submit) {
+                            // In case of success, delete the runner
+                            try {
+                                runner.delete();
+                            } catch (WaarpDatabaseException e) {
+                                logger.warn("Cannot apply nolog to     " +
+                                        runner.toShortString(),
+                                        e);
+                            }
+                        }
+                        DbTaskRunner.removeNoDbSpecialId(specialId[0]);
+                    } else {
+                        if (normalInfoAsWarn) {
+                            logger.warn(text + Messages.getString("RequestInformation.Success") //$NON-NLS-1$
+                                    + "<REMOTE>" + host + "</REMOTE>");
+                        } else {
+                            logger.info(text + Messages.getString("RequestInformation.Success") //$NON-NLS-1$
+                                    + "<REMOTE>" + host + "</REMOTE>");
+                        }
+                    }
+                } else {
+                    if (normalInfoAsWarn) {
+                        logger.warn(text + Messages.getString("RequestInformation.Success") //$NON-NLS-1$
+                                + "<REMOTE>" + host + "</REMOTE>");
+                    } else {
+                        logger.info(text + Messages.getString("RequestInformation.Success") //$NON-NLS-1$
+                                + "<REMOTE>" + host + "</REMOTE>");
+                    }
+                }
+            } else {
+                addError(1);
+                DbTaskRunner runner = null;
+                if (r66result != null) {
+                    String errMsg = "Unknown Error Message";
+                    if (future.getCause() != null) {
+                        errMsg = future.getCause().getMessage();
+                    }
+                    boolean isConnectionImpossible = (r66result.getCode() == ErrorCode.ConnectionImpossible)
+                            && !normalInfoAsWarn;
+                    runner = r66result.getRunner();
+                    if (runner != null) {
+                        specialId[0] = runner.getSpecialId();
+                        if (!DbConstant.admin.isActive() && remoteHosts.size() > 1) {
+                            DbTaskRunner.removeNoDbSpecialId(specialId[0]);
+                            specialId[0] = DbConstant.ILLEGALVALUE;
+                        } else if (DbConstant.admin.isActive()) {
+                            DbTaskRunner.removeNoDbSpecialId(specialId[0]);
+                        }
+                        if (isConnectionImpossible) {
+                            logger.info(text + Messages.getString("RequestInformation.Failure") + //$NON-NLS-1$
+                                    runner.toShortString() +
+                                    "<REMOTE>" + host + "</REMOTE><REASON>" + errMsg + "</REASON>");
+                        } else {
+                            logger.error(text + Messages.getString("RequestInformation.Failure") + //$NON-NLS-1$
+                                    runner.toShortString() +
+                                    "<REMOTE>" + host + "</REMOTE><REASON>" + errMsg + "</REASON>");
+                        }
+                    } else {
+                        if (isConnectionImpossible) {
+                            logger.info(text + Messages.getString("RequestInformation.Failure") + //$NON-NLS-1$
+                                    "<REMOTE>" + host + "</REMOTE>",
+                                    future.getCause());
+                        } else {
+                            logger.error(text + Messages.getString("RequestInformation.Failure") + //$NON-NLS-1$
+                                    "<REMOTE>" + host + "</REMOTE>",
+                                    future.getCause());
+                        }
+                    }
+                } else {
+                    logger.error(text + Messages.getString("RequestInformation.Failure") //$NON-NLS-1$
+                            + "<REMOTE>" + host + "</REMOTE>",
+                            future.getCause());
+                }
+            }
+            return success;
+        }
+    }
+
+
+    /**
+     * Transfer one bundle to one host
+     * 
+     * @param host
+     * @param filename
+     *            the bundle
+     * @return the future of the transfer, already done
+     */
+    protected R66Future transferBundle(String host, String filename) {
+        R66Future future = new R66Future(true);
+        if (submit) {
+            SubmitTransfer transaction = new SubmitTransfer(future,
+                    host, filename, rulename, fileinfo, isMD5, blocksize,
+                    DbConstant.ILLEGALVALUE, null);
+            transaction.normalInfoAsWarn = normalInfoAsWarn;
+            transaction.run();
+        } else {
+            DirectTransfer transaction = new DirectTransfer(future,
+                    host, filename, rulename, fileinfo, isMD5, blocksize,
+                    DbConstant.ILLEGALVALUE, networkTransaction);
+            transaction.normalInfoAsWarn = normalInfoAsWarn;
+            transaction.run();
+        }
+        future.awaitUninterruptibly();
+        return future;
+    }
+
+    /**
+     * Transfer one bundle to all hosts, concurrently using at most parallelHosts simultaneous transfers as for a
+     * single file, else one host after the other
+     * 
+     * @param hosts
+     * @param filename
+     *            the bundle
+     * @return the futures of the transfers, in the order of the hosts
+     */
+    List<R66Future> transferBundleToHosts(List<String> hosts, final String filename) {
+        List<R66Future> futures = new ArrayList<R66Future>(hosts.size());
+        if (hostExecutor == null || hosts.size() <= 1) {
+            for (String host : hosts) {
+                R66Future future;
+                try {
+                    future = transferBundle(host, filename);
+                } catch (RuntimeException e) {
+                    future = new R66Future(true);
+                    future.setFailure(e);
+                }
+                futures.add(future);
+            }
+            return futures;
+        }
+        List<Future<R66Future>> results = new ArrayList<Future<R66Future>>(hosts.size());
+        for (final String host : hosts) {
+            results.add(hostExecutor.submit(new Callable<R66Future>() {
+                public R66Future call() {
+                    return transferBundle(host, filename);
+                }
+            }));
+        }
+        boolean interrupted = false;
+        for (Future<R66Future> result : results) {
+            R66Future future = null;
+            while (future == null) {
+                try {
+                    future = result.get();
+                } catch (InterruptedException e) {
+                    // as the sequential transfers, wait for the end of the transfers
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    future = new R66Future(true);
+                    future.setFailure(e.getCause());
+                }
+            }
+            futures.add(future);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return futures;
+    }
+
+    /**
+     * Collects the ready files in order to send them as bundles: a bundle is sent as soon as one of the limits (count,
+     * size) is reached, or when the oldest collected file waits for more than the bundle delay.
+     */
+    public class SpooledBundler extends FileMonitorCommandRunnableFuture {
+        private final List<FileItem> pending = new ArrayList<FileItem>();
+        private final Set<String> pendingNames = new HashSet<String>();
+        private final Set<String> pendingPaths = new HashSet<String>();
+        private long pendingSize = 0;
+        private long firstPendingTime = 0;
+        private final Object sendLock = new Object();
+        /**
+         * Bundles submitted to the server, with the transfers that still have to send them
+         */
+        private final Map<File, List<DbTaskRunner>> submittedBundles = new HashMap<File, List<DbTaskRunner>>();
+        /**
+         * Prefix of the bundles of this spooled directory, since bundleDir may be shared
+         */
+        private final String bundlePrefix;
+
+        public SpooledBundler() {
+            super(null);
+            bundlePrefix = "bundle_" + String.valueOf(name).replaceAll("[^A-Za-z0-9._-]", "_") + "_";
+        }
+
+        /**
+         * Take back the bundles left in bundleDir by a previous run: the transfers still using each of them are found
+         * again from their original filename, while a bundle no more used by any transfer is deleted.
+         */
+        public void recoverSubmittedBundles() {
+            File[] files = new File(bundleDir).listFiles();
+            if (files == null) {
+                return;
+            }
+            TransferDAO transferAccess = null;
+            try {
+                transferAccess = DAOFactory.getInstance().getTransferDAO();
+                for (File file : files) {
+                    if (!file.isFile() || !file.getName().startsWith(bundlePrefix) ||
+                            !file.getName().endsWith(".zip")) {
+                        continue;
+                    }
+                    List<Filter> filters = new ArrayList<Filter>();
+                    filters.add(new Filter(DBTransferDAO.ORIGINAL_NAME_FIELD, "=", file.getAbsolutePath()));
+                    filters.add(new Filter(DBTransferDAO.OWNER_REQUEST_FIELD, "=",
+                            Configuration.configuration.getHOST_ID()));
+                    List<DbTaskRunner> runners = new ArrayList<DbTaskRunner>();
+                    for (Transfer transfer : transferAccess.find(filters)) {
+                        DbTaskRunner runner = new DbTaskRunner(transfer);
+                        if (!runner.isAllDone()) {
+                            runners.add(runner);
+                        }
+                    }
+                    if (runners.isEmpty()) {
+                        logger.info("Delete bundle left by a previous run " + file.getAbsolutePath());
+                        if (!file.delete()) {
+                            logger.warn("Cannot delete bundle " + file.getAbsolutePath());
+                        }
+                    } else {
+                        synchronized (submittedBundles) {
+                            submittedBundles.put(file, runners);
+                        }
+                    }
+                }
+            } catch (DAOException e) {
+                // kept as is, so checked again at next start
+                logger.warn("Cannot check the bundles left in " + bundleDir, e);
+            } finally {
+                if (transferAccess != null) {
+                    transferAccess.close();
+                }
+            }
+        }
+
+        public void run(FileItem fileItem) {
+            List<FileItem> ready = null;
+            List<FileItem> full = null;
+            String entryName = getEntryName(fileItem.file);
+            synchronized (this) {
+                if (!pendingPaths.add(fileItem.file.getAbsolutePath())) {
+                    // already waiting in the current bundle
+                    return;
+                }
+                if (pendingNames.contains(entryName)) {
+                    // same name from another directory: send the current bundle first
+                    ready = takePending();
+                    pendingPaths.add(fileItem.file.getAbsolutePath());
+                }
+                if (pending.isEmpty()) {
+                    firstPendingTime = System.currentTimeMillis();
+                }
+                pending.add(fileItem);
+                pendingNames.add(entryName);
+                pendingSize += fileItem.file.length();
+                if ((bundleCount > 0 && pending.size() >= bundleCount) ||
+                        (bundleSize > 0 && pendingSize >= bundleSize)) {
+                    full = takePending();
+                }
+            }
+            if (ready != null) {
+                sendBundle(ready);
+            }
+            if (full != null) {
+                sendBundle(full);
+            }
+        }
+
+        /**
+         * Send the current bundle if its oldest file waits for more than the bundle delay
+         */
+        public void checkDelay() {
+            List<FileItem> ready = null;
+            synchronized (this) {
+                if (!pending.isEmpty() && System.currentTimeMillis() - firstPendingTime >= bundleDelay) {
+                    ready = takePending();
+                }
+            }
+            if (ready != null) {
+                sendBundle(ready);
+            }
+        }
+
+        /**
+         * Delete the submitted bundles once all their transfers are done. A bundle whose transfer is in error
+         * is kept, since the transfer could be restarted.
+         */
+        public void checkSubmittedBundles() {
+            synchronized (submittedBundles) {
+                Iterator<Map.Entry<File, List<DbTaskRunner>>> iterator = submittedBundles.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<File, List<DbTaskRunner>> entry = iterator.next();
+                    Iterator<DbTaskRunner> runners = entry.getValue().iterator();
+                    while (runners.hasNext()) {
+                        DbTaskRunner runner = runners.next();
+                        try {
+                            runner.select();
+                        } catch (WaarpDatabaseException e) {
+                            logger.debug("Cannot check bundle transfer " + runner.toShortString(), e);
+                            continue;
+                        }
+                        if (runner.isAllDone()) {
+                            runners.remove();
+                        }
+                    }
+                    if (entry.getValue().isEmpty()) {
+                        iterator.remove();
+                        if (!entry.getKey().delete()) {
+                            logger.warn("Cannot delete bundle " + entry.getKey().getAbsolutePath());
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the number of files waiting to be bundled
+         */
+        public synchronized int getPendingCount() {
+            return pending.size();
+        }
+
+        private List<FileItem> takePending() {
+            List<FileItem> items = new ArrayList<FileItem>(pending);
+            pending.clear();
+            pendingNames.clear();
+            pendingPaths.clear();
+            pendingSize = 0;
+            return items;
+        }
+
+        /**
+         * @param file
+         * @return the name of the file within the bundle, relative to its spooled directory
+         */
+        private String getEntryName(File file) {
+            String path = file.getAbsolutePath();
+            for (String dirname : directory) {
+                String dirpath = new File(dirname).getAbsolutePath() + File.separator;
+                if (path.startsWith(dirpath)) {
+                    return path.substring(dirpath.length()).replace(File.separatorChar, '/');
+                }
+            }
+            return file.getName();
+        }
+
+        private void sendBundle(List<FileItem> items) {
+            synchronized (sendLock) {
+                if (DbConstant.admin.getSession() != null && DbConstant.admin.getSession().isDisActive()) {
+                    DbConstant.admin.getSession().checkConnectionNoException();
+                }
+                List<File> files = new ArrayList<File>(items.size());
+                List<String> names = new ArrayList<String>(items.size());
+                for (FileItem item : items) {
+                    files.add(item.file);
+                    names.add(getEntryName(item.file));
+                }
+                boolean finalStatus = true;
+                File bundle = null;
+                try {
+                    bundle = File.createTempFile(bundlePrefix, ".zip", new File(bundleDir));
+                    FileBundle.createBundle(files, names, bundle);
+                } catch (Throwable e) {
+                    logger.error("Cannot create bundle in " + bundleDir, e);
+                    finalStatus = false;
+                    if (bundle != null) {
+                        bundle.delete();
+                        bundle = null;
+                    }
+                }
+                if (bundle != null) {
+                    String filename = bundle.getAbsolutePath();
+                    List<DbTaskRunner> submitted = new ArrayList<DbTaskRunner>(remoteHosts.size());
+                    List<String> hosts = new ArrayList<String>(remoteHosts.size());
+                    for (String host : remoteHosts) {
+                        host = host.trim();
+                        if (host != null && !host.isEmpty()) {
+                            hosts.add(host);
+                        }
+                    }
+                    logger.info("Launch bundle transfer to " + hosts + " with " + items.size() + " files in "
+                            + filename);
+                    String text = submit ? "Submit Bundle Transfer: " : "Direct Bundle Transfer: ";
+                    List<R66Future> futures = transferBundleToHosts(hosts, filename);
+                    for (int i = 0; i < hosts.size(); i++) {
+                        String host = hosts.get(i);
+                        R66Future future = futures.get(i);
                         R66Result r66result = future.getResult();
+                        DbTaskRunner runner = r66result != null ? r66result.getRunner() : null;
                         if (future.isSuccess()) {
-                            finalStatus = true;
-                            setSent(getSent() + 1);
-                            DbTaskRunner runner = null;
-                            if (r66result != null) {
-                                runner = r66result.getRunner();
-                                if (runner != null) {
-                                    specialId = runner.getSpecialId();
-                                    String status = Messages.getString("RequestInformation.Success"); //$NON-NLS-1$
-                                    if (runner.getErrorInfo() == ErrorCode.Warning) {
-                                        status = Messages.getString("RequestInformation.Warned"); //$NON-NLS-1$
-                                    }
-                                    if (normalInfoAsWarn) {
-                                        logger.warn(text + " status: " + status + "     "
-                                                + runner.toShortString()
-                                                + "     <REMOTE>" + host + "</REMOTE>"
-                                                + "     <FILEFINAL>" +
-                                                (r66result.getFile() != null ?
-                                                        r66result.getFile().toString() + "</FILEFINAL>"
-                                                        : "no file"));
-                                    } else {
-                                        logger.info(text + " status: " + status + "     "
-                                                + runner.toShortString()
-                                                + "     <REMOTE>" + host + "</REMOTE>"
-                                                + "     <FILEFINAL>" +
-                                                (r66result.getFile() != null ?
-                                                        r66result.getFile().toString() + "</FILEFINAL>"
-                                                        : "no file"));
-                                    }
-                                    if (nolog && !submit) {
-                                        // In case of success, delete the runner
-                                        try {
-                                            runner.delete();
-                                        } catch (WaarpDatabaseException e) {
-                                            logger.warn("Cannot apply nolog to     " +
-                                                    runner.toShortString(),
-                                                    e);
-                                        }
-                                    }
-                                    DbTaskRunner.removeNoDbSpecialId(specialId);
-                                } else {
-                                    if (normalInfoAsWarn) {
-                                        logger.warn(text + Messages.getString("RequestInformation.Success") //$NON-NLS-1$
-                                                + "<REMOTE>" + host + "</REMOTE>");
-                                    } else {
-                                        logger.info(text + Messages.getString("RequestInformation.Success") //$NON-NLS-1$
-                                                + "<REMOTE>" + host + "</REMOTE>");
-                                    }
-                                }
+                            String info = text + Messages.getString("RequestInformation.Success") //$NON-NLS-1$
+                                    + (runner != null ? runner.toShortString() : "")
+                                    + "<REMOTE>" + host + "</REMOTE><FILES>" + names + "</FILES>";
+                            if (normalInfoAsWarn) {
+                                logger.warn(info);
                             } else {
-                                if (normalInfoAsWarn) {
-                                    logger.warn(text + Messages.getString("RequestInformation.Success") //$NON-NLS-1$
-                                            + "<REMOTE>" + host + "</REMOTE>");
-                                } else {
-                                    logger.info(text + Messages.getString("RequestInformation.Success") //$NON-NLS-1$
-                                            + "<REMOTE>" + host + "</REMOTE>");
-                                }
+                                logger.info(info);
                             }
-                        } else {
-                            setError(getError() + 1);
-                            ko++;
-                            DbTaskRunner runner = null;
-                            if (r66result != null) {
-                                String errMsg = "Unknown Error Message";
-                                if (future.getCause() != null) {
-                                    errMsg = future.getCause().getMessage();
+                            if (runner != null) {
+                                if (submit) {
+                                    submitted.add(runner);
                                 }
-                                boolean isConnectionImpossible = (r66result.getCode() == ErrorCode.ConnectionImpossible)
-                                        && !normalInfoAsWarn;
-                                runner = r66result.getRunner();
-                                if (runner != null) {
-                                    specialId = runner.getSpecialId();
-                                    if (!DbConstant.admin.isActive() && remoteHosts.size() > 1) {
-                                        DbTaskRunner.removeNoDbSpecialId(specialId);
-                                        specialId = DbConstant.ILLEGALVALUE;
-                                    } else if (DbConstant.admin.isActive()) {
-                                        DbTaskRunner.removeNoDbSpecialId(specialId);
-                                    }
-                                    if (isConnectionImpossible) {
-                                        logger.info(text + Messages.getString("RequestInformation.Failure") + //$NON-NLS-1$
-                                                runner.toShortString() +
-                                                "<REMOTE>" + host + "</REMOTE><REASON>" + errMsg + "</REASON>");
-                                    } else {
-                                        logger.error(text + Messages.getString("RequestInformation.Failure") + //$NON-NLS-1$
-                                                runner.toShortString() +
-                                                "<REMOTE>" + host + "</REMOTE><REASON>" + errMsg + "</REASON>");
-                                    }
-                                } else {
-                                    if (isConnectionImpossible) {
-                                        logger.info(text + Messages.getString("RequestInformation.Failure") + //$NON-NLS-1$
-                                                "<REMOTE>" + host + "</REMOTE>",
-                                                future.getCause());
-                                    } else {
-                                        logger.error(text + Messages.getString("RequestInformation.Failure") + //$NON-NLS-1$
-                                                "<REMOTE>" + host + "</REMOTE>",
-                                                future.getCause());
+                                if (nolog && !submit) {
+                                    try {
+                                        runner.delete();
+                                    } catch (WaarpDatabaseException e) {
+                                        logger.warn("Cannot apply nolog to     " + runner.toShortString(), e);
                                     }
                                 }
-                            } else {
-                                logger.error(text + Messages.getString("RequestInformation.Failure") //$NON-NLS-1$
-                                        + "<REMOTE>" + host + "</REMOTE>",
-                                        future.getCause());
+                                DbTaskRunner.removeNoDbSpecialId(runner.getSpecialId());
+                            }
+                        } else {
+                            finalStatus = false;
+                            if (runner != null) {
+                                DbTaskRunner.removeNoDbSpecialId(runner.getSpecialId());
                             }
+                            logger.error(text + Messages.getString("RequestInformation.Failure") //$NON-NLS-1$
+                                    + (runner != null ? runner.toShortString() : "")
+                                    + "<REMOTE>" + host + "</REMOTE><FILES>" + names + "</FILES>",
+                                    future.getCause());
+                        }
+                    }
+                    if (!submitted.isEmpty()) {
+                        // in submit mode, the bundle is sent later on by the server
+                        synchronized (submittedBundles) {
+                            submittedBundles.put(bundle, submitted);
                         }
+                    } else if (!bundle.delete()) {
+                        logger.warn("Cannot delete bundle " + filename);
                     }
                 }
-            } catch (Throwable e) {
-                // catch any exception
-                logger.error("Error in SpooledDirectory", e);
-                finalStatus = false;
-            }
-            specialId = remoteHosts.size() > 1 ? DbConstant.ILLEGALVALUE : specialId;
-            if (ko > 0) {
-                // If at least one is in error, the transfer is in error so should be redone
-                finalStatus = false;
+                if (finalStatus) {
+                    addSent(items.size());
+                } else {
+                    addError(items.size());
+                }
+                for (FileItem item : items) {
+                    BundledItem bundledItem = new BundledItem(item);
+                    bundledItem.setMonitor(monitor);
+                    bundledItem.done(finalStatus);
+                }
             }
-            finalize(finalStatus, specialId);
+        }
+    }
+
+    /**
+     * Used to set the final status of one file sent within a bundle
+     */
+    private static class BundledItem extends FileMonitorCommandRunnableFuture {
+        private BundledItem(FileItem fileItem) {
+            super(fileItem);
+        }
+
+        public void run(FileItem fileItem) {
+            // nothing: the file was already sent within a bundle
+        }
+
+        private void done(boolean status) {
+            finalize(status, DbConstant.ILLEGALVALUE);
         }
     }
 
@@ -664,6 +1264,11 @@ public class SpooledDirectoryTransfer implements Runnable {
         protected int limitParallel = 0;
         protected long minimalSize = 0;
         protected boolean logWarn = true;
+        protected int parallelHosts = 1;
+        protected int bundleCount = 0;
+        protected long bundleSize = 0;
+        protected long bundleDelay = 1000;
+        protected String bundleDir = null;
     }
 
     protected static final List<Arguments> arguments = new ArrayList<Arguments>();
@@ -690,6 +1295,11 @@ public class SpooledDirectoryTransfer implements Runnable {
     private static final String XML_elapseWaarp = "elapseWaarp";
     private static final String XML_minimalSize = "minimalSize";
     private static final String XML_logWarn = "logWarn";
+    private static final String XML_parallelHosts = "parallelHosts";
+    private static final String XML_bundleCount = "bundleCount";
+    private static final String XML_bundleSize = "bundleSize";
+    private static final String XML_bundleDelay = "bundleDelay";
+    private static final String XML_bundleDir = "bundleDir";
 
     private static final XmlDecl[] subSpooled = {
             new XmlDecl(XmlType.STRING, XML_name),
@@ -709,7 +1319,12 @@ public class SpooledDirectoryTransfer implements Runnable {
             new XmlDecl(XmlType.BOOLEAN, XML_nolog),
             new XmlDecl(XML_waarp, XmlType.STRING, XML_waarp, true),
             new XmlDecl(XmlType.LONG, XML_elapseWaarp),
-            new XmlDecl(XmlType.LONG, XML_minimalSize)
+            new XmlDecl(XmlType.LONG, XML_minimalSize),
+            new XmlDecl(XmlType.INTEGER, XML_parallelHosts),
+            new XmlDecl(XmlType.INTEGER, XML_bundleCount),
+            new XmlDecl(XmlType.LONG, XML_bundleSize),
+            new XmlDecl(XmlType.LONG, XML_bundleDelay),
+            new XmlDecl(XmlType.STRING, XML_bundleDir)
     };
     private static final XmlDecl[] spooled = {
             new XmlDecl(XmlType.STRING, XML_stopfile),
@@ -862,6 +1477,26 @@ public class SpooledDirectoryTransfer implements Runnable {
                 if (value != null && (!value.isEmpty())) {
                     arg.minimalSize = value.getLong();
                 }
+                value = subHash.get(XML_parallelHosts);
+                if (value != null && (!value.isEmpty())) {
+                    arg.parallelHosts = value.getInteger();
+                }
+                value = subHash.get(XML_bundleCount);
+                if (value != null && (!value.isEmpty())) {
+                    arg.bundleCount = value.getInteger();
+                }
+                value = subHash.get(XML_bundleSize);
+                if (value != null && (!value.isEmpty())) {
+                    arg.bundleSize = value.getLong();
+                }
+                value = subHash.get(XML_bundleDelay);
+                if (value != null && (!value.isEmpty())) {
+                    arg.bundleDelay = value.getLong();
+                }
+                value = subHash.get(XML_bundleDir);
+                if (value != null && (!value.isEmpty())) {
+                    arg.bundleDir = value.getString();
+                }
                 arguments.add(arg);
             }
         }
@@ -989,6 +1624,21 @@ public class SpooledDirectoryTransfer implements Runnable {
                         arg.isparallel = true;
                     } else if (args[i].equalsIgnoreCase("-sequential")) {
                         arg.isparallel = false;
+                    } else if (args[i].equalsIgnoreCase("-parallelHosts")) {
+                        i++;
+                        arg.parallelHosts = Integer.parseInt(args[i]);
+                    } else if (args[i].equalsIgnoreCase("-bundleCount")) {
+                        i++;
+                        arg.bundleCount = Integer.parseInt(args[i]);
+                    } else if (args[i].equalsIgnoreCase("-bundleSize")) {
+                        i++;
+                        arg.bundleSize = Long.parseLong(args[i]);
+                    } else if (args[i].equalsIgnoreCase("-bundleDelay")) {
+                        i++;
+                        arg.bundleDelay = Long.parseLong(args[i]);
+                    } else if (args[i].equalsIgnoreCase("-bundleDir")) {
+                        i++;
+                        arg.bundleDir = args[i];
                     }
                 }
             } catch (NumberFormatException e) {
@@ -1064,7 +1714,7 @@ public class SpooledDirectoryTransfer implements Runnable {
                                 arg.rule, arg.fileInfo, arg.ismd5, arg.rhosts, arg.block, arg.regex, arg.elapsed,
                                 arg.tosubmit, arg.noLog, arg.recursive,
                                 arg.elapsedWaarp, arg.isparallel, arg.limitParallel, arg.waarphosts, arg.minimalSize,
-                                arg.logWarn,
+                                arg.logWarn, arg.parallelHosts, arg.bundleCount, arg.bundleSize, arg.bundleDelay, arg.bundleDir,
                                 networkTransactionStatic);
                 executorService.submit(spooled);
                 list.add(spooled);
@@ -1112,6 +1762,13 @@ public class SpooledDirectoryTransfer implements Runnable {
         this.sent = sent;
     }
 
+    /**
+     * @param nb the number of files sent to add
+     */
+    private synchronized void addSent(long nb) {
+        this.sent += nb;
+    }
+
     /**
      * @return the error
      */
@@ -1126,4 +1783,11 @@ public class SpooledDirectoryTransfer implements Runnable {
         this.error = error;
     }
 
+    /**
+     * @param nb the number of files in error to add
+     */
+    private synchronized void addError(long nb) {
+        this.error += nb;
+    }
+
 }
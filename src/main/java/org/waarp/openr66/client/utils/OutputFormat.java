@@ -59,19 +59,32 @@ public class OutputFormat extends JsonHandler {
      * @param args
      */
     public static void getParams(String[] args) {
+        defaultOutput = getFormat(args, defaultOutput);
+    }
+
+    /**
+     * Helper to get the output format desired for one command, without changing the default one
+     * 
+     * @param args
+     * @param format
+     *            the format to use if none is specified in args
+     * @return the output format
+     */
+    public static OUTPUTFORMAT getFormat(String[] args, OUTPUTFORMAT format) {
         for (int i = 1; i < args.length; i++) {
             if (args[i].equalsIgnoreCase("-quiet")) {
-                defaultOutput = OUTPUTFORMAT.QUIET;
+                format = OUTPUTFORMAT.QUIET;
             } else if (args[i].equalsIgnoreCase("-xml")) {
-                defaultOutput = OUTPUTFORMAT.XML;
+                format = OUTPUTFORMAT.XML;
             } else if (args[i].equalsIgnoreCase("-csv")) {
-                defaultOutput = OUTPUTFORMAT.CSV;
+                format = OUTPUTFORMAT.CSV;
             } else if (args[i].equalsIgnoreCase("-json")) {
-                defaultOutput = OUTPUTFORMAT.JSON;
+                format = OUTPUTFORMAT.JSON;
             } else if (args[i].equalsIgnoreCase("-property")) {
-                defaultOutput = OUTPUTFORMAT.PROPERTY;
+                format = OUTPUTFORMAT.PROPERTY;
             }
         }
+        return format;
     }
 
     private OUTPUTFORMAT format = defaultOutput;
@@ -212,6 +225,18 @@ public class OutputFormat extends JsonHandler {
         }
     }
 
+    /**
+     * Helper for remote sysOut
+     * 
+     * @return the String that sysout would print (empty if quiet)
+     */
+    public String sysoutString() {
+        if (format == OUTPUTFORMAT.QUIET) {
+            return "";
+        }
+        return getContext() + '\n' + this.toString(format) + '\n';
+    }
+
     private String getContext() {
         return "[" + getValue(node, FIELDS.command, "") + "] " + getValue(node, FIELDS.statusTxt, "");
     }
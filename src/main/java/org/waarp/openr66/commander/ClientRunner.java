@@ -39,6 +39,7 @@ import org.waarp.openr66.database.data.DbTaskRunner;
 import org.waarp.openr66.database.data.DbTaskRunner.TASKSTEP;
 import org.waarp.openr66.protocol.configuration.Configuration;
 import org.waarp.openr66.protocol.configuration.Messages;
+import org.waarp.openr66.protocol.configuration.PartnerConfiguration;
 import org.waarp.openr66.protocol.exception.OpenR66ProtocolNoConnectionException;
 import org.waarp.openr66.protocol.exception.OpenR66ProtocolNotYetConnectionException;
 import org.waarp.openr66.protocol.exception.OpenR66ProtocolPacketException;
@@ -549,6 +550,19 @@ public class ClientRunner extends Thread {
                     "Requester is not Sender so new rank is " +
                             taskRunner.getRank() + " {}", taskRunner);
         }
+        // Adapt the block size to the link with this partner, unless a specific one was asked
+        int maxBlockSize = Configuration.configuration.getMaxBlockSize();
+        if (maxBlockSize > Configuration.configuration.getBLOCKSIZE()
+                && taskRunner.getBlocksize() == Configuration.configuration.getBLOCKSIZE()) {
+            PartnerConfiguration.LinkStatistics statistics =
+                    PartnerConfiguration.getLinkStatistics(taskRunner.getRequested());
+            int blocksize = statistics.getAdaptiveBlockSize(
+                    Configuration.configuration.getBLOCKSIZE(), maxBlockSize);
+            if (blocksize != taskRunner.getBlocksize()) {
+                logger.debug("Adaptive blocksize " + blocksize + " for " + statistics);
+                taskRunner.setBlocksize(blocksize);
+            }
+        }
         RequestPacket request = taskRunner.getRequest();
         request.setLimit(localChannelReference.getChannelLimit(
                     taskRunner.isSender()));
@@ -90,8 +90,8 @@ public class Commander implements CommanderInterface {
             } else {
                 preparedStatementLock = null;
             }
-            // Clean tasks (CompleteOK and ALLDONE => DONE)
-            DbTaskRunner.changeFinishedToDone();
+            // Clean tasks (CompleteOK and ALLDONE => DONE) without delaying the startup
+            DbTaskRunner.changeFinishedToDoneAsync();
             internalRunner = runner;
         } finally {
             if (internalRunner == null) {
@@ -275,6 +275,14 @@ public class FileBasedConfiguration {
      * Monitoring: snmp configuration file (if empty, no snmp support)
      */
     private static final String XML_MONITOR_SNMP_CONFIG = "snmpconfig";
+    /**
+     * Monitoring: maximum number of snmp notifications waiting to be sent
+     */
+    private static final String XML_MONITOR_SNMP_QUEUESIZE = "snmpqueuesize";
+    /**
+     * Monitoring: maximum number of snmp notifications sent per second (0 for no limit)
+     */
+    private static final String XML_MONITOR_SNMP_MAXPERSECOND = "snmpmaxpersecond";
     /**
      * In case of multiple OpenR66 Monitors behing a loadbalancer (ha config)
      */
@@ -346,6 +354,11 @@ public class FileBasedConfiguration {
      */
     private static final String XML_LEXECADDR = "lexecaddr";
 
+    /**
+     * Max number of connections kept open to Waarp Local Exec (0 means one connection per command)
+     */
+    private static final String XML_LEXECPOOL = "lexecpool";
+
     /**
      * Port of Waarp Local Exec for ExecTask and ExecMoveTask
      */
@@ -460,6 +473,72 @@ public class FileBasedConfiguration {
      */
     private static final String XML_GLOBALDIGEST = "globaldigest";
 
+    /**
+     * Max size in bytes of a REST request body
+     */
+    private static final String XML_REST_MAX_BODY = "restmaxbody";
+
+    /**
+     * Max size in bytes of a REST request body for bulk operations
+     */
+    private static final String XML_REST_MAX_BULK_BODY = "restmaxbulkbody";
+    /**
+     * Number of disk writer threads per target directory (0 means writes done by the local handler)
+     */
+    private static final String XML_DISK_WRITE_THREADS = "diskwritethreads";
+    /**
+     * Max number of bytes waiting to be written per target directory before pausing network reads
+     */
+    private static final String XML_DISK_WRITE_QUEUE = "diskwritequeue";
+    /**
+     * Number of threads running the rule tasks (0 means tasks run by the transfer thread)
+     */
+    private static final String XML_TASK_THREADS = "taskthreads";
+    /**
+     * Max number of tasks running concurrently per TaskType, as "EXEC:4,ZIP:2"
+     */
+    private static final String XML_TASK_TYPE_LIMITS = "tasktypelimits";
+    /**
+     * Max number of tasks running concurrently per rule
+     */
+    private static final String XML_TASK_RULE_LIMIT = "taskrulelimit";
+    /**
+     * Max time in ms for a task to wait for its turn
+     */
+    private static final String XML_TASK_QUEUE_TIMEOUT = "taskqueuetimeout";
+    /**
+     * Max number of file digests kept in cache (0 to disable the cache)
+     */
+    private static final String XML_DIGEST_CACHE = "digestcache";
+    /**
+     * Resume SSL sessions per partner when reconnecting
+     */
+    private static final String XML_SSL_RESUMPTION = "sslresumption";
+    /**
+     * Max number of parallel connections to one partner
+     */
+    private static final String XML_CONNECTIONS_PER_PARTNER = "connectionsperpartner";
+    /**
+     * Run the network handler on the event loop of its channel
+     */
+    private static final String XML_HANDLER_INLINE = "handlerinline";
+    /**
+     * Send files without copy when possible
+     */
+    private static final String XML_ZERO_COPY = "zerocopy";
+    /**
+     * Maximum number of pooled database connections for the DAOs
+     */
+    private static final String XML_DB_POOL_SIZE = "dbpoolsize";
+    /**
+     * Record a trace of the phases of each transfer
+     */
+    private static final String XML_TRACE_TRANSFERS = "tracetransfers";
+    /**
+     * Maximum block size when adapting the block size to each partner
+     */
+    private static final String XML_MAX_BLOCKSIZE = "maxblocksize";
+
     /**
      * SERVER REST interface SHA address usage (and not all available IPs)
      */
@@ -532,6 +611,7 @@ public class FileBasedConfiguration {
             new XmlDecl(XmlType.BOOLEAN, XML_USELOCALEXEC),
             new XmlDecl(XmlType.STRING, XML_LEXECADDR),
             new XmlDecl(XmlType.INTEGER, XML_LEXECPORT),
+            new XmlDecl(XmlType.INTEGER, XML_LEXECPOOL),
             new XmlDecl(XmlType.BOOLEAN, XML_CHECK_ADDRESS),
             new XmlDecl(XmlType.BOOLEAN, XML_CHECK_CLIENTADDRESS),
             new XmlDecl(XmlType.STRING, XML_SERVER_ADMIN),
@@ -545,6 +625,8 @@ public class FileBasedConfiguration {
             new XmlDecl(XmlType.LONG, XML_MONITOR_PASTLIMIT),
             new XmlDecl(XmlType.LONG, XML_MONITOR_MINIMALDELAY),
             new XmlDecl(XmlType.STRING, XML_MONITOR_SNMP_CONFIG),
+            new XmlDecl(XmlType.INTEGER, XML_MONITOR_SNMP_QUEUESIZE),
+            new XmlDecl(XmlType.INTEGER, XML_MONITOR_SNMP_MAXPERSECOND),
             new XmlDecl(XmlType.INTEGER, XML_MULTIPLE_MONITORS),
             new XmlDecl(XmlType.STRING, XML_BUSINESS_FACTORY)
     };
@@ -621,7 +703,23 @@ public class FileBasedConfiguration {
             new XmlDecl(XmlType.INTEGER, XML_BLOCKSIZE),
             new XmlDecl(XmlType.INTEGER, XML_USETHRIFT),
             new XmlDecl(XmlType.BOOLEAN, XML_CHECKVERSION),
-            new XmlDecl(XmlType.BOOLEAN, XML_GLOBALDIGEST)
+            new XmlDecl(XmlType.BOOLEAN, XML_GLOBALDIGEST),
+            new XmlDecl(XmlType.INTEGER, XML_REST_MAX_BODY),
+            new XmlDecl(XmlType.INTEGER, XML_REST_MAX_BULK_BODY),
+            new XmlDecl(XmlType.INTEGER, XML_DISK_WRITE_THREADS),
+            new XmlDecl(XmlType.LONG, XML_DISK_WRITE_QUEUE),
+            new XmlDecl(XmlType.INTEGER, XML_TASK_THREADS),
+            new XmlDecl(XmlType.STRING, XML_TASK_TYPE_LIMITS),
+            new XmlDecl(XmlType.INTEGER, XML_TASK_RULE_LIMIT),
+            new XmlDecl(XmlType.LONG, XML_TASK_QUEUE_TIMEOUT),
+            new XmlDecl(XmlType.INTEGER, XML_DIGEST_CACHE),
+            new XmlDecl(XmlType.BOOLEAN, XML_SSL_RESUMPTION),
+            new XmlDecl(XmlType.INTEGER, XML_CONNECTIONS_PER_PARTNER),
+            new XmlDecl(XmlType.BOOLEAN, XML_HANDLER_INLINE),
+            new XmlDecl(XmlType.BOOLEAN, XML_ZERO_COPY),
+            new XmlDecl(XmlType.INTEGER, XML_DB_POOL_SIZE),
+            new XmlDecl(XmlType.BOOLEAN, XML_TRACE_TRANSFERS),
+            new XmlDecl(XmlType.INTEGER, XML_MAX_BLOCKSIZE)
     };
     /**
      * Structure of the Configuration file
@@ -881,6 +979,10 @@ public class FileBasedConfiguration {
                         port = 9999;
                     }
                     LocalExecClient.address = new InetSocketAddress(addr, port);
+                    value = hashConfig.get(XML_LEXECPOOL);
+                    if (value != null && (!value.isEmpty()) && value.getInteger() > 0) {
+                        LocalExecClient.poolSize = value.getInteger();
+                    }
                 }
             }
             value = hashConfig.get(XML_CHECK_ADDRESS);
@@ -1039,6 +1141,20 @@ public class FileBasedConfiguration {
                     config.setSnmpConfig(null);
                 }
             }
+            value = hashConfig.get(XML_MONITOR_SNMP_QUEUESIZE);
+            if (value != null && (!value.isEmpty())) {
+                int size = value.getInteger();
+                if (size > 0) {
+                    config.setSnmpQueueSize(size);
+                }
+            }
+            value = hashConfig.get(XML_MONITOR_SNMP_MAXPERSECOND);
+            if (value != null && (!value.isEmpty())) {
+                int rate = value.getInteger();
+                if (rate >= 0) {
+                    config.setSnmpMaxPerSecond(rate);
+                }
+            }
             value = hashConfig.get(XML_MULTIPLE_MONITORS);
             if (value != null && (!value.isEmpty())) {
                 config.setMultipleMonitors(value.getInteger());
@@ -1411,6 +1527,70 @@ public class FileBasedConfiguration {
             if (value != null && (!value.isEmpty())) {
                 config.setGlobalDigest(value.getBoolean());
             }
+            value = hashConfig.get(XML_REST_MAX_BODY);
+            if (value != null && (!value.isEmpty()) && value.getInteger() > 0) {
+                config.setRestMaxBodySize(value.getInteger());
+            }
+            value = hashConfig.get(XML_REST_MAX_BULK_BODY);
+            if (value != null && (!value.isEmpty()) && value.getInteger() > 0) {
+                config.setRestMaxBulkBodySize(value.getInteger());
+            }
+            value = hashConfig.get(XML_DISK_WRITE_THREADS);
+            if (value != null && (!value.isEmpty()) && value.getInteger() >= 0) {
+                config.setDiskWriteThreads(value.getInteger());
+            }
+            value = hashConfig.get(XML_DISK_WRITE_QUEUE);
+            if (value != null && (!value.isEmpty()) && value.getLong() > 0) {
+                config.setDiskWriteQueueSize(value.getLong());
+            }
+            value = hashConfig.get(XML_TASK_THREADS);
+            if (value != null && (!value.isEmpty()) && value.getInteger() >= 0) {
+                config.setTaskThreads(value.getInteger());
+            }
+            value = hashConfig.get(XML_TASK_TYPE_LIMITS);
+            if (value != null && (!value.isEmpty())) {
+                config.setTaskTypeLimits(value.getString());
+            }
+            value = hashConfig.get(XML_TASK_RULE_LIMIT);
+            if (value != null && (!value.isEmpty()) && value.getInteger() >= 0) {
+                config.setTaskRuleLimit(value.getInteger());
+            }
+            value = hashConfig.get(XML_TASK_QUEUE_TIMEOUT);
+            if (value != null && (!value.isEmpty()) && value.getLong() >= 0) {
+                config.setTaskQueueTimeout(value.getLong());
+            }
+            value = hashConfig.get(XML_DIGEST_CACHE);
+            if (value != null && (!value.isEmpty()) && value.getInteger() >= 0) {
+                config.setFileDigestCacheSize(value.getInteger());
+            }
+            value = hashConfig.get(XML_SSL_RESUMPTION);
+            if (value != null && (!value.isEmpty())) {
+                config.setSslSessionResumption(value.getBoolean());
+            }
+            value = hashConfig.get(XML_CONNECTIONS_PER_PARTNER);
+            if (value != null && (!value.isEmpty()) && value.getInteger() > 0) {
+                config.setConnectionsPerPartner(value.getInteger());
+            }
+            value = hashConfig.get(XML_HANDLER_INLINE);
+            if (value != null && (!value.isEmpty())) {
+                config.setHandlerInline(value.getBoolean());
+            }
+            value = hashConfig.get(XML_ZERO_COPY);
+            if (value != null && (!value.isEmpty())) {
+                config.setZeroCopy(value.getBoolean());
+            }
+            value = hashConfig.get(XML_DB_POOL_SIZE);
+            if (value != null && (!value.isEmpty()) && value.getInteger() > 0) {
+                config.setDbPoolSize(value.getInteger());
+            }
+            value = hashConfig.get(XML_TRACE_TRANSFERS);
+            if (value != null && (!value.isEmpty())) {
+                config.setTraceEnabled(value.getBoolean());
+            }
+            value = hashConfig.get(XML_MAX_BLOCKSIZE);
+            if (value != null && (!value.isEmpty()) && value.getInteger() > 0) {
+                config.setMaxBlockSize(value.getInteger());
+            }
             alreadySetLimit = true;
             return true;
         } finally {
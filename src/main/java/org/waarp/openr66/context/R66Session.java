@@ -35,6 +35,7 @@ import org.waarp.openr66.context.authentication.R66Auth;
 import org.waarp.openr66.context.filesystem.R66Dir;
 import org.waarp.openr66.context.filesystem.R66File;
 import org.waarp.openr66.context.filesystem.R66Restart;
+import org.waarp.openr66.context.filesystem.R66WriteStage;
 import org.waarp.openr66.context.task.exception.OpenR66RunnerErrorException;
 import org.waarp.openr66.database.data.DbTaskRunner;
 import org.waarp.openr66.database.data.DbTaskRunner.TASKSTEP;
@@ -85,6 +86,10 @@ public class R66Session implements SessionInterface {
      * Current file
      */
     private R66File file;
+    /**
+     * Writer of the received blocks when the disk write stage is enabled
+     */
+    private volatile R66WriteStage.SessionWriter sessionWriter;
     /**
      * Does this session is Ready to serve a request
      */
@@ -168,6 +173,9 @@ public class R66Session implements SessionInterface {
             logger.warn("Should not changed of State: {} {}", this, e.getMessage());
             state.setDryCurrent(desiredstate);
         }
+        if (localChannelReference != null && localChannelReference.getTrace() != null) {
+            localChannelReference.getTrace().newState(desiredstate.name());
+        }
     }
 
     public void setErrorState() {
@@ -653,6 +661,22 @@ public class R66Session implements SessionInterface {
      * @throws OpenR66RunnerErrorException
      */
     public void startup(boolean checkNotExternal) throws OpenR66RunnerErrorException {
+        boolean preTask = startupBeforePreTask(checkNotExternal);
+        if (preTask) {
+            this.runner.run();
+        }
+        startupAfterPreTask(preTask);
+    }
+
+    /**
+     * First part of startup(boolean), up to the PreTask
+     *
+     * @param checkNotExternal
+     *            if True, the file as Sender should not be external to current directory
+     * @return True if the PreTask is to be run by the runner before calling startupAfterPreTask(true)
+     * @throws OpenR66RunnerErrorException
+     */
+    public boolean startupBeforePreTask(boolean checkNotExternal) throws OpenR66RunnerErrorException {
         if (runner.getRank() > 0) {
             logger.debug("restart at " + runner.getRank() + " {}", runner);
             logger.debug("restart at " + runner.getRank() + " {}", dir);
@@ -681,7 +705,23 @@ public class R66Session implements SessionInterface {
             }
             this.runner.setPreTask();
             runner.saveStatus();
-            this.runner.run();
+            return true;
+        }
+        runner.reset();
+        runner.changeUpdatedInfo(UpdatedInfo.RUNNING);
+        runner.saveStatus();
+        return false;
+    }
+
+    /**
+     * Last part of startup(boolean), once the PreTask is done, preparing the file
+     *
+     * @param preTask
+     *            True if the PreTask was run
+     * @throws OpenR66RunnerErrorException
+     */
+    public void startupAfterPreTask(boolean preTask) throws OpenR66RunnerErrorException {
+        if (preTask) {
             if (runner.isSender() && !runner.isSendThrough()) {
                 if (file != null) {
                     try {
@@ -696,10 +736,6 @@ public class R66Session implements SessionInterface {
             }
             runner.saveStatus();
             runner.setTransferTask(runner.getRank());
-        } else {
-            runner.reset();
-            runner.changeUpdatedInfo(UpdatedInfo.RUNNING);
-            runner.saveStatus();
         }
         // Now create the associated file
         try {
@@ -838,6 +874,14 @@ public class R66Session implements SessionInterface {
     public void setFinalizeTransfer(boolean status, R66Result finalValue)
             throws OpenR66RunnerErrorException, OpenR66ProtocolSystemException {
         logger.debug(status + ":" + finalValue + ":" + runner);
+        R66WriteStage.SessionWriter writer = sessionWriter;
+        if (writer != null) {
+            // on success, EndTransfer already waited (off the event loop) for all writes
+            if (!status) {
+                writer.abort();
+            }
+            writer.awaitCompletion();
+        }
         if (runner == null) {
             if (localChannelReference != null) {
                 if (status) {
@@ -992,6 +1036,48 @@ public class R66Session implements SessionInterface {
         return file;
     }
 
+    /**
+     * @return the writer of the received blocks, or null if the disk write stage is not enabled
+     */
+    public R66WriteStage.SessionWriter getSessionWriter() {
+        if (sessionWriter == null && file != null) {
+            R66WriteStage writeStage = Configuration.configuration.getWriteStage();
+            if (writeStage != null) {
+                sessionWriter = writeStage.newSessionWriter(this,
+                        localChannelReference != null ? localChannelReference.getNetworkChannel() : null);
+            }
+        }
+        return sessionWriter;
+    }
+
+    /**
+     * Wait for all received blocks to be written on disk (if the disk write stage is enabled)
+     * 
+     * @return the first write error, or null if none
+     */
+    public Exception waitPendingWrites() {
+        R66WriteStage.SessionWriter writer = sessionWriter;
+        if (writer != null) {
+            return writer.awaitCompletion();
+        }
+        return null;
+    }
+
+    /**
+     * 
+     * @param rank
+     *            the rank of the next expected block
+     * @return the rank effectively written on disk, lower than the given one while the disk write
+     *         stage has pending blocks
+     */
+    public int getWrittenRank(int rank) {
+        R66WriteStage.SessionWriter writer = sessionWriter;
+        if (writer != null) {
+            return writer.getWrittenRank(rank);
+        }
+        return rank;
+    }
+
     /**
      *
      * @return True if the number of Error is still acceptable
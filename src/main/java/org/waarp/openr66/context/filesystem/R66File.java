@@ -27,7 +27,9 @@ import java.nio.channels.FileChannel;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.handler.ssl.SslHandler;
 
 import org.waarp.common.command.exception.CommandAbstractException;
 import org.waarp.common.digest.FilesystemBasedDigest;
@@ -39,6 +41,7 @@ import org.waarp.common.file.filesystembased.FilesystemBasedFileImpl;
 import org.waarp.common.logging.WaarpLogger;
 import org.waarp.common.logging.WaarpLoggerFactory;
 import org.waarp.openr66.context.ErrorCode;
+import org.waarp.openr66.context.R66FiniteDualStates;
 import org.waarp.openr66.context.R66Result;
 import org.waarp.openr66.context.R66Session;
 import org.waarp.openr66.context.task.exception.OpenR66RunnerErrorException;
@@ -48,6 +51,8 @@ import org.waarp.openr66.protocol.exception.OpenR66ProtocolPacketException;
 import org.waarp.openr66.protocol.exception.OpenR66ProtocolSystemException;
 import org.waarp.openr66.protocol.localhandler.LocalChannelReference;
 import org.waarp.openr66.protocol.localhandler.RetrieveRunner;
+import org.waarp.openr66.protocol.localhandler.packet.RequestPacket;
+import org.waarp.openr66.protocol.networkhandler.packet.DataFileRegion;
 import org.waarp.openr66.protocol.utils.ChannelUtils;
 import org.waarp.openr66.protocol.utils.FileUtils;
 
@@ -112,6 +117,17 @@ public class R66File extends FilesystemBasedFileImpl {
             if (!isReady) {
                 return;
             }
+            if (isZeroCopyPossible(localChannelReference)) {
+                if (Configuration.configuration.isGlobalDigest()) {
+                    try {
+                        digest = new FilesystemBasedDigest(Configuration.configuration.getDigest());
+                    } catch (NoSuchAlgorithmException e2) {
+                        // ignore
+                    }
+                }
+                retrieveDone = retrieveZeroCopy(running, localChannelReference, digest);
+                return;
+            }
             DataBlock block = null;
             try {
                 block = readDataBlock();
@@ -239,6 +255,106 @@ public class R66File extends FilesystemBasedFileImpl {
         }
     }
 
+    /**
+     * 
+     * @param localChannelReference
+     * @return True if the file can be sent without copy: no SSL, no MD5 per block, no bandwidth
+     *         limitation and no global digest on a restarted transfer
+     */
+    private boolean isZeroCopyPossible(LocalChannelReference localChannelReference) {
+        if (!Configuration.configuration.isZeroCopy() || Configuration.configuration.isAnyBandwidthLimitation()) {
+            return false;
+        }
+        if (RequestPacket.isMD5Mode(getSession().getRunner().getMode())) {
+            return false;
+        }
+        if (Configuration.configuration.isGlobalDigest() && getPosition() > 0) {
+            return false;
+        }
+        Channel networkChannel = localChannelReference.getNetworkChannel();
+        if (networkChannel == null || networkChannel.pipeline().get(SslHandler.class) != null) {
+            return false;
+        }
+        File trueFile = getTrueFile();
+        return trueFile != null && trueFile.isFile();
+    }
+
+    /**
+     * Send the file from its current position directly from the FileChannel, one DataFileRegion per
+     * block, keeping the same rank accounting than the DataPacket way
+     * 
+     * @param running
+     *            When false, should stop the runner
+     * @param localChannelReference
+     * @param digest
+     *            the global digest to compute from the bytes sent (may be null)
+     * @return True if all blocks were sent
+     * @throws OpenR66ProtocolPacketException
+     * @throws OpenR66ProtocolSystemException
+     */
+    private boolean retrieveZeroCopy(AtomicBoolean running, LocalChannelReference localChannelReference,
+            FilesystemBasedDigest digest) throws OpenR66ProtocolPacketException, OpenR66ProtocolSystemException {
+        DbTaskRunner runner = getSession().getRunner();
+        int blockSize = getSession().getBlockSize();
+        Channel networkChannel = localChannelReference.getNetworkChannel();
+        FileInputStream inputStream = null;
+        ChannelFuture future = null;
+        try {
+            inputStream = new FileInputStream(getTrueFile());
+            FileChannel fileChannel = inputStream.getChannel();
+            long position = getPosition();
+            long size = fileChannel.size();
+            logger.debug("Zero copy retrieve from {} to {}", position, size);
+            while (position < size) {
+                if (!running.get()) {
+                    return false;
+                }
+                int length = (int) Math.min(blockSize, size - position);
+                if (runner.getRank() % 100 == 1
+                        || localChannelReference.getSessionState() != R66FiniteDualStates.DATAS) {
+                    localChannelReference.sessionNewState(R66FiniteDualStates.DATAS);
+                }
+                DataFileRegion region = new DataFileRegion(localChannelReference.getLocalId(),
+                        localChannelReference.getRemoteId(), runner.getRank(), fileChannel, position, length,
+                        digest);
+                ChannelFuture next = networkChannel.writeAndFlush(region);
+                runner.incrementRank();
+                position += length;
+                // Keep one block in advance as the DataPacket way
+                if (future != null) {
+                    try {
+                        future.await();
+                    } catch (InterruptedException e) {
+                    }
+                    if (!future.isSuccess()) {
+                        return false;
+                    }
+                }
+                future = next;
+            }
+            if (future != null) {
+                try {
+                    future.await();
+                } catch (InterruptedException e) {
+                }
+                return future.isSuccess();
+            }
+            return true;
+        } catch (IOException e) {
+            throw new OpenR66ProtocolSystemException("Cannot send file " + getTrueFile(), e);
+        } finally {
+            if (future != null && !future.isDone()) {
+                future.awaitUninterruptibly(Configuration.configuration.getTIMEOUTCON());
+            }
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
     /**
      * This method is a good to have in a true FileInterface implementation.
      * 
@@ -0,0 +1,449 @@
+/**
+ * This file is part of Waarp Project.
+ * 
+ * Copyright 2009, Frederic Bregier, and individual contributors by the @author tags. See the
+ * COPYRIGHT.txt in the distribution for a full listing of individual contributors.
+ * 
+ * All Waarp Project is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * Waarp is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Waarp . If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.waarp.openr66.context.filesystem;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.waarp.common.file.DataBlock;
+import org.waarp.common.logging.WaarpLogger;
+import org.waarp.common.logging.WaarpLoggerFactory;
+import org.waarp.common.utility.WaarpThreadFactory;
+import org.waarp.openr66.context.R66Session;
+
+/**
+ * Dedicated stage writing the received data blocks to disk, out of the local event loops.<br>
+ * <br>
+ * Each target directory has its own writer threads, so that a slow disk only slows down the transfers
+ * writing into it. Those threads stop once idle, and the directories without activity are forgotten, so
+ * that threads and statistics do not grow with the number of directories ever written. Within one session, blocks are written in order, consecutive waiting blocks being
+ * coalesced into one larger write. When the bytes waiting for one directory exceed the high water mark,
+ * the network channels feeding it stop reading (autoRead) until the waiting bytes fall below the low
+ * water mark.<br>
+ * <br>
+ * Since a block is only on disk once written by the stage, the restart rank to save is the one
+ * acknowledged by the writer (getWrittenRank), never the rank of the last received block.
+ */
+public class R66WriteStage {
+    /**
+     * Internal Logger
+     */
+    private static final WaarpLogger logger = WaarpLoggerFactory
+            .getLogger(R66WriteStage.class);
+
+    /**
+     * Maximum size of one coalesced write
+     */
+    private static final int MAX_COALESCED_SIZE = 0x100000;
+    /**
+     * Delay in ms after which an idle writer thread stops
+     */
+    private static final long THREAD_KEEPALIVE = 60000;
+    /**
+     * Delay in ms after which a directory without activity is forgotten
+     */
+    private static final long DIRECTORY_EVICTION = 300000;
+
+    private final int threadsPerDirectory;
+
+    private final long highWaterMark;
+
+    private final long lowWaterMark;
+
+    private final ConcurrentHashMap<String, TargetDirectory> directories =
+            new ConcurrentHashMap<String, TargetDirectory>();
+
+    /**
+     * @param threadsPerDirectory
+     *            number of writer threads per target directory
+     * @param queueSize
+     *            maximum number of bytes waiting to be written in one target directory before
+     *            the network stops reading
+     */
+    public R66WriteStage(int threadsPerDirectory, long queueSize) {
+        this.threadsPerDirectory = threadsPerDirectory;
+        this.highWaterMark = queueSize;
+        this.lowWaterMark = queueSize / 2;
+    }
+
+    /**
+     * 
+     * @param session
+     *            the session receiving the file
+     * @param networkChannel
+     *            the network channel to pause if the target directory is overloaded (may be null)
+     * @return a new writer for the current file of the session
+     */
+    public SessionWriter newSessionWriter(R66Session session, Channel networkChannel) {
+        File parent = session.getFile().getTrueFile().getAbsoluteFile().getParentFile();
+        String path = parent != null ? parent.getPath() : "";
+        evictIdleDirectories();
+        TargetDirectory directory = directories.get(path);
+        if (directory == null) {
+            directory = new TargetDirectory(path);
+            TargetDirectory previous = directories.putIfAbsent(path, directory);
+            if (previous != null) {
+                directory.executor.shutdown();
+                directory = previous;
+            }
+        }
+        directory.lastActivity = System.currentTimeMillis();
+        return new SessionWriter(session, directory, networkChannel);
+    }
+
+    /**
+     * Forget the directories without pending bytes nor activity for a while. A writer still attached to
+     * such a directory keeps working, since its threads are only stopped by their own idle timeout.
+     */
+    private void evictIdleDirectories() {
+        long limit = System.currentTimeMillis() - DIRECTORY_EVICTION;
+        Iterator<TargetDirectory> iterator = directories.values().iterator();
+        while (iterator.hasNext()) {
+            TargetDirectory directory = iterator.next();
+            if (directory.lastActivity < limit && directory.pendingBytes.get() == 0) {
+                iterator.remove();
+                logger.debug("Forget idle directory {}", directory);
+            }
+        }
+    }
+
+    /**
+     * @return the statistics of each target directory
+     */
+    public String getStatistics() {
+        StringBuilder builder = new StringBuilder();
+        for (TargetDirectory directory : directories.values()) {
+            builder.append(directory.toString()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Stop all writer threads
+     */
+    public void shutdown() {
+        for (TargetDirectory directory : directories.values()) {
+            directory.executor.shutdown();
+        }
+        logger.info("Write stage statistics:\n" + getStatistics());
+    }
+
+    /**
+     * One target directory, with its writer threads and statistics
+     */
+    private class TargetDirectory {
+        private final String path;
+        private final ThreadPoolExecutor executor;
+        private final AtomicLong pendingBytes = new AtomicLong();
+        private final ConcurrentHashMap<Channel, Boolean> paused = new ConcurrentHashMap<Channel, Boolean>();
+        private final AtomicLong writes = new AtomicLong();
+        private final AtomicLong blocks = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong queueNanos = new AtomicLong();
+        private final AtomicLong writeNanos = new AtomicLong();
+        private volatile long maxWriteNanos = 0;
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        private TargetDirectory(String path) {
+            this.path = path;
+            this.executor = new ThreadPoolExecutor(threadsPerDirectory, threadsPerDirectory,
+                    THREAD_KEEPALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new WaarpThreadFactory("DiskWriter"));
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+
+        private void addPending(long size, Channel networkChannel) {
+            if (pendingBytes.addAndGet(size) > highWaterMark && networkChannel != null
+                    && networkChannel.config().isAutoRead()) {
+                synchronized (paused) {
+                    logger.debug("Pause reading from {} since too many bytes waiting for {}", networkChannel,
+                            path);
+                    // register the pause first, so that a writer draining from now on will see it
+                    paused.put(networkChannel, Boolean.TRUE);
+                    networkChannel.config().setAutoRead(false);
+                    // the writers could have drained below the low water mark before the registration
+                    if (pendingBytes.get() <= lowWaterMark && paused.remove(networkChannel) != null) {
+                        networkChannel.config().setAutoRead(true);
+                    }
+                }
+            }
+        }
+
+        private void written(int nbBlocks, long size, long waitNanos, long elapsedNanos, boolean success) {
+            writes.incrementAndGet();
+            blocks.addAndGet(nbBlocks);
+            bytes.addAndGet(size);
+            queueNanos.addAndGet(waitNanos);
+            writeNanos.addAndGet(elapsedNanos);
+            if (elapsedNanos > maxWriteNanos) {
+                maxWriteNanos = elapsedNanos;
+            }
+            if (!success) {
+                errors.incrementAndGet();
+            }
+            lastActivity = System.currentTimeMillis();
+            if (pendingBytes.addAndGet(-size) <= lowWaterMark && !paused.isEmpty()) {
+                synchronized (paused) {
+                    for (Channel channel : paused.keySet()) {
+                        if (paused.remove(channel) != null) {
+                            channel.config().setAutoRead(true);
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            long nbWrites = writes.get();
+            long nbBlocks = blocks.get();
+            return path + ": writes=" + nbWrites + " blocks=" + nbBlocks + " bytes=" + bytes.get()
+                    + " errors=" + errors.get() + " pending=" + pendingBytes.get()
+                    + " avgQueueMs=" + (nbBlocks > 0 ? TimeUnit.NANOSECONDS.toMillis(queueNanos.get() / nbBlocks) : 0)
+                    + " avgWriteMs=" + (nbWrites > 0 ? TimeUnit.NANOSECONDS.toMillis(writeNanos.get() / nbWrites) : 0)
+                    + " maxWriteMs=" + TimeUnit.NANOSECONDS.toMillis(maxWriteNanos);
+        }
+    }
+
+    /**
+     * One received data block waiting to be written
+     */
+    private static class Block {
+        private final ByteBuf buffer;
+        private final int rank;
+        private final int size;
+        private final long time;
+
+        private Block(ByteBuf buffer, int rank) {
+            this.buffer = buffer;
+            this.rank = rank;
+            this.size = buffer.readableBytes();
+            this.time = System.nanoTime();
+        }
+    }
+
+    /**
+     * Ordered writer of the data blocks received by one session
+     */
+    public class SessionWriter implements Runnable {
+        private final R66Session session;
+        private final TargetDirectory directory;
+        private final Channel networkChannel;
+        private final ConcurrentLinkedQueue<Block> queue = new ConcurrentLinkedQueue<Block>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final Object lock = new Object();
+        private int pending = 0;
+        /**
+         * Rank of the first block not yet written (all previous ones being on disk)
+         */
+        private int writtenRank = 0;
+        private final List<Runnable> completionTasks = new ArrayList<Runnable>();
+        private volatile Exception error = null;
+
+        private SessionWriter(R66Session session, TargetDirectory directory, Channel networkChannel) {
+            this.session = session;
+            this.directory = directory;
+            this.networkChannel = networkChannel;
+        }
+
+        /**
+         * Add one block to write. The writer takes ownership of the buffer and releases it once written.
+         * 
+         * @param buffer
+         * @param rank
+         *            the rank of this block
+         */
+        public void write(ByteBuf buffer, int rank) {
+            Block block = new Block(buffer, rank);
+            synchronized (lock) {
+                if (pending == 0 && error == null) {
+                    // all previous blocks are on disk
+                    writtenRank = rank;
+                }
+                pending++;
+            }
+            queue.add(block);
+            directory.addPending(block.size, networkChannel);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                directory.executor.execute(this);
+            }
+        }
+
+        public void run() {
+            try {
+                drain();
+            } finally {
+                scheduled.set(false);
+                if (!queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        private void drain() {
+            List<Block> blocks = new ArrayList<Block>();
+            while (!queue.isEmpty()) {
+                blocks.clear();
+                long size = 0;
+                Block block;
+                while ((block = queue.peek()) != null &&
+                        (blocks.isEmpty() || size + block.size <= MAX_COALESCED_SIZE)) {
+                    queue.poll();
+                    blocks.add(block);
+                    size += block.size;
+                }
+                long start = System.nanoTime();
+                long waitNanos = 0;
+                ByteBuf buffer;
+                if (blocks.size() == 1) {
+                    buffer = blocks.get(0).buffer;
+                } else {
+                    ByteBuf[] buffers = new ByteBuf[blocks.size()];
+                    for (int i = 0; i < buffers.length; i++) {
+                        buffers[i] = blocks.get(i).buffer;
+                    }
+                    buffer = Unpooled.wrappedBuffer(buffers);
+                }
+                for (Block waiting : blocks) {
+                    waitNanos += start - waiting.time;
+                }
+                boolean success = false;
+                if (error == null) {
+                    DataBlock dataBlock = new DataBlock();
+                    dataBlock.setBlock(buffer);
+                    try {
+                        session.getFile().writeDataBlock(dataBlock);
+                        success = true;
+                    } catch (Exception e) {
+                        logger.error("Cannot write data block into " + directory.path, e);
+                        error = e;
+                    } finally {
+                        dataBlock.clear();
+                    }
+                }
+                buffer.release();
+                directory.written(blocks.size(), size, waitNanos, System.nanoTime() - start, success);
+                List<Runnable> tasks = null;
+                synchronized (lock) {
+                    pending -= blocks.size();
+                    if (success) {
+                        writtenRank = blocks.get(blocks.size() - 1).rank + 1;
+                    }
+                    if (pending == 0) {
+                        lock.notifyAll();
+                        if (!completionTasks.isEmpty()) {
+                            tasks = new ArrayList<Runnable>(completionTasks);
+                            completionTasks.clear();
+                        }
+                    }
+                }
+                if (tasks != null) {
+                    for (Runnable task : tasks) {
+                        task.run();
+                    }
+                }
+            }
+        }
+
+        /**
+         * 
+         * @param receivedRank
+         *            the rank following the last block given to this writer
+         * @return the rank to save as restart point: the given one if all blocks are written, else the
+         *         rank of the first block not yet (or not successfully) written
+         */
+        public int getWrittenRank(int receivedRank) {
+            synchronized (lock) {
+                if (pending == 0 && error == null) {
+                    return receivedRank;
+                }
+                return Math.min(writtenRank, receivedRank);
+            }
+        }
+
+        /**
+         * Run the task once all blocks received so far are written, immediately if none is waiting.
+         * The task is run by the writer thread otherwise, so it shall not block.
+         * 
+         * @param task
+         */
+        public void whenComplete(Runnable task) {
+            synchronized (lock) {
+                if (pending > 0) {
+                    completionTasks.add(task);
+                    return;
+                }
+            }
+            task.run();
+        }
+
+        /**
+         * Skip the blocks not written yet, the transfer being in error
+         */
+        public void abort() {
+            if (error == null) {
+                error = new IOException("Writes aborted since transfer in error");
+            }
+        }
+
+        /**
+         * @return the first write error, or null if none
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        /**
+         * Wait until all blocks received so far are written
+         * 
+         * @return the first write error, or null if none
+         */
+        public Exception awaitCompletion() {
+            synchronized (lock) {
+                while (pending > 0) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            return error;
+        }
+    }
+}
@@ -22,7 +22,6 @@ import java.io.IOException;
 
 import org.apache.commons.exec.CommandLine;
 
-import org.waarp.common.digest.FilesystemBasedDigest;
 import org.waarp.common.digest.FilesystemBasedDigest.DigestAlgo;
 import org.waarp.common.logging.WaarpLogger;
 import org.waarp.common.logging.WaarpLoggerFactory;
@@ -32,6 +31,7 @@ import org.waarp.openr66.context.R66Result;
 import org.waarp.openr66.context.R66Session;
 import org.waarp.openr66.context.task.exception.OpenR66RunnerErrorException;
 import org.waarp.openr66.protocol.configuration.Configuration;
+import org.waarp.openr66.protocol.utils.FileUtils;
 
 /**
  * Ftp Transfer task: synchronous<br>
@@ -316,8 +316,7 @@ public class FtpTransferTask extends AbstractTask {
                 // now check locally
                 String hash;
                 try {
-                    hash = FilesystemBasedDigest.getHex(
-                            FilesystemBasedDigest.getHash(new File(filepath), false, algo));
+                    hash = FileUtils.computeHash(new File(filepath), algo);
                 } catch (IOException e) {
                     hash = null;
                 }
@@ -0,0 +1,493 @@
+/**
+ * This file is part of Waarp Project.
+ * 
+ * Copyright 2009, Frederic Bregier, and individual contributors by the @author tags. See the
+ * COPYRIGHT.txt in the distribution for a full listing of individual contributors.
+ * 
+ * All Waarp Project is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * Waarp is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Waarp . If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.waarp.openr66.context.task;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.waarp.common.logging.WaarpLogger;
+import org.waarp.common.logging.WaarpLoggerFactory;
+import org.waarp.common.utility.WaarpThreadFactory;
+import org.waarp.openr66.context.task.exception.OpenR66RunnerErrorException;
+import org.waarp.openr66.protocol.utils.R66Future;
+import org.waarp.openr66.protocol.utils.R66FutureListener;
+
+/**
+ * Execution engine for the pre, post and error tasks of the rules.<br>
+ * <br>
+ * Tasks are run by dedicated threads instead of the thread handling the transfer protocol. The number
+ * of tasks running concurrently can be limited per rule and per TaskType (as "EXEC:4,ZIP:2"), a task
+ * waiting more than the queue timeout for its turn being in error. Each limit is a bulkhead whose
+ * waiting tasks are queued without holding any thread, the next one being started when a running task
+ * completes: a saturated rule never holds the task threads needed by the other rules. The rule limit
+ * is taken before the TaskType one, so that tasks waiting for their rule hold no TaskType permit. The
+ * caller is never blocked and the completion is given by the R66Future of the task.
+ */
+public class TaskExecutionEngine {
+    /**
+     * Internal Logger
+     */
+    private static final WaarpLogger logger = WaarpLoggerFactory
+            .getLogger(TaskExecutionEngine.class);
+
+    private static final int WAITING = 0;
+    private static final int STARTED = 1;
+    private static final int EXPIRED = 2;
+
+    private final ExecutorService executor;
+
+    private final ScheduledExecutorService timer;
+
+    private final Map<TaskType, Bulkhead> typeLimits = new HashMap<TaskType, Bulkhead>();
+
+    private final int ruleLimit;
+
+    private final long queueTimeout;
+
+    private final ConcurrentHashMap<String, Bulkhead> ruleBulkheads = new ConcurrentHashMap<String, Bulkhead>();
+
+    private final ConcurrentHashMap<String, TaskStatistics> statistics =
+            new ConcurrentHashMap<String, TaskStatistics>();
+
+    private final TaskStatistics global = new TaskStatistics();
+
+    /**
+     * @param threads
+     *            number of threads running the tasks
+     * @param typeLimits
+     *            limits per TaskType as "TYPE:limit,TYPE:limit" (may be null or empty)
+     * @param ruleLimit
+     *            max number of tasks running concurrently for one rule (0 for no limit)
+     * @param queueTimeout
+     *            max time in ms for a task to wait for its turn (0 for no limit)
+     */
+    public TaskExecutionEngine(int threads, String typeLimits, int ruleLimit, long queueTimeout) {
+        this.executor = Executors.newFixedThreadPool(threads, new WaarpThreadFactory("TaskRunner"));
+        this.timer = queueTimeout > 0 ?
+                Executors.newSingleThreadScheduledExecutor(new WaarpThreadFactory("TaskTimeout")) : null;
+        this.ruleLimit = ruleLimit;
+        this.queueTimeout = queueTimeout;
+        if (typeLimits != null && !typeLimits.trim().isEmpty()) {
+            for (String limit : typeLimits.split(",")) {
+                String[] values = limit.split(":");
+                if (values.length != 2) {
+                    logger.warn("Malformed task type limit: " + limit);
+                    continue;
+                }
+                try {
+                    TaskType type = TaskType.valueOf(values[0].trim().toUpperCase());
+                    int max = Integer.parseInt(values[1].trim());
+                    if (max > 0) {
+                        this.typeLimits.put(type, new Bulkhead(max));
+                    }
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Malformed task type limit: " + limit);
+                }
+            }
+        }
+    }
+
+    private Bulkhead getRuleBulkhead(String ruleId) {
+        if (ruleLimit <= 0 || ruleId == null) {
+            return null;
+        }
+        Bulkhead bulkhead = ruleBulkheads.get(ruleId);
+        if (bulkhead == null) {
+            bulkhead = new Bulkhead(ruleLimit);
+            Bulkhead previous = ruleBulkheads.putIfAbsent(ruleId, bulkhead);
+            if (previous != null) {
+                bulkhead = previous;
+            }
+        }
+        return bulkhead;
+    }
+
+    private TaskStatistics statisticsOf(String ruleId) {
+        String key = ruleId == null ? "" : ruleId;
+        TaskStatistics stats = statistics.get(key);
+        if (stats == null) {
+            stats = new TaskStatistics();
+            TaskStatistics previous = statistics.putIfAbsent(key, stats);
+            if (previous != null) {
+                stats = previous;
+            }
+        }
+        return stats;
+    }
+
+    private static void release(Bulkhead bulkhead) {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Start the task once allowed by the limits of its rule and of its TaskType. The caller is never
+     * blocked: the task waits in the queue of the saturated limit, without holding any thread, and the
+     * completion is given by the R66Future of the task.
+     * 
+     * @param task
+     * @param ruleId
+     *            the rule of the transfer (may be null)
+     */
+    public void execute(final AbstractTask task, final String ruleId) {
+        final TaskRun run = new TaskRun(task, ruleId);
+        if (timer != null) {
+            try {
+                run.timeout = timer.schedule(new Runnable() {
+                    public void run() {
+                        run.expire();
+                    }
+                }, queueTimeout, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                task.getFutureCompletion().setFailure(e);
+                return;
+            }
+        }
+        run.waitRule();
+    }
+
+    /**
+     * Limit of tasks running concurrently, the tasks over the limit waiting in order without any thread
+     */
+    private static class Bulkhead {
+        private final int limit;
+        /**
+         * Guarded by this
+         */
+        private int running = 0;
+        /**
+         * Guarded by this
+         */
+        private final ArrayDeque<TaskRun> waiting = new ArrayDeque<TaskRun>();
+
+        private Bulkhead(int limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * 
+         * @param run
+         * @return True if a permit is given at once, else the run is queued (or abandoned if expired) and
+         *         will be granted by a later release
+         */
+        private boolean acquire(TaskRun run) {
+            synchronized (this) {
+                if (run.state.get() == WAITING) {
+                    if (running < limit) {
+                        running++;
+                        return true;
+                    }
+                    waiting.add(run);
+                    return false;
+                }
+            }
+            run.abandon();
+            return false;
+        }
+
+        /**
+         * Give the permit to the next waiting run if any
+         */
+        private void release() {
+            TaskRun next = null;
+            List<TaskRun> expired = null;
+            synchronized (this) {
+                while ((next = waiting.poll()) != null) {
+                    if (next.state.get() == WAITING) {
+                        break;
+                    }
+                    if (expired == null) {
+                        expired = new ArrayList<TaskRun>();
+                    }
+                    expired.add(next);
+                }
+                if (next == null) {
+                    running--;
+                }
+            }
+            if (expired != null) {
+                for (TaskRun run : expired) {
+                    run.abandon();
+                }
+            }
+            if (next != null) {
+                next.granted(this);
+            }
+        }
+
+        private synchronized boolean remove(TaskRun run) {
+            return waiting.remove(run);
+        }
+
+        private synchronized int getWaiting() {
+            return waiting.size();
+        }
+    }
+
+    /**
+     * One task going through the rule then the TaskType bulkheads before being run
+     */
+    private class TaskRun implements Runnable {
+        private final AbstractTask task;
+        private final String ruleId;
+        private final TaskStatistics stats;
+        private final long start = System.nanoTime();
+        private final Bulkhead ruleBulkhead;
+        private final Bulkhead typeBulkhead;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private final AtomicBoolean ruleHeld = new AtomicBoolean();
+        private volatile ScheduledFuture<?> timeout;
+
+        private TaskRun(AbstractTask task, String ruleId) {
+            this.task = task;
+            this.ruleId = ruleId;
+            this.stats = statisticsOf(ruleId);
+            this.ruleBulkhead = getRuleBulkhead(ruleId);
+            this.typeBulkhead = typeLimits.get(task.getType());
+        }
+
+        private void waitRule() {
+            if (ruleBulkhead == null || ruleBulkhead.acquire(this)) {
+                ruleGranted();
+            }
+        }
+
+        private void granted(Bulkhead bulkhead) {
+            if (bulkhead == ruleBulkhead) {
+                ruleGranted();
+            } else {
+                typeGranted();
+            }
+        }
+
+        private void ruleGranted() {
+            if (ruleBulkhead != null) {
+                ruleHeld.set(true);
+            }
+            if (typeBulkhead == null || typeBulkhead.acquire(this)) {
+                typeGranted();
+            }
+        }
+
+        private void typeGranted() {
+            if (!state.compareAndSet(WAITING, STARTED)) {
+                // expired meanwhile
+                release(typeBulkhead);
+                abandon();
+                return;
+            }
+            ScheduledFuture<?> curTimeout = timeout;
+            if (curTimeout != null) {
+                curTimeout.cancel(false);
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                release(typeBulkhead);
+                abandon();
+                task.getFutureCompletion().setFailure(e);
+            }
+        }
+
+        /**
+         * Release the rule permit if held while not started
+         */
+        private void abandon() {
+            if (ruleHeld.getAndSet(false)) {
+                release(ruleBulkhead);
+            }
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(WAITING, EXPIRED)) {
+                return;
+            }
+            if (typeBulkhead != null) {
+                typeBulkhead.remove(this);
+            }
+            if (ruleBulkhead != null) {
+                ruleBulkhead.remove(this);
+            }
+            abandon();
+            stats.timeouts.incrementAndGet();
+            global.timeouts.incrementAndGet();
+            logger.warn("Task " + task.getType() + " of rule " + ruleId + " not started within "
+                    + queueTimeout + " ms");
+            task.getFutureCompletion().setFailure(new OpenR66RunnerErrorException(
+                    "Task " + task.getType() + " not started in time"));
+        }
+
+        public void run() {
+            final long begin = System.nanoTime();
+            // the permits are kept until the task is done, even if it completes later on
+            task.getFutureCompletion().addListener(new R66FutureListener() {
+                public void operationComplete(R66Future future) {
+                    release(typeBulkhead);
+                    if (ruleHeld.getAndSet(false)) {
+                        release(ruleBulkhead);
+                    }
+                    long elapsed = System.nanoTime() - begin;
+                    stats.record(begin - start, elapsed, future.isSuccess());
+                    global.record(begin - start, elapsed, future.isSuccess());
+                }
+            });
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Task " + task.getType() + " in error", e);
+                task.getFutureCompletion().setFailure(e);
+            }
+        }
+    }
+
+    /**
+     * 
+     * @param ruleId
+     * @return the number of tasks of this rule waiting for the rule limit
+     */
+    public int getRuleWaiting(String ruleId) {
+        Bulkhead bulkhead = ruleId != null ? ruleBulkheads.get(ruleId) : null;
+        return bulkhead != null ? bulkhead.getWaiting() : 0;
+    }
+
+    /**
+     * @return the statistics of all the tasks
+     */
+    public TaskStatistics getGlobalStatistics() {
+        return global;
+    }
+
+    /**
+     * @return the statistics of the tasks per rule
+     */
+    public Map<String, TaskStatistics> getRuleStatistics() {
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    /**
+     * @return the statistics of task queue and run times per rule
+     */
+    public String getStatistics() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, TaskStatistics> entry : statistics.entrySet()) {
+            builder.append(entry.getKey()).append(": ").append(entry.getValue().toString()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Stop the task threads
+     */
+    public void shutdown() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        executor.shutdown();
+        logger.info("Task execution statistics:\n" + getStatistics());
+    }
+
+    /**
+     * Task counters for one rule or for all the tasks
+     */
+    public static class TaskStatistics {
+        private final AtomicLong tasks = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong queueNanos = new AtomicLong();
+        private final AtomicLong runNanos = new AtomicLong();
+        private volatile long maxRunNanos = 0;
+
+        private void record(long queued, long elapsed, boolean success) {
+            tasks.incrementAndGet();
+            if (!success) {
+                errors.incrementAndGet();
+            }
+            queueNanos.addAndGet(queued);
+            runNanos.addAndGet(elapsed);
+            if (elapsed > maxRunNanos) {
+                maxRunNanos = elapsed;
+            }
+        }
+
+        /**
+         * @return the number of tasks done
+         */
+        public long getTasks() {
+            return tasks.get();
+        }
+
+        /**
+         * @return the number of tasks done in error
+         */
+        public long getErrors() {
+            return errors.get();
+        }
+
+        /**
+         * @return the number of tasks not started within the queue timeout
+         */
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+
+        /**
+         * @return the average time in ms a task waited for its turn
+         */
+        public long getAverageQueueMs() {
+            long nb = tasks.get();
+            return nb > 0 ? TimeUnit.NANOSECONDS.toMillis(queueNanos.get() / nb) : 0;
+        }
+
+        /**
+         * @return the average run time in ms of a task
+         */
+        public long getAverageRunMs() {
+            long nb = tasks.get();
+            return nb > 0 ? TimeUnit.NANOSECONDS.toMillis(runNanos.get() / nb) : 0;
+        }
+
+        /**
+         * @return the maximum run time in ms of a task
+         */
+        public long getMaxRunMs() {
+            return TimeUnit.NANOSECONDS.toMillis(maxRunNanos);
+        }
+
+        @Override
+        public String toString() {
+            return "tasks=" + getTasks() + " errors=" + getErrors() + " timeouts=" + getTimeouts()
+                    + " avgQueueMs=" + getAverageQueueMs() + " avgRunMs=" + getAverageRunMs()
+                    + " maxRunMs=" + getMaxRunMs();
+        }
+    }
+}
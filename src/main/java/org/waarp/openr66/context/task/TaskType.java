@@ -33,7 +33,7 @@ import org.waarp.openr66.context.task.exception.OpenR66RunnerErrorException;
 public enum TaskType {
     LOG, MOVE, MOVERENAME, COPY, COPYRENAME, EXEC, EXECMOVE, LINKRENAME, TRANSFER,
     VALIDFILEPATH, DELETE, TAR, ZIP, EXECOUTPUT, RESCHEDULE, EXECJAVA, TRANSCODE, SNMP, FTP,
-    RENAME, RESTART, UNZEROED, CHMOD, CHKFILE;
+    RENAME, RESTART, UNZEROED, CHMOD, CHKFILE, UNBUNDLE;
 
     int type;
 
@@ -134,6 +134,9 @@ public enum TaskType {
             case CHKFILE:
                 return new FileCheckTask(argRule, delay, session.getRunner().
                         getFileInformation(), session);
+            case UNBUNDLE:
+                return new UnbundleTask(argRule, delay, session.getRunner().
+                        getFileInformation(), session);
             default:
                 logger.error("name unknown: " + type.name);
                 throw new OpenR66RunnerErrorException("Unvalid Task: " +
@@ -227,6 +230,7 @@ public enum TaskType {
             case UNZEROED:
             case CHMOD:
             case CHKFILE:
+            case UNBUNDLE:
                 throw new OpenR66RunnerErrorException("Unvalid Task: " +
                         type.name);
             default:
@@ -0,0 +1,123 @@
+/**
+ * This file is part of Waarp Project.
+ * 
+ * Copyright 2009, Frederic Bregier, and individual contributors by the @author tags. See the
+ * COPYRIGHT.txt in the distribution for a full listing of individual contributors.
+ * 
+ * All Waarp Project is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * Waarp is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Waarp . If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.waarp.openr66.context.task;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.waarp.common.logging.WaarpLogger;
+import org.waarp.common.logging.WaarpLoggerFactory;
+import org.waarp.common.utility.WaarpStringUtils;
+import org.waarp.openr66.context.R66Session;
+import org.waarp.openr66.context.task.exception.OpenR66RunnerException;
+import org.waarp.openr66.protocol.exception.OpenR66ProtocolSystemException;
+import org.waarp.openr66.protocol.utils.FileBundle;
+import org.waarp.openr66.protocol.utils.FileBundle.EntryStatus;
+
+/**
+ * This task extracts a bundle of small files, as sent by SpooledDirectoryTransfer in bundle mode,
+ * into the directory given by PATH (after substitution).<br>
+ * <br>
+ * 
+ * Each file is checked against the manifest of the bundle (size and CRC32). The status of each
+ * file is logged and written in a file named "bundlename.status" within the target directory,
+ * one line per file "name TAB size TAB OK|KO [TAB reason]".<br>
+ * The task will be in error if the bundle cannot be read or if at least one file is in error.<br>
+ * <br>
+ * delay = 1 will delete the bundle once all files are correctly extracted.
+ */
+public class UnbundleTask extends AbstractTask {
+    /**
+     * Internal Logger
+     */
+    private static final WaarpLogger logger = WaarpLoggerFactory
+            .getLogger(UnbundleTask.class);
+
+    /**
+     * @param argRule
+     * @param delay
+     * @param argTransfer
+     * @param session
+     */
+    public UnbundleTask(String argRule, int delay, String argTransfer,
+            R66Session session) {
+        super(TaskType.UNBUNDLE, delay, argRule, argTransfer, session);
+    }
+
+    @Override
+    public void run() {
+        logger.info("UNBUNDLE with " + argRule + ":" + argTransfer + ":" + delay + " and {}",
+                session);
+        if (session.getFile() == null) {
+            logger.error("No file so cannot unbundle: " + session.toString());
+            futureCompletion.setFailure(new OpenR66RunnerException("No file so cannot unbundle"));
+            return;
+        }
+        File bundle = session.getFile().getTrueFile();
+        String finalname = getReplacedValue(argRule, argTransfer.split(" ")).trim();
+        File directory = new File(finalname);
+        List<EntryStatus> status;
+        try {
+            status = FileBundle.extractBundle(bundle, directory);
+        } catch (OpenR66ProtocolSystemException e) {
+            logger.error("Unbundle error with " + argRule + ":" + argTransfer + ":" + delay + " and " +
+                    session, e);
+            futureCompletion.setFailure(e);
+            return;
+        }
+        int ko = 0;
+        StringBuilder builder = new StringBuilder();
+        for (EntryStatus entryStatus : status) {
+            if (entryStatus.ok) {
+                logger.info("Unbundled: " + entryStatus);
+            } else {
+                ko++;
+                logger.error("Unbundle in error: " + entryStatus);
+            }
+            builder.append(entryStatus.toString()).append('\n');
+        }
+        File statusFile = new File(directory, bundle.getName() + ".status");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(statusFile);
+            out.write(builder.toString().getBytes(WaarpStringUtils.UTF8));
+        } catch (IOException e) {
+            logger.warn("Cannot write unbundle status " + statusFile, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        if (ko > 0) {
+            futureCompletion.setFailure(new OpenR66ProtocolSystemException("Unbundle error: " + ko
+                    + " file(s) in error out of " + status.size()));
+            return;
+        }
+        logger.info("Unbundle of " + status.size() + " file(s) from " + bundle + " into " + directory);
+        if (delay == 1 && !bundle.delete()) {
+            logger.warn("Cannot delete bundle " + bundle);
+        }
+        futureCompletion.setSuccess();
+    }
+
+}
@@ -23,11 +23,11 @@ package org.waarp.openr66.context.task.javatask;
 import java.io.IOException;
 
 import org.waarp.common.database.exception.WaarpDatabaseException;
-import org.waarp.common.digest.FilesystemBasedDigest;
 import org.waarp.common.digest.FilesystemBasedDigest.DigestAlgo;
 import org.waarp.common.logging.WaarpLogger;
 import org.waarp.common.logging.WaarpLoggerFactory;
 import org.waarp.openr66.context.task.AbstractExecJavaTask;
+import org.waarp.openr66.protocol.utils.FileUtils;
 
 /**
  * Add a digest in the TransferInformation to the current Task.</br>
@@ -83,7 +83,7 @@ public class AddDigestJavaTask extends AbstractExecJavaTask {
         }
         String key;
         try {
-            key = FilesystemBasedDigest.getHex(FilesystemBasedDigest.getHash(this.session.getFile().getTrueFile(), true, digest));
+            key = FileUtils.computeHash(this.session.getFile().getTrueFile(), digest);
         } catch (IOException e1) {
             logger.error("Digest not correctly computed: " + algo, e1);
             this.status = 4;
@@ -18,6 +18,9 @@
 package org.waarp.openr66.context.task.localexec;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
@@ -34,7 +37,11 @@ import org.waarp.common.utility.WaarpNettyUtil;
 import org.waarp.openr66.protocol.configuration.Configuration;
 
 /**
- * Client to execute external command through Waarp Local Exec
+ * Client to execute external command through Waarp Local Exec<br>
+ * <br>
+ * If poolSize is greater than 0, connections are kept open once the command is done and reused by the
+ * next commands, at most poolSize connections being used at the same time. The Local Exec protocol
+ * runs one command at a time on a connection, so there is no multiplexing within one connection.
  * 
  * @author Frederic Bregier
  * 
@@ -51,6 +58,19 @@ public class LocalExecClient {
     static private Bootstrap bootstrapLocalExec;
     // Configure the pipeline factory.
     static private LocalExecClientInitializer localExecClientInitializer;
+    /**
+     * Max number of connections kept to the Local Exec server (0 means one connection per command)
+     */
+    static public int poolSize = 0;
+    /**
+     * Delay in ms after which an idle pooled connection is closed
+     */
+    static public long poolIdleTimeout = 60000;
+    // Idle connections
+    static private final ConcurrentLinkedQueue<PooledChannel> idleChannels =
+            new ConcurrentLinkedQueue<PooledChannel>();
+    // Bound of concurrent connections
+    static private Semaphore poolPermits;
 
     /**
      * Initialize the LocalExec Client context
@@ -63,6 +83,9 @@ public class LocalExecClient {
         // Configure the pipeline factory.
         localExecClientInitializer = new LocalExecClientInitializer();
         bootstrapLocalExec.handler(localExecClientInitializer);
+        if (poolSize > 0) {
+            poolPermits = new Semaphore(poolSize, true);
+        }
     }
 
     /**
@@ -72,13 +95,31 @@ public class LocalExecClient {
         if (bootstrapLocalExec == null) {
             return;
         }
+        PooledChannel pooled;
+        while ((pooled = idleChannels.poll()) != null) {
+            WaarpSslUtility.closingSslChannel(pooled.channel);
+        }
         // Shut down all thread pools to exit.
         bootstrapLocalExec.group().shutdownGracefully();
         localExecClientInitializer.releaseResources();
     }
 
+    /**
+     * Idle connection of the pool
+     */
+    private static class PooledChannel {
+        private final Channel channel;
+        private final long lastUsed;
+
+        private PooledChannel(Channel channel) {
+            this.channel = channel;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
     private Channel channel;
     private LocalExecResult result;
+    private boolean permitAcquired = false;
 
     public LocalExecClient() {
 
@@ -136,6 +177,27 @@ public class LocalExecClient {
      * Connect to the Server
      */
     public boolean connect() {
+        if (poolPermits != null) {
+            try {
+                permitAcquired = poolPermits.tryAcquire(Configuration.configuration.getTIMEOUTCON(),
+                        TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+            }
+            if (!permitAcquired) {
+                logger.error("Client Not Connected since too many Local Exec connections in use");
+                return false;
+            }
+            // Health check of idle connections: still open and not idle for too long
+            PooledChannel pooled;
+            while ((pooled = idleChannels.poll()) != null) {
+                if (pooled.channel.isActive() &&
+                        System.currentTimeMillis() - pooled.lastUsed < poolIdleTimeout) {
+                    channel = pooled.channel;
+                    return true;
+                }
+                WaarpSslUtility.closingSslChannel(pooled.channel);
+            }
+        }
         // Start the connection attempt.
         ChannelFuture future = bootstrapLocalExec.connect(address);
 
@@ -146,6 +208,7 @@ public class LocalExecClient {
         }
         if (!future.isSuccess()) {
             logger.error("Client Not Connected", future.cause());
+            releasePermit();
             return false;
         }
         return true;
@@ -155,6 +218,14 @@ public class LocalExecClient {
      * Disconnect from the server
      */
     public void disconnect() {
+        if (permitAcquired && channel.isActive() && result != null &&
+                (result.getStatus() == 0 || result.getStatus() == 1)) {
+            // Command fully done: keep the connection for the next one
+            idleChannels.add(new PooledChannel(channel));
+            releasePermit();
+            return;
+        }
+        releasePermit();
         // Close the connection. Make sure the close operation ends because
         // all I/O operations are asynchronous in Netty.
         try {
@@ -162,4 +233,11 @@ public class LocalExecClient {
         } catch (InterruptedException e) {
         }
     }
+
+    private void releasePermit() {
+        if (permitAcquired) {
+            permitAcquired = false;
+            poolPermits.release();
+        }
+    }
 }
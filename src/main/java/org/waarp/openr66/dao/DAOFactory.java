@@ -29,6 +29,20 @@ public abstract class DAOFactory {
         return instance;
     }
 
+    /**
+     * Start a unit of work in the current thread: until the matching
+     * endUnitOfWork, all the DAOs created in this thread share the same
+     * connection and its prepared statements. Units of work may be nested.
+     */
+    public void beginUnitOfWork() {
+    }
+
+    /**
+     * End the unit of work of the current thread started by beginUnitOfWork
+     */
+    public void endUnitOfWork() {
+    }
+
     /**
      * Return a BusinessDAO
      *
@@ -71,6 +71,15 @@ public interface TransferDAO {
      */
     void insert(Transfer transfer) throws DAOException;
 
+    /**
+     * Insert all the specified Transfer objects in the persistance layer
+     * at once. Either all the objects are inserted, or none of them are.
+     *
+     * @param transfers List of Transfer objects to insert
+     * @throws DAOException If a data access error occurs
+     */
+    void insert(List<Transfer> transfers) throws DAOException;
+
     /**
      * Update the specified Transfer object in the persistance layer
      *
@@ -94,5 +103,17 @@ public interface TransferDAO {
      */
     void deleteAll() throws DAOException;
 
+    /**
+     * Change the finished transfers (all tasks done with CompleteOk) owned by
+     * the given host to UpdatedInfo DONE, by chunks of at most the given
+     * number of transfers
+     *
+     * @param owner owner of the transfers to change
+     * @param chunk maximum number of transfers changed at once
+     * @return the number of changed transfers
+     * @throws DAOException If a data access error occurs
+     */
+    long updateFinishedToDone(String owner, int chunk) throws DAOException;
+
     void close();
 }
@@ -0,0 +1,466 @@
+package org.waarp.openr66.dao.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.waarp.common.database.ConnectionFactory;
+import org.waarp.common.logging.WaarpLogger;
+import org.waarp.common.logging.WaarpLoggerFactory;
+import org.waarp.openr66.protocol.configuration.Configuration;
+
+/**
+ * Pool of connections on top of the ConnectionFactory, used by the DBDAOFactory.
+ * <p>
+ * Connections are validated when they were idle for too long, detected as
+ * leaked when borrowed for too long, and keep a cache of their prepared
+ * statements: closing a Connection or a PreparedStatement obtained from
+ * this pool gives it back instead of really closing it.
+ */
+public class DBConnectionPool {
+
+    private static final WaarpLogger logger = WaarpLoggerFactory.getLogger(DBConnectionPool.class);
+
+    /** Connections idle for longer than this (ms) are validated before use */
+    private static final long VALIDATION_IDLE = 30000;
+    /** Timeout (s) of the validation */
+    private static final int VALIDATION_TIMEOUT = 2;
+    /** Maximum wait (ms) for a connection when the pool is exhausted */
+    private static final long WAIT_TIMEOUT = 10000;
+    /** Connections borrowed for longer than this (ms) are reported as leaked */
+    private static final long LEAK_THRESHOLD = 300000;
+    /** Maximum number of cached prepared statements per connection */
+    private static final int STATEMENT_CACHE_SIZE = 32;
+
+    private final ConnectionFactory factory;
+    private final long waitTimeout;
+    private final LinkedBlockingDeque<PooledConnection> idle =
+            new LinkedBlockingDeque<PooledConnection>();
+    private final Set<PooledConnection> borrowed =
+            Collections.newSetFromMap(new ConcurrentHashMap<PooledConnection, Boolean>());
+    private final AtomicInteger total = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong invalids = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    public DBConnectionPool(ConnectionFactory factory) {
+        this(factory, WAIT_TIMEOUT);
+    }
+
+    /**
+     * @param factory
+     * @param waitTimeout maximum wait (ms) for a connection when the pool is
+     * exhausted
+     */
+    DBConnectionPool(ConnectionFactory factory, long waitTimeout) {
+        this.factory = factory;
+        this.waitTimeout = waitTimeout;
+    }
+
+    /**
+     * @return the maximum number of connections, read from the configuration
+     * since the database is initialized before the limits are loaded; by
+     * default one per thread which may access the database: the local
+     * workers (3 per client thread) and the task threads
+     */
+    public int getMaxSize() {
+        int size = Configuration.configuration.getDbPoolSize();
+        if (size > 0) {
+            return size;
+        }
+        return 3 * Configuration.configuration.getCLIENT_THREAD() +
+                Configuration.configuration.getTaskThreads();
+    }
+
+    /**
+     * Borrow a connection, to be given back by closing it
+     *
+     * @return a ready to use Connection
+     * @throws SQLException if no connection can be obtained
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        PooledConnection pooled = idle.pollFirst();
+        while (true) {
+            if (pooled == null) {
+                if (total.incrementAndGet() <= getMaxSize()) {
+                    try {
+                        pooled = new PooledConnection(factory.getConnection());
+                    } catch (SQLException e) {
+                        total.decrementAndGet();
+                        throw e;
+                    }
+                    created.incrementAndGet();
+                } else {
+                    total.decrementAndGet();
+                    waits.incrementAndGet();
+                    checkLeaks();
+                    try {
+                        pooled = idle.pollFirst(waitTimeout, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a connection");
+                    }
+                    if (pooled == null) {
+                        timeouts.incrementAndGet();
+                        throw new SQLException("No connection available in pool after " +
+                                waitTimeout + " ms (" + total.get() + " in use)");
+                    }
+                }
+            }
+            if (pooled.validate()) {
+                break;
+            }
+            invalids.incrementAndGet();
+            destroy(pooled);
+            pooled = idle.pollFirst();
+        }
+        pooled.borrowedAt = System.currentTimeMillis();
+        pooled.borrower = Thread.currentThread().getName();
+        borrowed.add(pooled);
+        return pooled.newProxy();
+    }
+
+    private void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        pooled.releaseStatements();
+        if (closed || !pooled.reset()) {
+            destroy(pooled);
+            return;
+        }
+        pooled.lastUsed = System.currentTimeMillis();
+        idle.offerFirst(pooled);
+    }
+
+    private void destroy(PooledConnection pooled) {
+        total.decrementAndGet();
+        pooled.closeReally();
+    }
+
+    /**
+     * Log the connections borrowed for longer than the leak threshold
+     *
+     * @return the number of such connections
+     */
+    public int checkLeaks() {
+        long limit = System.currentTimeMillis() - LEAK_THRESHOLD;
+        int nb = 0;
+        for (PooledConnection pooled : borrowed) {
+            if (pooled.borrowedAt < limit) {
+                nb++;
+                if (!pooled.leakReported) {
+                    pooled.leakReported = true;
+                    leaks.incrementAndGet();
+                    logger.warn("Database connection borrowed by " + pooled.borrower + " since " +
+                            (System.currentTimeMillis() - pooled.borrowedAt) + " ms");
+                }
+            }
+        }
+        return nb;
+    }
+
+    /**
+     * Close all idle connections; borrowed ones are closed when given back
+     */
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    public int getActive() {
+        return borrowed.size();
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    public long getCreated() {
+        return created.get();
+    }
+
+    public long getWaits() {
+        return waits.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getInvalids() {
+        return invalids.get();
+    }
+
+    public long getLeaks() {
+        return leaks.get();
+    }
+
+    public long getStatementHits() {
+        return statementHits.get();
+    }
+
+    public long getStatementMisses() {
+        return statementMisses.get();
+    }
+
+    /**
+     * Wrap a borrowed connection such that closing the wrapper does not
+     * give the connection back: used to share one connection among several
+     * DAOs
+     *
+     * @param connection
+     * @return the non closing wrapper
+     */
+    public static Connection share(final Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new InvocationHandler() {
+                    private boolean isClosed = false;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        String name = method.getName();
+                        if ("close".equals(name)) {
+                            isClosed = true;
+                            return null;
+                        } else if ("isClosed".equals(name)) {
+                            return isClosed || connection.isClosed();
+                        }
+                        if (isClosed) {
+                            throw new SQLException("Connection already closed");
+                        }
+                        return invokeOn(connection, method, args);
+                    }
+                });
+    }
+
+    private static Object invokeOn(Object target, Method method, Object[] args)
+            throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class CachedStatement {
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        private boolean inUse = false;
+        private boolean evicted = false;
+
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args)
+                                throws Throwable {
+                            String name = method.getName();
+                            if ("close".equals(name)) {
+                                release();
+                                return null;
+                            } else if ("isClosed".equals(name)) {
+                                return !inUse;
+                            }
+                            return invokeOn(CachedStatement.this.statement, method, args);
+                        }
+                    });
+        }
+
+        private synchronized void release() {
+            if (!inUse) {
+                return;
+            }
+            inUse = false;
+            if (evicted) {
+                closeReally();
+                return;
+            }
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+            } catch (SQLException e) {
+                evicted = true;
+                closeReally();
+            }
+        }
+
+        private void closeReally() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                logger.debug("Cannot close cached statement", e);
+            }
+        }
+    }
+
+    private class PooledConnection {
+        private final Connection connection;
+        private final boolean autoCommit;
+        private final Map<String, CachedStatement> statements =
+                new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                        if (size() <= STATEMENT_CACHE_SIZE) {
+                            return false;
+                        }
+                        CachedStatement cached = eldest.getValue();
+                        synchronized (cached) {
+                            cached.evicted = true;
+                            if (!cached.inUse) {
+                                cached.closeReally();
+                            }
+                        }
+                        return true;
+                    }
+                };
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile long borrowedAt;
+        private volatile String borrower;
+        private volatile boolean leakReported;
+
+        private PooledConnection(Connection connection) throws SQLException {
+            this.connection = connection;
+            this.autoCommit = connection.getAutoCommit();
+        }
+
+        private boolean validate() {
+            leakReported = false;
+            if (System.currentTimeMillis() - lastUsed < VALIDATION_IDLE) {
+                return true;
+            }
+            try {
+                return connection.isValid(VALIDATION_TIMEOUT);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private synchronized PreparedStatement prepare(String sql) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached != null) {
+                synchronized (cached) {
+                    if (!cached.inUse && !cached.evicted) {
+                        cached.inUse = true;
+                        statementHits.incrementAndGet();
+                        return cached.proxy;
+                    }
+                }
+                // already used by an enclosing request: not cached
+                statementMisses.incrementAndGet();
+                return connection.prepareStatement(sql);
+            }
+            statementMisses.incrementAndGet();
+            cached = new CachedStatement(connection.prepareStatement(sql));
+            cached.inUse = true;
+            statements.put(sql, cached);
+            return cached.proxy;
+        }
+
+        private synchronized void releaseStatements() {
+            for (CachedStatement cached : statements.values()) {
+                cached.release();
+            }
+        }
+
+        /**
+         * Restore the connection as created before giving it back
+         *
+         * @return False if the connection is no more usable
+         */
+        private boolean reset() {
+            try {
+                if (connection.isClosed()) {
+                    return false;
+                }
+                if (connection.getAutoCommit() != autoCommit) {
+                    if (!connection.getAutoCommit()) {
+                        connection.rollback();
+                    }
+                    connection.setAutoCommit(autoCommit);
+                }
+                return true;
+            } catch (SQLException e) {
+                logger.debug("Connection not reusable", e);
+                return false;
+            }
+        }
+
+        private synchronized void closeReally() {
+            List<CachedStatement> list = new ArrayList<CachedStatement>(statements.values());
+            statements.clear();
+            for (CachedStatement cached : list) {
+                cached.closeReally();
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.debug("Cannot close pooled connection", e);
+            }
+        }
+
+        /**
+         * @return a new wrapper for one borrower, giving the connection back
+         * to the pool when closed
+         */
+        private Connection newProxy() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new InvocationHandler() {
+                        private boolean isClosed = false;
+
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args)
+                                throws Throwable {
+                            String name = method.getName();
+                            if ("close".equals(name)) {
+                                if (!isClosed) {
+                                    isClosed = true;
+                                    release(PooledConnection.this);
+                                }
+                                return null;
+                            } else if ("isClosed".equals(name)) {
+                                return isClosed;
+                            }
+                            if (isClosed) {
+                                throw new SQLException("Connection already closed");
+                            }
+                            if ("prepareStatement".equals(name) && args != null &&
+                                    args.length == 1) {
+                                return prepare((String) args[0]);
+                            }
+                            return invokeOn(connection, method, args);
+                        }
+                    });
+        }
+    }
+}
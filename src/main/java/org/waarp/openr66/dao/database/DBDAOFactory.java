@@ -1,5 +1,6 @@
 package org.waarp.openr66.dao.database;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 
 import org.waarp.common.database.ConnectionFactory;
@@ -22,14 +23,79 @@ public class DBDAOFactory extends DAOFactory {
 
     private ConnectionFactory connectionFactory;
 
+    private final DBConnectionPool connectionPool;
+
+    private static final ThreadLocal<UnitOfWork> unitOfWork = new ThreadLocal<UnitOfWork>();
+
+    /**
+     * Connection shared by the DAOs of one thread, borrowed on first use
+     */
+    private static class UnitOfWork {
+        private int depth = 0;
+        private Connection connection = null;
+    }
+
     public DBDAOFactory(ConnectionFactory factory) { 
         this.connectionFactory = factory;
+        this.connectionPool = new DBConnectionPool(factory);
+    }
+
+    /**
+     * @return the pool of connections used by the DAOs
+     */
+    public DBConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    @Override
+    public void beginUnitOfWork() {
+        UnitOfWork current = unitOfWork.get();
+        if (current == null) {
+            current = new UnitOfWork();
+            unitOfWork.set(current);
+        }
+        current.depth++;
+    }
+
+    @Override
+    public void endUnitOfWork() {
+        UnitOfWork current = unitOfWork.get();
+        if (current == null) {
+            return;
+        }
+        if (--current.depth > 0) {
+            return;
+        }
+        unitOfWork.remove();
+        if (current.connection != null) {
+            try {
+                current.connection.close();
+            } catch (SQLException e) {
+                logger.warn("Cannot give back the unit of work connection", e);
+            }
+        }
+    }
+
+    /**
+     * @return the connection of the current unit of work if any, else a new
+     * pooled one
+     * @throws SQLException
+     */
+    private Connection getConnection() throws SQLException {
+        UnitOfWork current = unitOfWork.get();
+        if (current == null) {
+            return connectionPool.getConnection();
+        }
+        if (current.connection == null) {
+            current.connection = connectionPool.getConnection();
+        }
+        return DBConnectionPool.share(current.connection);
     }
 
     @Override
     public DBBusinessDAO getBusinessDAO() throws DAOException {
         try {
-            return new DBBusinessDAO(connectionFactory.getConnection());
+            return new DBBusinessDAO(getConnection());
         } catch (SQLException e) {
             throw new DAOException("data access error", e);
         }
@@ -38,7 +104,7 @@ public class DBDAOFactory extends DAOFactory {
     @Override
     public DBHostDAO getHostDAO() throws DAOException {
         try {
-            return new DBHostDAO(connectionFactory.getConnection());
+            return new DBHostDAO(getConnection());
         } catch (SQLException e) {
             throw new DAOException("data access error", e);
         }
@@ -47,7 +113,7 @@ public class DBDAOFactory extends DAOFactory {
     @Override
     public DBLimitDAO getLimitDAO() throws DAOException {
         try {
-            return new DBLimitDAO(connectionFactory.getConnection());
+            return new DBLimitDAO(getConnection());
         } catch (SQLException e) {
             throw new DAOException("data access error", e);
         }
@@ -56,7 +122,7 @@ public class DBDAOFactory extends DAOFactory {
     @Override
     public DBMultipleMonitorDAO getMultipleMonitorDAO() throws DAOException {
         try {
-            return new DBMultipleMonitorDAO(connectionFactory.getConnection());
+            return new DBMultipleMonitorDAO(getConnection());
         } catch (SQLException e) {
             throw new DAOException("data access error", e);
         }
@@ -65,7 +131,7 @@ public class DBDAOFactory extends DAOFactory {
     @Override
     public DBRuleDAO getRuleDAO() throws DAOException {
         try {
-            return new DBRuleDAO(connectionFactory.getConnection());
+            return new DBRuleDAO(getConnection());
         } catch (SQLException e) {
             throw new DAOException("data access error", e);
         }
@@ -76,15 +142,15 @@ public class DBDAOFactory extends DAOFactory {
         try {
 	     DbProperties prop = connectionFactory.getProperties();
 	     if (prop instanceof H2Properties) {
-                 return new H2TransferDAO(connectionFactory.getConnection());
+                 return new H2TransferDAO(getConnection());
 	     } else if (prop instanceof MariaDBProperties) {
-                 return new MariaDBTransferDAO(connectionFactory.getConnection());
+                 return new MariaDBTransferDAO(getConnection());
 	     } else if (prop instanceof MySQLProperties) {
-                 return new MariaDBTransferDAO(connectionFactory.getConnection());
+                 return new MariaDBTransferDAO(getConnection());
 	     } else if (prop instanceof OracleProperties) {
-                 return new OracleTransferDAO(connectionFactory.getConnection());
+                 return new OracleTransferDAO(getConnection());
 	     } else if (prop instanceof PostgreSQLProperties) {
-                 return new PostgreSQLTransferDAO(connectionFactory.getConnection());
+                 return new PostgreSQLTransferDAO(getConnection());
 	     } else {
 	         throw new DAOException("Unsupported database");
 	     }
@@ -99,6 +165,7 @@ public class DBDAOFactory extends DAOFactory {
      */
     public void close() {
         logger.debug("Closing DAOFactory.");
+        connectionPool.close();
         logger.debug("Closing factory ConnectionFactory.");
         connectionFactory.close();
     }
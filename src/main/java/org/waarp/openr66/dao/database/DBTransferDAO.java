@@ -8,6 +8,8 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.waarp.common.logging.WaarpLogger;
 import org.waarp.common.logging.WaarpLoggerFactory;
@@ -124,6 +126,45 @@ public abstract class DBTransferDAO extends StatementExecutor implements Transfe
             + REQUESTED_FIELD + " = ? AND "
             + ID_FIELD + " = ?";
 
+    /**
+     * Columns of SQL_UPDATE in order, used to build narrow UPDATE requests on changed columns only
+     */
+    protected static final String[] UPDATE_FIELDS = {
+            ID_FIELD,
+            GLOBAL_STEP_FIELD,
+            GLOBAL_LAST_STEP_FIELD,
+            STEP_FIELD,
+            RANK_FIELD,
+            STEP_STATUS_FIELD,
+            RETRIEVE_MODE_FIELD,
+            FILENAME_FIELD,
+            IS_MOVED_FIELD,
+            ID_RULE_FIELD,
+            BLOCK_SIZE_FIELD,
+            ORIGINAL_NAME_FIELD,
+            FILE_INFO_FIELD,
+            TRANSFER_INFO_FIELD,
+            TRANSFER_MODE_FIELD,
+            TRANSFER_START_FIELD,
+            TRANSFER_STOP_FIELD,
+            INFO_STATUS_FIELD,
+            OWNER_REQUEST_FIELD,
+            REQUESTED_FIELD,
+            REQUESTER_FIELD,
+            UPDATED_INFO_FIELD
+    };
+
+    /**
+     * Narrow UPDATE requests by mask of changed columns (bit i for UPDATE_FIELDS[i])
+     */
+    private static final ConcurrentHashMap<Integer, String> narrowUpdateRequests =
+            new ConcurrentHashMap<Integer, String>();
+
+    /**
+     * Maximum number of rows sent to the database within one JDBC batch
+     */
+    protected static final int BATCH_SIZE = 500;
+
     protected Connection connection;
 
     protected String getDeleteRequest() {
@@ -154,6 +195,33 @@ public abstract class DBTransferDAO extends StatementExecutor implements Transfe
         return SQL_UPDATE;
     }
 
+    /**
+     * @param mask
+     *            the changed columns (bit i for UPDATE_FIELDS[i])
+     * @return the UPDATE request on the changed columns only
+     */
+    protected String getUpdateRequest(int mask) {
+        String request = narrowUpdateRequests.get(mask);
+        if (request == null) {
+            StringBuilder builder = new StringBuilder("UPDATE ").append(TABLE).append(" SET ");
+            String prefix = "";
+            for (int i = 0; i < UPDATE_FIELDS.length; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    builder.append(prefix).append(UPDATE_FIELDS[i]).append(" = ?");
+                    prefix = ", ";
+                }
+            }
+            builder.append(" WHERE ")
+                    .append(OWNER_REQUEST_FIELD).append(" = ? AND ")
+                    .append(REQUESTER_FIELD).append(" = ? AND ")
+                    .append(REQUESTED_FIELD).append(" = ? AND ")
+                    .append(ID_FIELD).append(" = ?");
+            request = builder.toString();
+            narrowUpdateRequests.putIfAbsent(mask, request);
+        }
+        return request;
+    }
+
     public DBTransferDAO(Connection con) {
         this.connection = con;
     }
@@ -211,6 +279,65 @@ public abstract class DBTransferDAO extends StatementExecutor implements Transfe
         return transfers;
     }
 
+    /**
+     * Condition of the finished transfers to change to DONE, the owner being the only parameter
+     */
+    protected static final String SQL_FINISHED_CONDITION = " WHERE "
+            + UPDATED_INFO_FIELD + " <> " + UpdatedInfo.DONE.ordinal() + " AND "
+            + UPDATED_INFO_FIELD + " > " + UpdatedInfo.UNKNOWN.ordinal() + " AND "
+            + GLOBAL_LAST_STEP_FIELD + " = " + Transfer.TASKSTEP.ALLDONETASK.ordinal() + " AND "
+            + STEP_STATUS_FIELD + " = '" + ErrorCode.CompleteOk.getCode() + "' AND "
+            + OWNER_REQUEST_FIELD + " = ?";
+    protected static final String SQL_FINISHED_SELECT = "SELECT " + ID_FIELD + " FROM " + TABLE
+            + SQL_FINISHED_CONDITION + " AND " + ID_FIELD + " >= ? ORDER BY " + ID_FIELD;
+    protected static final String SQL_FINISHED_UPDATE = "UPDATE " + TABLE
+            + " SET " + UPDATED_INFO_FIELD + " = " + UpdatedInfo.DONE.ordinal()
+            + SQL_FINISHED_CONDITION + " AND " + ID_FIELD + " >= ? AND " + ID_FIELD + " <= ?";
+
+    @Override
+    public long updateFinishedToDone(String owner, int chunk) throws DAOException {
+        PreparedStatement select = null;
+        PreparedStatement update = null;
+        long total = 0;
+        try {
+            select = connection.prepareStatement(SQL_FINISHED_SELECT);
+            select.setMaxRows(chunk);
+            update = connection.prepareStatement(SQL_FINISHED_UPDATE);
+            // keyset chunks: SpecialIds may be sparse and negative
+            long first = Long.MIN_VALUE;
+            while (true) {
+                setParameters(select, owner, first);
+                ResultSet res = executeQuery(select);
+                int nb = 0;
+                long last = first;
+                try {
+                    while (res.next()) {
+                        last = res.getLong(1);
+                        nb++;
+                    }
+                } finally {
+                    closeResultSet(res);
+                }
+                if (nb == 0) {
+                    break;
+                }
+                setParameters(update, owner, first, last);
+                total += update.executeUpdate();
+                logger.debug("Changed to DONE up to SpecialId " + last + ": " + total);
+                if (nb < chunk || last == Long.MAX_VALUE) {
+                    break;
+                }
+                first = last + 1;
+            }
+        } catch (SQLException e) {
+            throw new DAOException(e);
+        } finally {
+            closeStatement(select);
+            closeStatement(update);
+        }
+        return total;
+    }
+
     private String prepareFindQuery(List<Filter> filters, Object[] params) {
         StringBuilder query = new StringBuilder(getGetAllRequest());
         Iterator<Filter> it = filters.listIterator();
@@ -487,13 +614,59 @@ public abstract class DBTransferDAO extends StatementExecutor implements Transfe
 
     abstract protected long getNextId() throws DAOException;
 
-    @Override
-    public void insert(Transfer transfer) throws DAOException {
-        if (transfer.getId() == DbConstant.ILLEGALVALUE) {
-            transfer.setId(getNextId());
+    /**
+     * Allocates several new Special IDs at once. Dialects able to retrieve
+     * many values from their sequence within a single request should
+     * override this method.
+     *
+     * @param count number of IDs to allocate
+     * @return the newly allocated IDs
+     * @throws DAOException If a data access error occurs
+     */
+    protected long[] getNextIds(int count) throws DAOException {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = getNextId();
         }
+        return ids;
+    }
 
-        Object[] params = {
+    /**
+     * Executes the given statement which returns one new Special ID per row.
+     *
+     * @param sql the query to execute
+     * @param count number of IDs to allocate
+     * @return the newly allocated IDs
+     * @throws DAOException If a data access error occurs or if the
+     * sequence returned less IDs than asked
+     */
+    protected long[] getNextIds(String sql, int count) throws DAOException {
+        long[] ids = new long[count];
+        PreparedStatement stm = null;
+        ResultSet res = null;
+        try {
+            stm = connection.prepareStatement(sql);
+            stm.setInt(1, count);
+            res = executeQuery(stm);
+            int i = 0;
+            while (i < count && res.next()) {
+                ids[i++] = res.getLong(1);
+            }
+            if (i < count) {
+                throw new DAOException(
+                        "Error no id available, you should purge the database.");
+            }
+        } catch (SQLException e) {
+            throw new DAOException(e);
+        } finally {
+            closeResultSet(res);
+            closeStatement(stm);
+        }
+        return ids;
+    }
+
+    private Object[] getInsertValues(Transfer transfer) {
+        return new Object[] {
                 transfer.getGlobalStep().ordinal(),
                 transfer.getLastGlobalStep().ordinal(),
                 transfer.getStep(),
@@ -517,13 +690,22 @@ public abstract class DBTransferDAO extends StatementExecutor implements Transfe
                 transfer.getId(),
                 transfer.getUpdatedInfo().ordinal()
         };
+    }
+
+    @Override
+    public void insert(Transfer transfer) throws DAOException {
+        if (transfer.getId() == DbConstant.ILLEGALVALUE) {
+            transfer.setId(getNextId());
+        }
 
         PreparedStatement stm = null;
         try {
             stm = connection.prepareStatement(SQL_INSERT);
-            setParameters(stm, params);
+            transfer.clearDirtyFields();
+            setParameters(stm, getInsertValues(transfer));
             executeUpdate(stm);
         } catch (SQLException e) {
+            transfer.resetDirtyFields();
             throw new DAOException(e);
         } finally {
             closeStatement(stm);
@@ -531,8 +713,68 @@ public abstract class DBTransferDAO extends StatementExecutor implements Transfe
     }
 
     @Override
-    public void update(Transfer transfer) throws DAOException {
-        Object[] params = {
+    public void insert(List<Transfer> transfers) throws DAOException {
+        if (transfers.isEmpty()) {
+            return;
+        }
+        int missing = 0;
+        for (Transfer transfer : transfers) {
+            if (transfer.getId() == DbConstant.ILLEGALVALUE) {
+                missing++;
+            }
+        }
+        if (missing > 0) {
+            long[] ids = getNextIds(missing);
+            int i = 0;
+            for (Transfer transfer : transfers) {
+                if (transfer.getId() == DbConstant.ILLEGALVALUE) {
+                    transfer.setId(ids[i++]);
+                }
+            }
+        }
+
+        PreparedStatement stm = null;
+        boolean autoCommit = true;
+        try {
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            stm = connection.prepareStatement(SQL_INSERT);
+            int pending = 0;
+            for (Transfer transfer : transfers) {
+                setParameters(stm, getInsertValues(transfer));
+                stm.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    stm.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                stm.executeBatch();
+            }
+            connection.commit();
+            for (Transfer transfer : transfers) {
+                transfer.clearDirtyFields();
+            }
+            logger.info(transfers.size() + " records inserted.");
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException e1) {
+                logger.warn("Cannot rollback the batch insertion", e1);
+            }
+            throw new DAOException(e);
+        } finally {
+            closeStatement(stm);
+            try {
+                connection.setAutoCommit(autoCommit);
+            } catch (SQLException e) {
+                logger.warn("Cannot restore the connection auto-commit mode", e);
+            }
+        }
+    }
+
+    private Object[] getUpdateValues(Transfer transfer) {
+        return new Object[] {
                 transfer.getId(),
                 transfer.getGlobalStep().ordinal(),
                 transfer.getLastGlobalStep().ordinal(),
@@ -554,19 +796,63 @@ public abstract class DBTransferDAO extends StatementExecutor implements Transfe
                 transfer.getOwnerRequest(),
                 transfer.getRequested(),
                 transfer.getRequester(),
-                transfer.getUpdatedInfo().ordinal(),
-                transfer.getOwnerRequest(),
-                transfer.getRequester(),
-                transfer.getRequested(),
-                transfer.getId()
+                transfer.getUpdatedInfo().ordinal()
         };
+    }
+
+    @Override
+    public void update(Transfer transfer) throws DAOException {
+        Set<String> dirtyFields = transfer.takeDirtyFields();
+        if (dirtyFields == null) {
+            // Track changes from now on
+            transfer.clearDirtyFields();
+        }
+        Object[] values = getUpdateValues(transfer);
+        String request;
+        Object[] params;
+        if (dirtyFields == null) {
+            // Unknown state: write all columns
+            request = getUpdateRequest();
+            params = new Object[values.length + 4];
+            System.arraycopy(values, 0, params, 0, values.length);
+        } else {
+            int mask = 0;
+            int nb = 0;
+            for (int i = 0; i < UPDATE_FIELDS.length; i++) {
+                if (dirtyFields.contains(UPDATE_FIELDS[i])) {
+                    mask |= 1 << i;
+                    nb++;
+                }
+            }
+            if (nb == 0) {
+                // Nothing changed since last synchronization
+                return;
+            }
+            request = nb == UPDATE_FIELDS.length ? getUpdateRequest() : getUpdateRequest(mask);
+            params = new Object[nb + 4];
+            int j = 0;
+            for (int i = 0; i < UPDATE_FIELDS.length; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    params[j++] = values[i];
+                }
+            }
+        }
+        int pos = params.length - 4;
+        params[pos++] = transfer.getOwnerRequest();
+        params[pos++] = transfer.getRequester();
+        params[pos++] = transfer.getRequested();
+        params[pos] = transfer.getId();
 
         PreparedStatement stm = null;
         try {
-            stm = connection.prepareStatement(getUpdateRequest());
+            stm = connection.prepareStatement(request);
             setParameters(stm, params);
-            executeUpdate(stm);
+            if (executeUpdate(stm) < 1) {
+                // Changes not written: all columns will be written next time
+                transfer.resetDirtyFields();
+            }
         } catch (SQLException e) {
+            transfer.resetDirtyFields();
             throw new DAOException(e);
         } finally {
             closeStatement(stm);
@@ -574,7 +860,7 @@ public abstract class DBTransferDAO extends StatementExecutor implements Transfe
     }
 
     private Transfer getFromResultSet(ResultSet set) throws SQLException {
-        return new Transfer(
+        Transfer transfer = new Transfer(
                 set.getLong(ID_FIELD),
                 set.getString(ID_RULE_FIELD),
                 set.getInt(TRANSFER_MODE_FIELD),
@@ -597,6 +883,8 @@ public abstract class DBTransferDAO extends StatementExecutor implements Transfe
                 set.getTimestamp(TRANSFER_START_FIELD),
                 set.getTimestamp(TRANSFER_STOP_FIELD),
                 UpdatedInfo.valueOf(set.getInt(UPDATED_INFO_FIELD)));
+        transfer.clearDirtyFields();
+        return transfer;
     }
 
     @Override
@@ -20,7 +20,7 @@ abstract class StatementExecutor {
             }
     }
 
-    public void executeUpdate(PreparedStatement stm) throws SQLException {
+    public int executeUpdate(PreparedStatement stm) throws SQLException {
         int res = 0;
         res = stm.executeUpdate();
         if (res < 1) {
@@ -28,6 +28,7 @@ abstract class StatementExecutor {
         } else {
             logger.info(res + " records updated.");
         }
+        return res;
     }
 
     public ResultSet executeQuery(PreparedStatement stm) throws SQLException {
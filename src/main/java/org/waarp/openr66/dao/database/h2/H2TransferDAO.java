@@ -11,6 +11,8 @@ import org.waarp.openr66.dao.exception.DAOException;
 public class H2TransferDAO extends DBTransferDAO {
 
     protected static String SQL_GET_ID = "SELECT NEXTVAL(runseq)";
+    protected static String SQL_GET_IDS = "SELECT NEXTVAL(runseq) " +
+            "FROM SYSTEM_RANGE(1, ?)";
 
     public H2TransferDAO(Connection con) throws DAOException {
         super(con);
@@ -34,4 +36,9 @@ public class H2TransferDAO extends DBTransferDAO {
             closeStatement(ps);
         }
     }
+
+    @Override
+    protected long[] getNextIds(int count) throws DAOException {
+        return getNextIds(SQL_GET_IDS, count);
+    }
 }
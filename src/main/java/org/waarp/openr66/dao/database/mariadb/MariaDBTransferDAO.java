@@ -44,4 +44,33 @@ public class MariaDBTransferDAO extends DBTransferDAO {
             closeStatement(ps2);
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    protected long[] getNextIds(int count) throws DAOException {
+        PreparedStatement ps = null;
+        PreparedStatement ps2 = null;
+        try {
+            ps = connection.prepareStatement(SQL_GET_ID);
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                long first = rs.getLong(1);
+                ps2 = connection.prepareStatement(SQL_UPDATE_ID);
+                ps2.setLong(1, first + count);
+                ps2.executeUpdate();
+                long[] ids = new long[count];
+                for (int i = 0; i < count; i++) {
+                    ids[i] = first + i;
+                }
+                return ids;
+            } else {
+                throw new DAOException(
+                        "Error no id available, you should purge the database.");
+            }
+        } catch (SQLException e) {
+            throw new DAOException(e);
+        } finally {
+            closeStatement(ps);
+            closeStatement(ps2);
+        }
+    }
+}
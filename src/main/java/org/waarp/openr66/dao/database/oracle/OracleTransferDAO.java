@@ -11,6 +11,8 @@ import org.waarp.openr66.dao.exception.DAOException;
 public class OracleTransferDAO extends DBTransferDAO {
 
     protected static String SQL_GET_ID = "SELECT runseq.nextval FROM DUAL";
+    protected static String SQL_GET_IDS = "SELECT runseq.nextval FROM DUAL " +
+            "CONNECT BY LEVEL <= ?";
 
     public OracleTransferDAO(Connection con) throws DAOException {
         super(con);
@@ -34,4 +36,9 @@ public class OracleTransferDAO extends DBTransferDAO {
             closeStatement(ps);
         }
     }
+
+    @Override
+    protected long[] getNextIds(int count) throws DAOException {
+        return getNextIds(SQL_GET_IDS, count);
+    }
 }
@@ -11,6 +11,8 @@ import org.waarp.openr66.dao.exception.DAOException;
 public class PostgreSQLTransferDAO extends DBTransferDAO {
 
     protected static String SQL_GET_ID = "SELECT NEXTVAL('runseq')";
+    protected static String SQL_GET_IDS = "SELECT NEXTVAL('runseq') " +
+            "FROM generate_series(1, ?)";
 
     public PostgreSQLTransferDAO(Connection con) throws DAOException {
         super(con);
@@ -34,4 +36,9 @@ public class PostgreSQLTransferDAO extends DBTransferDAO {
             closeStatement(ps);
         }
     }
+
+    @Override
+    protected long[] getNextIds(int count) throws DAOException {
+        return getNextIds(SQL_GET_IDS, count);
+    }
 }
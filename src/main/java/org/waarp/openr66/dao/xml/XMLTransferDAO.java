@@ -152,6 +152,11 @@ public class XMLTransferDAO implements TransferDAO {
         throw new DAOException("Operation not supported on XML DAO");
     }
 
+    @Override
+    public long updateFinishedToDone(String owner, int chunk) throws DAOException {
+        throw new DAOException("Operation not supported on XML DAO");
+    }
+
     public void insert(Transfer transfer) throws DAOException {
         //Set unique Id
         transfer.setId(new LongUuid().getLong());
@@ -174,6 +179,12 @@ public class XMLTransferDAO implements TransferDAO {
         }
     }
 
+    public void insert(List<Transfer> transfers) throws DAOException {
+        for (Transfer transfer : transfers) {
+            insert(transfer);
+        }
+    }
+
     public Transfer select(long id, String requester, String requested,
                        String owner) throws DAOException {
         file = getFile(requester, requested, id);
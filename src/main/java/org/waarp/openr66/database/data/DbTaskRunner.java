@@ -29,6 +29,9 @@ import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
@@ -48,6 +51,7 @@ import org.waarp.common.database.exception.WaarpDatabaseNoConnectionException;
 import org.waarp.common.database.exception.WaarpDatabaseNoDataException;
 import org.waarp.common.database.exception.WaarpDatabaseSqlException;
 import org.waarp.common.digest.FilesystemBasedDigest;
+import org.waarp.common.file.filesystembased.FilesystemBasedFileParameterImpl;
 import org.waarp.common.json.JsonHandler;
 import org.waarp.common.logging.WaarpLogger;
 import org.waarp.common.logging.WaarpLoggerFactory;
@@ -62,6 +66,7 @@ import org.waarp.openr66.context.R66Session;
 import org.waarp.openr66.context.filesystem.R66Dir;
 import org.waarp.openr66.context.filesystem.R66File;
 import org.waarp.openr66.context.task.AbstractTask;
+import org.waarp.openr66.context.task.TaskExecutionEngine;
 import org.waarp.openr66.context.task.TaskType;
 import org.waarp.openr66.context.task.exception.OpenR66RunnerEndTasksException;
 import org.waarp.openr66.context.task.exception.OpenR66RunnerErrorException;
@@ -84,8 +89,13 @@ import org.waarp.openr66.protocol.localhandler.packet.ErrorPacket;
 import org.waarp.openr66.protocol.localhandler.packet.RequestPacket;
 import org.waarp.openr66.protocol.localhandler.packet.RequestPacket.TRANSFERMODE;
 import org.waarp.openr66.protocol.utils.ChannelUtils;
+import org.waarp.openr66.protocol.utils.FileUtils;
 import org.waarp.openr66.protocol.utils.NbAndSpecialId;
 import org.waarp.openr66.protocol.utils.R66Future;
+import org.waarp.openr66.protocol.utils.R66FutureListener;
+import org.waarp.openr66.protocol.utils.R66Metrics;
+import org.waarp.openr66.protocol.utils.R66Metrics.Phase;
+import org.waarp.openr66.protocol.utils.R66Trace;
 import org.xml.sax.SAXException;
 
 import com.fasterxml.jackson.databind.JsonNode;
@@ -211,6 +221,59 @@ public class DbTaskRunner extends AbstractDbData {
             Columns.GLOBALSTEP, Columns.INFOSTATUS, Columns.SPECIALID
     };
 
+    /**
+     * Names of the indexes following the main access paths of this host: Commander and Monitoring
+     * scans by UpdatedInfo, GlobalStep or InfoStatus ordered by start (key lookups use the primary
+     * key)
+     */
+    public static final String[] accessIndexNames = {
+            "IDX_RUNNER_INFO", "IDX_RUNNER_STEP", "IDX_RUNNER_STATUS"
+    };
+
+    /**
+     * Columns of the indexes named in accessIndexNames
+     */
+    public static final Columns[][] accessIndexes = {
+            { Columns.OWNERREQ, Columns.UPDATEDINFO, Columns.STARTTRANS },
+            { Columns.OWNERREQ, Columns.GLOBALSTEP, Columns.STARTTRANS },
+            { Columns.OWNERREQ, Columns.INFOSTATUS, Columns.STARTTRANS }
+    };
+
+    /**
+     * 
+     * @param createIndex
+     *            the CREATE INDEX command of the dialect (as "CREATE INDEX IF NOT EXISTS ")
+     * @return the requests to create the indexes following the main access paths
+     */
+    public static String[] getAccessIndexRequests(String createIndex) {
+        String[] requests = new String[accessIndexNames.length];
+        for (int i = 0; i < accessIndexNames.length; i++) {
+            StringBuilder builder = new StringBuilder(createIndex).append(accessIndexNames[i])
+                    .append(" ON ").append(table).append("(");
+            Columns[] icolumns = accessIndexes[i];
+            for (int j = 0; j < icolumns.length - 1; j++) {
+                builder.append(icolumns[j].name()).append(", ");
+            }
+            builder.append(icolumns[icolumns.length - 1].name()).append(")");
+            requests[i] = builder.toString();
+        }
+        return requests;
+    }
+
+    /**
+     * Max number of transfers changed by one UPDATE of changeFinishedToDone
+     */
+    private static final int FINISHEDTODONE_CHUNK = 10000;
+
+    /**
+     * Serializes the executions of changeFinishedToDone
+     */
+    private static final Object finishedToDoneLock = new Object();
+
+    private static final AtomicBoolean finishedToDoneRunning = new AtomicBoolean(false);
+
+    private static final AtomicLong finishedToDoneCount = new AtomicLong(0);
+
     public static final String XMLRUNNERS = "taskrunners";
     public static final String XMLRUNNER = "runner";
     public static final String XMLEXTENSION = "_singlerunner.xml";
@@ -242,6 +305,15 @@ public class DbTaskRunner extends AbstractDbData {
     private boolean isSendThrough = false;
     private long originalSize = -1;
 
+    /**
+     * Start of the data phase (System.nanoTime()), 0 if not started
+     */
+    private long dataStartNanos = 0;
+    /**
+     * Position in the file at the start of the data phase
+     */
+    private long dataStartPosition = 0;
+
     /**
      * Special For DbTaskRunner
      */
@@ -516,6 +588,13 @@ public class DbTaskRunner extends AbstractDbData {
         this.transfer = transfer;
     }
 
+    /**
+     * @return the underlying Transfer
+     */
+    public Transfer getTransfer() {
+        return transfer;
+    }
+
     /**
      * Constructor for submission (no transfer session), from database. It is created, so with a new
      * specialId if necessary
@@ -530,6 +609,30 @@ public class DbTaskRunner extends AbstractDbData {
     public DbTaskRunner(DbRule rule, boolean isSender,
                         RequestPacket requestPacket, String requested, Timestamp startTime)
             throws WaarpDatabaseException {
+        this(rule, isSender, requestPacket, requested, null, startTime);
+        // Retrieve rule
+        this.rule = new DbRule(getRuleId());
+        insert();
+        requestPacket.setSpecialId(transfer.getId());
+    }
+
+    /**
+     * Constructor for submission (no transfer session), not yet inserted into database (used for
+     * bulk submission)
+     *
+     * @param rule
+     * @param isSender
+     * @param requestPacket
+     * @param requested
+     * @param requester
+     *            the requester HostId if already known, null to get it from requested
+     * @param startTime
+     * @throws WaarpDatabaseException
+     */
+    public DbTaskRunner(DbRule rule, boolean isSender,
+                        RequestPacket requestPacket, String requested, String requester,
+                        Timestamp startTime)
+            throws WaarpDatabaseException {
         super();
         this.session = null;
         this.rule = rule;
@@ -553,11 +656,11 @@ public class DbTaskRunner extends AbstractDbData {
         originalSize = requestPacket.getOriginalSize();
         setOriginalSizeTransferMap(originalSize);
         // itself but according to SSL
-        transfer.setRequester(Configuration.configuration.getHostId(dbSession,
-                requested));
+        if (requester == null) {
+            requester = Configuration.configuration.getHostId(dbSession, requested);
+        }
+        transfer.setRequester(requester);
 
-        // Retrieve rule
-        this.rule = new DbRule(getRuleId());
         if (requestPacket.getMode() != rule.getMode()) {
             if (RequestPacket.isMD5Mode(requestPacket.getMode())) {
                 transfer.setTransferMode(RequestPacket.getModeMD5(rule.getMode()));
@@ -566,8 +669,6 @@ public class DbTaskRunner extends AbstractDbData {
             }
         }
         checkThroughMode();
-        insert();
-        requestPacket.setSpecialId(transfer.getId());
     }
 
     /**
@@ -1044,6 +1145,7 @@ public class DbTaskRunner extends AbstractDbData {
                 }
             }
         }
+        long start = System.nanoTime();
         // FIX SelfRequest
         if (isSelfRequest()) {
             if (RequestPacket.isCompatibleMode(transfer.getTransferMode(),
@@ -1055,21 +1157,40 @@ public class DbTaskRunner extends AbstractDbData {
         } else {
             optimizedUpdate();
         }
+        R66Metrics.record(Phase.dbsave, getMetricsPartner(), transfer.getRule(), start);
+        if (localChannelReference != null && localChannelReference.getTrace() != null) {
+            localChannelReference.getTrace().accumulate("dbsave", start);
+        }
     }
 
     /**
-     * Update Runner using special PreparedStatement
+     * @return the partner of this transfer as seen from this host, for metrics
+     */
+    private String getMetricsPartner() {
+        return isSelfRequested() ? transfer.getRequester() : transfer.getRequested();
+    }
+
+    /**
+     * Update Runner using special PreparedStatement<br>
+     * The in memory rank stays the one of the next expected block, while the saved one is limited to
+     * the blocks really written on disk by the disk write stage (if enabled), as restart point.
      *
      * @throws WaarpDatabaseException
      */
     protected void optimizedUpdate() throws WaarpDatabaseException {
         TransferDAO transferAccess = null;
+        int rank = transfer.getRank();
+        R66Session curSession = session;
         try {
+            if (curSession != null) {
+                transfer.setRank(curSession.getWrittenRank(rank));
+            }
             transferAccess = DAOFactory.getInstance().getTransferDAO();
             transferAccess.update(transfer);
         } catch (DAOException e) {
             throw new WaarpDatabaseException(e);
         } finally {
+            transfer.setRank(rank);
             if (transferAccess != null) {
                 transferAccess.close();
             }
@@ -2062,35 +2183,60 @@ public class DbTaskRunner extends AbstractDbData {
      */
     public static void changeFinishedToDone()
             throws WaarpDatabaseNoConnectionException {
-        // Update all UpdatedInfo to DONE where GlobalLastStep = ALLDONETASK and
-        // status = CompleteOk
-        List<Filter> filters = new ArrayList<Filter>();
-        filters.add(new Filter(DBTransferDAO.UPDATED_INFO_FIELD,
-                "<>",  UpdatedInfo.DONE.ordinal()));
-        filters.add(new Filter(DBTransferDAO.UPDATED_INFO_FIELD,
-                ">",  UpdatedInfo.UNKNOWN.ordinal()));
-        filters.add(new Filter(DBTransferDAO.GLOBAL_LAST_STEP_FIELD,
-                "=",  Transfer.TASKSTEP.ALLDONETASK.ordinal()));
-        filters.add(new Filter(DBTransferDAO.STEP_STATUS_FIELD,
-                ">",  ErrorCode.CompleteOk.getCode()));
-        filters.add(new Filter(DBTransferDAO.OWNER_REQUEST_FIELD,
-                ">",  Configuration.configuration.getHOST_ID()));
-
-        TransferDAO transferAccess = null;
-        try {
-            transferAccess = DAOFactory.getInstance().getTransferDAO();
-            List<Transfer> transfers = transferAccess.find(filters);
-            for (Transfer transfer : transfers) {
-                transfer.setUpdatedInfo(org.waarp.openr66.pojo.UpdatedInfo.DONE);
-                transferAccess.update(transfer);
+        if (finishedToDoneRunning.get()) {
+            logger.info("Change of finished transfers to DONE already in progress, waiting for it");
+        }
+        // a synchronous caller (log export, administration) waits for the current execution,
+        // then changes the transfers finished meanwhile
+        synchronized (finishedToDoneLock) {
+            finishedToDoneRunning.set(true);
+            TransferDAO transferAccess = null;
+            try {
+                finishedToDoneCount.set(0);
+                transferAccess = DAOFactory.getInstance().getTransferDAO();
+                finishedToDoneCount.set(transferAccess.updateFinishedToDone(
+                        Configuration.configuration.getHOST_ID(), FINISHEDTODONE_CHUNK));
+                logger.info("Changed finished transfers to DONE: " + finishedToDoneCount.get());
+            } catch (DAOException e) {
+                throw new WaarpDatabaseNoConnectionException(e);
+            } finally {
+                if (transferAccess != null) {
+                    transferAccess.close();
+                }
+                finishedToDoneRunning.set(false);
             }
-        } catch (DAOException e) {
-            throw new WaarpDatabaseNoConnectionException(e);
-        } finally {
-            transferAccess.close();
         }
     }
 
+    /**
+     * Same as changeFinishedToDone but executed asynchronously, in order to not delay the startup
+     */
+    public static void changeFinishedToDoneAsync() {
+        Configuration.configuration.launchInFixedDelay(new Thread() {
+            public void run() {
+                try {
+                    changeFinishedToDone();
+                } catch (WaarpDatabaseNoConnectionException e) {
+                    logger.error("Database No Connection Error: Cannot change finished transfers to DONE", e);
+                }
+            }
+        }, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return True if the change of finished transfers to DONE is in progress
+     */
+    public static boolean isChangeFinishedToDoneRunning() {
+        return finishedToDoneRunning.get();
+    }
+
+    /**
+     * @return the number of transfers changed to DONE by the current or last execution
+     */
+    public static long getChangeFinishedToDoneCount() {
+        return finishedToDoneCount.get();
+    }
+
     /**
      * Reset the runner (ready to be run again)
      *
@@ -2359,6 +2505,40 @@ public class DbTaskRunner extends AbstractDbData {
         return transfer.getBlockSize();
     }
 
+    /**
+     * Change the block size, converting the current rank such that the restart position never
+     * goes beyond the data already transferred
+     * 
+     * @param blocksize
+     *            the new block size
+     */
+    public void setBlocksize(int blocksize) {
+        int previous = transfer.getBlockSize();
+        if (blocksize <= 0 || previous == blocksize) {
+            return;
+        }
+        if (previous > 0 && transfer.getRank() > 0) {
+            transfer.setRank(convertRank(transfer.getRank(), previous, blocksize));
+        }
+        transfer.setBlockSize(blocksize);
+    }
+
+    /**
+     * Convert a rank from one block size to another, rounding down such that the position never
+     * goes beyond the data already transferred
+     * 
+     * @param rank
+     *            the rank expressed in blocks of previous size
+     * @param previous
+     *            the block size of the given rank
+     * @param blocksize
+     *            the new block size
+     * @return the rank expressed in blocks of the new size
+     */
+    public static int convertRank(int rank, int previous, int blocksize) {
+        return (int) ((long) rank * previous / blocksize);
+    }
+
     /**
      * @return the filename
      */
@@ -2596,6 +2776,10 @@ public class DbTaskRunner extends AbstractDbData {
         if (lastRank > rank) {
             transfer.setRank(rank);
         }
+        if (dataStartNanos == 0) {
+            dataStartNanos = System.nanoTime();
+            dataStartPosition = (long) transfer.getRank() * transfer.getBlockSize();
+        }
         transfer.setStepStatus(ErrorCode.Running);
         transfer.setInfoStatus(ErrorCode.PreProcessingOk);
     }
@@ -2604,6 +2788,13 @@ public class DbTaskRunner extends AbstractDbData {
      * Set the Post Task step
      */
     public void setPostTask() {
+        if (dataStartNanos != 0) {
+            R66Metrics.record(Phase.data, getMetricsPartner(), transfer.getRule(), dataStartNanos);
+            R66Metrics.recordTransfer(getMetricsPartner(), transfer.getRule(), originalSize);
+            PartnerConfiguration.getLinkStatistics(getMetricsPartner()).recordThroughput(
+                    originalSize - dataStartPosition, System.nanoTime() - dataStartNanos);
+            dataStartNanos = 0;
+        }
         transfer.setGlobalStep(Transfer.TASKSTEP.POSTTASK);
         transfer.setLastGlobalStep(Transfer.TASKSTEP.POSTTASK);
         int step = transfer.getStep();
@@ -2678,14 +2869,14 @@ public class DbTaskRunner extends AbstractDbData {
 
 
     /**
-     * Run the task from the given task information (from rule)
+     * Start the task from the given task information (from rule)
      *
      * @param tasks
-     * @return The future of the operation (in success or not)
+     * @return The started task, done once its future is done (in success or not)
      * @throws OpenR66RunnerEndTasksException
      * @throws OpenR66RunnerErrorException
      */
-    private R66Future runNextTask(String[][] tasks)
+    private AbstractTask runNextTask(String[][] tasks)
             throws OpenR66RunnerEndTasksException, OpenR66RunnerErrorException {
         logger.debug((session == null) + ":"
                 + (session == null ? "norunner" : (this.session.getRunner() == null)) + ":"
@@ -2716,18 +2907,23 @@ public class DbTaskRunner extends AbstractDbData {
         }
         AbstractTask task = getTask(tasks[getStep()], tempSession);
         logger.debug(this.toLogRunStep() + " Task: " + task.getClass().getName());
-        task.run();
-        try {
-            task.getFutureCompletion().await();
-        } catch (InterruptedException e) {
+        R66Trace trace = this.session.getLocalChannelReference().getTrace();
+        if (trace != null) {
+            final R66Trace.Span span = trace.startSpan(getGlobalStep().name().toLowerCase() + ":"
+                    + getStep() + ":" + task.getType().name());
+            task.getFutureCompletion().addListener(new R66FutureListener() {
+                public void operationComplete(R66Future future) {
+                    span.end();
+                }
+            });
         }
-        if (task.getType() == TaskType.RESCHEDULE) {
-            // Special case : must test if exec is OK since it must be the last
-            if (this.isRescheduledTransfer()) {
-                throw new OpenR66RunnerEndTasksException();
-            }
+        TaskExecutionEngine engine = Configuration.configuration.getTaskExecutionEngine();
+        if (engine != null) {
+            engine.execute(task, getRuleId());
+        } else {
+            task.run();
         }
-        return task.getFutureCompletion();
+        return task;
     }
 
     /**
@@ -2752,12 +2948,11 @@ public class DbTaskRunner extends AbstractDbData {
 
     /**
      *
-     * @return the future of the task run
+     * @return the started task
      * @throws OpenR66RunnerEndTasksException
      * @throws OpenR66RunnerErrorException
-     * @throws OpenR66RunnerEndTasksException
      */
-    private R66Future runNext() throws OpenR66RunnerErrorException,
+    private AbstractTask runNext() throws OpenR66RunnerErrorException,
             OpenR66RunnerEndTasksException {
         if (rule == null) {
             if (getRuleId() != null) {
@@ -2775,97 +2970,236 @@ public class DbTaskRunner extends AbstractDbData {
                 + this.rule.printTasks(isSender(), getGlobalStep()));
         switch (getGlobalStep()) {
             case PRETASK:
-                try {
-                    if (isSender()) {
-                        return runNextTask(rule.getSpreTasksArray());
-                    } else {
-                        return runNextTask(rule.getRpreTasksArray());
-                    }
-                } catch (OpenR66RunnerEndTasksException e) {
-                    if (getStatus() == ErrorCode.Running) {
-                        setExecutionStatus(ErrorCode.PreProcessingOk);
-                        setErrorExecutionStatus(ErrorCode.PreProcessingOk);
-                    }
-                    throw e;
+                if (isSender()) {
+                    return runNextTask(rule.getSpreTasksArray());
+                } else {
+                    return runNextTask(rule.getRpreTasksArray());
                 }
             case POSTTASK:
-                try {
-                    if (isSender()) {
-                        return runNextTask(rule.getSpostTasksArray());
-                    } else {
-                        return runNextTask(rule.getRpostTasksArray());
-                    }
-                } catch (OpenR66RunnerEndTasksException e) {
-                    if (getStatus() == ErrorCode.Running) {
-                        setExecutionStatus(ErrorCode.PostProcessingOk);
-                        setErrorExecutionStatus(ErrorCode.PostProcessingOk);
-                    }
-                    throw e;
+                if (isSender()) {
+                    return runNextTask(rule.getSpostTasksArray());
+                } else {
+                    return runNextTask(rule.getRpostTasksArray());
                 }
             case ERRORTASK:
-                try {
-                    if (isSender()) {
-                        return runNextTask(rule.getSerrorTasksArray());
-                    } else {
-                        return runNextTask(rule.getRerrorTasksArray());
-                    }
-                } catch (OpenR66RunnerEndTasksException e) {
-                    if (getStatus() == ErrorCode.Running) {
-                        setExecutionStatus(getErrorInfo());
-                    }
-                    throw e;
+                if (isSender()) {
+                    return runNextTask(rule.getSerrorTasksArray());
+                } else {
+                    return runNextTask(rule.getRerrorTasksArray());
                 }
             default:
                 throw new OpenR66RunnerErrorException("Global Step unknown");
         }
     }
 
+    /**
+     * All the tasks of the current global step are done
+     *
+     * @throws OpenR66RunnerErrorException
+     */
+    private void endOfTasks() throws OpenR66RunnerErrorException {
+        if (getStatus() == ErrorCode.Running) {
+            switch (getGlobalStep()) {
+                case PRETASK:
+                    setExecutionStatus(ErrorCode.PreProcessingOk);
+                    setErrorExecutionStatus(ErrorCode.PreProcessingOk);
+                    break;
+                case POSTTASK:
+                    setExecutionStatus(ErrorCode.PostProcessingOk);
+                    setErrorExecutionStatus(ErrorCode.PostProcessingOk);
+                    break;
+                case ERRORTASK:
+                    setExecutionStatus(getErrorInfo());
+                    break;
+                default:
+                    break;
+            }
+        }
+        transfer.setStep(0);
+        this.saveStatus();
+    }
+
+    /**
+     * Start the task of the current step
+     *
+     * @return the started task, or null if all the tasks of the current global step are done
+     * @throws OpenR66RunnerErrorException
+     */
+    private AbstractTask startTask() throws OpenR66RunnerErrorException {
+        logger.debug(this.toLogRunStep());
+        try {
+            return runNext();
+        } catch (OpenR66RunnerEndTasksException e) {
+            endOfTasks();
+            return null;
+        } catch (OpenR66RunnerErrorException e) {
+            setErrorExecutionStatus(ErrorCode.ExternalOp);
+            this.saveStatus();
+            throw new OpenR66RunnerErrorException("Runner is in error: " +
+                    e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Check the result of the task of the current step once done
+     *
+     * @param task
+     * @return True if the next step is to be run, False if all the tasks of the current global step
+     *         are done
+     * @throws OpenR66RunnerErrorException
+     *             if the task is in error
+     */
+    private boolean endTask(AbstractTask task) throws OpenR66RunnerErrorException {
+        if (task.getType() == TaskType.RESCHEDULE) {
+            // Special case : must test if exec is OK since it must be the last
+            if (this.isRescheduledTransfer()) {
+                endOfTasks();
+                return false;
+            }
+        }
+        R66Future future = task.getFutureCompletion();
+        if ((!future.isDone()) || future.isFailed()) {
+            R66Result result = future.getResult();
+            if (result != null) {
+                setErrorExecutionStatus(future.getResult().getCode());
+            } else {
+                setErrorExecutionStatus(ErrorCode.ExternalOp);
+            }
+            this.saveStatus();
+            logger.info("Future is failed: " + getErrorInfo().getMesg());
+            if (future.getCause() != null) {
+                throw new OpenR66RunnerErrorException("Runner is failed: " +
+                        future.getCause().getMessage(), future.getCause());
+            } else {
+                throw new OpenR66RunnerErrorException("Runner is failed: " +
+                        getErrorInfo().getMesg());
+            }
+        }
+        transfer.setStep(getStep() + 1);
+        return true;
+    }
+
+    /**
+     * @return the metrics phase of the current global step, or null
+     */
+    private Phase getPhase() {
+        switch (transfer.getGlobalStep()) {
+            case PRETASK:
+                return Phase.pretask;
+            case POSTTASK:
+                return Phase.posttask;
+            case ERRORTASK:
+                return Phase.errortask;
+            default:
+                return null;
+        }
+    }
+
     /**
      * Run all task from current status (globalstep and step)
      *
      * @throws OpenR66RunnerErrorException
      */
     public void run() throws OpenR66RunnerErrorException {
-        R66Future future;
-        logger.debug(this.toLogRunStep() + " Status: " + getStatus()
-                + " Sender: " + isSender()
-                + " " + this.rule.printTasks(isSender(), getGlobalStep()));
-        if (getStatus() != ErrorCode.Running) {
-            throw new OpenR66RunnerErrorException(
-                    "Current global STEP not ready to run: " + this.toString());
+        Phase phase = getPhase();
+        long start = System.nanoTime();
+        try {
+            runTasks();
+        } finally {
+            if (phase != null) {
+                R66Metrics.record(phase, getMetricsPartner(), transfer.getRule(), start);
+            }
         }
+    }
+
+    /**
+     * Run all the tasks of the current global step
+     *
+     * @throws OpenR66RunnerErrorException
+     */
+    private void runTasks() throws OpenR66RunnerErrorException {
+        checkRunnable();
         while (true) {
-            logger.debug(this.toLogRunStep());
+            AbstractTask task = startTask();
+            if (task == null) {
+                return;
+            }
             try {
-                future = runNext();
-            } catch (OpenR66RunnerEndTasksException e) {
-                transfer.setStep(0);
-                this.saveStatus();
+                task.getFutureCompletion().await();
+            } catch (InterruptedException e) {
+            }
+            if (!endTask(task)) {
                 return;
-            } catch (OpenR66RunnerErrorException e) {
-                setErrorExecutionStatus(ErrorCode.ExternalOp);
-                this.saveStatus();
-                throw new OpenR66RunnerErrorException("Runner is in error: " +
-                        e.getMessage(), e);
             }
-            if ((!future.isDone()) || future.isFailed()) {
-                R66Result result = future.getResult();
-                if (result != null) {
-                    setErrorExecutionStatus(future.getResult().getCode());
-                } else {
-                    setErrorExecutionStatus(ErrorCode.ExternalOp);
+        }
+    }
+
+    /**
+     * Run all task from current status (globalstep and step) without waiting for them: each task is
+     * started from the completion of the previous one, so by the thread which completed it.
+     *
+     * @param future
+     *            done once all the tasks are done, in failure with an OpenR66RunnerErrorException
+     *            as cause if one of them is in error
+     */
+    public void runAsync(final R66Future future) {
+        final Phase phase = getPhase();
+        final long start = System.nanoTime();
+        try {
+            checkRunnable();
+        } catch (OpenR66RunnerErrorException e) {
+            future.setFailure(e);
+            return;
+        }
+        if (phase != null) {
+            future.addListener(new R66FutureListener() {
+                public void operationComplete(R66Future done) {
+                    R66Metrics.record(phase, getMetricsPartner(), transfer.getRule(), start);
                 }
-                this.saveStatus();
-                logger.info("Future is failed: " + getErrorInfo().getMesg());
-                if (future.getCause() != null) {
-                    throw new OpenR66RunnerErrorException("Runner is failed: " +
-                            future.getCause().getMessage(), future.getCause());
-                } else {
-                    throw new OpenR66RunnerErrorException("Runner is failed: " +
-                            getErrorInfo().getMesg());
+            });
+        }
+        runNextAsync(future);
+    }
+
+    private void runNextAsync(final R66Future future) {
+        final AbstractTask task;
+        try {
+            task = startTask();
+        } catch (OpenR66RunnerErrorException e) {
+            future.setFailure(e);
+            return;
+        }
+        if (task == null) {
+            future.setSuccess();
+            return;
+        }
+        task.getFutureCompletion().addListener(new R66FutureListener() {
+            public void operationComplete(R66Future taskFuture) {
+                try {
+                    if (!endTask(task)) {
+                        future.setSuccess();
+                        return;
+                    }
+                } catch (OpenR66RunnerErrorException e) {
+                    future.setFailure(e);
+                    return;
                 }
+                runNextAsync(future);
             }
-            transfer.setStep(getStep() + 1);
+        });
+    }
+
+    /**
+     * @throws OpenR66RunnerErrorException
+     *             if the current global step is not ready to run
+     */
+    private void checkRunnable() throws OpenR66RunnerErrorException {
+        logger.debug(this.toLogRunStep() + " Status: " + getStatus()
+                + " Sender: " + isSender()
+                + " " + this.rule.printTasks(isSender(), getGlobalStep()));
+        if (getStatus() != ErrorCode.Running) {
+            throw new OpenR66RunnerErrorException(
+                    "Current global STEP not ready to run: " + this.toString());
         }
     }
 
@@ -2961,11 +3295,11 @@ public class DbTaskRunner extends AbstractDbData {
                             hash = null; // ignore
                         }
                         if (hash != null) {
-                            // we can compute it once more
+                            // we can compute it once more, reading the file again whatever the digest cache
                             try {
-                                if (!FilesystemBasedDigest.getHex(
-                                        FilesystemBasedDigest.getHash(file.getTrueFile(), true,
-                                                Configuration.configuration.getDigest())).equals(hash)) {
+                                if (!FilesystemBasedDigest.getHex(FilesystemBasedDigest.getHash(file.getTrueFile(),
+                                        FilesystemBasedFileParameterImpl.useNio,
+                                        Configuration.configuration.getDigest())).equals(hash)) {
                                     // KO
                                     R66Result result = new R66Result(
                                             new OpenR66RunnerErrorException("Bad final digest on receive operation"),
@@ -2979,6 +3313,9 @@ public class DbTaskRunner extends AbstractDbData {
                                     errorTransfer(error, file, localChannelReference);
                                     throw (OpenR66RunnerErrorException) result.getException();
                                 }
+                                // Same content as received: the other digests computed during transfer are valid too
+                                FileUtils.registerHashes(file.getTrueFile(),
+                                        localChannelReference.getTransferDigests());
                             } catch (IOException e) {
                                 R66Result result = new R66Result(
                                         new OpenR66RunnerErrorException("Bad final digest on receive operation", e),
@@ -18,9 +18,13 @@
 package org.waarp.openr66.database.model;
 
 import org.waarp.common.database.DbAdmin;
+import org.waarp.common.database.DbRequest;
+import org.waarp.common.database.DbSession;
 import org.waarp.common.database.exception.WaarpDatabaseNoConnectionException;
+import org.waarp.common.database.exception.WaarpDatabaseSqlException;
 import org.waarp.common.database.model.DbModel;
 import org.waarp.common.database.model.DbType;
+import org.waarp.openr66.database.data.DbTaskRunner;
 
 /**
  * Factory to store the Database Model object
@@ -69,4 +73,57 @@ public class DbModelFactory extends org.waarp.common.database.model.DbModelFacto
         return new DbAdmin(dbModel, dbserver, dbuser, dbpasswd,
                 write);
     }
+
+    /**
+     * Create the indexes on runner table following its main access paths, for all the database models
+     * (errors are ignored since only performance is at stake)
+     * 
+     * @param session
+     * @param createIndex
+     *            the index creation command of the database, as "CREATE INDEX "
+     * @param otherRequests
+     *            index creations specific to the database
+     * @throws WaarpDatabaseNoConnectionException
+     */
+    static void createAccessIndexes(DbSession session, String createIndex, String... otherRequests)
+            throws WaarpDatabaseNoConnectionException {
+        String[] accessRequests = DbTaskRunner.getAccessIndexRequests(createIndex);
+        String[] requests = new String[accessRequests.length + otherRequests.length];
+        System.arraycopy(accessRequests, 0, requests, 0, accessRequests.length);
+        System.arraycopy(otherRequests, 0, requests, accessRequests.length, otherRequests.length);
+        for (String action : requests) {
+            System.out.println(action);
+            DbRequest request = new DbRequest(session);
+            try {
+                request.query(action);
+            } catch (WaarpDatabaseSqlException e) {
+                if (isAlreadyExisting(e)) {
+                    System.out.println("Index already existing");
+                } else {
+                    e.printStackTrace();
+                }
+            } finally {
+                request.close();
+            }
+        }
+    }
+
+    /**
+     * @param e
+     * @return True if the error comes from an already existing object, whatever the database
+     */
+    private static boolean isAlreadyExisting(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null) {
+                message = message.toLowerCase();
+                // H2 and PostgreSQL, Oracle, MySQL and MariaDB
+                if (message.contains("already exists") || message.contains("already used")
+                        || message.contains("duplicate key name")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 }
@@ -239,6 +239,8 @@ public class DbModelH2 extends org.waarp.common.database.model.DbModelH2 {
             request.close();
         }
 
+        DbModelFactory.createAccessIndexes(session, "CREATE INDEX IF NOT EXISTS ");
+
         // cptrunner
         action = "CREATE SEQUENCE IF NOT EXISTS " + DbTaskRunner.fieldseq +
                 " START WITH " + (DbConstant.ILLEGALVALUE + 1) +
@@ -271,7 +273,7 @@ public class DbModelH2 extends org.waarp.common.database.model.DbModelH2 {
         }
 
         DbHostConfiguration.updateVersionDb(Configuration.configuration.getHOST_ID(),
-            R66Versions.V2_4_25.getVersion());
+            R66Versions.V3_1_0.getVersion());
     }
 
     @Override
@@ -434,8 +436,12 @@ public class DbModelH2 extends org.waarp.common.database.model.DbModelH2 {
                 request.close();
             }
         }
+        if (PartnerConfiguration.isVersion2GTVersion1(version, R66Versions.V3_1_0.getVersion())) {
+            System.out.println(version + " to " + R66Versions.V3_1_0.getVersion() + "? " + true);
+            DbModelFactory.createAccessIndexes(session, "CREATE INDEX IF NOT EXISTS ");
+        }
         DbHostConfiguration.updateVersionDb(Configuration.configuration.getHOST_ID(),
-                R66Versions.V2_4_25.getVersion());
+                R66Versions.V3_1_0.getVersion());
         return true;
     }
 
@@ -496,11 +502,11 @@ public class DbModelH2 extends org.waarp.common.database.model.DbModelH2 {
             }
         }
         request = null;
-        if (PartnerConfiguration.isVersion2GTVersion1(version, R66Versions.V2_4_25.getVersion())) {
+        if (PartnerConfiguration.isVersion2GTVersion1(version, R66Versions.V3_1_0.getVersion())) {
             try {
                 if (upgradeDb(session, version)) {
                     DbHostConfiguration.updateVersionDb(Configuration.configuration.getHOST_ID(),
-                            R66Versions.V2_4_25.getVersion());
+                            R66Versions.V3_1_0.getVersion());
                 } else {
                     return true;
                 }
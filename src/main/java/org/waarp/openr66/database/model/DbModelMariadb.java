@@ -242,6 +242,8 @@ public class DbModelMariadb extends org.waarp.common.database.model.DbModelMaria
             request.close();
         }
 
+        DbModelFactory.createAccessIndexes(session, "CREATE INDEX IF NOT EXISTS ");
+
         // cptrunner
         /*
          * # Table to handle any number of sequences: CREATE TABLE Sequences ( name VARCHAR(22) NOT
@@ -280,7 +282,7 @@ public class DbModelMariadb extends org.waarp.common.database.model.DbModelMaria
         }
 
         DbHostConfiguration.updateVersionDb(Configuration.configuration.getHOST_ID(),
-            R66Versions.V2_4_25.getVersion());
+            R66Versions.V3_1_0.getVersion());
     }
 
     @Override
@@ -482,8 +484,12 @@ public class DbModelMariadb extends org.waarp.common.database.model.DbModelMaria
                 request.close();
             }
         }
+        if (PartnerConfiguration.isVersion2GTVersion1(version, R66Versions.V3_1_0.getVersion())) {
+            System.out.println(version + " to " + R66Versions.V3_1_0.getVersion() + "? " + true);
+            DbModelFactory.createAccessIndexes(session, "CREATE INDEX IF NOT EXISTS ");
+        }
         DbHostConfiguration.updateVersionDb(Configuration.configuration.getHOST_ID(),
-                R66Versions.V2_4_25.getVersion());
+                R66Versions.V3_1_0.getVersion());
         return true;
     }
 
@@ -544,11 +550,11 @@ public class DbModelMariadb extends org.waarp.common.database.model.DbModelMaria
             }
         }
         request = null;
-        if (PartnerConfiguration.isVersion2GTVersion1(version, R66Versions.V2_4_25.getVersion())) {
+        if (PartnerConfiguration.isVersion2GTVersion1(version, R66Versions.V3_1_0.getVersion())) {
             try {
                 if (upgradeDb(session, version)) {
                     DbHostConfiguration.updateVersionDb(Configuration.configuration.getHOST_ID(),
-                            R66Versions.V2_4_25.getVersion());
+                            R66Versions.V3_1_0.getVersion());
                 } else {
                     return true;
                 }
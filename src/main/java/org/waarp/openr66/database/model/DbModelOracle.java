@@ -247,6 +247,8 @@ public class DbModelOracle extends org.waarp.common.database.model.DbModelOracle
             request.close();
         }
 
+        DbModelFactory.createAccessIndexes(session, "CREATE INDEX ");
+
         // cptrunner
         action = "CREATE SEQUENCE " + DbTaskRunner.fieldseq +
                 " MINVALUE " + (DbConstant.ILLEGALVALUE + 1) +
@@ -264,7 +266,7 @@ public class DbModelOracle extends org.waarp.common.database.model.DbModelOracle
         }
 
         DbHostConfiguration.updateVersionDb(Configuration.configuration.getHOST_ID(),
-            R66Versions.V2_4_25.getVersion());
+            R66Versions.V3_1_0.getVersion());
     }
 
     @Override
@@ -417,8 +419,12 @@ public class DbModelOracle extends org.waarp.common.database.model.DbModelOracle
                 request.close();
             }
         }
+        if (PartnerConfiguration.isVersion2GTVersion1(version, R66Versions.V3_1_0.getVersion())) {
+            System.out.println(version + " to " + R66Versions.V3_1_0.getVersion() + "? " + true);
+            DbModelFactory.createAccessIndexes(session, "CREATE INDEX ");
+        }
         DbHostConfiguration.updateVersionDb(Configuration.configuration.getHOST_ID(),
-                R66Versions.V2_4_25.getVersion());
+                R66Versions.V3_1_0.getVersion());
         return true;
     }
 
@@ -479,11 +485,11 @@ public class DbModelOracle extends org.waarp.common.database.model.DbModelOracle
             }
         }
         request = null;
-        if (PartnerConfiguration.isVersion2GTVersion1(version, R66Versions.V2_4_25.getVersion())) {
+        if (PartnerConfiguration.isVersion2GTVersion1(version, R66Versions.V3_1_0.getVersion())) {
             try {
                 if (upgradeDb(session, version)) {
                     DbHostConfiguration.updateVersionDb(Configuration.configuration.getHOST_ID(),
-                            R66Versions.V2_4_25.getVersion());
+                            R66Versions.V3_1_0.getVersion());
                 } else {
                     return true;
                 }
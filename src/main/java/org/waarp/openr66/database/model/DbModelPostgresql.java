@@ -22,6 +22,7 @@ import java.sql.SQLException;
 import org.waarp.common.database.DbPreparedStatement;
 import org.waarp.common.database.DbRequest;
 import org.waarp.common.database.DbSession;
+import org.waarp.common.database.data.AbstractDbData;
 import org.waarp.common.database.exception.WaarpDatabaseException;
 import org.waarp.common.database.exception.WaarpDatabaseNoConnectionException;
 import org.waarp.common.database.exception.WaarpDatabaseNoDataException;
@@ -260,6 +261,8 @@ public class DbModelPostgresql extends org.waarp.common.database.model.DbModelPo
             request.close();
         }
 
+        createAccessIndexes(session);
+
         // cptrunner
         action = "CREATE SEQUENCE " + DbTaskRunner.fieldseq +
                 " MINVALUE " + (DbConstant.ILLEGALVALUE + 1) +
@@ -278,7 +281,7 @@ public class DbModelPostgresql extends org.waarp.common.database.model.DbModelPo
         }
 
         DbHostConfiguration.updateVersionDb(Configuration.configuration.getHOST_ID(),
-            R66Versions.V2_4_25.getVersion());
+            R66Versions.V3_1_0.getVersion());
     }
 
     @Override
@@ -330,6 +333,29 @@ public class DbModelPostgresql extends org.waarp.common.database.model.DbModelPo
         }
     }
 
+    /**
+     * Create the indexes on runner table following its main access paths, plus the partial index for
+     * the Commander scan of transfers to submit (CREATE INDEX IF NOT EXISTS needs PostgreSQL 9.5, so
+     * already existing indexes are only reported)
+     * 
+     * @param session
+     * @throws WaarpDatabaseNoConnectionException
+     */
+    private void createAccessIndexes(DbSession session) throws WaarpDatabaseNoConnectionException {
+        DbModelFactory.createAccessIndexes(session, "CREATE INDEX ", getToSubmitIndexRequest());
+    }
+
+    /**
+     * 
+     * @return the creation of the partial index for the Commander scan of transfers to submit
+     */
+    public static String getToSubmitIndexRequest() {
+        return "CREATE INDEX IDX_RUNNER_TOSUBMIT ON " + DbTaskRunner.table + "("
+                + DbTaskRunner.Columns.OWNERREQ.name() + ", " + DbTaskRunner.Columns.STARTTRANS.name()
+                + ") WHERE " + DbTaskRunner.Columns.UPDATEDINFO.name() + " = "
+                + AbstractDbData.UpdatedInfo.TOSUBMIT.ordinal();
+    }
+
     public boolean upgradeDb(DbSession session, String version) throws WaarpDatabaseNoConnectionException {
         if (PartnerConfiguration.isVersion2GEQVersion1(version, R66Versions.V2_4_13.getVersion())) {
             System.out.println(version + " to " + R66Versions.V2_4_13.getVersion() + "? " + true);
@@ -436,8 +462,12 @@ public class DbModelPostgresql extends org.waarp.common.database.model.DbModelPo
                 request.close();
             }
         }
+        if (PartnerConfiguration.isVersion2GTVersion1(version, R66Versions.V3_1_0.getVersion())) {
+            System.out.println(version + " to " + R66Versions.V3_1_0.getVersion() + "? " + true);
+            createAccessIndexes(session);
+        }
         DbHostConfiguration.updateVersionDb(Configuration.configuration.getHOST_ID(),
-                R66Versions.V2_4_25.getVersion());
+                R66Versions.V3_1_0.getVersion());
         return true;
     }
 
@@ -498,11 +528,11 @@ public class DbModelPostgresql extends org.waarp.common.database.model.DbModelPo
             }
         }
         request = null;
-        if (PartnerConfiguration.isVersion2GTVersion1(version, R66Versions.V2_4_25.getVersion())) {
+        if (PartnerConfiguration.isVersion2GTVersion1(version, R66Versions.V3_1_0.getVersion())) {
             try {
                 if (upgradeDb(session, version)) {
                     DbHostConfiguration.updateVersionDb(Configuration.configuration.getHOST_ID(),
-                            R66Versions.V2_4_25.getVersion());
+                            R66Versions.V3_1_0.getVersion());
                 } else {
                     return true;
                 }
@@ -13,7 +13,9 @@ import javax.xml.bind.annotation.XmlType;
 import java.sql.Timestamp;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import static org.waarp.openr66.dao.database.DBTransferDAO.*;
 
@@ -122,12 +124,19 @@ public class Transfer {
     @XmlTransient
     private UpdatedInfo updatedInfo = UpdatedInfo.UNKNOWN;
 
+    /**
+     * Columns changed since the last load or save from the database, null if unknown
+     */
+    @XmlTransient
+    private Set<String> dirtyFields = null;
+
     @XmlElement(name = TRANSFER_START_FIELD)
     public long getXmlStart() {
         return start.getTime();
     }
 
     public void setXmlStart(long xml) {
+        markDirty(TRANSFER_START_FIELD);
         start = new Timestamp(xml);
     }
 
@@ -137,6 +146,7 @@ public class Transfer {
     }
 
     public void setXmlStop(long xml) {
+        markDirty(TRANSFER_STOP_FIELD);
         stop = new Timestamp(xml);
     }
 
@@ -284,6 +294,7 @@ public class Transfer {
     }
 
     public void setId(long id) {
+        markDirty(ID_FIELD);
         this.id = id;
     }
 
@@ -292,6 +303,7 @@ public class Transfer {
     }
 
     public void setRetrieveMode(boolean retrieveMode) {
+        markDirty(RETRIEVE_MODE_FIELD);
         this.retrieveMode = retrieveMode;
     }
 
@@ -300,6 +312,7 @@ public class Transfer {
     }
 
     public void setRule(String rule) {
+        markDirty(ID_RULE_FIELD);
         this.rule = rule;
     }
 
@@ -308,6 +321,7 @@ public class Transfer {
     }
 
     public void setTransferMode(int mode) {
+        markDirty(TRANSFER_MODE_FIELD);
         this.transferMode = mode;
     }
 
@@ -316,6 +330,7 @@ public class Transfer {
     }
 
     public void setFilename(String filename) {
+        markDirty(FILENAME_FIELD);
         this.filename = filename;
     }
 
@@ -324,6 +339,7 @@ public class Transfer {
     }
 
     public void setOriginalName(String originalName) {
+        markDirty(ORIGINAL_NAME_FIELD);
         this.originalName = originalName;
     }
 
@@ -332,6 +348,7 @@ public class Transfer {
     }
 
     public void setFileInfo(String fileInfo) {
+        markDirty(FILE_INFO_FIELD);
         this.fileInfo = fileInfo;
     }
 
@@ -340,6 +357,7 @@ public class Transfer {
     }
 
     public void setIsMoved(boolean isFileMoved) {
+        markDirty(IS_MOVED_FIELD);
         this.isFileMoved = isFileMoved;
     }
 
@@ -348,6 +366,7 @@ public class Transfer {
     }
 
     public void setBlockSize(int blockSize) {
+        markDirty(BLOCK_SIZE_FIELD);
         this.blockSize = blockSize;
     }
 
@@ -356,6 +375,7 @@ public class Transfer {
     }
 
     public void setOwnerRequest(String ownerRequest) {
+        markDirty(OWNER_REQUEST_FIELD);
         this.ownerRequest = ownerRequest;
     }
 
@@ -364,6 +384,7 @@ public class Transfer {
     }
 
     public void setRequester(String requester) {
+        markDirty(REQUESTER_FIELD);
         this.requester = requester;
     }
 
@@ -372,6 +393,7 @@ public class Transfer {
     }
 
     public void setRequested(String requested) {
+        markDirty(REQUESTED_FIELD);
         this.requested = requested;
     }
 
@@ -380,6 +402,7 @@ public class Transfer {
     }
 
     public void setTransferInfo(String transferInfo) {
+        markDirty(TRANSFER_INFO_FIELD);
         this.transferInfo = transferInfo;
     }
 
@@ -388,6 +411,7 @@ public class Transfer {
     }
 
     public void setGlobalStep(TASKSTEP globalStep) {
+        markDirty(GLOBAL_STEP_FIELD);
         this.globalStep = globalStep;
     }
     public TASKSTEP getLastGlobalStep() {
@@ -395,6 +419,7 @@ public class Transfer {
     }
 
     public void setLastGlobalStep(TASKSTEP lastGlobalStep) {
+        markDirty(GLOBAL_LAST_STEP_FIELD);
         this.lastGlobalStep = lastGlobalStep;
     }
 
@@ -403,6 +428,7 @@ public class Transfer {
     }
 
     public void setStep(int step) {
+        markDirty(STEP_FIELD);
         this.step = step;
     }
 
@@ -411,6 +437,7 @@ public class Transfer {
     }
 
     public void setStepStatus(ErrorCode stepStatus) {
+        markDirty(STEP_STATUS_FIELD);
         this.stepStatus = stepStatus;
     }
 
@@ -419,6 +446,7 @@ public class Transfer {
     }
 
     public void setInfoStatus(ErrorCode infoStatus) {
+        markDirty(INFO_STATUS_FIELD);
         this.infoStatus = infoStatus;
     }
 
@@ -427,6 +455,7 @@ public class Transfer {
     }
 
     public void setRank(int rank) {
+        markDirty(RANK_FIELD);
         this.rank = rank;
     }
 
@@ -435,6 +464,7 @@ public class Transfer {
     }
 
     public void setStart(Timestamp start) {
+        markDirty(TRANSFER_START_FIELD);
         this.start = start;
     }
 
@@ -443,6 +473,7 @@ public class Transfer {
     }
 
     public void setStop(Timestamp stop) {
+        markDirty(TRANSFER_STOP_FIELD);
         this.stop = stop;
     }
 
@@ -451,6 +482,40 @@ public class Transfer {
     }
 
     public void setUpdatedInfo(UpdatedInfo info) {
+        markDirty(UPDATED_INFO_FIELD);
         this.updatedInfo = info;
     }
+
+    private synchronized void markDirty(String field) {
+        if (dirtyFields != null) {
+            dirtyFields.add(field);
+        }
+    }
+
+    /**
+     * Called once this Transfer is in sync with the database: from now, changed columns are tracked
+     */
+    public synchronized void clearDirtyFields() {
+        dirtyFields = new HashSet<String>();
+    }
+
+    /**
+     * Called when the synchronization with the database failed: all columns will be written next time
+     */
+    public synchronized void resetDirtyFields() {
+        dirtyFields = null;
+    }
+
+    /**
+     * Get the columns changed since the last synchronization with the database and start tracking again
+     * 
+     * @return the changed columns, or null if unknown (all columns must be written)
+     */
+    public synchronized Set<String> takeDirtyFields() {
+        Set<String> fields = dirtyFields;
+        if (fields != null) {
+            dirtyFields = new HashSet<String>();
+        }
+        return fields;
+    }
 }
@@ -71,6 +71,8 @@ import org.waarp.openr66.configuration.FileBasedConfiguration;
 import org.waarp.openr66.context.R66BusinessFactoryInterface;
 import org.waarp.openr66.context.R66DefaultBusinessFactory;
 import org.waarp.openr66.context.R66FiniteDualStates;
+import org.waarp.openr66.context.filesystem.R66WriteStage;
+import org.waarp.openr66.context.task.TaskExecutionEngine;
 import org.waarp.openr66.context.task.localexec.LocalExecClient;
 import org.waarp.openr66.database.DbConstant;
 import org.waarp.openr66.database.data.DbHostAuth;
@@ -88,11 +90,15 @@ import org.waarp.openr66.protocol.localhandler.LocalTransaction;
 import org.waarp.openr66.protocol.localhandler.Monitoring;
 import org.waarp.openr66.protocol.networkhandler.NetworkServerInitializer;
 import org.waarp.openr66.protocol.networkhandler.NetworkTransaction;
+import org.waarp.openr66.protocol.networkhandler.R66ChannelTrafficShapingHandler;
 import org.waarp.openr66.protocol.networkhandler.R66ConstraintLimitHandler;
+import org.waarp.openr66.protocol.networkhandler.R66GlobalTrafficShapingHandler;
 import org.waarp.openr66.protocol.networkhandler.ssl.NetworkSslServerInitializer;
+import org.waarp.openr66.protocol.snmp.R66NotificationDispatcher;
 import org.waarp.openr66.protocol.snmp.R66PrivateMib;
 import org.waarp.openr66.protocol.snmp.R66VariableFactory;
 import org.waarp.openr66.protocol.utils.ChannelUtils;
+import org.waarp.openr66.protocol.utils.FileDigestCache;
 import org.waarp.openr66.protocol.utils.R66ShutdownHook;
 import org.waarp.openr66.protocol.utils.Version;
 import org.waarp.openr66.thrift.R66ThriftServerService;
@@ -293,6 +299,109 @@ public class Configuration {
      */
     private final List<RestConfiguration> restConfigurations = new ArrayList<RestConfiguration>();
 
+    /**
+     * Max size of a REST request body: default is 1MB
+     */
+    private int restMaxBodySize = 0x100000;
+
+    /**
+     * Max size of a REST request body for bulk operations: default is 64MB
+     */
+    private int restMaxBulkBodySize = 0x4000000;
+
+    /**
+     * Number of disk writer threads per target directory: default is 0 (writes done by the local handler)
+     */
+    private int diskWriteThreads = 0;
+
+    /**
+     * Max number of bytes waiting to be written per target directory before pausing the network reads:
+     * default is 16MB
+     */
+    private long diskWriteQueueSize = 0x1000000;
+
+    /**
+     * Disk write stage if enabled
+     */
+    private R66WriteStage writeStage = null;
+
+    /**
+     * Number of threads running the rule tasks: default is 0 (tasks run by the transfer thread)
+     */
+    private int taskThreads = 0;
+
+    /**
+     * Max number of tasks running concurrently per TaskType, as "EXEC:4,ZIP:2"
+     */
+    private String taskTypeLimits = null;
+
+    /**
+     * Max number of tasks running concurrently per rule: default is 0 (no limit)
+     */
+    private int taskRuleLimit = 0;
+
+    /**
+     * Max time in ms for a task to wait for its turn: default is 0 (no limit)
+     */
+    private long taskQueueTimeout = 0;
+
+    /**
+     * Task execution engine if enabled
+     */
+    private TaskExecutionEngine taskExecutionEngine = null;
+
+    /**
+     * Cache of file digests: default is 1000 entries
+     */
+    private FileDigestCache fileDigestCache = new FileDigestCache(1000);
+
+    /**
+     * Resume SSL sessions per partner when reconnecting: default is False
+     */
+    private boolean sslSessionResumption = false;
+
+    /**
+     * Max number of parallel connections to one partner: default is 1
+     */
+    private int connectionsPerPartner = 1;
+
+    /**
+     * Run the network handler on the event loop of its channel instead of the handler group: default is False
+     */
+    private boolean handlerInline = false;
+
+    /**
+     * Send files without copy (no SSL, no MD5 per block, no bandwidth limitation): default is False
+     */
+    private boolean zeroCopy = false;
+
+    /**
+     * Maximum number of pooled database connections used by the DAOs: default is 0 (meaning 3 per
+     * client thread plus the task threads)
+     */
+    private int dbPoolSize = 0;
+
+    /**
+     * Record a trace of the phases of each transfer (states, tasks, connection): default is False
+     */
+    private boolean traceEnabled = false;
+
+    /**
+     * Maximum block size proposed or accepted when adapting the block size to the link with each
+     * partner: default is 0 (meaning no adaptation, BLOCKSIZE is used)
+     */
+    private int maxBlockSize = 0;
+
+    /**
+     * Maximum number of SNMP notifications waiting to be sent: default is 1000
+     */
+    private int snmpQueueSize = R66NotificationDispatcher.DEFAULT_QUEUE_SIZE;
+
+    /**
+     * Maximum number of SNMP notifications sent per second (0 for no limit): default is 100
+     */
+    private int snmpMaxPerSecond = R66NotificationDispatcher.DEFAULT_MAX_PER_SECOND;
+
     /**
      * Base Directory
      */
@@ -672,6 +781,13 @@ public class Configuration {
         localBossGroup = new NioEventLoopGroup(getCLIENT_THREAD(), new WaarpThreadFactory("LocalBoss"));
         localWorkerGroup = new NioEventLoopGroup(3*getCLIENT_THREAD(), new WaarpThreadFactory("LocalWorker"));
         localTransaction = new LocalTransaction();
+        if (getDiskWriteThreads() > 0) {
+            writeStage = new R66WriteStage(getDiskWriteThreads(), getDiskWriteQueueSize());
+        }
+        if (getTaskThreads() > 0) {
+            taskExecutionEngine = new TaskExecutionEngine(getTaskThreads(), getTaskTypeLimits(),
+                    getTaskRuleLimit(), getTaskQueueTimeout());
+        }
         WaarpLoggerFactory.setDefaultFactory(WaarpLoggerFactory.getDefaultFactory());
         if (isWarnOnStartup()) {
             logger.warn("Server Thread: " + getSERVER_THREAD() + " Client Thread: " + getCLIENT_THREAD()
@@ -795,7 +911,7 @@ public class Configuration {
     }
 
     public void setupLimitHandler() {
-        globalTrafficShapingHandler = new GlobalTrafficShapingHandler(
+        globalTrafficShapingHandler = new R66GlobalTrafficShapingHandler(
                 subTaskGroup, getServerGlobalWriteLimit(),
                 getServerGlobalReadLimit(), getDelayLimit());
         this.getConstraintLimitHandler().setHandler(
@@ -932,6 +1048,12 @@ public class Configuration {
         if (localWorkerGroup != null && !localWorkerGroup.isShuttingDown()) {
             localWorkerGroup.shutdownGracefully();
         }
+        if (writeStage != null) {
+            writeStage.shutdown();
+        }
+        if (taskExecutionEngine != null) {
+            taskExecutionEngine.shutdown();
+        }
     }
 
     public void shutdownQuickly() {
@@ -962,6 +1084,12 @@ public class Configuration {
         if (localWorkerGroup != null && !localWorkerGroup.isShuttingDown()) {
             localWorkerGroup.shutdownGracefully(10, 10, TimeUnit.MILLISECONDS);
         }
+        if (writeStage != null) {
+            writeStage.shutdown();
+        }
+        if (taskExecutionEngine != null) {
+            taskExecutionEngine.shutdown();
+        }
     }
 
     /**
@@ -977,6 +1105,9 @@ public class Configuration {
         if (scheduledExecutorService != null) {
             scheduledExecutorService.shutdown();
         }
+        if (getR66Mib() != null) {
+            getR66Mib().stopDispatcher();
+        }
         if (getAgentSnmp() != null) {
             getAgentSnmp().stop();
         } else if (getMonitoring() != null) {
@@ -1131,7 +1262,7 @@ public class Configuration {
      */
     @Deprecated
     public ChannelTrafficShapingHandler newChannelTrafficShapingHandler() {
-        return new ChannelTrafficShapingHandler(getServerChannelWriteLimit(),
+        return new R66ChannelTrafficShapingHandler(getServerChannelWriteLimit(),
                 getServerChannelReadLimit(), getDelayLimit());
     }
 
@@ -1684,6 +1815,273 @@ public class Configuration {
         return restConfigurations;
     }
 
+    /**
+     * @return the restMaxBodySize
+     */
+    public int getRestMaxBodySize() {
+        return restMaxBodySize;
+    }
+
+    /**
+     * @param restMaxBodySize the restMaxBodySize to set
+     */
+    public void setRestMaxBodySize(int restMaxBodySize) {
+        this.restMaxBodySize = restMaxBodySize;
+    }
+
+    /**
+     * @return the restMaxBulkBodySize
+     */
+    public int getRestMaxBulkBodySize() {
+        return restMaxBulkBodySize;
+    }
+
+    /**
+     * @param restMaxBulkBodySize the restMaxBulkBodySize to set
+     */
+    public void setRestMaxBulkBodySize(int restMaxBulkBodySize) {
+        this.restMaxBulkBodySize = restMaxBulkBodySize;
+    }
+
+    /**
+     * @return the diskWriteThreads
+     */
+    public int getDiskWriteThreads() {
+        return diskWriteThreads;
+    }
+
+    /**
+     * @param diskWriteThreads the diskWriteThreads to set
+     */
+    public void setDiskWriteThreads(int diskWriteThreads) {
+        this.diskWriteThreads = diskWriteThreads;
+    }
+
+    /**
+     * @return the diskWriteQueueSize
+     */
+    public long getDiskWriteQueueSize() {
+        return diskWriteQueueSize;
+    }
+
+    /**
+     * @param diskWriteQueueSize the diskWriteQueueSize to set
+     */
+    public void setDiskWriteQueueSize(long diskWriteQueueSize) {
+        this.diskWriteQueueSize = diskWriteQueueSize;
+    }
+
+    /**
+     * @return the disk write stage, or null if writes are done by the local handler
+     */
+    public R66WriteStage getWriteStage() {
+        return writeStage;
+    }
+
+    /**
+     * @return the taskThreads
+     */
+    public int getTaskThreads() {
+        return taskThreads;
+    }
+
+    /**
+     * @param taskThreads the taskThreads to set
+     */
+    public void setTaskThreads(int taskThreads) {
+        this.taskThreads = taskThreads;
+    }
+
+    /**
+     * @return the taskTypeLimits
+     */
+    public String getTaskTypeLimits() {
+        return taskTypeLimits;
+    }
+
+    /**
+     * @param taskTypeLimits the taskTypeLimits to set
+     */
+    public void setTaskTypeLimits(String taskTypeLimits) {
+        this.taskTypeLimits = taskTypeLimits;
+    }
+
+    /**
+     * @return the taskRuleLimit
+     */
+    public int getTaskRuleLimit() {
+        return taskRuleLimit;
+    }
+
+    /**
+     * @param taskRuleLimit the taskRuleLimit to set
+     */
+    public void setTaskRuleLimit(int taskRuleLimit) {
+        this.taskRuleLimit = taskRuleLimit;
+    }
+
+    /**
+     * @return the taskQueueTimeout
+     */
+    public long getTaskQueueTimeout() {
+        return taskQueueTimeout;
+    }
+
+    /**
+     * @param taskQueueTimeout the taskQueueTimeout to set
+     */
+    public void setTaskQueueTimeout(long taskQueueTimeout) {
+        this.taskQueueTimeout = taskQueueTimeout;
+    }
+
+    /**
+     * @return the task execution engine, or null if tasks are run by the transfer thread
+     */
+    public TaskExecutionEngine getTaskExecutionEngine() {
+        return taskExecutionEngine;
+    }
+
+    /**
+     * @return the cache of file digests, or null if disabled
+     */
+    public FileDigestCache getFileDigestCache() {
+        return fileDigestCache;
+    }
+
+    /**
+     * @param size
+     *            the max number of file digests kept in cache (0 to disable the cache)
+     */
+    public void setFileDigestCacheSize(int size) {
+        this.fileDigestCache = size > 0 ? new FileDigestCache(size) : null;
+    }
+
+    /**
+     * @return the sslSessionResumption
+     */
+    public boolean isSslSessionResumption() {
+        return sslSessionResumption;
+    }
+
+    /**
+     * @param sslSessionResumption the sslSessionResumption to set
+     */
+    public void setSslSessionResumption(boolean sslSessionResumption) {
+        this.sslSessionResumption = sslSessionResumption;
+    }
+
+    /**
+     * @return the connectionsPerPartner
+     */
+    public int getConnectionsPerPartner() {
+        return connectionsPerPartner;
+    }
+
+    /**
+     * @param connectionsPerPartner the connectionsPerPartner to set
+     */
+    public void setConnectionsPerPartner(int connectionsPerPartner) {
+        this.connectionsPerPartner = connectionsPerPartner;
+    }
+
+    /**
+     * @return the handlerInline
+     */
+    public boolean isHandlerInline() {
+        return handlerInline;
+    }
+
+    /**
+     * @param handlerInline the handlerInline to set
+     */
+    public void setHandlerInline(boolean handlerInline) {
+        this.handlerInline = handlerInline;
+    }
+
+    /**
+     * @return the zeroCopy
+     */
+    public boolean isZeroCopy() {
+        return zeroCopy;
+    }
+
+    /**
+     * @param zeroCopy the zeroCopy to set
+     */
+    public void setZeroCopy(boolean zeroCopy) {
+        this.zeroCopy = zeroCopy;
+    }
+
+    /**
+     * @return the dbPoolSize
+     */
+    public int getDbPoolSize() {
+        return dbPoolSize;
+    }
+
+    /**
+     * @param dbPoolSize the dbPoolSize to set
+     */
+    public void setDbPoolSize(int dbPoolSize) {
+        this.dbPoolSize = dbPoolSize;
+    }
+
+    /**
+     * @return the traceEnabled
+     */
+    public boolean isTraceEnabled() {
+        return traceEnabled;
+    }
+
+    /**
+     * @param traceEnabled the traceEnabled to set
+     */
+    public void setTraceEnabled(boolean traceEnabled) {
+        this.traceEnabled = traceEnabled;
+    }
+
+    /**
+     * @return the maxBlockSize
+     */
+    public int getMaxBlockSize() {
+        return maxBlockSize;
+    }
+
+    /**
+     * @param maxBlockSize the maxBlockSize to set
+     */
+    public void setMaxBlockSize(int maxBlockSize) {
+        this.maxBlockSize = maxBlockSize;
+    }
+
+    /**
+     * @return the snmpQueueSize
+     */
+    public int getSnmpQueueSize() {
+        return snmpQueueSize;
+    }
+
+    /**
+     * @param snmpQueueSize the snmpQueueSize to set
+     */
+    public void setSnmpQueueSize(int snmpQueueSize) {
+        this.snmpQueueSize = snmpQueueSize;
+    }
+
+    /**
+     * @return the snmpMaxPerSecond
+     */
+    public int getSnmpMaxPerSecond() {
+        return snmpMaxPerSecond;
+    }
+
+    /**
+     * @param snmpMaxPerSecond the snmpMaxPerSecond to set
+     */
+    public void setSnmpMaxPerSecond(int snmpMaxPerSecond) {
+        this.snmpMaxPerSecond = snmpMaxPerSecond;
+    }
+
     /**
      * @return the baseDirectory
      */
@@ -30,6 +30,7 @@ import org.waarp.openr66.protocol.utils.Version;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Partner Configuration
@@ -79,6 +80,113 @@ public class PartnerConfiguration {
         }
     }
 
+    /**
+     * Measured characteristics of the link with one partner, used to adapt the block size
+     */
+    public static class LinkStatistics {
+        /**
+         * Transfers smaller than this are not significant for the throughput
+         */
+        private static final long MIN_SIGNIFICANT_SIZE = 1024 * 1024;
+        /**
+         * Targeted duration of one block in nanoseconds (and so about one database update per second
+         * during a transfer, since progress is saved every 100 blocks)
+         */
+        private static final long TARGET_BLOCK_NANOS = 10000000L;
+
+        /**
+         * Round trip time in nanoseconds (moving average), -1 if unknown
+         */
+        private volatile long rttNanos = -1;
+        /**
+         * Throughput in bytes per second (moving average), -1 if unknown
+         */
+        private volatile long throughput = -1;
+
+        private LinkStatistics() {
+        }
+
+        /**
+         * @param nanos
+         *            one measured round trip in nanoseconds
+         */
+        public void recordRtt(long nanos) {
+            if (nanos <= 0) {
+                return;
+            }
+            long previous = rttNanos;
+            rttNanos = previous < 0 ? nanos : (previous * 7 + nanos) / 8;
+        }
+
+        /**
+         * @param bytes
+         *            number of bytes transferred
+         * @param nanos
+         *            duration of the data transfer in nanoseconds
+         */
+        public void recordThroughput(long bytes, long nanos) {
+            if (bytes < MIN_SIGNIFICANT_SIZE || nanos <= 0) {
+                return;
+            }
+            long measure = (long) (bytes * 1000000000.0 / nanos);
+            long previous = throughput;
+            throughput = previous < 0 ? measure : (previous * 3 + measure) / 4;
+        }
+
+        /**
+         * @return the round trip time in nanoseconds, -1 if unknown
+         */
+        public long getRttNanos() {
+            return rttNanos;
+        }
+
+        /**
+         * @return the throughput in bytes per second, -1 if unknown
+         */
+        public long getThroughput() {
+            return throughput;
+        }
+
+        /**
+         * The block size is chosen to carry about 10 ms of data and at least 1/8 of the bandwidth
+         * delay product, rounded down to a power of 2 and bounded by the given limits.
+         * 
+         * @param minBlockSize
+         * @param maxBlockSize
+         * @return the block size adapted to this link
+         */
+        public int getAdaptiveBlockSize(int minBlockSize, int maxBlockSize) {
+            long bps = throughput;
+            if (bps <= 0 || maxBlockSize <= minBlockSize) {
+                return minBlockSize;
+            }
+            double target = bps * (TARGET_BLOCK_NANOS / 1000000000.0);
+            long rtt = rttNanos;
+            if (rtt > 0) {
+                target = Math.max(target, bps * (rtt / 1000000000.0) / 8);
+            }
+            if (target <= minBlockSize) {
+                return minBlockSize;
+            }
+            if (target >= maxBlockSize) {
+                return maxBlockSize;
+            }
+            int blocksize = Integer.highestOneBit((int) target);
+            return Math.max(blocksize, minBlockSize);
+        }
+
+        @Override
+        public String toString() {
+            return "rtt: " + (rttNanos / 1000) + "us throughput: " + throughput + "B/s";
+        }
+    }
+
+    /**
+     * Link statistics by HostId, kept apart from the PartnerConfiguration since this one is
+     * recreated at each authentication
+     */
+    private static final ConcurrentHashMap<String, LinkStatistics> linkStatistics = new ConcurrentHashMap<String, LinkStatistics>();
+
     private String id;
     private ObjectNode root = JsonHandler.createObjectNode();
     private boolean useJson = false;
@@ -165,6 +273,14 @@ public class PartnerConfiguration {
         return id;
     }
 
+    /**
+     * 
+     * @return the statistics of the link with this Host
+     */
+    public LinkStatistics getLinkStatistics() {
+        return getLinkStatistics(id);
+    }
+
     /**
      * 
      * @return the version for this Host
@@ -249,6 +365,23 @@ public class PartnerConfiguration {
         return Configuration.configuration.getDigest();
     }
 
+    /**
+     * 
+     * @param hostId
+     * @return the statistics of the link with this Host
+     */
+    public final static LinkStatistics getLinkStatistics(String hostId) {
+        LinkStatistics statistics = linkStatistics.get(hostId);
+        if (statistics == null) {
+            statistics = new LinkStatistics();
+            LinkStatistics previous = linkStatistics.putIfAbsent(hostId, statistics);
+            if (previous != null) {
+                statistics = previous;
+            }
+        }
+        return statistics;
+    }
+
     /**
      * 
      * @param remoteHost
@@ -218,9 +218,9 @@ public class HttpResponsiveSslHandler extends SimpleChannelInboundHandler<FullHt
     }
 
     private String readFileHeader(String filename) {
-        String value;
+        HttpTemplate template;
         try {
-            value = WaarpStringUtils.readFileException(filename);
+            template = HttpTemplate.getTemplate(filename);
         } catch (InvalidArgumentException e) {
             logger.error("Error while trying to open: " + filename, e);
             return "";
@@ -228,47 +228,48 @@ public class HttpResponsiveSslHandler extends SimpleChannelInboundHandler<FullHt
             logger.error("Error while trying to read: " + filename, e);
             return "";
         }
-        StringBuilder builder = new StringBuilder(value);
-        WaarpStringUtils.replace(builder, REPLACEMENT.XXXLOCALXXX.toString(),
+        Map<String, String> first = new HashMap<String, String>();
+        Map<String, String> all = new HashMap<String, String>();
+        first.put(REPLACEMENT.XXXLOCALXXX.toString(),
                 Integer.toString(
                         Configuration.configuration.getLocalTransaction().
                                 getNumberLocalChannel()) + " Thread(" + Thread.activeCount()+")");
-        WaarpStringUtils.replace(builder, REPLACEMENT.XXXNETWORKXXX.toString(),
+        first.put(REPLACEMENT.XXXNETWORKXXX.toString(),
                 Integer.toString(
                         DbAdmin.getNbConnection() - Configuration.getNBDBSESSION()));
-        WaarpStringUtils.replace(builder, REPLACEMENT.XXXNBTRANSFERSXXX.toString(),
+        first.put(REPLACEMENT.XXXNBTRANSFERSXXX.toString(),
                 Long.toString(Configuration.configuration.getMonitoring().nbCountAllRunningStep));
-        WaarpStringUtils.replaceAll(builder, REPLACEMENT.XXXHOSTIDXXX.toString(),
+        all.put(REPLACEMENT.XXXHOSTIDXXX.toString(),
                 Configuration.configuration.getHOST_ID());
         if (authentHttp.isAuthenticated()) {
-            WaarpStringUtils.replace(builder, REPLACEMENT.XXXADMINXXX.toString(),
+            first.put(REPLACEMENT.XXXADMINXXX.toString(),
                     Messages.getString("HttpSslHandler.1")); //$NON-NLS-1$
         } else {
-            WaarpStringUtils.replace(builder, REPLACEMENT.XXXADMINXXX.toString(),
+            first.put(REPLACEMENT.XXXADMINXXX.toString(),
                     Messages.getString("HttpSslHandler.0")); //$NON-NLS-1$
         }
         TrafficCounter trafficCounter =
                 Configuration.configuration.getGlobalTrafficShapingHandler().trafficCounter();
         long read = trafficCounter.lastReadThroughput();
         long write = trafficCounter.lastWriteThroughput();
-        WaarpStringUtils.replace(builder, REPLACEMENT.XXXBANDWIDTHXXX.toString(),
+        first.put(REPLACEMENT.XXXBANDWIDTHXXX.toString(),
                 Messages.getString("HttpSslHandler.IN") + (read >> 20) + //$NON-NLS-1$
                         Messages.getString("HttpSslHandler.MOPS") + //$NON-NLS-1$
                         Messages.getString("HttpSslHandler.OUT") + //$NON-NLS-1$
                         (write >> 20) +
                         Messages.getString("HttpSslHandler.MOPS")); //$NON-NLS-1$
-        WaarpStringUtils.replace(builder, REPLACEMENT.XXXBANDWIDTHINXXX.toString(),
+        first.put(REPLACEMENT.XXXBANDWIDTHINXXX.toString(),
                 (read >> 20) + //$NON-NLS-1$
                         Messages.getString("HttpSslHandler.MOPS")); //$NON-NLS-1$
-        WaarpStringUtils.replace(builder, REPLACEMENT.XXXBANDWIDTHOUTXXX.toString(),
+        first.put(REPLACEMENT.XXXBANDWIDTHOUTXXX.toString(),
                 (write >> 20) +
                         Messages.getString("HttpSslHandler.MOPS")); //$NON-NLS-1$
-        WaarpStringUtils.replaceAll(builder, REPLACEMENT.XXXLIMITROWXXX.toString(),
+        all.put(REPLACEMENT.XXXLIMITROWXXX.toString(),
                 "" + getLIMITROW());
-        WaarpStringUtils.replaceAll(builder, REPLACEMENT.XXXREFRESHXXX.toString(),
+        all.put(REPLACEMENT.XXXREFRESHXXX.toString(),
                 "" + (getREFRESH()/1000));
-        WaarpStringUtils.replaceAll(builder, REPLACEMENT.XXXLANGXXX.toString(), lang);
-        return builder.toString();
+        all.put(REPLACEMENT.XXXLANGXXX.toString(), lang);
+        return template.render(first, all);
     }
 
     private String getTrimValue(String varname) {
@@ -2073,6 +2074,10 @@ public class HttpResponsiveSslHandler extends SimpleChannelInboundHandler<FullHt
         if (uriRequest.contains("gre/") || uriRequest.contains("img/") ||
                 uriRequest.contains("app/") || uriRequest.contains("css/") || uriRequest.contains("js/") || uriRequest.contains("datatable/") ||
                 uriRequest.contains("res/") || uriRequest.contains("favicon.ico")) {
+            if (HttpStaticResource.writeResource(request, ctx,
+                    Configuration.configuration.getHttpBasePath() + uriRequest)) {
+                return;
+            }
             HttpWriteCacheEnable.writeFile(request,
                     ctx, Configuration.configuration.getHttpBasePath() + uriRequest,
                     R66SESSION + Configuration.configuration.getHOST_ID());
@@ -20,6 +20,7 @@ package org.waarp.openr66.protocol.http.adminssl;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -249,9 +250,9 @@ public class HttpSslHandler extends SimpleChannelInboundHandler<FullHttpRequest>
     }
 
     private String readFileHeader(String filename) {
-        String value;
+        HttpTemplate template;
         try {
-            value = WaarpStringUtils.readFileException(filename);
+            template = HttpTemplate.getTemplate(filename);
         } catch (InvalidArgumentException e) {
             logger.error("Error while trying to open: " + filename, e);
             return "";
@@ -259,35 +260,35 @@ public class HttpSslHandler extends SimpleChannelInboundHandler<FullHttpRequest>
             logger.error("Error while trying to read: " + filename, e);
             return "";
         }
-        StringBuilder builder = new StringBuilder(value);
-        WaarpStringUtils.replace(builder, REPLACEMENT.XXXLOCALXXX.toString(),
+        Map<String, String> first = new HashMap<String, String>();
+        first.put(REPLACEMENT.XXXLOCALXXX.toString(),
                 Integer.toString(
                         Configuration.configuration.getLocalTransaction().
                                 getNumberLocalChannel()) + " " + Thread.activeCount());
-        WaarpStringUtils.replace(builder, REPLACEMENT.XXXNETWORKXXX.toString(),
+        first.put(REPLACEMENT.XXXNETWORKXXX.toString(),
                 Integer.toString(
                         DbAdmin.getNbConnection() - Configuration.getNBDBSESSION()));
-        WaarpStringUtils.replace(builder, REPLACEMENT.XXXHOSTIDXXX.toString(),
+        first.put(REPLACEMENT.XXXHOSTIDXXX.toString(),
                 Configuration.configuration.getHOST_ID());
         if (authentHttp.isAuthenticated()) {
-            WaarpStringUtils.replace(builder, REPLACEMENT.XXXADMINXXX.toString(),
+            first.put(REPLACEMENT.XXXADMINXXX.toString(),
                     Messages.getString("HttpSslHandler.1")); //$NON-NLS-1$
         } else {
-            WaarpStringUtils.replace(builder, REPLACEMENT.XXXADMINXXX.toString(),
+            first.put(REPLACEMENT.XXXADMINXXX.toString(),
                     Messages.getString("HttpSslHandler.0")); //$NON-NLS-1$
         }
         TrafficCounter trafficCounter =
                 Configuration.configuration.getGlobalTrafficShapingHandler().trafficCounter();
-        WaarpStringUtils.replace(builder, REPLACEMENT.XXXBANDWIDTHXXX.toString(),
+        first.put(REPLACEMENT.XXXBANDWIDTHXXX.toString(),
                 Messages.getString("HttpSslHandler.IN") + (trafficCounter.lastReadThroughput() >> 20) + //$NON-NLS-1$
                         Messages.getString("HttpSslHandler.MOPS") + //$NON-NLS-1$
                         Messages.getString("HttpSslHandler.OUT") + //$NON-NLS-1$
                         (trafficCounter.lastWriteThroughput() >> 20) +
                         Messages.getString("HttpSslHandler.MOPS")); //$NON-NLS-1$
-        WaarpStringUtils.replace(builder, REPLACEMENT.XXXLIMITROWXXX.toString(),
+        first.put(REPLACEMENT.XXXLIMITROWXXX.toString(),
                 "" + getLIMITROW());
-        WaarpStringUtils.replace(builder, REPLACEMENT.XXXLANGXXX.toString(), lang);
-        return builder.toString();
+        first.put(REPLACEMENT.XXXLANGXXX.toString(), lang);
+        return template.render(first, null);
     }
 
     private String getTrimValue(String varname) {
@@ -2091,6 +2092,10 @@ public class HttpSslHandler extends SimpleChannelInboundHandler<FullHttpRequest>
         logger.debug("Msg: " + uriRequest);
         if (uriRequest.contains("gre/") || uriRequest.contains("img/") ||
                 uriRequest.contains("res/") || uriRequest.contains("favicon.ico")) {
+            if (HttpStaticResource.writeResource(request, ctx,
+                    Configuration.configuration.getHttpBasePath() + uriRequest)) {
+                return;
+            }
             HttpWriteCacheEnable.writeFile(request,
                     ctx, Configuration.configuration.getHttpBasePath() + uriRequest,
                     R66SESSION + Configuration.configuration.getHOST_ID());
@@ -0,0 +1,262 @@
+/**
+ * This file is part of Waarp Project.
+ * 
+ * Copyright 2009, Frederic Bregier, and individual contributors by the @author tags. See the
+ * COPYRIGHT.txt in the distribution for a full listing of individual contributors.
+ * 
+ * All Waarp Project is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * Waarp is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Waarp . If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.waarp.openr66.protocol.http.adminssl;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.waarp.common.crypto.ssl.WaarpSslUtility;
+import org.waarp.common.logging.WaarpLogger;
+import org.waarp.common.logging.WaarpLoggerFactory;
+
+/**
+ * Static resource (css, js, images...) of the Admin HTTPS interface, cached in memory with its
+ * gzip version and its ETag.<br>
+ * <br>
+ * Only files up to MAX_CACHED_SIZE are handled here; the cached version is reloaded when the file
+ * is changed on disk (checked at most once per CHECK_DELAY ms).
+ */
+public class HttpStaticResource {
+    /**
+     * Internal Logger
+     */
+    private static final WaarpLogger logger = WaarpLoggerFactory
+            .getLogger(HttpStaticResource.class);
+    /**
+     * Maximum size of a cached file
+     */
+    private static final long MAX_CACHED_SIZE = 1024 * 1024;
+    /**
+     * Minimal delay between 2 checks of the file on disk
+     */
+    private static final long CHECK_DELAY = 1000;
+    /**
+     * Max-Age in seconds given to the browser
+     */
+    private static final int MAX_AGE = 3600;
+
+    private static final Map<String, String> contentTypes = new HashMap<String, String>();
+    static {
+        contentTypes.put("html", "text/html");
+        contentTypes.put("htm", "text/html");
+        contentTypes.put("css", "text/css");
+        contentTypes.put("js", "application/javascript");
+        contentTypes.put("json", "application/json");
+        contentTypes.put("txt", "text/plain");
+        contentTypes.put("xml", "application/xml");
+        contentTypes.put("svg", "image/svg+xml");
+        contentTypes.put("png", "image/png");
+        contentTypes.put("gif", "image/gif");
+        contentTypes.put("jpg", "image/jpeg");
+        contentTypes.put("jpeg", "image/jpeg");
+        contentTypes.put("ico", "image/x-icon");
+        contentTypes.put("woff", "application/font-woff");
+        contentTypes.put("woff2", "font/woff2");
+        contentTypes.put("ttf", "application/x-font-ttf");
+        contentTypes.put("eot", "application/vnd.ms-fontobject");
+    }
+
+    private static final ConcurrentHashMap<String, HttpStaticResource> resources =
+            new ConcurrentHashMap<String, HttpStaticResource>();
+
+    private final File file;
+    private final long lastModified;
+    private final long length;
+    private volatile long lastCheck;
+    private final byte[] content;
+    /**
+     * Null if not compressible or not worth it
+     */
+    private final byte[] gzipContent;
+    private final String etag;
+    private final String contentType;
+
+    private HttpStaticResource(File file) throws IOException {
+        this.file = file;
+        this.lastModified = file.lastModified();
+        this.length = file.length();
+        this.lastCheck = System.currentTimeMillis();
+        content = readFile(file);
+        contentType = getContentType(file.getName());
+        if (isCompressible(contentType)) {
+            byte[] gzip = gzip(content);
+            gzipContent = gzip.length < content.length ? gzip : null;
+        } else {
+            gzipContent = null;
+        }
+        etag = "\"" + Long.toHexString(lastModified) + '-' + Long.toHexString(content.length) + "\"";
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static byte[] gzip(byte[] source) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(source.length / 2 + 64);
+        GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
+        try {
+            gzipOutputStream.write(source);
+        } finally {
+            gzipOutputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static String getContentType(String filename) {
+        int pos = filename.lastIndexOf('.');
+        if (pos >= 0) {
+            String type = contentTypes.get(filename.substring(pos + 1).toLowerCase());
+            if (type != null) {
+                return type;
+            }
+        }
+        return "application/octet-stream";
+    }
+
+    private static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/") || contentType.endsWith("javascript") ||
+                contentType.endsWith("json") || contentType.endsWith("xml");
+    }
+
+    /**
+     * 
+     * @return True if the file on disk is still the one loaded
+     */
+    private boolean isValid() {
+        long now = System.currentTimeMillis();
+        if (now - lastCheck < CHECK_DELAY) {
+            return true;
+        }
+        lastCheck = now;
+        return file.lastModified() == lastModified && file.length() == length;
+    }
+
+    /**
+     * 
+     * @param filename
+     * @return the cached resource, or null if this file cannot be cached
+     */
+    private static HttpStaticResource getResource(String filename) {
+        HttpStaticResource resource = resources.get(filename);
+        if (resource != null && resource.isValid()) {
+            return resource;
+        }
+        if (resource != null) {
+            resources.remove(filename);
+        }
+        File file = new File(filename);
+        if (!file.isFile() || !file.canRead() || file.length() > MAX_CACHED_SIZE) {
+            return null;
+        }
+        try {
+            resource = new HttpStaticResource(file);
+        } catch (IOException e) {
+            logger.debug("Cannot cache: " + filename, e);
+            return null;
+        }
+        resources.put(filename, resource);
+        return resource;
+    }
+
+    /**
+     * Clear all cached resources
+     */
+    public static void clear() {
+        resources.clear();
+    }
+
+    /**
+     * Write the static resource, or a 304 Not Modified if the browser already has it
+     * 
+     * @param request
+     * @param ctx
+     * @param filename
+     * @return True if written, False if this file is not handled here (not found, too big, out of
+     *         the base path) and shall be written by other means
+     */
+    public static boolean writeResource(FullHttpRequest request, ChannelHandlerContext ctx,
+            String filename) {
+        if (filename.contains("..")) {
+            return false;
+        }
+        HttpStaticResource resource = getResource(filename);
+        if (resource == null) {
+            return false;
+        }
+        FullHttpResponse response;
+        String ifNoneMatch = request.headers().get(HttpHeaderNames.IF_NONE_MATCH);
+        if (resource.etag.equals(ifNoneMatch)) {
+            response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                    HttpResponseStatus.NOT_MODIFIED);
+        } else {
+            String acceptEncoding = request.headers().get(HttpHeaderNames.ACCEPT_ENCODING);
+            boolean gzip = resource.gzipContent != null && acceptEncoding != null &&
+                    acceptEncoding.contains(HttpHeaderValues.GZIP);
+            response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                    Unpooled.wrappedBuffer(gzip ? resource.gzipContent : resource.content));
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, resource.contentType);
+            if (gzip) {
+                response.headers().set(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.GZIP);
+            }
+            if (resource.gzipContent != null) {
+                response.headers().set(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+            }
+        }
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
+        response.headers().set(HttpHeaderNames.ETAG, resource.etag);
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, "private, max-age=" + MAX_AGE);
+        boolean keepAlive = HttpUtil.isKeepAlive(request);
+        if (keepAlive) {
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+        }
+        ChannelFuture future = ctx.writeAndFlush(response);
+        if (!keepAlive) {
+            future.addListener(WaarpSslUtility.SSLCLOSE);
+        }
+        return true;
+    }
+}
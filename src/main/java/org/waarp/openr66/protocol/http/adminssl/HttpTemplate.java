@@ -0,0 +1,157 @@
+/**
+ * This file is part of Waarp Project.
+ * 
+ * Copyright 2009, Frederic Bregier, and individual contributors by the @author tags. See the
+ * COPYRIGHT.txt in the distribution for a full listing of individual contributors.
+ * 
+ * All Waarp Project is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * Waarp is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Waarp . If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.waarp.openr66.protocol.http.adminssl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.waarp.common.exception.FileTransferException;
+import org.waarp.common.exception.InvalidArgumentException;
+import org.waarp.common.utility.WaarpStringUtils;
+
+/**
+ * Parsed HTML template of the Admin HTTPS interface, cached in memory.<br>
+ * <br>
+ * The file is split once into literal parts and placeholders (XXX...XXX), such that each
+ * rendering is done in one pass. The cached version is reloaded when the file is changed on disk
+ * (checked at most once per CHECK_DELAY ms).
+ */
+public class HttpTemplate {
+    /**
+     * Minimal delay between 2 checks of the file on disk
+     */
+    private static final long CHECK_DELAY = 1000;
+    /**
+     * Placeholder pattern: at least 3 'X', a name not starting with 'X', then 3 'X'
+     */
+    private static final Pattern PLACEHOLDER = Pattern.compile("XXX+[A-WYZ][A-Z0-9]*?XXX");
+
+    private static final ConcurrentHashMap<String, HttpTemplate> templates =
+            new ConcurrentHashMap<String, HttpTemplate>();
+
+    private final File file;
+    private final long lastModified;
+    private final long length;
+    private volatile long lastCheck;
+    /**
+     * literals.length == placeholders.length + 1
+     */
+    private final String[] literals;
+    private final String[] placeholders;
+    private final int size;
+
+    private HttpTemplate(File file, String value) {
+        this.file = file;
+        this.lastModified = file.lastModified();
+        this.length = file.length();
+        this.lastCheck = System.currentTimeMillis();
+        List<String> literalList = new ArrayList<String>();
+        List<String> placeholderList = new ArrayList<String>();
+        Matcher matcher = PLACEHOLDER.matcher(value);
+        int pos = 0;
+        while (matcher.find()) {
+            literalList.add(value.substring(pos, matcher.start()));
+            placeholderList.add(matcher.group());
+            pos = matcher.end();
+        }
+        literalList.add(value.substring(pos));
+        literals = literalList.toArray(new String[literalList.size()]);
+        placeholders = placeholderList.toArray(new String[placeholderList.size()]);
+        size = value.length();
+    }
+
+    /**
+     * 
+     * @return True if the file on disk is still the one parsed
+     */
+    private boolean isValid() {
+        long now = System.currentTimeMillis();
+        if (now - lastCheck < CHECK_DELAY) {
+            return true;
+        }
+        lastCheck = now;
+        return file.lastModified() == lastModified && file.length() == length;
+    }
+
+    /**
+     * 
+     * @param filename
+     * @return the parsed template, from cache if the file is unchanged
+     * @throws InvalidArgumentException
+     * @throws FileTransferException
+     */
+    public static HttpTemplate getTemplate(String filename) throws InvalidArgumentException,
+            FileTransferException {
+        HttpTemplate template = templates.get(filename);
+        if (template != null && template.isValid()) {
+            return template;
+        }
+        File file = new File(filename);
+        template = new HttpTemplate(file, WaarpStringUtils.readFileException(filename));
+        templates.put(filename, template);
+        return template;
+    }
+
+    /**
+     * Clear all cached templates
+     */
+    public static void clear() {
+        templates.clear();
+    }
+
+    /**
+     * Render the template in one pass. A placeholder without value is kept as is, such that it
+     * can be replaced later on.
+     * 
+     * @param first
+     *            values replacing only the first occurrence of their placeholder (may be null)
+     * @param all
+     *            values replacing all the occurrences of their placeholder (may be null)
+     * @return the rendered template
+     */
+    public String render(Map<String, String> first, Map<String, String> all) {
+        StringBuilder builder = new StringBuilder(size + 256);
+        Set<String> used = null;
+        for (int i = 0; i < placeholders.length; i++) {
+            builder.append(literals[i]);
+            String placeholder = placeholders[i];
+            String value = null;
+            if (first != null && first.containsKey(placeholder)) {
+                if (used == null) {
+                    used = new HashSet<String>();
+                }
+                if (used.add(placeholder)) {
+                    value = first.get(placeholder);
+                }
+            }
+            if (value == null && all != null) {
+                value = all.get(placeholder);
+            }
+            builder.append(value == null ? placeholder : value);
+        }
+        builder.append(literals[placeholders.length]);
+        return builder.toString();
+    }
+}
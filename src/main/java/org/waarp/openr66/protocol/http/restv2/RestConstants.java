@@ -26,6 +26,7 @@ import org.waarp.openr66.dao.DAOFactory;
 import org.waarp.openr66.protocol.configuration.Configuration;
 import org.waarp.openr66.protocol.http.restv2.dbhandlers.ServerHandler;
 import org.waarp.openr66.protocol.http.restv2.dbhandlers.TransferIdHandler;
+import org.waarp.openr66.protocol.http.restv2.dbhandlers.TransfersHandler;
 
 import java.nio.charset.Charset;
 
@@ -57,6 +58,9 @@ public final class RestConstants {
     /** The DAO_FACTORY to generate connections to the underlying database. */
     public static final DAOFactory DAO_FACTORY;
 
+    /** The media type of newline-delimited JSON streams. */
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
     /** The UTF-8 {@link java.nio.charset.Charset} constant. */
     public static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
 
@@ -122,6 +126,16 @@ public final class RestConstants {
         public static final String RESTART_URI = "restart";
         public static final String LOGS_URI = "logs";
         public static final String CONFIG_URI = "config";
+        public static final String METRICS_URI = "metrics";
+        public static final String TRACES_URI = "traces";
+    }
+
+    /**
+     * The names of the sub-paths of the {@link TransfersHandler} corresponding
+     * to the operations on the transfer collection.
+     */
+    public static final class TransfersCommandsURI {
+        public static final String BULK_URI = "bulk";
     }
 
     /**
@@ -33,6 +33,7 @@ import org.waarp.common.crypto.ssl.WaarpSecureKeyStore;
 import org.waarp.common.logging.WaarpLogger;
 import org.waarp.common.logging.WaarpLoggerFactory;
 import org.waarp.gateway.kernel.rest.RestConfiguration;
+import org.waarp.openr66.protocol.configuration.Configuration;
 import org.waarp.openr66.protocol.http.restv2.dbhandlers.AbstractRestDbHandler;
 import org.waarp.openr66.protocol.http.restv2.dbhandlers.HostConfigHandler;
 import org.waarp.openr66.protocol.http.restv2.dbhandlers.HostIdHandler;
@@ -43,6 +44,7 @@ import org.waarp.openr66.protocol.http.restv2.dbhandlers.RulesHandler;
 import org.waarp.openr66.protocol.http.restv2.dbhandlers.ServerHandler;
 import org.waarp.openr66.protocol.http.restv2.dbhandlers.TransferIdHandler;
 import org.waarp.openr66.protocol.http.restv2.dbhandlers.TransfersHandler;
+import org.waarp.openr66.protocol.http.restv2.resthandlers.RestBodyLimitHandler;
 import org.waarp.openr66.protocol.http.restv2.resthandlers.RestExceptionHandler;
 import org.waarp.openr66.protocol.http.restv2.resthandlers.RestHandlerHook;
 import org.waarp.openr66.protocol.http.restv2.resthandlers.RestSignatureHandler;
@@ -162,8 +164,15 @@ public final class RestServiceInitializer {
                 .setChannelPipelineModifier(new ChannelPipelineModifier() {
                     @Override
                     public void modify(ChannelPipeline channelPipeline) {
+                        RestBodyLimitHandler bodyLimitHandler =
+                                new RestBodyLimitHandler(
+                                        Configuration.configuration.getRestMaxBodySize(),
+                                        Configuration.configuration.getRestMaxBulkBodySize());
+                        channelPipeline.addBefore("router", RestBodyLimitHandler.HANDLER_NAME,
+                                bodyLimitHandler);
                         channelPipeline.addBefore("router", "aggregator",
-                                new HttpObjectAggregator(Integer.MAX_VALUE));
+                                new HttpObjectAggregator(
+                                        bodyLimitHandler.getMaxAggregatedSize()));
                         channelPipeline.addBefore("router", RestVersionHandler.HANDLER_NAME,
                                 new RestVersionHandler(config));
                         channelPipeline.addBefore(RestVersionHandler.HANDLER_NAME, "cors",
@@ -39,6 +39,7 @@ import org.waarp.openr66.protocol.http.restv2.errors.RestErrorException;
 import javax.ws.rs.InternalServerErrorException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -95,6 +96,75 @@ public final class TransferConverter {
         }
     }
 
+    /**
+     * A cache of the rules and hosts already read from the database while
+     * converting one or several transfers, so that each of them is only
+     * fetched once per request.
+     */
+    public static final class ReferenceCache {
+        /** The rules already read, a {@code null} value meaning unknown rule. */
+        private final Map<String, Rule> rules = new HashMap<String, Rule>();
+        /** The hosts already checked, with their existence. */
+        private final Map<String, Boolean> hosts = new HashMap<String, Boolean>();
+
+        /**
+         * Returns the rule with the given name, or {@code null} if the rule
+         * does not exist.
+         *
+         * @param ruleName the name of the rule
+         * @return         the corresponding Rule, or {@code null}
+         * @throws InternalServerErrorException if an unexpected error occurred
+         */
+        public Rule getRule(String ruleName) {
+            if (rules.containsKey(ruleName)) {
+                return rules.get(ruleName);
+            }
+            Rule rule = null;
+            RuleDAO ruleDAO = null;
+            try {
+                ruleDAO = DAO_FACTORY.getRuleDAO();
+                if (ruleDAO.exist(ruleName)) {
+                    rule = ruleDAO.select(ruleName);
+                }
+            } catch (DAOException e) {
+                throw new InternalServerErrorException(e);
+            } finally {
+                if (ruleDAO != null) {
+                    ruleDAO.close();
+                }
+            }
+            rules.put(ruleName, rule);
+            return rule;
+        }
+
+        /**
+         * Tells if the given host exists in the database.
+         *
+         * @param host the name of the host
+         * @return     {@code true} if the host exists, {@code false} otherwise.
+         * @throws InternalServerErrorException if an unexpected error occurred
+         */
+        public boolean hostExists(String host) {
+            Boolean exists = hosts.get(host);
+            if (exists != null) {
+                return exists;
+            }
+            HostDAO hostDAO = null;
+            try {
+                hostDAO = DAO_FACTORY.getHostDAO();
+                exists = hostDAO.exist(host);
+            } catch (DAOException e) {
+                throw new InternalServerErrorException(e);
+            } finally {
+                if (hostDAO != null) {
+                    hostDAO.close();
+                }
+            }
+            hosts.put(host, exists);
+            return exists;
+        }
+    }
+
 
     //########################## PUBLIC METHODS ################################
 
@@ -142,27 +212,34 @@ public final class TransferConverter {
      * @throws InternalServerErrorException if an unexpected error occurred
      */
     public static Transfer nodeToNewTransfer(ObjectNode object) {
+        return nodeToNewTransfer(object, new ReferenceCache());
+    }
+
+    /**
+     * Initialize a {@link Transfer} object using the values of the given
+     * {@link ObjectNode}, reading the rules and hosts through the given
+     * {@link ReferenceCache}. This is meant to be used when many transfers
+     * are created by the same request.
+     *
+     * @param object the ObjectNode to convert
+     * @param cache  the cache of already known rules and hosts
+     * @return       the new Transfer object
+     * @throws RestErrorException if the given ObjectNode does not represent
+     *                            a Transfer object
+     * @throws InternalServerErrorException if an unexpected error occurred
+     */
+    public static Transfer nodeToNewTransfer(ObjectNode object,
+                                             ReferenceCache cache) {
         Transfer defaultTransfer = new Transfer(null, null, -1, false, null, null, 65536);
         defaultTransfer.setRequester(SERVER_NAME);
         defaultTransfer.setOwnerRequest(SERVER_NAME);
         defaultTransfer.setBlockSize(65536);
         defaultTransfer.setTransferInfo("");
         defaultTransfer.setStart(new Timestamp(DateTime.now().getMillis()));
-        Transfer transfer = parseNode(object, defaultTransfer);
-
-        ModeTrans mode;
-        RuleDAO ruleDAO = null;
-        try {
-            ruleDAO = DAO_FACTORY.getRuleDAO();
-            Rule rule = ruleDAO.select(transfer.getRule());
-            mode = ModeTrans.fromCode(rule.getMode());
-        } catch (DAOException e) {
-            throw new InternalServerErrorException(e);
-        } finally {
-            if (ruleDAO != null) {
-                ruleDAO.close();
-            }
-        }
+        Transfer transfer = parseNode(object, defaultTransfer, cache);
+
+        Rule rule = cache.getRule(transfer.getRule());
+        ModeTrans mode = ModeTrans.fromCode(rule.getMode());
 
         transfer.setRetrieveMode(mode == ModeTrans.receive || mode == ModeTrans.receiveMD5);
         transfer.setTransferMode(mode.code);
@@ -176,67 +253,19 @@ public final class TransferConverter {
 
     //######################### PRIVATE METHODS ################################
 
-    /**
-     * Tells if the given rule exists in the database.
-     *
-     * @param rule the name of the rule
-     * @return     {@code true} if the rule exists, {@code false} otherwise.
-     */
-    private static boolean ruleExists(String rule) {
-        RuleDAO ruleDAO = null;
-        try {
-            ruleDAO = DAO_FACTORY.getRuleDAO();
-            return ruleDAO.exist(rule);
-        } catch (DAOException e) {
-            throw new InternalServerErrorException(e);
-        } finally {
-            if (ruleDAO != null) {
-                ruleDAO.close();
-            }
-        }
-    }
-
-    /**
-     * Tells if the given host exists in the database.
-     *
-     * @param host the name of the host
-     * @return     {@code true} if the host exists, {@code false} otherwise.
-     */
-    private static boolean hostExists(String host) {
-        HostDAO hostDAO = null;
-        try {
-            hostDAO = DAO_FACTORY.getHostDAO();
-            return hostDAO.exist(host);
-        } catch (DAOException e) {
-            throw new InternalServerErrorException(e);
-        } finally {
-            if (hostDAO != null) {
-                hostDAO.close();
-            }
-        }
-    }
-
     /**
      * Tells if the given host is allowed to use given rule.
      *
-     * @param host the name of the host
-     * @param rule the name of the rule
+     * @param host  the name of the host
+     * @param rule  the name of the rule
+     * @param cache the cache of already known rules
      * @return {@code true} if the host is allowed to use the rule, {@code false}
      *         otherwise
      */
-    private static boolean canUseRule(String host, String rule) {
-        RuleDAO ruleDAO = null;
-        try {
-            ruleDAO = DAO_FACTORY.getRuleDAO();
-            List<String> hostIds = ruleDAO.select(rule).getHostids();
-            return !hostIds.isEmpty() && !hostIds.contains(host);
-        } catch (DAOException e) {
-            throw new InternalServerErrorException(e);
-        } finally {
-            if (ruleDAO != null) {
-                ruleDAO.close();
-            }
-        }
+    private static boolean canUseRule(String host, String rule,
+                                      ReferenceCache cache) {
+        List<String> hostIds = cache.getRule(rule).getHostids();
+        return !hostIds.isEmpty() && !hostIds.contains(host);
     }
 
     /**
@@ -268,11 +297,13 @@ public final class TransferConverter {
      *
      * @param object   the ObjectNode from which the values should be extracted
      * @param transfer the Transfer object whose fields will be filled
+     * @param cache    the cache of already known rules and hosts
      * @return         the filled Transfer object
      * @throws RestErrorException if the given ObjectNode does not represent
      *                            a Transfer object.
      */
-    private static Transfer parseNode(ObjectNode object, Transfer transfer) {
+    private static Transfer parseNode(ObjectNode object, Transfer transfer,
+                                      ReferenceCache cache) {
         List<RestError> errors = new ArrayList<RestError>();
 
         Iterator<Map.Entry<String, JsonNode>> fields = object.fields();
@@ -283,7 +314,7 @@ public final class TransferConverter {
 
             if (name.equalsIgnoreCase(RULE)) {
                 if (value.isTextual()) {
-                    if (ruleExists(value.asText())) {
+                    if (cache.getRule(value.asText()) != null) {
                         transfer.setRule(value.asText());
                     } else {
                         errors.add(RestErrors.UNKNOWN_RULE(value.asText()));
@@ -302,7 +333,7 @@ public final class TransferConverter {
             }
             else if (name.equalsIgnoreCase(REQUESTED)) {
                 if (value.isTextual()) {
-                    if (hostExists(value.asText())) {
+                    if (cache.hostExists(value.asText())) {
                         transfer.setRequested(value.asText());
                     } else {
                         errors.add(RestErrors.UNKNOWN_HOST(value.asText()));
@@ -347,10 +378,10 @@ public final class TransferConverter {
         String rule = transfer.getRule();
         String requested = transfer.getRequested();
         String requester = transfer.getRequester();
-        if (rule != null && !requested.isEmpty() && canUseRule(requested, rule)) {
+        if (rule != null && !requested.isEmpty() && canUseRule(requested, rule, cache)) {
             errors.add(RULE_NOT_ALLOWED(requested, rule));
         }
-        if (rule != null && !requester.isEmpty() && canUseRule(requester, rule)) {
+        if (rule != null && !requester.isEmpty() && canUseRule(requester, rule, cache)) {
             errors.add(RULE_NOT_ALLOWED(requester, rule));
         }
 
@@ -54,7 +54,9 @@ import org.waarp.openr66.protocol.http.restv2.utils.XmlSerializable.Rules;
 import org.waarp.openr66.protocol.http.restv2.utils.XmlSerializable.Transfers;
 import org.waarp.openr66.protocol.http.restv2.utils.XmlUtils;
 import org.waarp.openr66.protocol.utils.ChannelUtils;
+import org.waarp.openr66.protocol.utils.R66Metrics;
 import org.waarp.openr66.protocol.utils.R66ShutdownHook;
+import org.waarp.openr66.protocol.utils.R66Trace;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DefaultValue;
@@ -129,6 +131,8 @@ public class ServerHandler extends AbstractRestDbHandler {
         serverCRUD.put(RESTART_URI, crud[Server.ordinal()]);
         serverCRUD.put(LOGS_URI, crud[Log.ordinal()]);
         serverCRUD.put(CONFIG_URI, crud[Config.ordinal()]);
+        serverCRUD.put(METRICS_URI, crud[Information.ordinal()]);
+        serverCRUD.put(TRACES_URI, crud[Information.ordinal()]);
     }
 
     /**
@@ -216,6 +220,76 @@ public class ServerHandler extends AbstractRestDbHandler {
         responder.sendStatus(OK, allow);
     }
 
+    /**
+     * Get the latency and throughput metrics of the server, by phase, partner
+     * and rule, in the Prometheus text format.
+     *
+     * @param request   the HttpRequest made on the resource
+     * @param responder the HttpResponder which sends the reply to the request
+     */
+    @Path(METRICS_URI)
+    @GET
+    @Consumes(WILDCARD)
+    @RequiredRole(READONLY)
+    public void getMetrics(HttpRequest request, HttpResponder responder) {
+        responder.sendString(OK, R66Metrics.exportPrometheus());
+    }
+
+    /**
+     * Method called to get a list of all allowed HTTP methods on the '/server/metrics'
+     * entry point. The HTTP methods are sent as an array in the reply's headers.
+     *
+     * @param request   the HttpRequest made on the resource
+     * @param responder the HttpResponder which sends the reply to the request.
+     */
+    @Path(METRICS_URI)
+    @OPTIONS
+    @Consumes(WILDCARD)
+    @RequiredRole(RoleDefault.ROLE.NOACCESS)
+    public void metrics_options(HttpRequest request, HttpResponder responder) {
+        HttpHeaders allow = new DefaultHttpHeaders();
+        List<HttpMethod> options = new ArrayList<HttpMethod>();
+        options.add(HttpMethod.GET);
+        options.add(HttpMethod.OPTIONS);
+        allow.add(ALLOW, options);
+        responder.sendStatus(OK, allow);
+    }
+
+    /**
+     * Get the traces of the last finished transfers (empty if tracing is
+     * disabled), one trace per line.
+     *
+     * @param request   the HttpRequest made on the resource
+     * @param responder the HttpResponder which sends the reply to the request
+     */
+    @Path(TRACES_URI)
+    @GET
+    @Consumes(WILDCARD)
+    @RequiredRole(READONLY)
+    public void getTraces(HttpRequest request, HttpResponder responder) {
+        responder.sendString(OK, R66Trace.exportRecent());
+    }
+
+    /**
+     * Method called to get a list of all allowed HTTP methods on the '/server/traces'
+     * entry point. The HTTP methods are sent as an array in the reply's headers.
+     *
+     * @param request   the HttpRequest made on the resource
+     * @param responder the HttpResponder which sends the reply to the request.
+     */
+    @Path(TRACES_URI)
+    @OPTIONS
+    @Consumes(WILDCARD)
+    @RequiredRole(RoleDefault.ROLE.NOACCESS)
+    public void traces_options(HttpRequest request, HttpResponder responder) {
+        HttpHeaders allow = new DefaultHttpHeaders();
+        List<HttpMethod> options = new ArrayList<HttpMethod>();
+        options.add(HttpMethod.GET);
+        options.add(HttpMethod.OPTIONS);
+        allow.add(ALLOW, options);
+        responder.sendStatus(OK, allow);
+    }
+
     /**
      * Deactivates the server so that it doesn't accept any new transfer request.
      *
@@ -39,6 +39,7 @@ import org.waarp.openr66.protocol.http.restv2.converters.TransferConverter;
 import org.waarp.openr66.protocol.http.restv2.errors.RestError;
 import org.waarp.openr66.protocol.http.restv2.errors.RestErrorException;
 import org.waarp.openr66.protocol.http.restv2.utils.JsonUtils;
+import org.waarp.openr66.protocol.http.restv2.utils.RestUtils;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DefaultValue;
@@ -51,15 +52,18 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.HttpHeaders;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 import static io.netty.handler.codec.http.HttpResponseStatus.CREATED;
 import static io.netty.handler.codec.http.HttpResponseStatus.OK;
 import static javax.ws.rs.core.HttpHeaders.ALLOW;
 import static javax.ws.rs.core.MediaType.*;
 import static org.waarp.openr66.dao.database.DBTransferDAO.*;
+import static org.waarp.openr66.protocol.http.restv2.RestConstants.APPLICATION_NDJSON;
 import static org.waarp.openr66.protocol.http.restv2.RestConstants.DAO_FACTORY;
 import static org.waarp.openr66.protocol.http.restv2.RestConstants.GetTransfersParams.*;
 import static org.waarp.openr66.protocol.http.restv2.RestConstants.TRANSFERS_HANDLER_URI;
+import static org.waarp.openr66.protocol.http.restv2.RestConstants.TransfersCommandsURI;
 import static org.waarp.openr66.protocol.http.restv2.errors.RestErrors.ILLEGAL_PARAMETER_VALUE;
 
 /**
@@ -256,6 +260,68 @@ public class TransfersHandler extends AbstractRestDbHandler {
         responder.sendString(CREATED, responseText, headers);
     }
 
+    /**
+     * Method called to create many new transfers on the server at once. The
+     * request body is either a JSON array of transfer objects, or a stream of
+     * newline-delimited transfer objects. Each transfer is validated on its
+     * own, and all the valid ones are then inserted in a single database
+     * transaction. The reply contains, for each submitted transfer and in the
+     * same order, either the created entry or the list of its errors.
+     *
+     * @param request   the HttpRequest made on the resource
+     * @param responder the HttpResponder which sends the reply to the request
+     */
+    @Path(TransfersCommandsURI.BULK_URI)
+    @POST
+    @Consumes({APPLICATION_JSON, APPLICATION_NDJSON})
+    @RequiredRole(ROLE.TRANSFER)
+    public void createTransfers(HttpRequest request, HttpResponder responder) {
+
+        List<ObjectNode> requestObjects = JsonUtils.deserializeRequestList(request);
+        Locale lang = RestUtils.getLocale(request);
+        TransferConverter.ReferenceCache cache =
+                new TransferConverter.ReferenceCache();
+
+        List<Transfer> transfers = new ArrayList<Transfer>(requestObjects.size());
+        ObjectNode[] itemResults = new ObjectNode[requestObjects.size()];
+        for (int i = 0; i < itemResults.length; i++) {
+            try {
+                transfers.add(TransferConverter.nodeToNewTransfer(
+                        requestObjects.get(i), cache));
+            } catch (RestErrorException e) {
+                itemResults[i] = e.makeNode(lang);
+            }
+        }
+
+        TransferDAO transferDAO = null;
+        try {
+            transferDAO = DAO_FACTORY.getTransferDAO();
+            transferDAO.insert(transfers);
+        } catch (DAOException e) {
+            throw new InternalServerErrorException(e);
+        } finally {
+            if (transferDAO != null) {
+                transferDAO.close();
+            }
+        }
+
+        ObjectNode responseObject = new ObjectNode(JsonNodeFactory.instance);
+        ArrayNode resultList = responseObject.putArray("results");
+        int created = 0;
+        for (ObjectNode itemResult : itemResults) {
+            if (itemResult == null) {
+                itemResult = TransferConverter.transferToNode(
+                        transfers.get(created++));
+            }
+            resultList.add(itemResult);
+        }
+        responseObject.put("totalResults", itemResults.length);
+        responseObject.put("totalCreated", created);
+        responseObject.put("totalErrors", itemResults.length - created);
+        String responseText = JsonUtils.nodeToString(responseObject);
+        responder.sendJson(OK, responseText);
+    }
+
     /**
      * Method called to get a list of all allowed HTTP methods on this entry
      * point. The HTTP methods are sent as an array in the reply's headers.
@@ -269,5 +335,26 @@ public class TransfersHandler extends AbstractRestDbHandler {
     public void options(HttpRequest request, HttpResponder responder) {
         responder.sendStatus(OK, OPTIONS_HEADERS);
     }
+
+    /**
+     * Method called to get a list of all allowed HTTP methods on the bulk
+     * creation entry point. The HTTP methods are sent as an array in the
+     * reply's headers.
+     *
+     * @param request   the HttpRequest made on the resource
+     * @param responder the HttpResponder which sends the reply to the request
+     */
+    @Path(TransfersCommandsURI.BULK_URI)
+    @OPTIONS
+    @Consumes(WILDCARD)
+    @RequiredRole(ROLE.NOACCESS)
+    public void bulk_options(HttpRequest request, HttpResponder responder) {
+        DefaultHttpHeaders headers = new DefaultHttpHeaders();
+        List<HttpMethod> allow = new ArrayList<HttpMethod>();
+        allow.add(HttpMethod.POST);
+        allow.add(HttpMethod.OPTIONS);
+        headers.add(ALLOW, allow);
+        responder.sendStatus(OK, headers);
+    }
 }
 
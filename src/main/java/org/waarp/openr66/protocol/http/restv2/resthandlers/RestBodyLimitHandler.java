@@ -0,0 +1,169 @@
+/*
+ *  This file is part of Waarp Project (named also Waarp or GG).
+ *
+ *  Copyright 2009, Waarp SAS, and individual contributors by the @author
+ *  tags. See the COPYRIGHT.txt in the distribution for a full listing of
+ *  individual contributors.
+ *
+ *  All Waarp Project is free software: you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at your
+ *  option) any later version.
+ *
+ *  Waarp is distributed in the hope that it will be useful, but WITHOUT ANY
+ *  WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ *  A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with
+ *  Waarp . If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.waarp.openr66.protocol.http.restv2.resthandlers;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import org.waarp.common.logging.WaarpLogger;
+import org.waarp.common.logging.WaarpLoggerFactory;
+
+import static io.netty.channel.ChannelFutureListener.CLOSE;
+import static io.netty.handler.codec.http.HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static org.waarp.openr66.protocol.http.restv2.RestConstants.TRANSFERS_HANDLER_URI;
+import static org.waarp.openr66.protocol.http.restv2.RestConstants.TransfersCommandsURI.BULK_URI;
+
+/**
+ * Enforces an upper bound on the size of incoming request bodies, before they
+ * are aggregated in memory. The bound depends on the entry point targeted by
+ * the request: the bulk creation of transfers (POST on the bulk entry point
+ * of the transfers collection) is allowed a larger body than the others.
+ * <p>
+ * Requests announcing a too large {@code Content-Length} are refused at once,
+ * and chunked requests are refused as soon as the received content exceeds
+ * the bound. In both cases, a '413 - Request Entity Too Large' response is
+ * sent back and the connection is closed.
+ * <p>
+ * Bodies within the bound are still aggregated in memory before reaching the
+ * handlers, so each concurrent bulk request may hold up to the bulk bound:
+ * this bound shall be sized accordingly to the memory of the server.
+ */
+public class RestBodyLimitHandler extends ChannelInboundHandlerAdapter {
+
+    /** The logger for all events. */
+    private static final WaarpLogger logger =
+            WaarpLoggerFactory.getLogger(RestBodyLimitHandler.class);
+
+    /** Name of this handler in the Netty pipeline. */
+    public static final String HANDLER_NAME = "body_limit";
+
+    /** The path of the bulk creation of transfers. */
+    private static final String BULK_PATH = TRANSFERS_HANDLER_URI + BULK_URI;
+
+    /** The maximum body size of a request, in bytes. */
+    private final long maxBodySize;
+
+    /** The maximum body size of a bulk operation request, in bytes. */
+    private final long maxBulkBodySize;
+
+    /** The maximum body size allowed for the current request. */
+    private long currentLimit;
+
+    /** The size of the content received so far for the current request. */
+    private long received;
+
+    /** Tells if the rest of the current request must be discarded. */
+    private boolean discarding;
+
+    /**
+     * Initializes the handler with the given bounds.
+     *
+     * @param maxBodySize     the maximum body size of a request
+     * @param maxBulkBodySize the maximum body size of a bulk operation request
+     */
+    public RestBodyLimitHandler(long maxBodySize, long maxBulkBodySize) {
+        this.maxBodySize = maxBodySize;
+        this.maxBulkBodySize = maxBulkBodySize;
+    }
+
+    /**
+     * Returns the largest body size this handler may let through, to be
+     * used as bound for the aggregation of the request.
+     *
+     * @return the largest allowed body size
+     */
+    public int getMaxAggregatedSize() {
+        return (int) Math.min(Integer.MAX_VALUE,
+                Math.max(maxBodySize, maxBulkBodySize));
+    }
+
+    /**
+     * Returns the maximum body size allowed for the given request.
+     *
+     * @param request the request
+     * @return        the maximum body size of the request
+     */
+    private long getLimit(HttpRequest request) {
+        if (!HttpMethod.POST.equals(request.method())) {
+            return maxBodySize;
+        }
+        String uri = request.uri();
+        int query = uri.indexOf('?');
+        String path = query >= 0? uri.substring(0, query) : uri;
+        if (path.equals(BULK_PATH) || path.equals(BULK_PATH + "/")) {
+            return maxBulkBodySize;
+        }
+        return maxBodySize;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof HttpRequest) {
+            HttpRequest request = (HttpRequest) msg;
+            currentLimit = getLimit(request);
+            received = 0;
+            discarding = false;
+            if (HttpUtil.getContentLength(request, -1L) > currentLimit) {
+                reject(ctx, msg);
+                return;
+            }
+        } else if (discarding) {
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+        if (msg instanceof HttpContent) {
+            received += ((HttpContent) msg).content().readableBytes();
+            if (received > currentLimit) {
+                reject(ctx, msg);
+                return;
+            }
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    /**
+     * Refuses the current request, sends a '413 - Request Entity Too Large'
+     * response and closes the connection.
+     *
+     * @param ctx the Netty pipeline context
+     * @param msg the message which exceeded the bound
+     */
+    private void reject(ChannelHandlerContext ctx, Object msg) {
+        logger.warn("RESTv2 request refused since its body exceeds " +
+                currentLimit + " bytes");
+        discarding = !(msg instanceof LastHttpContent);
+        ReferenceCountUtil.release(msg);
+        FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1,
+                REQUEST_ENTITY_TOO_LARGE);
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+        ctx.writeAndFlush(response).addListener(CLOSE);
+    }
+}
@@ -23,11 +23,13 @@ package org.waarp.openr66.protocol.http.restv2.utils;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpRequest;
 import org.waarp.openr66.protocol.http.restv2.errors.RestErrors;
@@ -36,10 +38,11 @@ import org.waarp.openr66.protocol.http.restv2.errors.RestErrorException;
 import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.NotSupportedException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static javax.ws.rs.core.HttpHeaders.CONTENT_TYPE;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
-import static org.waarp.openr66.protocol.http.restv2.RestConstants.UTF8_CHARSET;
 import static org.waarp.openr66.protocol.http.restv2.errors.RestErrors.MALFORMED_JSON;
 import static org.waarp.openr66.protocol.http.restv2.errors.RestErrors.MISSING_BODY;
 
@@ -87,14 +90,14 @@ public final class JsonUtils {
         }
 
         try {
-            String body = ((FullHttpRequest) request).content()
-                    .toString(UTF8_CHARSET);
-
             ObjectMapper mapper = new ObjectMapper();
             mapper.enable(DeserializationFeature.FAIL_ON_READING_DUP_TREE_KEY);
-            JsonNode node = mapper.readTree(body);
+            JsonNode node = mapper.readTree(new ByteBufInputStream(
+                    ((FullHttpRequest) request).content().duplicate()));
 
-            if (node.isObject()) {
+            if (node == null || node.isMissingNode()) {
+                throw new RestErrorException(MISSING_BODY());
+            } else if (node.isObject()) {
                 return (ObjectNode) node;
             } else {
                 throw new RestErrorException(MALFORMED_JSON(0, 0,
@@ -124,4 +127,76 @@ public final class JsonUtils {
             throw new InternalServerErrorException(e);
         }
     }
+
+    /**
+     * Deserializes a request's content as a list of ObjectNode. The content
+     * can either be a JSON array of objects, or a stream of JSON objects
+     * separated by whitespaces (typically newline-delimited JSON). The content
+     * is parsed as a stream, so that only the objects themselves are held
+     * in memory and not an intermediate tree of the whole body.
+     *
+     * @param request the request to deserialize
+     * @return        the deserialized JSON objects, in order
+     * @throws RestErrorException    If the content is not a valid list of JSON
+     *                               objects.
+     * @throws NotSupportedException If the content type is not JSON.
+     * @throws InternalServerErrorException if an unexpected error occurred
+     */
+    public static List<ObjectNode> deserializeRequestList(HttpRequest request) {
+        if (!(request instanceof FullHttpRequest)) {
+            throw new RestErrorException(MISSING_BODY());
+        }
+
+        JsonParser parser = null;
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            mapper.enable(DeserializationFeature.FAIL_ON_READING_DUP_TREE_KEY);
+            parser = mapper.getFactory().createParser(new ByteBufInputStream(
+                    ((FullHttpRequest) request).content().duplicate()));
+
+            List<ObjectNode> nodes = new ArrayList<ObjectNode>();
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                throw new RestErrorException(MISSING_BODY());
+            }
+            boolean isArray = token == JsonToken.START_ARRAY;
+            if (isArray) {
+                token = parser.nextToken();
+            }
+            while (token != null && token != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new RestErrorException(MALFORMED_JSON(
+                            parser.getCurrentLocation().getLineNr(),
+                            parser.getCurrentLocation().getColumnNr(),
+                            "The JSON element is not an object"));
+                }
+                JsonNode node = mapper.readTree(parser);
+                nodes.add((ObjectNode) node);
+                token = parser.nextToken();
+            }
+            if (isArray && token == null) {
+                throw new RestErrorException(MALFORMED_JSON(
+                        parser.getCurrentLocation().getLineNr(),
+                        parser.getCurrentLocation().getColumnNr(),
+                        "The JSON array is not closed"));
+            }
+            return nodes;
+        } catch (JsonParseException e) {
+            throw new RestErrorException(MALFORMED_JSON(e.getLocation().getLineNr(),
+                    e.getLocation().getColumnNr(), e.getOriginalMessage()));
+        } catch (JsonMappingException e) {
+            throw new RestErrorException(MALFORMED_JSON(0, 0,
+                    e.getOriginalMessage()));
+        } catch (IOException e) {
+            throw new InternalServerErrorException(e);
+        } finally {
+            if (parser != null) {
+                try {
+                    parser.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
 }
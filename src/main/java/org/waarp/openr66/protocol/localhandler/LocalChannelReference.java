@@ -22,8 +22,12 @@ import io.netty.channel.local.LocalChannel;
 import io.netty.handler.traffic.ChannelTrafficShapingHandler;
 import io.netty.handler.traffic.GlobalChannelTrafficShapingHandler;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.waarp.common.database.DbSession;
 import org.waarp.common.database.exception.WaarpDatabaseNoConnectionException;
+import org.waarp.common.digest.FilesystemBasedDigest.DigestAlgo;
 import org.waarp.common.logging.WaarpLogger;
 import org.waarp.common.logging.WaarpLoggerFactory;
 import org.waarp.openr66.client.RecvThroughHandler;
@@ -45,6 +49,7 @@ import org.waarp.openr66.protocol.networkhandler.NetworkServerHandler;
 import org.waarp.openr66.protocol.networkhandler.NetworkServerInitializer;
 import org.waarp.openr66.protocol.networkhandler.NetworkTransaction;
 import org.waarp.openr66.protocol.utils.R66Future;
+import org.waarp.openr66.protocol.utils.R66Trace;
 import org.waarp.openr66.protocol.utils.R66Versions;
 
 /**
@@ -147,6 +152,10 @@ public class LocalChannelReference {
      * To be able to check hash once all transfer is over once again
      */
     private String hashComputeDuringTransfer = null;
+    /**
+     * Digests computed during the transfer, per algorithm
+     */
+    private final Map<DigestAlgo, String> transferDigests = new ConcurrentHashMap<DigestAlgo, String>();
     /**
      * If partial hash, no global hash validation can be done
      */
@@ -160,6 +169,10 @@ public class LocalChannelReference {
      * DbSession for Database that do not support concurrency in access
      */
     private volatile DbSession noconcurrencyDbSession = null;
+    /**
+     * Trace of this transfer, null if tracing is disabled
+     */
+    private final R66Trace trace;
 
     /**
      * 
@@ -186,6 +199,7 @@ public class LocalChannelReference {
         }
         cts = (ChannelTrafficShapingHandler) networkChannelRef.channel().pipeline()
                 .get(NetworkServerInitializer.LIMITCHANNEL);
+        trace = R66Trace.newTrace();
         if (DbConstant.admin.isActive()) {
             try {
                 this.noconcurrencyDbSession = new DbSession(DbConstant.admin, false);
@@ -213,6 +227,7 @@ public class LocalChannelReference {
         localId = 0;
         this.futureRequest = new R66Future(true);
         cts = null;
+        trace = null;
     }
 
     /**
@@ -220,6 +235,9 @@ public class LocalChannelReference {
      */
     public void close() {
         Configuration.configuration.getLocalTransaction().remove(this);
+        if (trace != null) {
+            trace.finish(requestId);
+        }
         // Now force the close of the database after a wait
         if (noconcurrencyDbSession != null && DbConstant.admin != null && DbConstant.admin.getSession() != null
                 && !noconcurrencyDbSession.equals(DbConstant.admin.getSession())) {
@@ -228,6 +246,13 @@ public class LocalChannelReference {
         }
     }
 
+    /**
+     * @return the trace of this transfer, or null if tracing is disabled
+     */
+    public R66Trace getTrace() {
+        return trace;
+    }
+
     /**
      * @return the localChannel
      */
@@ -739,6 +764,28 @@ public class LocalChannelReference {
         this.hashComputeDuringTransfer = hashComputeDuringTransfer;
     }
 
+    /**
+     * 
+     * @param algo
+     * @param digest
+     *            the hexadecimal digest computed during the transfer with this algorithm
+     */
+    public void setTransferDigest(DigestAlgo algo, String digest) {
+        if (digest != null) {
+            this.transferDigests.put(algo, digest);
+        }
+    }
+
+    /**
+     * @return the digests computed during the transfer, per algorithm (empty if only partial)
+     */
+    public Map<DigestAlgo, String> getTransferDigests() {
+        if (partialHash) {
+            return new ConcurrentHashMap<DigestAlgo, String>();
+        }
+        return transferDigests;
+    }
+
     public void setPartialHash() {
         this.partialHash = true;
     }
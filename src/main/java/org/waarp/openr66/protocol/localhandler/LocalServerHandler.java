@@ -34,6 +34,7 @@ import org.waarp.common.logging.WaarpLoggerFactory;
 import org.waarp.openr66.context.ErrorCode;
 import org.waarp.openr66.context.R66FiniteDualStates;
 import org.waarp.openr66.context.R66Result;
+import org.waarp.openr66.context.R66Session;
 import org.waarp.openr66.context.task.exception.OpenR66RunnerErrorException;
 import org.waarp.openr66.context.task.exception.OpenR66RunnerException;
 import org.waarp.openr66.database.data.DbTaskRunner;
@@ -76,6 +77,8 @@ import org.waarp.openr66.protocol.localhandler.packet.json.JsonPacket;
 import org.waarp.openr66.protocol.localhandler.packet.json.RequestJsonPacket;
 import org.waarp.openr66.protocol.utils.ChannelCloseTimer;
 import org.waarp.openr66.protocol.utils.ChannelUtils;
+import org.waarp.openr66.protocol.utils.R66Metrics;
+import org.waarp.openr66.protocol.utils.R66Metrics.Phase;
 import org.waarp.openr66.protocol.utils.R66ShutdownHook;
 
 /**
@@ -132,7 +135,16 @@ class LocalServerHandler extends SimpleChannelInboundHandler<AbstractLocalPacket
             }
             switch (packet.getType()) {
                 case LocalPacketFactory.AUTHENTPACKET: {
-                    serverHandler.authent(ctx.channel(), (AuthentPacket) packet, isSsl);
+                    long start = System.nanoTime();
+                    try {
+                        serverHandler.authent(ctx.channel(), (AuthentPacket) packet, isSsl);
+                    } finally {
+                        // only an authenticated partner gets its own series (null meaning other)
+                        R66Session session = serverHandler.getSession();
+                        R66Metrics.record(Phase.authentication,
+                                session.isAuthenticated() ? session.getAuth().getUser() : null,
+                                null, start);
+                    }
                     break;
                 }
                 // Already done case LocalPacketFactory.STARTUPPACKET:
@@ -197,7 +209,21 @@ class LocalServerHandler extends SimpleChannelInboundHandler<AbstractLocalPacket
                     break;
                 }
                 case LocalPacketFactory.REQUESTPACKET: {
-                    serverHandler.request((LocalChannel) ctx.channel(), (RequestPacket) packet);
+                    long start = System.nanoTime();
+                    if (serverHandler.getLocalChannelReference().getTrace() != null) {
+                        serverHandler.getLocalChannelReference().getTrace()
+                                .setTraceId(((RequestPacket) packet).getTraceId());
+                    }
+                    try {
+                        serverHandler.request((LocalChannel) ctx.channel(), (RequestPacket) packet);
+                    } finally {
+                        // only a rule validated by the request gets its own series (null meaning other)
+                        R66Session session = serverHandler.getSession();
+                        R66Metrics.record(Phase.request,
+                                session.isAuthenticated() ? session.getAuth().getUser() : null,
+                                session.getRunner() != null ? session.getRunner().getRuleId() : null,
+                                start);
+                    }
                     break;
                 }
                 case LocalPacketFactory.SHUTDOWNPACKET: {
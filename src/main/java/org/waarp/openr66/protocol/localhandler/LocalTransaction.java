@@ -18,12 +18,11 @@
 package org.waarp.openr66.protocol.localhandler;
 
 import java.net.SocketAddress;
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 import io.netty.bootstrap.Bootstrap;
@@ -37,6 +36,8 @@ import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.local.LocalAddress;
 import io.netty.channel.local.LocalChannel;
 import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 
 import org.waarp.common.logging.WaarpLogger;
 import org.waarp.common.logging.WaarpLoggerFactory;
@@ -84,6 +85,21 @@ public class LocalTransaction {
      */
     private final ConcurrentHashMap<String, LocalChannelReference> localChannelHashMapIdBased = new ConcurrentHashMap<String, LocalChannelReference>();
 
+    /**
+     * Packets received before the registration of their LocalChannelReference using LocalChannelId
+     */
+    private final ConcurrentHashMap<Integer, SendLater> sendLaters = new ConcurrentHashMap<Integer, SendLater>();
+
+    /**
+     * LocalChannelIds connected but whose LocalChannelReference is not yet registered
+     */
+    private final ConcurrentHashMap<Integer, Boolean> pendingCreations = new ConcurrentHashMap<Integer, Boolean>();
+
+    /**
+     * Max number of packets kept for one LocalChannelId not yet registered
+     */
+    static final int SENDLATER_MAXPACKETS = 1000;
+
     private final ServerBootstrap serverBootstrap = new ServerBootstrap();
 
     private final Channel serverChannel;
@@ -145,88 +161,196 @@ public class LocalTransaction {
         throw new OpenR66ProtocolSystemException("Cannot find LocalChannelReference");
     }
 
-    private static class SendLater extends Thread {
-        private static Map<Integer, SendLater> sendLaters = new ConcurrentHashMap<Integer, SendLater>();
-        final LocalTransaction lt;
+    /**
+     * Packets received for a LocalId whose creation is pending, drained as soon as the
+     * LocalChannelReference is registered or dropped once expired.<br>
+     * Only one thread drains at a time, and this is closed (so forgotten) only once empty under its
+     * lock, so that a packet is either sent by the drainer or, once closed, directly by the caller:
+     * the order of the packets is kept.
+     */
+    static class SendLater implements TimerTask {
+        final ConcurrentHashMap<Integer, SendLater> sendLaters;
         final Channel networkChannel;
         final SocketAddress remoteAddress;
-        Integer remoteId;
+        volatile Integer remoteId;
         final Integer localId;
-        final Queue<NetworkPacket> packets = new ConcurrentLinkedQueue<NetworkPacket>();
-        int step = 0;
-        
-        private SendLater(LocalTransaction lt, Channel nc, Integer remoteId, Integer localId) {
-            this.lt = lt;
+        /**
+         * Guarded by this
+         */
+        final Queue<NetworkPacket> packets = new ArrayDeque<NetworkPacket>();
+        private boolean draining = false;
+        private boolean closed = false;
+        volatile Timeout timeout;
+        /**
+         * False while only end of request or connection error packets, coming from the partner, are pending
+         */
+        volatile boolean answerOnTimeout = false;
+
+        SendLater(ConcurrentHashMap<Integer, SendLater> sendLaters, Channel nc, Integer remoteId,
+                Integer localId) {
+            this.sendLaters = sendLaters;
             this.networkChannel = nc;
             this.remoteId = remoteId;
             this.localId = localId;
-            remoteAddress = networkChannel.remoteAddress();
+            remoteAddress = nc != null ? nc.remoteAddress() : null;
         }
-        
-        private void add(NetworkPacket packet) {
-            if (packets.isEmpty()) {
-                packets.add(packet);
-                Configuration.configuration.launchInFixedDelay(this, Configuration.WAITFORNETOP, TimeUnit.MILLISECONDS);
+
+        /**
+         * 
+         * @param packet
+         * @return False if already closed, so that the packet shall be sent directly; True if kept, or
+         *         dropped since too many packets are already waiting
+         */
+        synchronized boolean offer(NetworkPacket packet) {
+            if (closed) {
+                return false;
+            }
+            if (packets.size() >= SENDLATER_MAXPACKETS) {
+                logger.warn("Too many packets waiting for LocalId: " + localId + " so drop one");
+                packet.clear();
+                return true;
+            }
+            if (packet.getCode() != LocalPacketFactory.ENDREQUESTPACKET
+                    && packet.getCode() != LocalPacketFactory.CONNECTERRORPACKET) {
+                answerOnTimeout = true;
             }
             packets.add(packet);
+            return true;
         }
 
-        public void run() {
-            synchronized (sendLaters) {
-                LocalChannelReference localChannelReference = lt.localChannelHashMap.get(localId);
-                if (localChannelReference != null) {
-                    if (localChannelReference.getRemoteId().compareTo(remoteId) != 0) {
-                        localChannelReference.setRemoteId(remoteId);
-                    }
-                    NetworkPacket networkPacket = packets.poll();
-                    LocalChannel localChannel = localChannelReference.getLocalChannel();
-                    while (networkPacket != null) {
-                        localChannel.write(networkPacket.getBuffer());
+        /**
+         * Send all pending packets to the LocalChannel, including those added meanwhile, then close this.
+         * Returns at once if another thread is already draining.
+         * 
+         * @param localChannelReference
+         */
+        void drain(LocalChannelReference localChannelReference) {
+            synchronized (this) {
+                if (draining || closed) {
+                    return;
+                }
+                draining = true;
+            }
+            Timeout curTimeout = timeout;
+            if (curTimeout != null) {
+                curTimeout.cancel();
+            }
+            if (localChannelReference.getRemoteId().compareTo(remoteId) != 0) {
+                localChannelReference.setRemoteId(remoteId);
+            }
+            LocalChannel localChannel = localChannelReference.getLocalChannel();
+            try {
+                for (;;) {
+                    NetworkPacket networkPacket;
+                    synchronized (this) {
                         networkPacket = packets.poll();
-                    }
-                    localChannel.flush();
-                    sendLaters.remove(localId);
-                } else {
-                    step ++;
-                    if (step > 10000) {
-                        if (NetworkTransaction.isShuttingdownNetworkChannel(remoteAddress)
-                                || R66ShutdownHook.isShutdownStarting()) {
-                            // ignore
-                            sendLaters.remove(localId);
-                            packets.clear();
-                            return;
+                        if (networkPacket == null) {
+                            closed = true;
+                            sendLaters.remove(localId, this);
+                            break;
                         }
-                        logger.warn("Cannot get LocalChannel: due to LocalId not found: " + localId);
-                        final ConnectionErrorPacket error = new ConnectionErrorPacket(
-                                "Cannot get localChannel since localId is not found anymore", "" + localId);
-                        NetworkServerHandler.writeError(networkChannel, remoteId, localId, error);
-                        sendLaters.remove(localId);
-                        packets.clear();
-                    } else {
-                        Configuration.configuration.launchInFixedDelay(this, Configuration.WAITFORNETOP, TimeUnit.MILLISECONDS);
+                    }
+                    localChannel.write(networkPacket.getBuffer());
+                }
+            } finally {
+                synchronized (this) {
+                    draining = false;
+                    if (!closed) {
+                        // error while writing
+                        closed = true;
+                        sendLaters.remove(localId, this);
+                        clear();
                     }
                 }
+                localChannel.flush();
+            }
+        }
+
+        private synchronized void clear() {
+            NetworkPacket networkPacket = packets.poll();
+            while (networkPacket != null) {
+                networkPacket.clear();
+                networkPacket = packets.poll();
             }
         }
+
+        public void run(Timeout timeout) throws Exception {
+            synchronized (this) {
+                if (draining || closed) {
+                    return;
+                }
+                closed = true;
+            }
+            sendLaters.remove(localId, this);
+            if (NetworkTransaction.isShuttingdownNetworkChannel(remoteAddress)
+                    || R66ShutdownHook.isShutdownStarting()) {
+                // ignore
+                clear();
+                return;
+            }
+            if (!answerOnTimeout) {
+                // do not send anything since the packets are external errors
+                logger.debug("Cannot get LocalChannel while an end of request or an error comes: " + localId);
+                clear();
+                return;
+            }
+            logger.warn("Cannot get LocalChannel: due to LocalId not found: " + localId);
+            final ConnectionErrorPacket error = new ConnectionErrorPacket(
+                    "Cannot get localChannel since localId is not found anymore", "" + localId);
+            NetworkServerHandler.writeError(networkChannel, remoteId, localId, error);
+            clear();
+        }
     }
+
     /**
-     * Get the corresponding LocalChannelReference and set the remoteId if different
+     * Send the packets received before the registration of this LocalChannelReference
      * 
+     * @param localChannelReference
+     */
+    private void drainSendLater(LocalChannelReference localChannelReference) {
+        SendLater sendLater = sendLaters.get(localChannelReference.getLocalId());
+        if (sendLater != null) {
+            sendLater.drain(localChannelReference);
+        }
+    }
+
+    /**
+     * Keep a packet for a LocalId whose creation is pending, or behind packets still waiting for it, to be
+     * sent as soon as the LocalChannelReference is registered
+     * 
+     * @param networkChannel
      * @param remoteId
      * @param localId
-     * @throws OpenR66ProtocolSystemException
+     * @param packet
+     * @return True if the packet is taken (kept, or dropped if too many are waiting), False if it shall be
+     *         handled directly since nothing is waiting for this LocalId
      */
-    public void sendLaterToClient(Channel networkChannel, Integer remoteId, Integer localId, NetworkPacket packet) {
-        synchronized (SendLater.sendLaters) {
-            SendLater sendLater = SendLater.sendLaters.get(localId);
+    public boolean sendLaterToClient(Channel networkChannel, Integer remoteId, Integer localId,
+            NetworkPacket packet) {
+        SendLater sendLater = sendLaters.get(localId);
+        if (sendLater == null) {
+            if (!pendingCreations.containsKey(localId)) {
+                return false;
+            }
+            SendLater newSendLater = new SendLater(sendLaters, networkChannel, remoteId, localId);
+            sendLater = sendLaters.putIfAbsent(localId, newSendLater);
             if (sendLater == null) {
-                sendLater = new SendLater(this, networkChannel, remoteId, localId);
-                SendLater.sendLaters.put(localId, sendLater);
-                sendLater.setDaemon(true);
+                sendLater = newSendLater;
+                // packets are kept no longer than a connection timeout
+                sendLater.timeout = Configuration.configuration.getTimerClose().newTimeout(sendLater,
+                        Configuration.configuration.getTIMEOUTCON(), TimeUnit.MILLISECONDS);
             }
-            sendLater.remoteId = remoteId;
-            sendLater.add(packet);
         }
+        sendLater.remoteId = remoteId;
+        if (!sendLater.offer(packet)) {
+            return false;
+        }
+        // Registration might have occurred in between
+        LocalChannelReference localChannelReference = localChannelHashMap.get(localId);
+        if (localChannelReference != null) {
+            sendLater.drain(localChannelReference);
+        }
+        return true;
     }
 
     /**
@@ -276,17 +400,25 @@ public class LocalTransaction {
             if (channelFuture.isSuccess()) {
                 final LocalChannel channel = (LocalChannel) channelFuture.channel();
                 localChannelGroup.add(channel);
-                logger.debug("Will start localChannelReference and eventually generate a new Db Connection if not-thread-safe");
-                final LocalChannelReference localChannelReference = new LocalChannelReference(
-                        channel, networkChannelReference, remoteId, futureRequest);
-                localChannelHashMap.put(channel.id().hashCode(), localChannelReference);
-                logger.debug("Db connection done and Create LocalChannel entry: " + i + " {}",
-                        localChannelReference);
-                logger.info("Add one localChannel to a Network Channel: " + channel.id());
-                // Now send first a Startup message
-                StartupPacket startup = new StartupPacket(localChannelReference.getLocalId(), fromSsl);
-                channel.writeAndFlush(startup);
-                return localChannelReference;
+                Integer localId = channel.id().hashCode();
+                // packets for this LocalId are kept until registration
+                pendingCreations.put(localId, Boolean.TRUE);
+                try {
+                    logger.debug("Will start localChannelReference and eventually generate a new Db Connection if not-thread-safe");
+                    final LocalChannelReference localChannelReference = new LocalChannelReference(
+                            channel, networkChannelReference, remoteId, futureRequest);
+                    localChannelHashMap.put(localId, localChannelReference);
+                    logger.debug("Db connection done and Create LocalChannel entry: " + i + " {}",
+                            localChannelReference);
+                    logger.info("Add one localChannel to a Network Channel: " + channel.id());
+                    // Now send first a Startup message
+                    StartupPacket startup = new StartupPacket(localChannelReference.getLocalId(), fromSsl);
+                    channel.writeAndFlush(startup);
+                    drainSendLater(localChannelReference);
+                    return localChannelReference;
+                } finally {
+                    pendingCreations.remove(localId);
+                }
             } else {
                 logger.error("Can't connect to local server " + i + " (Done: " + channelFuture.isDone() + ")");
             }
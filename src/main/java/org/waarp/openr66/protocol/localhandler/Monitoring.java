@@ -17,6 +17,8 @@
  */
 package org.waarp.openr66.protocol.localhandler;
 
+import java.util.Map;
+
 import io.netty.handler.traffic.TrafficCounter;
 import org.joda.time.DateTime;
 import org.waarp.common.database.DbAdmin;
@@ -30,10 +32,16 @@ import org.waarp.common.logging.WaarpLogger;
 import org.waarp.common.logging.WaarpLoggerFactory;
 import org.waarp.openr66.commander.CommanderNoDb;
 import org.waarp.openr66.context.ErrorCode;
+import org.waarp.openr66.context.task.TaskExecutionEngine;
+import org.waarp.openr66.context.task.TaskExecutionEngine.TaskStatistics;
+import org.waarp.openr66.dao.DAOFactory;
+import org.waarp.openr66.dao.database.DBConnectionPool;
+import org.waarp.openr66.dao.database.DBDAOFactory;
 import org.waarp.openr66.database.DbConstant;
 import org.waarp.openr66.database.data.DbTaskRunner;
 import org.waarp.openr66.database.data.DbTaskRunner.TASKSTEP;
 import org.waarp.openr66.protocol.configuration.Configuration;
+import org.waarp.openr66.protocol.snmp.R66NotificationDispatcher;
 import org.waarp.openr66.protocol.snmp.R66PrivateMib;
 import org.waarp.snmp.WaarpSnmpAgent;
 import org.waarp.snmp.interf.WaarpInterfaceMonitor;
@@ -596,11 +604,35 @@ public class Monitoring implements WaarpInterfaceMonitor {
         }
     }
 
+    /**
+     * @return the pool of database connections used by the DAOs, if any (leaks are checked at
+     *         the same time)
+     */
+    private static DBConnectionPool getConnectionPool() {
+        DAOFactory daoFactory = DAOFactory.getInstance();
+        if (daoFactory instanceof DBDAOFactory) {
+            DBConnectionPool pool = ((DBDAOFactory) daoFactory).getConnectionPool();
+            pool.checkLeaks();
+            return pool;
+        }
+        return null;
+    }
+
+    /**
+     * @return the statistics of all the tasks run by the task execution engine, if any
+     */
+    private static TaskStatistics getTaskStatistics() {
+        TaskExecutionEngine engine = Configuration.configuration.getTaskExecutionEngine();
+        return engine != null ? engine.getGlobalStatistics() : null;
+    }
+
     /**
      * @param detail
      * @return The XML representation of the current status
      */
     public String exportXml(boolean detail) {
+        DBConnectionPool pool = getConnectionPool();
+        TaskStatistics tasks = getTaskStatistics();
         StringBuilder builder = new StringBuilder("<STATUS>")
                 // Global Informations
                 .append("<HostID>")
@@ -630,6 +662,60 @@ public class Monitoring implements WaarpInterfaceMonitor {
                 .append("<OutBandwidth>")
                 .append(bandwidthOut)
                 .append("</OutBandwidth>")
+                .append("<RecoveryRunning>")
+                .append(DbTaskRunner.isChangeFinishedToDoneRunning())
+                .append("</RecoveryRunning>")
+                .append("<RecoveryDone>")
+                .append(DbTaskRunner.getChangeFinishedToDoneCount())
+                .append("</RecoveryDone>")
+                .append("<SnmpTrapSent>")
+                .append(Configuration.configuration.getR66Mib() != null ?
+                        Configuration.configuration.getR66Mib().getDispatcher().getSent() : 0)
+                .append("</SnmpTrapSent>")
+                .append("<SnmpTrapDropped>")
+                .append(Configuration.configuration.getR66Mib() != null ?
+                        Configuration.configuration.getR66Mib().getDispatcher().getDropped() : 0)
+                .append("</SnmpTrapDropped>")
+                .append("<SnmpTrapCoalesced>")
+                .append(Configuration.configuration.getR66Mib() != null ?
+                        Configuration.configuration.getR66Mib().getDispatcher().getCoalesced() : 0)
+                .append("</SnmpTrapCoalesced>")
+                .append("<DbPoolActive>")
+                .append(pool != null ? pool.getActive() : 0)
+                .append("</DbPoolActive>")
+                .append("<DbPoolIdle>")
+                .append(pool != null ? pool.getIdle() : 0)
+                .append("</DbPoolIdle>")
+                .append("<DbPoolWaits>")
+                .append(pool != null ? pool.getWaits() : 0)
+                .append("</DbPoolWaits>")
+                .append("<DbPoolTimeouts>")
+                .append(pool != null ? pool.getTimeouts() : 0)
+                .append("</DbPoolTimeouts>")
+                .append("<DbPoolLeaks>")
+                .append(pool != null ? pool.getLeaks() : 0)
+                .append("</DbPoolLeaks>")
+                .append("<DbStatementHits>")
+                .append(pool != null ? pool.getStatementHits() : 0)
+                .append("</DbStatementHits>")
+                .append("<DbStatementMisses>")
+                .append(pool != null ? pool.getStatementMisses() : 0)
+                .append("</DbStatementMisses>")
+                .append("<TaskDone>")
+                .append(tasks != null ? tasks.getTasks() : 0)
+                .append("</TaskDone>")
+                .append("<TaskErrors>")
+                .append(tasks != null ? tasks.getErrors() : 0)
+                .append("</TaskErrors>")
+                .append("<TaskTimeouts>")
+                .append(tasks != null ? tasks.getTimeouts() : 0)
+                .append("</TaskTimeouts>")
+                .append("<TaskAvgQueueMs>")
+                .append(tasks != null ? tasks.getAverageQueueMs() : 0)
+                .append("</TaskAvgQueueMs>")
+                .append("<TaskAvgRunMs>")
+                .append(tasks != null ? tasks.getAverageRunMs() : 0)
+                .append("</TaskAvgRunMs>")
 
                 // Overall status including past, future and current transfers
                 .append("<OVERALL>")
@@ -839,6 +925,32 @@ public class Monitoring implements WaarpInterfaceMonitor {
         node.put("NbThreads", nbThread);
         node.put("InBandwidth", bandwidthIn);
         node.put("OutBandwidth", bandwidthOut);
+        node.put("RecoveryRunning", DbTaskRunner.isChangeFinishedToDoneRunning());
+        node.put("RecoveryDone", DbTaskRunner.getChangeFinishedToDoneCount());
+        if (Configuration.configuration.getR66Mib() != null) {
+            R66NotificationDispatcher dispatcher = Configuration.configuration.getR66Mib().getDispatcher();
+            node.put("SnmpTrapSent", dispatcher.getSent());
+            node.put("SnmpTrapDropped", dispatcher.getDropped());
+            node.put("SnmpTrapCoalesced", dispatcher.getCoalesced());
+        } else {
+            node.put("SnmpTrapSent", 0);
+            node.put("SnmpTrapDropped", 0);
+            node.put("SnmpTrapCoalesced", 0);
+        }
+        DBConnectionPool pool = getConnectionPool();
+        node.put("DbPoolActive", pool != null ? pool.getActive() : 0);
+        node.put("DbPoolIdle", pool != null ? pool.getIdle() : 0);
+        node.put("DbPoolWaits", pool != null ? pool.getWaits() : 0);
+        node.put("DbPoolTimeouts", pool != null ? pool.getTimeouts() : 0);
+        node.put("DbPoolLeaks", pool != null ? pool.getLeaks() : 0);
+        node.put("DbStatementHits", pool != null ? pool.getStatementHits() : 0);
+        node.put("DbStatementMisses", pool != null ? pool.getStatementMisses() : 0);
+        TaskStatistics tasks = getTaskStatistics();
+        node.put("TaskDone", tasks != null ? tasks.getTasks() : 0);
+        node.put("TaskErrors", tasks != null ? tasks.getErrors() : 0);
+        node.put("TaskTimeouts", tasks != null ? tasks.getTimeouts() : 0);
+        node.put("TaskAvgQueueMs", tasks != null ? tasks.getAverageQueueMs() : 0);
+        node.put("TaskAvgRunMs", tasks != null ? tasks.getAverageRunMs() : 0);
 
         // Overall status including past, future and current transfers
         ObjectNode node2 = node.putObject("OVERALL");
@@ -907,6 +1019,21 @@ public class Monitoring implements WaarpInterfaceMonitor {
             node2.put("Canceled", nbCountStatusCanceled);
             node2.put("FileNotFound", nbCountStatusFileNotFound);
             node2.put("Unknown", nbCountStatusUnknown);
+
+            // Tasks run by the task execution engine per rule
+            TaskExecutionEngine engine = Configuration.configuration.getTaskExecutionEngine();
+            if (engine != null) {
+                node2 = node.putObject("TASKS");
+                for (Map.Entry<String, TaskStatistics> entry : engine.getRuleStatistics().entrySet()) {
+                    ObjectNode node3 = node2.putObject(entry.getKey());
+                    node3.put("Done", entry.getValue().getTasks());
+                    node3.put("Errors", entry.getValue().getErrors());
+                    node3.put("Timeouts", entry.getValue().getTimeouts());
+                    node3.put("AvgQueueMs", entry.getValue().getAverageQueueMs());
+                    node3.put("AvgRunMs", entry.getValue().getAverageRunMs());
+                    node3.put("MaxRunMs", entry.getValue().getMaxRunMs());
+                }
+            }
         }
         return node;
     }
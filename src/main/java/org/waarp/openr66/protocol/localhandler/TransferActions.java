@@ -39,9 +39,11 @@ import org.waarp.common.logging.WaarpLogger;
 import org.waarp.common.logging.WaarpLoggerFactory;
 import org.waarp.openr66.context.ErrorCode;
 import org.waarp.openr66.context.R66Result;
+import org.waarp.openr66.context.filesystem.R66WriteStage;
 import org.waarp.openr66.context.task.AbstractTask;
 import org.waarp.openr66.context.task.TaskType;
 import org.waarp.openr66.context.task.exception.OpenR66RunnerErrorException;
+import org.waarp.openr66.dao.DAOFactory;
 import org.waarp.openr66.database.DbConstant;
 import org.waarp.openr66.database.data.DbRule;
 import org.waarp.openr66.database.data.DbTaskRunner;
@@ -72,6 +74,7 @@ import org.waarp.openr66.protocol.utils.ChannelCloseTimer;
 import org.waarp.openr66.protocol.utils.ChannelUtils;
 import org.waarp.openr66.protocol.utils.FileUtils;
 import org.waarp.openr66.protocol.utils.R66Future;
+import org.waarp.openr66.protocol.utils.R66FutureListener;
 
 /**
  * Class to implement actions related to real transfer: request initialization, data transfer, end of transfer and of request,
@@ -207,244 +210,353 @@ public class TransferActions extends ServerActions {
             ChannelCloseTimer.closeFutureChannel(channel);
             return;
         }
-        DbRule rule;
-        try {
-            rule = new DbRule(packet.getRulename());
-        } catch (WaarpDatabaseException e) {
-            logger.info("Rule is unknown: " + packet.getRulename() + " {}", e.getMessage());
-            session.setStatus(49);
-            endInitRequestInError(channel,
-                    ErrorCode.QueryRemotelyUnknown, null,
-                    new OpenR66ProtocolBusinessException(
-                            Messages.getString("LocalServerHandler.9") + //$NON-NLS-1$
-                                    packet.getRulename()), packet);
-            return;
+        // the database accesses to validate the request and to load the runner share one
+        // connection, given back before any task is run
+        DbTaskRunner runner;
+        DAOFactory daoFactory = DAOFactory.getInstance();
+        if (daoFactory != null) {
+            daoFactory.beginUnitOfWork();
         }
-        int blocksize = packet.getBlocksize();
-        if (packet.isToValidate()) {
-            if (!rule.checkHostAllow(session.getAuth().getUser())) {
-                session.setStatus(30);
-                throw new OpenR66ProtocolNotAuthenticatedException(
-                        Messages.getString("LocalServerHandler.10")); //$NON-NLS-1$
-            }
-            // Check if the blocksize is greater than local value
-            if (Configuration.configuration.getBLOCKSIZE() < blocksize) {
-                blocksize = Configuration.configuration.getBLOCKSIZE();
-                String sep = localChannelReference.getPartner().getSeperator();
-                packet = new RequestPacket(packet.getRulename(), packet.getMode(),
-                        packet.getFilename(), blocksize, packet.getRank(),
-                        packet.getSpecialId(), packet.getFileInformation(), packet.getOriginalSize(), sep);
+        try {
+            DbRule rule;
+            try {
+                rule = new DbRule(packet.getRulename());
+            } catch (WaarpDatabaseException e) {
+                logger.info("Rule is unknown: " + packet.getRulename() + " {}", e.getMessage());
+                session.setStatus(49);
+                endInitRequestInError(channel,
+                        ErrorCode.QueryRemotelyUnknown, null,
+                        new OpenR66ProtocolBusinessException(
+                                Messages.getString("LocalServerHandler.9") + //$NON-NLS-1$
+                                        packet.getRulename()), packet);
+                return;
             }
-        }
-        if (!RequestPacket.isCompatibleMode(rule.getMode(), packet.getMode())) {
-            // not compatible Rule and mode in request
-            throw new OpenR66ProtocolNotAuthenticatedException(
-                    Messages.getString("LocalServerHandler.12") + rule.getMode() + " vs " //$NON-NLS-1$
-                            + packet.getMode());
-        }
-        session.setBlockSize(blocksize);
-        DbTaskRunner runner;
-        // requested
-        boolean isRetrieve = DbTaskRunner.getSenderByRequestPacket(packet);
-        if (packet.getSpecialId() != DbConstant.ILLEGALVALUE) {
-            // Reload or create
-            String requested = DbTaskRunner.getRequested(session, packet);
-            String requester = DbTaskRunner.getRequester(session, packet);
-            logger.debug("DEBUG: " + packet.getSpecialId() + ":" + isRetrieve);
+            int blocksize = packet.getBlocksize();
             if (packet.isToValidate()) {
-                // Id could be a creation or a reload
-                // Try reload
-                try {
-                    runner = new DbTaskRunner(session, rule, packet.getSpecialId(),
-                            requester, requested);
-                    // Patch to prevent self request to be stored by sender
-                    boolean ignoreSave = runner.shallIgnoreSave();
-                    runner.setSender(isRetrieve);
-                    logger.debug("DEBUG: " + runner.getSpecialId() + ":" + ignoreSave + ":" + runner.shallIgnoreSave()
-                            + ":" + isRetrieve);
-                    if (ignoreSave && !runner.shallIgnoreSave() && !runner.checkFromDbForSubmit()) {
-                        // Since status changed, it means that object should be created and not reloaded
-                        // But in case of submit, item already exist so shall be loaded from database
-                        throw new WaarpDatabaseNoDataException("False load, must reopen and create DbTaskRunner");
-                    }
-                } catch (WaarpDatabaseNoDataException e) {
-                    // Reception of request from requester host
-                    try {
-                        runner = new DbTaskRunner(session, rule, isRetrieve, packet);
-                        logger.debug("Runner before any action: {} {}", runner.shallIgnoreSave(), runner);
-                    } catch (WaarpDatabaseException e1) {
-                        session.setStatus(33);
-                        endInitRequestInError(channel, ErrorCode.QueryRemotelyUnknown,
-                                null, new OpenR66DatabaseGlobalException(e), packet);
-                        return;
-                    }
-                } catch (WaarpDatabaseException e) {
-                    session.setStatus(34);
-                    endInitRequestInError(channel, ErrorCode.QueryRemotelyUnknown, null,
-                            new OpenR66DatabaseGlobalException(e), packet);
-                    return;
-                }
-                if (runner.isAllDone()) {
-                    // truly an error since done
-                    session.setStatus(31);
-                    endInitRequestInError(channel,
-                            ErrorCode.QueryAlreadyFinished, runner,
-                            new OpenR66ProtocolBusinessQueryAlreadyFinishedException(
-                                    Messages.getString("LocalServerHandler.13") //$NON-NLS-1$
-                                            +
-                                            packet.getSpecialId()), packet);
-                    return;
-                }
-                LocalChannelReference lcr =
-                        Configuration.configuration.getLocalTransaction().
-                                getFromRequest(
-                                        requested + " " + requester + " "
-                                                + packet.getSpecialId());
-                if (lcr != null) {
-                    // truly an error since still running
-                    session.setStatus(32);
-                    endInitRequestInError(channel,
-                            ErrorCode.QueryStillRunning, runner,
-                            new OpenR66ProtocolBusinessQueryStillRunningException(
-                                    Messages.getString("LocalServerHandler.14") //$NON-NLS-1$
-                                            +
-                                            packet.getSpecialId()), packet);
-                    return;
+                if (!rule.checkHostAllow(session.getAuth().getUser())) {
+                    session.setStatus(30);
+                    throw new OpenR66ProtocolNotAuthenticatedException(
+                            Messages.getString("LocalServerHandler.10")); //$NON-NLS-1$
                 }
-                logger.debug("Runner before any action: {} {}", runner.shallIgnoreSave(), runner);
-                // ok to restart
-                try {
-                    if (runner.restart(false)) {
-                        runner.saveStatus();
-                    }
-                } catch (OpenR66RunnerErrorException e) {
+                // Check if the blocksize is greater than local value (or local maximum if adaptive)
+                int localBlocksize = Math.max(Configuration.configuration.getBLOCKSIZE(),
+                        Configuration.configuration.getMaxBlockSize());
+                if (localBlocksize < blocksize) {
+                    // the proposed rank is expressed in proposed blocks
+                    int rank = DbTaskRunner.convertRank(packet.getRank(), blocksize, localBlocksize);
+                    blocksize = localBlocksize;
+                    String sep = localChannelReference.getPartner().getSeperator();
+                    packet = new RequestPacket(packet.getRulename(), packet.getMode(),
+                            packet.getFilename(), blocksize, rank,
+                            packet.getSpecialId(), packet.getFileInformation(), packet.getOriginalSize(), sep);
                 }
-                // Change the SpecialID! => could generate an error ?
-                packet.setSpecialId(runner.getSpecialId());
-            } else {
-                // Id should be a reload
-                try {
-                    runner = new DbTaskRunner(
-                            session, rule, packet.getSpecialId(),
-                            requester, requested);
-                } catch (WaarpDatabaseException e) {
-                    if (localChannelReference.getDbSession() == null) {
-                        // Special case of no database client
+            }
+            if (!RequestPacket.isCompatibleMode(rule.getMode(), packet.getMode())) {
+                // not compatible Rule and mode in request
+                throw new OpenR66ProtocolNotAuthenticatedException(
+                        Messages.getString("LocalServerHandler.12") + rule.getMode() + " vs " //$NON-NLS-1$
+                                + packet.getMode());
+            }
+            session.setBlockSize(blocksize);
+            // requested
+            boolean isRetrieve = DbTaskRunner.getSenderByRequestPacket(packet);
+            if (packet.getSpecialId() != DbConstant.ILLEGALVALUE) {
+                // Reload or create
+                String requested = DbTaskRunner.getRequested(session, packet);
+                String requester = DbTaskRunner.getRequester(session, packet);
+                logger.debug("DEBUG: " + packet.getSpecialId() + ":" + isRetrieve);
+                if (packet.isToValidate()) {
+                    // Id could be a creation or a reload
+                    // Try reload
+                    try {
+                        runner = new DbTaskRunner(session, rule, packet.getSpecialId(),
+                                requester, requested);
+                        // Patch to prevent self request to be stored by sender
+                        boolean ignoreSave = runner.shallIgnoreSave();
+                        runner.setSender(isRetrieve);
+                        logger.debug("DEBUG: " + runner.getSpecialId() + ":" + ignoreSave + ":" + runner.shallIgnoreSave()
+                                + ":" + isRetrieve);
+                        if (ignoreSave && !runner.shallIgnoreSave() && !runner.checkFromDbForSubmit()) {
+                            // Since status changed, it means that object should be created and not reloaded
+                            // But in case of submit, item already exist so shall be loaded from database
+                            throw new WaarpDatabaseNoDataException("False load, must reopen and create DbTaskRunner");
+                        }
+                    } catch (WaarpDatabaseNoDataException e) {
+                        // Reception of request from requester host
                         try {
-                            runner = new DbTaskRunner(
-                                    session, rule, isRetrieve, packet);
+                            runner = new DbTaskRunner(session, rule, isRetrieve, packet);
                             logger.debug("Runner before any action: {} {}", runner.shallIgnoreSave(), runner);
                         } catch (WaarpDatabaseException e1) {
-                            session.setStatus(35);
-                            endInitRequestInError(channel, ErrorCode.QueryRemotelyUnknown, null,
-                                    new OpenR66DatabaseGlobalException(e1), packet);
+                            session.setStatus(33);
+                            endInitRequestInError(channel, ErrorCode.QueryRemotelyUnknown,
+                                    null, new OpenR66DatabaseGlobalException(e), packet);
                             return;
                         }
-                    } else {
+                    } catch (WaarpDatabaseException e) {
+                        session.setStatus(34);
                         endInitRequestInError(channel, ErrorCode.QueryRemotelyUnknown, null,
                                 new OpenR66DatabaseGlobalException(e), packet);
-                        session.setStatus(36);
                         return;
                     }
-                }
-                runner.setSender(isRetrieve);
-                // FIX check for SelfRequest
-                if (runner.isSelfRequest()) {
-                    runner.setFilename(runner.getOriginalFilename());
-                }
-                if (!runner.isSender()) {
-                    logger.debug("New filename ? :" + packet.getFilename());
-                    runner.setOriginalFilename(packet.getFilename());
-                    if (runner.getRank() == 0) {
-                        runner.setFilename(packet.getFilename());
+                    if (runner.isAllDone()) {
+                        // truly an error since done
+                        session.setStatus(31);
+                        endInitRequestInError(channel,
+                                ErrorCode.QueryAlreadyFinished, runner,
+                                new OpenR66ProtocolBusinessQueryAlreadyFinishedException(
+                                        Messages.getString("LocalServerHandler.13") //$NON-NLS-1$
+                                                +
+                                                packet.getSpecialId()), packet);
+                        return;
                     }
-                }
-                logger.debug("Runner before any action: {} {}", runner.shallIgnoreSave(), runner);
-                try {
-                    if (runner.restart(false)) {
-                        if (!runner.isSelfRequest()) {
+                    LocalChannelReference lcr =
+                            Configuration.configuration.getLocalTransaction().
+                                    getFromRequest(
+                                            requested + " " + requester + " "
+                                                    + packet.getSpecialId());
+                    if (lcr != null) {
+                        // truly an error since still running
+                        session.setStatus(32);
+                        endInitRequestInError(channel,
+                                ErrorCode.QueryStillRunning, runner,
+                                new OpenR66ProtocolBusinessQueryStillRunningException(
+                                        Messages.getString("LocalServerHandler.14") //$NON-NLS-1$
+                                                +
+                                                packet.getSpecialId()), packet);
+                        return;
+                    }
+                    logger.debug("Runner before any action: {} {}", runner.shallIgnoreSave(), runner);
+                    // ok to restart
+                    try {
+                        if (runner.restart(false)) {
                             runner.saveStatus();
                         }
+                    } catch (OpenR66RunnerErrorException e) {
                     }
-                } catch (OpenR66RunnerErrorException e) {
+                    // Change the SpecialID! => could generate an error ?
+                    packet.setSpecialId(runner.getSpecialId());
+                } else {
+                    // Id should be a reload
+                    try {
+                        runner = new DbTaskRunner(
+                                session, rule, packet.getSpecialId(),
+                                requester, requested);
+                    } catch (WaarpDatabaseException e) {
+                        if (localChannelReference.getDbSession() == null) {
+                            // Special case of no database client
+                            try {
+                                runner = new DbTaskRunner(
+                                        session, rule, isRetrieve, packet);
+                                logger.debug("Runner before any action: {} {}", runner.shallIgnoreSave(), runner);
+                            } catch (WaarpDatabaseException e1) {
+                                session.setStatus(35);
+                                endInitRequestInError(channel, ErrorCode.QueryRemotelyUnknown, null,
+                                        new OpenR66DatabaseGlobalException(e1), packet);
+                                return;
+                            }
+                        } else {
+                            endInitRequestInError(channel, ErrorCode.QueryRemotelyUnknown, null,
+                                    new OpenR66DatabaseGlobalException(e), packet);
+                            session.setStatus(36);
+                            return;
+                        }
+                    }
+                    runner.setSender(isRetrieve);
+                    // FIX check for SelfRequest
+                    if (runner.isSelfRequest()) {
+                        runner.setFilename(runner.getOriginalFilename());
+                    }
+                    if (!runner.isSender()) {
+                        logger.debug("New filename ? :" + packet.getFilename());
+                        runner.setOriginalFilename(packet.getFilename());
+                        if (runner.getRank() == 0) {
+                            runner.setFilename(packet.getFilename());
+                        }
+                    }
+                    logger.debug("Runner before any action: {} {}", runner.shallIgnoreSave(), runner);
+                    try {
+                        if (runner.restart(false)) {
+                            if (!runner.isSelfRequest()) {
+                                runner.saveStatus();
+                            }
+                        }
+                    } catch (OpenR66RunnerErrorException e) {
+                    }
+                }
+            } else {
+                // Very new request
+                // should not be the case (the requester should always set the id)
+                logger.error("NO TransferID specified: SHOULD NOT BE THE CASE");
+                try {
+                    runner = new DbTaskRunner(session, rule, isRetrieve, packet);
+                } catch (WaarpDatabaseException e) {
+                    session.setStatus(37);
+                    endInitRequestInError(channel, ErrorCode.QueryRemotelyUnknown, null,
+                            new OpenR66DatabaseGlobalException(e), packet);
+                    return;
                 }
+                packet.setSpecialId(runner.getSpecialId());
             }
-        } else {
-            // Very new request
-            // should not be the case (the requester should always set the id)
-            logger.error("NO TransferID specified: SHOULD NOT BE THE CASE");
-            try {
-                runner = new DbTaskRunner(session, rule, isRetrieve, packet);
-            } catch (WaarpDatabaseException e) {
-                session.setStatus(37);
-                endInitRequestInError(channel, ErrorCode.QueryRemotelyUnknown, null,
-                        new OpenR66DatabaseGlobalException(e), packet);
+            logger.debug("Runner before any action: {} {}", runner.shallIgnoreSave(), runner);
+            // Check now if request is a valid one
+            if (packet.getCode() != ErrorCode.InitOk.code) {
+                // not valid so create an error from there
+                ErrorCode code = ErrorCode.getFromCode("" + packet.getCode());
+                session.setBadRunner(runner, code);
+                if (!runner.shallIgnoreSave()) {
+                    runner.saveStatus();
+                }
+                session.newState(ERROR);
+                logger.error("Bad runner at startup {} {}", packet, session);
+                ErrorPacket errorPacket = new ErrorPacket(code.getMesg(),
+                        code.getCode(), ErrorPacket.FORWARDCLOSECODE);
+                errorMesg(channel, errorPacket);
                 return;
             }
-            packet.setSpecialId(runner.getSpecialId());
-        }
-        logger.debug("Runner before any action: {} {}", runner.shallIgnoreSave(), runner);
-        // Check now if request is a valid one
-        if (packet.getCode() != ErrorCode.InitOk.code) {
-            // not valid so create an error from there
-            ErrorCode code = ErrorCode.getFromCode("" + packet.getCode());
-            session.setBadRunner(runner, code);
-            if (!runner.shallIgnoreSave()) {
-                runner.saveStatus();
-            }
-            session.newState(ERROR);
-            logger.error("Bad runner at startup {} {}", packet, session);
-            ErrorPacket errorPacket = new ErrorPacket(code.getMesg(),
-                    code.getCode(), ErrorPacket.FORWARDCLOSECODE);
-            errorMesg(channel, errorPacket);
-            return;
-        }
-        // Receiver can specify a rank different from database
-        if (runner.isSender()) {
-            logger.debug("Rank was: " + runner.getRank() + " -> " + packet.getRank());
-            runner.setRankAtStartup(packet.getRank());
-        } else {
-            if (runner.getRank() > packet.getRank()) {
-                logger.debug("Recv Rank was: " + runner.getRank() + " -> " + packet.getRank());
-                // if receiver, change only if current rank is upper proposed rank
+            // Negotiated blocksize could be different from the one of a previous attempt
+            runner.setBlocksize(blocksize);
+            // Receiver can specify a rank different from database
+            if (runner.isSender()) {
+                logger.debug("Rank was: " + runner.getRank() + " -> " + packet.getRank());
                 runner.setRankAtStartup(packet.getRank());
+            } else {
+                if (runner.getRank() > packet.getRank()) {
+                    logger.debug("Recv Rank was: " + runner.getRank() + " -> " + packet.getRank());
+                    // if receiver, change only if current rank is upper proposed rank
+                    runner.setRankAtStartup(packet.getRank());
+                }
+                if (packet.getOriginalSize() > 0) {
+                    runner.setOriginalSize(packet.getOriginalSize());
+                }
             }
-            if (packet.getOriginalSize() > 0) {
-                runner.setOriginalSize(packet.getOriginalSize());
+            logger.debug("Filesize: " + packet.getOriginalSize() + ":" + runner.isSender());
+        } finally {
+            if (daoFactory != null) {
+                daoFactory.endUnitOfWork();
             }
         }
-        logger.debug("Filesize: " + packet.getOriginalSize() + ":" + runner.isSender());
-        boolean shouldInformBack = false;
         try {
             session.setRunner(runner);
             // Fix to ensure that recv request are not trying to access to not chroot files
-            if (Configuration.configuration.isChrootChecked() && packet.isToValidate() && runner.isSender()) {
-                session.startup(true);
-            } else {
-                session.startup(false);
+            boolean preTask = session.startupBeforePreTask(
+                    Configuration.configuration.isChrootChecked() && packet.isToValidate() && runner.isSender());
+            if (preTask && Configuration.configuration.getTaskExecutionEngine() != null) {
+                runPreTask(channel, packet, runner);
+                return;
             }
-            if (runner.isSender() && !runner.isSendThrough()) {
-                if (packet.getOriginalSize() != runner.getOriginalSize()) {
-                    packet.setOriginalSize(runner.getOriginalSize());
-                    shouldInformBack = true;
-                    logger.debug("Filesize2: " + packet.getOriginalSize() + ":" + runner.isSender());
-                }
+            if (preTask) {
+                runner.run();
             }
+            session.startupAfterPreTask(preTask);
         } catch (OpenR66RunnerErrorException e) {
-            try {
-                runner.saveStatus();
-            } catch (OpenR66RunnerErrorException e1) {
-                logger.error("Cannot save Status: " + runner, e1);
+            preTaskInError(channel, runner, e);
+            return;
+        }
+        requestStarted(channel, packet, runner);
+    }
+
+    /**
+     * Run the PreTask through the TaskExecutionEngine without blocking the current thread: the request
+     * goes on within the event loop of the channel once the PreTask is done, no other packet being
+     * read from the channel meanwhile.
+     *
+     * @param channel
+     * @param packet
+     * @param runner
+     */
+    private final void runPreTask(final LocalChannel channel, final RequestPacket packet,
+            final DbTaskRunner runner) {
+        channel.config().setAutoRead(false);
+        R66Future preTask = new R66Future(true);
+        preTask.addListener(new R66FutureListener() {
+            public void operationComplete(final R66Future future) {
+                channel.eventLoop().execute(new Runnable() {
+                    public void run() {
+                        try {
+                            preTaskDone(channel, packet, runner, future);
+                        } catch (Exception e) {
+                            channel.pipeline().fireExceptionCaught(e);
+                        } finally {
+                            channel.config().setAutoRead(true);
+                        }
+                    }
+                });
             }
-            if (runner.getErrorInfo() == ErrorCode.InitOk ||
-                    runner.getErrorInfo() == ErrorCode.PreProcessingOk ||
-                    runner.getErrorInfo() == ErrorCode.TransferOk) {
-                runner.setErrorExecutionStatus(ErrorCode.ExternalOp);
+        });
+        runner.runAsync(preTask);
+    }
+
+    /**
+     * Go on with the request once the PreTask run by runPreTask is done
+     *
+     * @param channel
+     * @param packet
+     * @param runner
+     * @param future
+     *            the future of the PreTask
+     * @throws OpenR66ProtocolPacketException
+     * @throws OpenR66RunnerErrorException
+     */
+    private final void preTaskDone(LocalChannel channel, RequestPacket packet, DbTaskRunner runner,
+            R66Future future) throws OpenR66ProtocolPacketException, OpenR66RunnerErrorException {
+        try {
+            if (!future.isSuccess()) {
+                if (future.getCause() instanceof OpenR66RunnerErrorException) {
+                    throw (OpenR66RunnerErrorException) future.getCause();
+                }
+                throw new OpenR66RunnerErrorException("PreTask in error", future.getCause());
             }
-            logger.error("PreTask in error {}", e.getMessage(), e);
-            errorToSend("PreTask in error: " + e.getMessage(), runner.getErrorInfo(), channel, 38);
+            session.startupAfterPreTask(true);
+        } catch (OpenR66RunnerErrorException e) {
+            preTaskInError(channel, runner, e);
             return;
         }
+        requestStarted(channel, packet, runner);
+    }
+
+    /**
+     * Answer a request whose PreTask or startup is in error
+     *
+     * @param channel
+     * @param runner
+     * @param e
+     * @throws OpenR66ProtocolPacketException
+     */
+    private final void preTaskInError(LocalChannel channel, DbTaskRunner runner, OpenR66RunnerErrorException e)
+            throws OpenR66ProtocolPacketException {
+        try {
+            runner.saveStatus();
+        } catch (OpenR66RunnerErrorException e1) {
+            logger.error("Cannot save Status: " + runner, e1);
+        }
+        if (runner.getErrorInfo() == ErrorCode.InitOk ||
+                runner.getErrorInfo() == ErrorCode.PreProcessingOk ||
+                runner.getErrorInfo() == ErrorCode.TransferOk) {
+            runner.setErrorExecutionStatus(ErrorCode.ExternalOp);
+        }
+        logger.error("PreTask in error {}", e.getMessage(), e);
+        errorToSend("PreTask in error: " + e.getMessage(), runner.getErrorInfo(), channel, 38);
+    }
+
+    /**
+     * End of the request once the PreTask is done: inform back the partner and start the transfer
+     *
+     * @param channel
+     * @param packet
+     * @param runner
+     * @throws OpenR66ProtocolPacketException
+     * @throws OpenR66RunnerErrorException
+     */
+    private final void requestStarted(LocalChannel channel, RequestPacket packet, DbTaskRunner runner)
+            throws OpenR66ProtocolPacketException, OpenR66RunnerErrorException {
+        boolean shouldInformBack = false;
+        if (runner.isSender() && !runner.isSendThrough()) {
+            if (packet.getOriginalSize() != runner.getOriginalSize()) {
+                packet.setOriginalSize(runner.getOriginalSize());
+                shouldInformBack = true;
+                logger.debug("Filesize2: " + packet.getOriginalSize() + ":" + runner.isSender());
+            }
+        }
         logger.debug("Filesize: " + packet.getOriginalSize() + ":" + runner.isSender());
         if (! shouldInformBack) {
             shouldInformBack = ! packet.getFileInformation().equals(runner.getFileInformation());
@@ -673,6 +785,7 @@ public class TransferActions extends ServerActions {
             if (packet.getPacketRank() < session.getRunner().getRank()) {
                 logger.debug("Bad RANK: " + packet.getPacketRank() + " : " +
                         session.getRunner().getRank());
+                session.waitPendingWrites();
                 session.getRunner().setRankAtStartup(packet.getPacketRank());
                 session.getRestart().restartMarker(
                         session.getRunner().getBlocksize() *
@@ -769,6 +882,21 @@ public class TransferActions extends ServerActions {
             } finally {
                 packet.clear();
             }
+        } else if (session.getSessionWriter() != null) {
+            R66WriteStage.SessionWriter writer = session.getSessionWriter();
+            if (writer.getError() != null) {
+                packet.clear();
+                errorToSend("Transfer in error",
+                        ErrorCode.TransferError, channel, 22);
+                return;
+            }
+            writer.write(packet.getData().retain(), session.getRunner().getRank());
+            session.getRunner().incrementRank();
+            if (packet.getPacketRank() % 100 == 1) {
+                logger.debug("Good RANK: " + packet.getPacketRank() + " : " +
+                        session.getRunner().getRank());
+            }
+            packet.clear();
         } else {
             dataBlock.setBlock(packet.getData());
             try {
@@ -798,13 +926,54 @@ public class TransferActions extends ServerActions {
      * @throws OpenR66ProtocolSystemException
      * @throws OpenR66ProtocolNotAuthenticatedException
      */
-    public void endTransfer(Channel channel, EndTransferPacket packet)
+    public void endTransfer(final Channel channel, final EndTransferPacket packet)
             throws OpenR66RunnerErrorException, OpenR66ProtocolSystemException,
             OpenR66ProtocolNotAuthenticatedException {
         if (!session.isAuthenticated()) {
             throw new OpenR66ProtocolNotAuthenticatedException(
                     "Not authenticated while EndTransfer received");
         }
+        R66WriteStage.SessionWriter writer = session.getSessionWriter();
+        if (writer != null) {
+            // Go on within the event loop once all received blocks are on disk, without waiting here
+            channel.config().setAutoRead(false);
+            writer.whenComplete(new Runnable() {
+                public void run() {
+                    channel.eventLoop().execute(new Runnable() {
+                        public void run() {
+                            try {
+                                endTransferWritten(channel, packet);
+                            } catch (Exception e) {
+                                channel.pipeline().fireExceptionCaught(e);
+                            } finally {
+                                channel.config().setAutoRead(true);
+                            }
+                        }
+                    });
+                }
+            });
+            return;
+        }
+        endTransferWritten(channel, packet);
+    }
+
+    /**
+     * Go on with the End of Transfer once all received blocks are written
+     *
+     * @param channel
+     * @param packet
+     * @throws OpenR66RunnerErrorException
+     * @throws OpenR66ProtocolSystemException
+     */
+    private void endTransferWritten(Channel channel, EndTransferPacket packet)
+            throws OpenR66RunnerErrorException, OpenR66ProtocolSystemException {
+        if (session.waitPendingWrites() != null) {
+            try {
+                errorToSend("Transfer in error", ErrorCode.TransferError, channel, 22);
+            } catch (OpenR66ProtocolPacketException e) {
+            }
+            return;
+        }
         // Check end of transfer
         long originalSize = session.getRunner().getOriginalSize();
         logger.debug("OSize: " + originalSize + " isSender: " + session.getRunner().isSender());
@@ -869,19 +1038,25 @@ public class TransferActions extends ServerActions {
                     return;
                 } else {
                     if (localDigest != null) {
+                        localChannelReference.setTransferDigest(
+                                localChannelReference.getPartner().getDigestAlgo(), localhash);
                         localhash = FilesystemBasedDigest.getHex(localDigest.Final());
                     }
+                    localChannelReference.setTransferDigest(Configuration.configuration.getDigest(), localhash);
                     localChannelReference.setHashComputeDuringTransfer(localhash);
                     logger.debug("Global digest ok");
                 }
             } else if (globalDigest != null) {
                 String localhash = null;
                 if (localDigest != null) {
+                    localChannelReference.setTransferDigest(localChannelReference.getPartner().getDigestAlgo(),
+                            FilesystemBasedDigest.getHex(globalDigest.Final()));
                     localhash = FilesystemBasedDigest.getHex(localDigest.Final());
                 } else {
                     localhash = FilesystemBasedDigest.getHex(globalDigest.Final());
                 }
                 globalDigest = null;
+                localChannelReference.setTransferDigest(Configuration.configuration.getDigest(), localhash);
                 localChannelReference.setHashComputeDuringTransfer(localhash);
             }
             localDigest = null;
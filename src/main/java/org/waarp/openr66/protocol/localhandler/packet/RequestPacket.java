@@ -57,7 +57,7 @@ public class RequestPacket extends AbstractLocalPacket {
     }
 
     protected static enum FIELDS {
-        rule, mode, filename, block, rank, id, code, length, limit
+        rule, mode, filename, block, rank, id, code, length, limit, trace
     }
 
     protected static final byte REQVALIDATE = 0;
@@ -88,6 +88,11 @@ public class RequestPacket extends AbstractLocalPacket {
 
     protected String separator = PartnerConfiguration.getSEPARATOR_FIELD();
 
+    /**
+     * Trace id of the partner if any (JSON mode only)
+     */
+    protected String traceId;
+
     /**
      * 
      * @param mode
@@ -233,7 +238,7 @@ public class RequestPacket extends AbstractLocalPacket {
             logger.debug("Request is using JSON");
             ObjectNode map = JsonHandler.getFromString(sheader);
             ObjectNode map2 = JsonHandler.getFromString(smiddle);
-            return new RequestPacket(map.path(FIELDS.rule.name()).asText(),
+            RequestPacket packet = new RequestPacket(map.path(FIELDS.rule.name()).asText(),
                     map.path(FIELDS.mode.name()).asInt(),
                     map2.path(FIELDS.filename.name()).asText(),
                     map2.path(FIELDS.block.name()).asInt(),
@@ -245,6 +250,10 @@ public class RequestPacket extends AbstractLocalPacket {
                     // Get speed if it exists if not speed is set to 0
                     map2.path(FIELDS.limit.name()).asLong(0),
                     PartnerConfiguration.BAR_JSON_FIELD);
+            if (map2.has(FIELDS.trace.name())) {
+                packet.traceId = map2.path(FIELDS.trace.name()).asText();
+            }
+            return packet;
         }
 
         String[] aheader = sheader.split(PartnerConfiguration.BLANK_SEPARATOR_FIELD);
@@ -378,6 +387,10 @@ public class RequestPacket extends AbstractLocalPacket {
             JsonHandler.setValue(node, FIELDS.length, originalSize);
             // Add limit if specified
             JsonHandler.setValue(node, FIELDS.limit, limit);
+            // Add trace id if tracing
+            if (lcr.getTrace() != null) {
+                JsonHandler.setValue(node, FIELDS.trace, lcr.getTrace().getTraceId());
+            }
             middle = Unpooled.wrappedBuffer(away, JsonHandler.writeAsString(node).getBytes());
         } else {
             middle = Unpooled.wrappedBuffer(away, filename.getBytes(),
@@ -530,6 +543,13 @@ public class RequestPacket extends AbstractLocalPacket {
         this.code = code;
     }
 
+    /**
+     * @return the trace id of the partner if any
+     */
+    public String getTraceId() {
+        return traceId;
+    }
+
     public long getLimit() {
         return this.limit;
     }
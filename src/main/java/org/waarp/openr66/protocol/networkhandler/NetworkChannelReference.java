@@ -238,6 +238,23 @@ public class NetworkChannelReference {
         return this.hostAddress.hashCode();
     }
 
+    /**
+     *
+     * @return the global remote networkaddress
+     */
+    public SocketAddress getSocketAddress() {
+        return this.networkAddress;
+    }
+
+    /**
+     * Used for BlackList
+     *
+     * @return the remote IP address
+     */
+    public String getHostAddress() {
+        return this.hostAddress;
+    }
+
     /**
      * Check if the last time used is ok with a delay applied to the current time (timeout)
      *
@@ -71,12 +71,16 @@ public class NetworkServerHandler extends SimpleChannelInboundHandler<NetworkPac
     /**
      * The associated NetworkChannelReference
      */
-    private NetworkChannelReference networkChannelReference;
+    private volatile NetworkChannelReference networkChannelReference;
     /**
      * The Database connection attached to this NetworkChannelReference shared among all associated
      * LocalChannels
      */
-    private DbSession dbSession;
+    private volatile DbSession dbSession;
+    /**
+     * Guards the release of a dedicated dbSession
+     */
+    private final Object dbSessionLock = new Object();
     /**
      * Does this Handler is for SSL
      */
@@ -102,12 +106,44 @@ public class NetworkServerHandler extends SimpleChannelInboundHandler<NetworkPac
         this.isServer = isServer;
     }
 
+    /**
+     * 
+     * @param channel
+     * @return the NetworkChannelReference, for a client connection the one attached by NetworkTransaction once
+     *         connected
+     */
+    private NetworkChannelReference getNetworkChannelReference(Channel channel) {
+        if (networkChannelReference == null && !isServer) {
+            networkChannelReference = NetworkTransaction.getAttachedNetworkChannel(channel);
+        }
+        return networkChannelReference;
+    }
+
     @Override
-    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+        getNetworkChannelReference(ctx.channel());
+        if (Configuration.configuration.isHandlerInline()) {
+            // Do not block the event loop of the channel
+            Configuration.configuration.getHandlerGroup().execute(new Runnable() {
+                public void run() {
+                    networkChannelClosed(ctx.channel());
+                }
+            });
+        } else {
+            networkChannelClosed(ctx.channel());
+        }
+    }
+
+    /**
+     * Release the resources once the network channel is closed
+     * 
+     * @param channel
+     */
+    private void networkChannelClosed(Channel channel) {
         if (networkChannelReference != null) {
             if (networkChannelReference.nbLocalChannels() > 0) {
                 logger.info("Network Channel Closed: {} LocalChannels Left: {}",
-                        ctx.channel().id(),
+                        channel.id(),
                         networkChannelReference.nbLocalChannels());
                 // Give an extra time if necessary to let the local channel being closed
                 try {
@@ -118,21 +154,37 @@ public class NetworkServerHandler extends SimpleChannelInboundHandler<NetworkPac
             NetworkTransaction.closedNetworkChannel(networkChannelReference);
         } else {
             if (remoteAddress == null) {
-                remoteAddress = ctx.channel().remoteAddress();
+                remoteAddress = channel.remoteAddress();
             }
             NetworkTransaction.closedNetworkChannel(remoteAddress);
         }
         // Now force the close of the database after a wait
-        if (dbSession != null && DbConstant.admin != null && DbConstant.admin.getSession() != null
-                && !dbSession.equals(DbConstant.admin.getSession())) {
-            dbSession.forceDisconnect();
+        releaseDbSession(dbSession);
+    }
+
+    /**
+     * Disconnect the given DbSession if it is still the dedicated one of this handler, only once whoever
+     * calls it
+     * 
+     * @param session
+     */
+    private void releaseDbSession(DbSession session) {
+        if (session == null || DbConstant.admin == null || DbConstant.admin.getSession() == null
+                || session.equals(DbConstant.admin.getSession())) {
+            return;
+        }
+        synchronized (dbSessionLock) {
+            if (dbSession != session) {
+                return;
+            }
             dbSession = null;
         }
+        session.forceDisconnect();
     }
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
-        Channel netChannel = ctx.channel();
+        final Channel netChannel = ctx.channel();
         this.remoteAddress = netChannel.remoteAddress();
         logger.debug("Will the Connection be refused if Partner is BlackListed from " + remoteAddress.toString());
         if (NetworkTransaction.isBlacklisted(netChannel)) {
@@ -147,7 +199,13 @@ public class NetworkServerHandler extends SimpleChannelInboundHandler<NetworkPac
             return;
         }
         try {
-            this.networkChannelReference = NetworkTransaction.addNetworkChannel(netChannel);
+            if (!isServer && Configuration.configuration.isHandlerInline()) {
+                // Client connection: NetworkTransaction attaches its reference once connected, do not wait for
+                // it on the event loop of the channel
+                getNetworkChannelReference(netChannel);
+            } else {
+                this.networkChannelReference = NetworkTransaction.addNetworkChannel(netChannel);
+            }
         } catch (OpenR66ProtocolRemoteShutdownException e2) {
             logger.warn("Connection refused since Partner is in Shutdown from " + remoteAddress.toString() + " : {}",
                     e2.getMessage());
@@ -158,7 +216,28 @@ public class NetworkServerHandler extends SimpleChannelInboundHandler<NetworkPac
         }
         try {
             if (DbConstant.admin.isActive()) {
-                if (DbConstant.admin.isCompatibleWithThreadSharedConnexion()) {
+                if (DbConstant.admin.isCompatibleWithThreadSharedConnexion() &&
+                        Configuration.configuration.isHandlerInline()) {
+                    // Use the default connection until the dedicated one is open out of the event loop
+                    this.dbSession = DbConstant.admin.getSession();
+                    Configuration.configuration.getHandlerGroup().execute(new Runnable() {
+                        public void run() {
+                            try {
+                                DbSession session = new DbSession(DbConstant.admin, false);
+                                session.useConnection();
+                                synchronized (dbSessionLock) {
+                                    dbSession = session;
+                                }
+                                if (!netChannel.isActive()) {
+                                    // closed meanwhile, channelInactive may have missed this session
+                                    releaseDbSession(session);
+                                }
+                            } catch (WaarpDatabaseNoConnectionException e) {
+                                logger.warn("Use default database connection");
+                            }
+                        }
+                    });
+                } else if (DbConstant.admin.isCompatibleWithThreadSharedConnexion()) {
                     this.dbSession = new DbSession(DbConstant.admin, false);
                     this.dbSession.useConnection();
                 } else {
@@ -178,6 +257,7 @@ public class NetworkServerHandler extends SimpleChannelInboundHandler<NetworkPac
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
         if (Configuration.configuration.isShutdown())
             return;
+        getNetworkChannelReference(ctx.channel());
         if (evt instanceof IdleStateEvent) {
             if (this.networkChannelReference != null
                     && this.networkChannelReference.checkLastTime(Configuration.configuration.getTIMEOUTCON() * 2) <= 0) {
@@ -222,6 +302,7 @@ public class NetworkServerHandler extends SimpleChannelInboundHandler<NetworkPac
         }
         final NetworkPacket packet = msg;
         Channel channel = ctx.channel();
+        getNetworkChannelReference(channel);
         if (packet.getCode() == LocalPacketFactory.NOOPPACKET) {
             if (networkChannelReference != null) {
                 networkChannelReference.useIfUsed();
@@ -233,7 +314,8 @@ public class NetworkServerHandler extends SimpleChannelInboundHandler<NetworkPac
             logger.debug("NetworkRecv: {}", packet);
             // Special code to STOP here
             if (packet.getLocalId() == ChannelUtils.NOCHANNEL) {
-                int nb = this.networkChannelReference.nbLocalChannels();
+                int nb = this.networkChannelReference != null ?
+                        this.networkChannelReference.nbLocalChannels() : 0;
                 if (nb > 0) {
                     logger.warn("Temptative of connection failed but still some connection are there so not closing the server channel immediately: "
                             + nb);
@@ -275,15 +357,27 @@ public class NetworkServerHandler extends SimpleChannelInboundHandler<NetworkPac
             return;
         }
         logger.trace("GET MSG: {}", packet);
-        this.networkChannelReference.use();
+        if (this.networkChannelReference != null) {
+            this.networkChannelReference.use();
+        }
         LocalChannelReference localChannelReference = null;
         if (packet.getLocalId() == ChannelUtils.NOCHANNEL) {
             logger.debug("NetworkRecv Create: {} {}", packet,
                     channel.id());
+            if (this.networkChannelReference == null) {
+                // not yet attached to its NetworkChannelReference
+                logger.warn("Cannot create LocalChannel before the network channel is registered: {}", packet);
+                packet.clear();
+                return;
+            }
             NetworkTransaction.createConnectionFromNetworkChannelStartup(
                     this.networkChannelReference, packet, isSSL);
             return;
         } else {
+            if (sendLater(channel, packet)) {
+                // the LocalChannel is not yet registered or previous packets are still waiting for it
+                return;
+            }
             if (packet.getCode() == LocalPacketFactory.ENDREQUESTPACKET) {
                 // Not a local error but a remote one
                 try {
@@ -355,6 +449,21 @@ public class NetworkServerHandler extends SimpleChannelInboundHandler<NetworkPac
         localChannelReference.getLocalChannel().writeAndFlush(buf);
     }
 
+    /**
+     * Keep the packet if its LocalChannel creation is pending, or behind the packets still waiting for it
+     * 
+     * @param channel
+     * @param packet
+     * @return True if the packet is taken, False if it shall be handled as usual
+     */
+    private boolean sendLater(Channel channel, NetworkPacket packet) {
+        if (R66ShutdownHook.isShutdownStarting()) {
+            return false;
+        }
+        return Configuration.configuration.getLocalTransaction().sendLaterToClient(channel,
+                packet.getRemoteId(), packet.getLocalId(), packet);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         Channel channel = ctx.channel();
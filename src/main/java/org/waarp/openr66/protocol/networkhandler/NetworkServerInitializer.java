@@ -24,7 +24,6 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.timeout.IdleStateHandler;
-import io.netty.handler.traffic.ChannelTrafficShapingHandler;
 import io.netty.handler.traffic.GlobalTrafficShapingHandler;
 
 import org.waarp.openr66.protocol.configuration.Configuration;
@@ -66,12 +65,13 @@ public class NetworkServerInitializer extends ChannelInitializer<SocketChannel>
         pipeline.addLast(LIMITGLOBAL, handler);
         // Per channel limitation
         pipeline.addLast(LIMITCHANNEL,
-                new ChannelTrafficShapingHandler(
-                    Configuration.configuration.getServerChannelWriteLimit(),
-                    Configuration.configuration.getServerChannelReadLimit(),
-                    Configuration.configuration.getDelayLimit()));
+                Configuration.configuration.newChannelTrafficShapingHandler());
         pipeline.addLast("codec", new NetworkPacketCodec());
-        pipeline.addLast(Configuration.configuration.getHandlerGroup(),
-                "handler", new NetworkServerHandler(this.server));
+        if (Configuration.configuration.isHandlerInline()) {
+            pipeline.addLast("handler", new NetworkServerHandler(this.server));
+        } else {
+            pipeline.addLast(Configuration.configuration.getHandlerGroup(),
+                    "handler", new NetworkServerHandler(this.server));
+        }
     }
 }
@@ -24,10 +24,10 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
@@ -38,6 +38,7 @@ import io.netty.channel.ChannelPipelineException;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.local.LocalChannel;
+import io.netty.util.AttributeKey;
 import io.netty.util.Timeout;
 import io.netty.util.TimerTask;
 import io.netty.util.internal.ConcurrentSet;
@@ -48,7 +49,6 @@ import org.waarp.common.digest.FilesystemBasedDigest;
 import org.waarp.common.future.WaarpLock;
 import org.waarp.common.logging.WaarpLogger;
 import org.waarp.common.logging.WaarpLoggerFactory;
-import org.waarp.common.lru.SynchronizedLruCache;
 import org.waarp.common.utility.WaarpNettyUtil;
 import org.waarp.common.utility.WaarpThreadFactory;
 import org.waarp.openr66.context.ErrorCode;
@@ -74,6 +74,8 @@ import org.waarp.openr66.protocol.networkhandler.ssl.NetworkSslServerHandler;
 import org.waarp.openr66.protocol.networkhandler.ssl.NetworkSslServerInitializer;
 import org.waarp.openr66.protocol.utils.ChannelUtils;
 import org.waarp.openr66.protocol.utils.R66Future;
+import org.waarp.openr66.protocol.utils.R66Metrics;
+import org.waarp.openr66.protocol.utils.R66Metrics.Phase;
 import org.waarp.openr66.protocol.utils.R66ShutdownHook;
 
 /**
@@ -91,31 +93,37 @@ public class NetworkTransaction {
      * To protect access to socketLocks when no address associated
      */
     private static final WaarpLock emptyLock = new WaarpLock();
-    /**
-     * Lock for Lock management operations
-     */
-    private static final ReentrantLock lockOfLock = new ReentrantLock();
     /**
      * Hashmap for lock based on remote address
      */
-    private static final SynchronizedLruCache<Integer, WaarpLock> reentrantLockOnSocketAddressConcurrentHashMap =
-            new SynchronizedLruCache<Integer, WaarpLock>(20000, 180000);
+    private static final ConcurrentHashMap<SocketAddress, WaarpLock> lockOnSocketAddressConcurrentHashMap =
+            new ConcurrentHashMap<SocketAddress, WaarpLock>();
     /**
-     * Hashmap for Currently Shutdown remote host based on socketAddress.hashCode()
+     * Hashmap for Currently Shutdown remote host based on socketAddress
      */
-    private static final ConcurrentHashMap<Integer, NetworkChannelReference> networkChannelShutdownOnSocketAddressConcurrentHashMap =
-            new ConcurrentHashMap<Integer, NetworkChannelReference>();
+    private static final ConcurrentHashMap<SocketAddress, NetworkChannelReference> networkChannelShutdownOnSocketAddressConcurrentHashMap =
+            new ConcurrentHashMap<SocketAddress, NetworkChannelReference>();
     /**
-     * Hashmap for Currently blacklisted remote host based on IP address(String).hashCode()
+     * Hashmap for Currently blacklisted remote host based on IP address
      */
-    private static final ConcurrentHashMap<Integer, NetworkChannelReference> networkChannelBlacklistedOnInetSocketAddressConcurrentHashMap =
-            new ConcurrentHashMap<Integer, NetworkChannelReference>();
+    private static final ConcurrentHashMap<String, NetworkChannelReference> networkChannelBlacklistedOnInetSocketAddressConcurrentHashMap =
+            new ConcurrentHashMap<String, NetworkChannelReference>();
 
     /**
-     * Hashmap for currently active remote host based on socketAddress.hashCode()
+     * Hashmap for currently active remote host based on socketAddress
+     */
+    private static final ConcurrentHashMap<SocketAddress, NetworkChannelReference> networkChannelOnSocketAddressConcurrentHashMap =
+            new ConcurrentHashMap<SocketAddress, NetworkChannelReference>();
+    /**
+     * Additional connections to the same remote host, when several connections per partner are allowed
      */
-    private static final ConcurrentHashMap<Integer, NetworkChannelReference> networkChannelOnSocketAddressConcurrentHashMap =
-            new ConcurrentHashMap<Integer, NetworkChannelReference>();
+    private static final ConcurrentHashMap<SocketAddress, CopyOnWriteArrayList<NetworkChannelReference>> stripedNetworkChannelOnSocketAddressConcurrentHashMap =
+            new ConcurrentHashMap<SocketAddress, CopyOnWriteArrayList<NetworkChannelReference>>();
+    /**
+     * NetworkChannelReference attached to a client channel, since several channels may share the same remote address
+     */
+    private static final AttributeKey<NetworkChannelReference> NETWORK_CHANNEL_REFERENCE =
+            AttributeKey.valueOf("R66NetworkChannelReference");
     /**
      * Remote Client NetworkChannels: used to centralize remote requester hosts (possible different address used)
      */
@@ -176,70 +184,97 @@ public class NetworkTransaction {
         for (NetworkChannelReference ncr : networkChannelOnSocketAddressConcurrentHashMap.values()) {
             nb += ncr.nbLocalChannels();
         }
+        int striped = 0;
+        for (CopyOnWriteArrayList<NetworkChannelReference> list : stripedNetworkChannelOnSocketAddressConcurrentHashMap
+                .values()) {
+            striped += list.size();
+        }
         partial += "\n NetworkChannels: " + networkChannelOnSocketAddressConcurrentHashMap.size() +
-                " LockOnSocketAddress: " + reentrantLockOnSocketAddressConcurrentHashMap.size() +
+                " StripedNetworkChannels: " + striped +
+                " LockOnSocketAddress: " + lockOnSocketAddressConcurrentHashMap.size() +
                 " Sum of NetworkChannels LocalClients: " + nb + "] ";
         return partial;
     }
 
-    private static final WaarpLock getLockNCR(SocketAddress sa) {
-        return reentrantLockOnSocketAddressConcurrentHashMap.get(sa.hashCode());
+    private static final void addNCR(NetworkChannelReference ncr) {
+        networkChannelOnSocketAddressConcurrentHashMap.put(ncr.getSocketAddress(), ncr);
     }
 
-    private static final void addLockNCR(SocketAddress sa, WaarpLock lock) {
-        reentrantLockOnSocketAddressConcurrentHashMap.put(sa.hashCode(), lock);
+    private static final boolean removeNCR(NetworkChannelReference ncr) {
+        return networkChannelOnSocketAddressConcurrentHashMap.remove(ncr.getSocketAddress(), ncr);
     }
 
-    private static final void addNCR(NetworkChannelReference ncr) {
-        networkChannelOnSocketAddressConcurrentHashMap.put(ncr.getSocketHashCode(), ncr);
+    private static final NetworkChannelReference getNCR(SocketAddress sa) {
+        return networkChannelOnSocketAddressConcurrentHashMap.get(sa);
     }
 
-    private static final NetworkChannelReference removeNCR(NetworkChannelReference ncr) {
-        return networkChannelOnSocketAddressConcurrentHashMap.remove(ncr.getSocketHashCode());
+    private static final boolean containsNCR(SocketAddress address) {
+        return networkChannelOnSocketAddressConcurrentHashMap.containsKey(address);
     }
 
-    private static final NetworkChannelReference getNCR(SocketAddress sa) {
-        return networkChannelOnSocketAddressConcurrentHashMap.get(sa.hashCode());
+    private static final void addStripedNCR(NetworkChannelReference ncr) {
+        CopyOnWriteArrayList<NetworkChannelReference> list =
+                stripedNetworkChannelOnSocketAddressConcurrentHashMap.get(ncr.getSocketAddress());
+        if (list == null) {
+            list = new CopyOnWriteArrayList<NetworkChannelReference>();
+            CopyOnWriteArrayList<NetworkChannelReference> previous =
+                    stripedNetworkChannelOnSocketAddressConcurrentHashMap.putIfAbsent(ncr.getSocketAddress(), list);
+            if (previous != null) {
+                list = previous;
+            }
+        }
+        list.add(ncr);
     }
 
-    private static final boolean containsNCR(SocketAddress address) {
-        return networkChannelOnSocketAddressConcurrentHashMap.containsKey(address.hashCode());
+    private static final void removeStripedNCR(NetworkChannelReference ncr) {
+        CopyOnWriteArrayList<NetworkChannelReference> list =
+                stripedNetworkChannelOnSocketAddressConcurrentHashMap.get(ncr.getSocketAddress());
+        if (list != null) {
+            list.remove(ncr);
+            if (list.isEmpty()) {
+                stripedNetworkChannelOnSocketAddressConcurrentHashMap.remove(ncr.getSocketAddress(), list);
+            }
+        }
+    }
+
+    private static final boolean containsStripedNCR(SocketAddress address) {
+        return stripedNetworkChannelOnSocketAddressConcurrentHashMap.containsKey(address);
     }
 
     private static final void addShutdownNCR(NetworkChannelReference ncr) {
-        networkChannelShutdownOnSocketAddressConcurrentHashMap.put(ncr.getSocketHashCode(), ncr);
+        networkChannelShutdownOnSocketAddressConcurrentHashMap.put(ncr.getSocketAddress(), ncr);
     }
 
-    private static final NetworkChannelReference removeShutdownNCR(NetworkChannelReference ncr) {
-        return networkChannelShutdownOnSocketAddressConcurrentHashMap.remove(ncr.getSocketHashCode());
+    private static final boolean removeShutdownNCR(NetworkChannelReference ncr) {
+        return networkChannelShutdownOnSocketAddressConcurrentHashMap.remove(ncr.getSocketAddress(), ncr);
     }
 
     private static final boolean containsShutdownNCR(NetworkChannelReference ncr) {
-        return networkChannelShutdownOnSocketAddressConcurrentHashMap.containsKey(ncr.getSocketHashCode());
+        return networkChannelShutdownOnSocketAddressConcurrentHashMap.containsKey(ncr.getSocketAddress());
     }
 
     private static final boolean containsShutdownNCR(SocketAddress sa) {
-        return networkChannelShutdownOnSocketAddressConcurrentHashMap.containsKey(sa.hashCode());
+        return networkChannelShutdownOnSocketAddressConcurrentHashMap.containsKey(sa);
     }
 
     private static final NetworkChannelReference getShutdownNCR(SocketAddress sa) {
-        return networkChannelShutdownOnSocketAddressConcurrentHashMap.get(sa.hashCode());
+        return networkChannelShutdownOnSocketAddressConcurrentHashMap.get(sa);
     }
 
     private static final void addBlacklistNCR(NetworkChannelReference ncr) {
-        networkChannelBlacklistedOnInetSocketAddressConcurrentHashMap.put(ncr.getAddressHashCode(), ncr);
+        networkChannelBlacklistedOnInetSocketAddressConcurrentHashMap.put(ncr.getHostAddress(), ncr);
     }
 
-    private static final NetworkChannelReference removeBlacklistNCR(NetworkChannelReference ncr) {
-        return networkChannelBlacklistedOnInetSocketAddressConcurrentHashMap.remove(ncr.getAddressHashCode());
+    private static final boolean removeBlacklistNCR(NetworkChannelReference ncr) {
+        return networkChannelBlacklistedOnInetSocketAddressConcurrentHashMap.remove(ncr.getHostAddress(), ncr);
     }
 
     private static final boolean containsBlacklistNCR(NetworkChannelReference ncr) {
-        return networkChannelBlacklistedOnInetSocketAddressConcurrentHashMap.containsKey(ncr.getAddressHashCode());
+        return networkChannelBlacklistedOnInetSocketAddressConcurrentHashMap.containsKey(ncr.getHostAddress());
     }
 
     private static final boolean containsBlacklistNCR(SocketAddress address) {
-        return networkChannelBlacklistedOnInetSocketAddressConcurrentHashMap.containsKey(address.hashCode());
+        return getBlacklistNCR(address) != null;
     }
 
     private static final NetworkChannelReference getBlacklistNCR(SocketAddress sa) {
@@ -249,36 +284,86 @@ public class NetworkTransaction {
         }
 
         return networkChannelBlacklistedOnInetSocketAddressConcurrentHashMap.get(
-                address.getHostAddress().hashCode()
+                address.getHostAddress()
         );
     }
 
     private static final WaarpLock getChannelLock(SocketAddress socketAddress) {
-        lockOfLock.lock();
-        try {
-            if (socketAddress == null) {
-                // should not
-                logger.info("SocketAddress empty here !");
-                return emptyLock;
-            }
-            WaarpLock socketLock = getLockNCR(socketAddress);
+        if (socketAddress == null) {
+            // should not
+            logger.info("SocketAddress empty here !");
+            return emptyLock;
+        }
+        WaarpLock socketLock = lockOnSocketAddressConcurrentHashMap.get(socketAddress);
+        if (socketLock == null) {
+            WaarpLock newLock = new WaarpLock(true);
+            socketLock = lockOnSocketAddressConcurrentHashMap.putIfAbsent(socketAddress, newLock);
             if (socketLock == null) {
-                socketLock = new WaarpLock(true);
+                socketLock = newLock;
             }
-            // update TTL
-            addLockNCR(socketAddress, socketLock);
-            return socketLock;
-        } finally {
-            lockOfLock.unlock();
         }
+        return socketLock;
     }
 
-    private static void removeChannelLock() {
-        lockOfLock.lock();
-        try {
-            reentrantLockOnSocketAddressConcurrentHashMap.forceClearOldest();
-        } finally {
-            lockOfLock.unlock();
+    /**
+     * Get and lock the lock of this address, ensuring that it is still the registered one once locked
+     *
+     * @param socketAddress
+     * @return the locked lock
+     */
+    private static final WaarpLock lockChannel(SocketAddress socketAddress) {
+        while (true) {
+            WaarpLock socketLock = getChannelLock(socketAddress);
+            socketLock.lock();
+            if (socketLock == emptyLock ||
+                    lockOnSocketAddressConcurrentHashMap.get(socketAddress) == socketLock) {
+                return socketLock;
+            }
+            // removed meanwhile
+            socketLock.unlock();
+        }
+    }
+
+    /**
+     * Remove the lock of this address if nothing references it anymore. If the lock is currently
+     * used, the removal is retried later on so that the entry of an inbound address is not kept
+     * forever.
+     *
+     * @param socketAddress
+     */
+    private static void removeChannelLock(final SocketAddress socketAddress) {
+        if (socketAddress == null) {
+            return;
+        }
+        WaarpLock socketLock = lockOnSocketAddressConcurrentHashMap.get(socketAddress);
+        if (socketLock == null) {
+            return;
+        }
+        boolean retry = true;
+        if (socketLock.tryLock()) {
+            try {
+                if (containsNCR(socketAddress) || containsStripedNCR(socketAddress)
+                        || containsShutdownNCR(socketAddress)) {
+                    // the last one referencing it will remove it
+                    retry = false;
+                } else if (!socketLock.hasQueuedThreads()) {
+                    lockOnSocketAddressConcurrentHashMap.remove(socketAddress, socketLock);
+                    retry = false;
+                }
+            } finally {
+                socketLock.unlock();
+            }
+        }
+        if (retry) {
+            try {
+                Configuration.configuration.getTimerClose().newTimeout(new TimerTask() {
+                    public void run(Timeout timeout) throws Exception {
+                        removeChannelLock(socketAddress);
+                    }
+                }, Configuration.WAITFORNETOP, TimeUnit.MILLISECONDS);
+            } catch (IllegalStateException e) {
+                // timer stopped since shutting down
+            }
         }
     }
 
@@ -293,6 +378,7 @@ public class NetworkTransaction {
     public LocalChannelReference createConnectionWithRetry(SocketAddress socketAddress,
             boolean isSSL, R66Future futureRequest) {
         LocalChannelReference localChannelReference = null;
+        long start = System.nanoTime();
         for (int i = 0; i < Configuration.RETRYNB; i++) {
             if (R66ShutdownHook.isShutdownStarting()) {
                 logger.error("Cannot connect : Local system in shutdown");
@@ -323,6 +409,11 @@ public class NetworkTransaction {
         }
         if (localChannelReference != null) {
             logger.info("Connected");
+            // partner is not known yet by its host id, so use its address
+            R66Metrics.record(Phase.connection, socketAddress.toString(), null, start);
+            if (localChannelReference.getTrace() != null) {
+                localChannelReference.getTrace().record("connection", start);
+            }
         }
         return localChannelReference;
     }
@@ -413,9 +504,8 @@ public class NetworkTransaction {
             throws OpenR66ProtocolNetworkException,
             OpenR66ProtocolRemoteShutdownException,
             OpenR66ProtocolNoConnectionException {
-        WaarpLock socketLock = getChannelLock(socketServerAddress);
+        WaarpLock socketLock = lockChannel(socketServerAddress);
         NetworkChannelReference networkChannelReference;
-        socketLock.lock();
         try {
             try {
                 networkChannelReference = getRemoteChannel(socketServerAddress);
@@ -423,74 +513,148 @@ public class NetworkTransaction {
                 networkChannelReference = null;
             }
             if (networkChannelReference != null) {
-                networkChannelReference.use();
-                logger.info("Already Connected: {}", networkChannelReference);
-                return networkChannelReference;
+                NetworkChannelReference chosen = getLeastLoadedChannel(socketServerAddress, networkChannelReference);
+                if (chosen == null) {
+                    logger.debug("NEW PARALLEL PHYSICAL CONNECTION REQUIRED");
+                    try {
+                        chosen = connectNetworkChannel(socketServerAddress, isSSL, socketLock);
+                        addStripedNCR(chosen);
+                        return chosen;
+                    } catch (OpenR66ProtocolNetworkException e) {
+                        logger.info("Cannot open a parallel connection: {}", e.getMessage());
+                    } catch (OpenR66ProtocolNoConnectionException e) {
+                        logger.info("Cannot open a parallel connection: {}", e.getMessage());
+                    }
+                    chosen = networkChannelReference;
+                }
+                chosen.use();
+                logger.info("Already Connected: {}", chosen);
+                return chosen;
             }
             logger.debug("NEW PHYSICAL CONNECTION REQUIRED");
-            ChannelFuture channelFuture = null;
-            for (int i = 0; i < Configuration.RETRYNB; i++) {
-                if (R66ShutdownHook.isShutdownStarting()) {
-                    throw new OpenR66ProtocolNoConnectionException("Local system in shutdown");
+            networkChannelReference = connectNetworkChannel(socketServerAddress, isSSL, socketLock);
+            addNCR(networkChannelReference);
+            return networkChannelReference;
+        } finally {
+            socketLock.unlock();
+        }
+    }
+
+    /**
+     * Choose the connection to use for a new request when several connections per partner are allowed
+     *
+     * @param socketServerAddress
+     * @param primary
+     *            the main connection to this partner
+     * @return the least loaded connection, or null if a new connection should be opened
+     */
+    private static NetworkChannelReference getLeastLoadedChannel(SocketAddress socketServerAddress,
+            NetworkChannelReference primary) {
+        int max = Configuration.configuration.getConnectionsPerPartner();
+        if (max <= 1) {
+            return primary;
+        }
+        NetworkChannelReference chosen = primary;
+        int nb = 1;
+        CopyOnWriteArrayList<NetworkChannelReference> list =
+                stripedNetworkChannelOnSocketAddressConcurrentHashMap.get(socketServerAddress);
+        if (list != null) {
+            for (NetworkChannelReference ncr : list) {
+                if (ncr.isShuttingDown || !ncr.channel().isActive()) {
+                    continue;
                 }
-                try {
-                    if (isSSL) {
-                        if (Configuration.configuration.getHOST_SSLID() != null) {
-                            channelFuture = clientSslBootstrap.connect(socketServerAddress);
+                nb++;
+                if (ncr.nbLocalChannels() < chosen.nbLocalChannels()) {
+                    chosen = ncr;
+                }
+            }
+        }
+        if (chosen.nbLocalChannels() == 0 || nb >= max) {
+            return chosen;
+        }
+        return null;
+    }
+
+    /**
+     * Open a new physical connection (socketLock must be held)
+     *
+     * @param socketServerAddress
+     * @param isSSL
+     * @param socketLock
+     * @return the NetworkChannelReference of the new connection, not yet registered
+     * @throws OpenR66ProtocolNetworkException
+     * @throws OpenR66ProtocolNoConnectionException
+     */
+    private NetworkChannelReference connectNetworkChannel(SocketAddress socketServerAddress, boolean isSSL,
+            WaarpLock socketLock)
+            throws OpenR66ProtocolNetworkException, OpenR66ProtocolNoConnectionException {
+        ChannelFuture channelFuture = null;
+        for (int i = 0; i < Configuration.RETRYNB; i++) {
+            if (R66ShutdownHook.isShutdownStarting()) {
+                throw new OpenR66ProtocolNoConnectionException("Local system in shutdown");
+            }
+            try {
+                if (isSSL) {
+                    if (Configuration.configuration.getHOST_SSLID() != null) {
+                        if (Configuration.configuration.isSslSessionResumption()) {
+                            // Let the SSL engine know its partner so that the session can be resumed
+                            channelFuture = clientSslBootstrap.clone()
+                                    .attr(NetworkSslServerInitializer.PEER_ADDRESS, socketServerAddress)
+                                    .connect(socketServerAddress);
                         } else {
-                            throw new OpenR66ProtocolNoConnectionException("No SSL support");
+                            channelFuture = clientSslBootstrap.connect(socketServerAddress);
                         }
                     } else {
-                        channelFuture = clientBootstrap.connect(socketServerAddress);
+                        throw new OpenR66ProtocolNoConnectionException("No SSL support");
                     }
-                } catch (ChannelPipelineException e) {
-                    throw new OpenR66ProtocolNoConnectionException(
-                            "Cannot connect to remote server due to a channel exception");
+                } else {
+                    channelFuture = clientBootstrap.connect(socketServerAddress);
                 }
+            } catch (ChannelPipelineException e) {
+                throw new OpenR66ProtocolNoConnectionException(
+                        "Cannot connect to remote server due to a channel exception");
+            }
+            try {
+                channelFuture.await(Configuration.configuration.getTIMEOUTCON() / 3);
+            } catch (InterruptedException e1) {
+            }
+            if (channelFuture.isSuccess()) {
+                final Channel channel = channelFuture.channel();
+                if (isSSL) {
+                    if (!NetworkSslServerHandler.isSslConnectedChannel(channel)) {
+                        logger.debug("KO CONNECT since SSL handshake is over");
+                        channel.close();
+                        throw new OpenR66ProtocolNoConnectionException(
+                                "Cannot finish connect to remote server");
+                    }
+                }
+                networkChannelGroup.add(channel);
+                NetworkChannelReference networkChannelReference = new NetworkChannelReference(channel, socketLock);
+                channel.attr(NETWORK_CHANNEL_REFERENCE).set(networkChannelReference);
+                return networkChannelReference;
+            } else {
                 try {
-                    channelFuture.await(Configuration.configuration.getTIMEOUTCON() / 3);
-                } catch (InterruptedException e1) {
+                    Thread.sleep(Configuration.RETRYINMS);
+                } catch (InterruptedException e) {
                 }
-                if (channelFuture.isSuccess()) {
-                    final Channel channel = channelFuture.channel();
-                    if (isSSL) {
-                        if (!NetworkSslServerHandler.isSslConnectedChannel(channel)) {
-                            logger.debug("KO CONNECT since SSL handshake is over");
-                            channel.close();
-                            throw new OpenR66ProtocolNoConnectionException(
-                                    "Cannot finish connect to remote server");
-                        }
-                    }
-                    networkChannelGroup.add(channel);
-                    networkChannelReference = new NetworkChannelReference(channel, socketLock);
-                    addNCR(networkChannelReference);
-                    return networkChannelReference;
+                if (!channelFuture.isDone()) {
+                    throw new OpenR66ProtocolNoConnectionException(
+                            "Cannot connect to remote server due to interruption");
+                }
+                if (channelFuture.cause() instanceof ConnectException) {
+                    logger.debug("KO CONNECT:" +
+                            channelFuture.cause().getMessage());
+                    throw new OpenR66ProtocolNoConnectionException(
+                            channelFuture.cause().getMessage(),
+                            channelFuture.cause());
                 } else {
-                    try {
-                        Thread.sleep(Configuration.RETRYINMS);
-                    } catch (InterruptedException e) {
-                    }
-                    if (!channelFuture.isDone()) {
-                        throw new OpenR66ProtocolNoConnectionException(
-                                "Cannot connect to remote server due to interruption");
-                    }
-                    if (channelFuture.cause() instanceof ConnectException) {
-                        logger.debug("KO CONNECT:" +
-                                channelFuture.cause().getMessage());
-                        throw new OpenR66ProtocolNoConnectionException(
-                                channelFuture.cause().getMessage(),
-                                channelFuture.cause());
-                    } else {
-                        logger.debug("KO CONNECT but retry", channelFuture
-                                .cause());
-                    }
+                    logger.debug("KO CONNECT but retry", channelFuture
+                            .cause());
                 }
             }
-            throw new OpenR66ProtocolNetworkException(
-                    "Cannot connect to remote server", channelFuture.cause());
-        } finally {
-            socketLock.unlock();
         }
+        throw new OpenR66ProtocolNetworkException(
+                "Cannot connect to remote server", channelFuture.cause());
     }
 
     /**
@@ -602,6 +766,7 @@ public class NetworkTransaction {
         }
         logger.debug("Will send request of connection validation");
         localChannelReference.sessionNewState(AUTHENTR);
+        long start = System.nanoTime();
         try {
             ChannelUtils.writeAbstractLocalPacket(localChannelReference, authent, true);
         } catch (OpenR66ProtocolPacketException e) {
@@ -645,6 +810,10 @@ public class NetworkTransaction {
                     "Cannot validate connection: " + future.getResult(), future
                             .getCause());
         }
+        // Authentication round trip as a probe of the link for the adaptive block size
+        if (localChannelReference.getPartner() != null) {
+            localChannelReference.getPartner().getLinkStatistics().recordRtt(System.nanoTime() - start);
+        }
     }
 
     /**
@@ -656,11 +825,13 @@ public class NetworkTransaction {
     public static NetworkChannelReference addNetworkChannel(Channel channel)
             throws OpenR66ProtocolRemoteShutdownException {
         SocketAddress socketAddress = channel.remoteAddress();
-        WaarpLock socketLock = getChannelLock(socketAddress);
-        //socketLock.lock(Configuration.WAITFORNETOP, TimeUnit.MILLISECONDS);
-        socketLock.lock();
+        WaarpLock socketLock = lockChannel(socketAddress);
         try {
-            NetworkChannelReference nc = null;
+            NetworkChannelReference nc = channel.attr(NETWORK_CHANNEL_REFERENCE).get();
+            if (nc != null) {
+                // client connection already registered
+                return nc;
+            }
             try {
                 nc = getRemoteChannel(socketAddress);
             } catch (OpenR66ProtocolNoDataException e1) {
@@ -682,8 +853,7 @@ public class NetworkTransaction {
      * @param socketAddress
      */
     public static void proposeShutdownNetworkChannel(SocketAddress socketAddress) {
-        WaarpLock lock = getChannelLock(socketAddress);
-        lock.lock(Configuration.WAITFORNETOP, TimeUnit.MILLISECONDS);
+        WaarpLock lock = lockChannel(socketAddress);
         try {
             logger.info("Seem Shutdown: {}", socketAddress);
             if (containsShutdownNCR(socketAddress)) {
@@ -716,6 +886,8 @@ public class NetworkTransaction {
             }
         } finally {
             lock.unlock();
+            // kept if now referenced by the shutdown or by a connection
+            removeChannelLock(socketAddress);
         }
     }
 
@@ -885,6 +1057,7 @@ public class NetworkTransaction {
             }
             logger.debug("NC left: {}", networkChannelReference);
             removeNCR(networkChannelReference);
+            removeStripedNCR(networkChannelReference);
             if (networkChannelReference.clientNetworkChannels != null) {
                 String requester = networkChannelReference.clientNetworkChannels.getHostId();
                 removeClient(networkChannelReference, requester, networkChannelReference.clientNetworkChannels);
@@ -896,7 +1069,7 @@ public class NetworkTransaction {
                 }
             }
         } finally {
-            removeChannelLock();
+            removeChannelLock(networkChannelReference.getSocketAddress());
         }
     }
 
@@ -910,7 +1083,7 @@ public class NetworkTransaction {
             return;
         }
         NetworkChannelReference networkChannelReference =
-                networkChannelOnSocketAddressConcurrentHashMap.get(address.hashCode());
+                networkChannelOnSocketAddressConcurrentHashMap.get(address);
         closedNetworkChannel(networkChannelReference);
     }
 
@@ -1006,9 +1179,9 @@ public class NetworkTransaction {
      */
     public static int nbAttachedConnection(SocketAddress address, String host) {
         logger.debug("nbAttachedConnection: "
-                + networkChannelOnSocketAddressConcurrentHashMap.containsKey(address.hashCode()) + ":"
+                + networkChannelOnSocketAddressConcurrentHashMap.containsKey(address) + ":"
                 + getNumberClients(host));
-        return (networkChannelOnSocketAddressConcurrentHashMap.containsKey(address.hashCode()) ? 1
+        return (networkChannelOnSocketAddressConcurrentHashMap.containsKey(address) ? 1
                 : 0)
                 + getNumberClients(host);
     }
@@ -1085,12 +1258,25 @@ public class NetworkTransaction {
         return nc;
     }
 
+    /**
+     *
+     * @param channel
+     * @return the NetworkChannelReference attached to this client channel once connected, or null
+     */
+    public static final NetworkChannelReference getAttachedNetworkChannel(Channel channel) {
+        return channel.attr(NETWORK_CHANNEL_REFERENCE).get();
+    }
+
     /**
      *
      * @param channel
      * @return the associated NetworkChannelReference immediately (if known)
      */
     public static final NetworkChannelReference getImmediateNetworkChannel(Channel channel) {
+        NetworkChannelReference nc = channel.attr(NETWORK_CHANNEL_REFERENCE).get();
+        if (nc != null) {
+            return nc;
+        }
         if (channel.remoteAddress() != null) {
             return getNCR(channel.remoteAddress());
         }
@@ -1146,6 +1332,7 @@ public class NetworkTransaction {
                 WaarpSslUtility.closingSslChannel(ncr.channel);
             }
             removeShutdownNCR(ncr);
+            removeChannelLock(ncr.getSocketAddress());
             if (ncr.channel != null) {
                 inShutdownRunning.remove(ncr.channel.id());
             }
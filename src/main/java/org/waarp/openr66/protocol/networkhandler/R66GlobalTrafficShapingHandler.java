@@ -0,0 +1,50 @@
+/**
+ * This file is part of Waarp Project.
+ * 
+ * Copyright 2009, Frederic Bregier, and individual contributors by the @author tags. See the
+ * COPYRIGHT.txt in the distribution for a full listing of individual contributors.
+ * 
+ * All Waarp Project is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * Waarp is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Waarp . If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.waarp.openr66.protocol.networkhandler;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.FileRegion;
+import io.netty.handler.traffic.GlobalTrafficShapingHandler;
+
+/**
+ * Global traffic shaping also accounting the FileRegion (zero copy) writes
+ */
+@Sharable
+public class R66GlobalTrafficShapingHandler extends GlobalTrafficShapingHandler {
+
+    /**
+     * @param executor
+     * @param writeLimit
+     * @param readLimit
+     * @param checkInterval
+     */
+    public R66GlobalTrafficShapingHandler(ScheduledExecutorService executor, long writeLimit,
+            long readLimit, long checkInterval) {
+        super(executor, writeLimit, readLimit, checkInterval);
+    }
+
+    @Override
+    protected long calculateSize(Object msg) {
+        if (msg instanceof FileRegion) {
+            return ((FileRegion) msg).count();
+        }
+        return super.calculateSize(msg);
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * This file is part of Waarp Project.
+ * 
+ * Copyright 2009, Frederic Bregier, and individual contributors by the @author tags. See the
+ * COPYRIGHT.txt in the distribution for a full listing of individual contributors.
+ * 
+ * All Waarp Project is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * Waarp is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Waarp . If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.waarp.openr66.protocol.networkhandler.packet;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import io.netty.channel.FileRegion;
+import io.netty.util.AbstractReferenceCounted;
+
+import org.waarp.common.digest.FilesystemBasedDigest;
+import org.waarp.openr66.protocol.localhandler.packet.LocalPacketFactory;
+
+/**
+ * Data packet sent directly from a region of a file (zero copy) with the Network and Local packet
+ * framing written before the data, such that it is equivalent to a NetworkPacket containing a
+ * DataPacket without key.<br>
+ * If a global digest is given, it is updated with the file bytes as they are sent, in order.<br>
+ * The FileChannel is not closed by this region.
+ */
+public class DataFileRegion extends AbstractReferenceCounted implements FileRegion {
+    /**
+     * Network header (length, 2 Ids, type) + Local header (3 lengths, type) + rank
+     */
+    private static final int PREFIX_LENGTH = 4 * 3 + 1 + 4 * 3 + 1 + 4;
+
+    private final ByteBuffer prefix;
+
+    private final FileChannel fileChannel;
+
+    private final long position;
+
+    private final int length;
+
+    private final FilesystemBasedDigest digest;
+
+    private long transferred;
+
+    /**
+     * @param localId
+     * @param remoteId
+     * @param packetRank
+     * @param fileChannel
+     * @param position
+     *            position in the file of the block
+     * @param length
+     *            length of the block
+     * @param digest
+     *            the global digest to update with the bytes sent (may be null)
+     */
+    public DataFileRegion(int localId, int remoteId, int packetRank, FileChannel fileChannel,
+            long position, int length, FilesystemBasedDigest digest) {
+        this.fileChannel = fileChannel;
+        this.position = position;
+        this.length = length;
+        this.digest = digest;
+        prefix = ByteBuffer.allocate(PREFIX_LENGTH);
+        // Network part
+        prefix.putInt(PREFIX_LENGTH - 4 + length);
+        prefix.putInt(remoteId);
+        prefix.putInt(localId);
+        prefix.put(LocalPacketFactory.DATAPACKET);
+        // Local part: header (lengths + type + rank), middle (data), empty end
+        prefix.putInt(4 * 2 + 1 + 4);
+        prefix.putInt(length);
+        prefix.putInt(0);
+        prefix.put(LocalPacketFactory.DATAPACKET);
+        prefix.putInt(packetRank);
+        prefix.flip();
+    }
+
+    public long position() {
+        return 0;
+    }
+
+    @Deprecated
+    public long transfered() {
+        return transferred;
+    }
+
+    public long transferred() {
+        return transferred;
+    }
+
+    public long count() {
+        return PREFIX_LENGTH + length;
+    }
+
+    public long transferTo(WritableByteChannel target, long position) throws IOException {
+        long count = count() - position;
+        if (count < 0 || position < 0) {
+            throw new IllegalArgumentException("position out of range: " + position +
+                    " (expected: 0 - " + (count() - 1) + ')');
+        }
+        if (count == 0) {
+            return 0L;
+        }
+        long written = 0;
+        if (position < PREFIX_LENGTH) {
+            ByteBuffer buffer = prefix.duplicate();
+            buffer.position((int) position);
+            written = target.write(buffer);
+            if (buffer.hasRemaining()) {
+                transferred += written;
+                return written;
+            }
+        }
+        long filePosition = position + written - PREFIX_LENGTH;
+        long fileWritten = fileChannel.transferTo(this.position + filePosition, length - filePosition,
+                target);
+        if (fileWritten == 0 && this.position + filePosition >= fileChannel.size()) {
+            throw new EOFException("File shorter than expected while sending block at " + this.position);
+        }
+        if (digest != null && fileWritten > 0) {
+            updateDigest(this.position + filePosition, fileWritten);
+        }
+        written += fileWritten;
+        transferred += written;
+        return written;
+    }
+
+    /**
+     * Update the digest with the bytes just sent, read again from the (cached) file
+     * 
+     * @param from
+     * @param size
+     * @throws IOException
+     */
+    private void updateDigest(long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, 65536));
+        long done = 0;
+        while (done < size) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), size - done));
+            int read = fileChannel.read(buffer, from + done);
+            if (read <= 0) {
+                throw new EOFException("File shorter than expected while digesting block at " + this.position);
+            }
+            digest.Update(buffer.array(), 0, read);
+            done += read;
+        }
+    }
+
+    @Override
+    protected void deallocate() {
+        // FileChannel is owned by the sender
+    }
+
+    @Override
+    public FileRegion retain() {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    public FileRegion retain(int increment) {
+        super.retain(increment);
+        return this;
+    }
+
+    @Override
+    public FileRegion touch() {
+        return this;
+    }
+
+    @Override
+    public FileRegion touch(Object hint) {
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "DataFileRegion: " + position + ":" + length;
+    }
+}
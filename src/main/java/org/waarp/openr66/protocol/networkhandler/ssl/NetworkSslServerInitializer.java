@@ -17,15 +17,19 @@
  */
 package org.waarp.openr66.protocol.networkhandler.ssl;
 
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.util.concurrent.TimeUnit;
 
+import javax.net.ssl.SSLEngine;
+
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.timeout.IdleStateHandler;
-import io.netty.handler.traffic.ChannelTrafficShapingHandler;
 import io.netty.handler.traffic.GlobalTrafficShapingHandler;
+import io.netty.util.AttributeKey;
 
 import org.waarp.common.crypto.ssl.WaarpSecureKeyStore;
 import org.waarp.common.crypto.ssl.WaarpSslContextFactory;
@@ -41,6 +45,10 @@ import org.waarp.openr66.protocol.networkhandler.packet.NetworkPacketCodec;
  * 
  */
 public class NetworkSslServerInitializer extends ChannelInitializer<SocketChannel> {
+    /**
+     * Address of the partner, set on client channels to allow SSL session resumption
+     */
+    public static final AttributeKey<SocketAddress> PEER_ADDRESS = AttributeKey.valueOf("R66SslPeerAddress");
     protected final boolean isClient;
     private static WaarpSslContextFactory waarpSslContextFactory;
     private static WaarpSecureKeyStore waarpSecureKeyStore;
@@ -64,6 +72,10 @@ public class NetworkSslServerInitializer extends ChannelInitializer<SocketChanne
             // Not server: no clientAuthent, no renegotiation
             sslHandler =
                     getWaarpSslContextFactory().initInitializer(false, false);
+            SocketAddress peer = ch.attr(PEER_ADDRESS).get();
+            if (peer instanceof InetSocketAddress) {
+                sslHandler = newResumableSslHandler(sslHandler, (InetSocketAddress) peer);
+            }
         } else {
             // Server: no renegotiation still, but possible clientAuthent
             sslHandler =
@@ -88,14 +100,35 @@ public class NetworkSslServerInitializer extends ChannelInitializer<SocketChanne
         pipeline.addLast(NetworkServerInitializer.LIMITGLOBAL, handler);
         // Per channel limitation
         pipeline.addLast(NetworkServerInitializer.LIMITCHANNEL,
-                new ChannelTrafficShapingHandler(
-                    Configuration.configuration.getServerChannelWriteLimit(),
-                    Configuration.configuration.getServerChannelReadLimit(),
-                    Configuration.configuration.getDelayLimit()));
+                Configuration.configuration.newChannelTrafficShapingHandler());
  
         pipeline.addLast("codec", new NetworkPacketCodec());
-        pipeline.addLast(Configuration.configuration.getHandlerGroup(),
-                "handler", new NetworkSslServerHandler(!this.isClient));
+        if (Configuration.configuration.isHandlerInline()) {
+            pipeline.addLast("handler", new NetworkSslServerHandler(!this.isClient));
+        } else {
+            pipeline.addLast(Configuration.configuration.getHandlerGroup(),
+                    "handler", new NetworkSslServerHandler(!this.isClient));
+        }
+    }
+
+    /**
+     * The JDK only resumes a client SSL session for an engine created for the same host and port, so build
+     * an equivalent engine bound to the partner.
+     * 
+     * @param sslHandler
+     *            the default SslHandler
+     * @param peer
+     * @return the SslHandler able to resume a previous session with this partner
+     */
+    private static SslHandler newResumableSslHandler(SslHandler sslHandler, InetSocketAddress peer) {
+        SSLEngine defaultEngine = sslHandler.engine();
+        String host = peer.getAddress() != null ? peer.getAddress().getHostAddress() : peer.getHostName();
+        SSLEngine engine = getWaarpSslContextFactory().getClientContext().createSSLEngine(host, peer.getPort());
+        engine.setUseClientMode(true);
+        engine.setEnabledProtocols(defaultEngine.getEnabledProtocols());
+        engine.setEnabledCipherSuites(defaultEngine.getEnabledCipherSuites());
+        defaultEngine.closeOutbound();
+        return new SslHandler(engine);
     }
 
     /**
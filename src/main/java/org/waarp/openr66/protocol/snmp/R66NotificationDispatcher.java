@@ -0,0 +1,217 @@
+/**
+ * This file is part of Waarp Project.
+ * 
+ * Copyright 2009, Frederic Bregier, and individual contributors by the @author tags. See the
+ * COPYRIGHT.txt in the distribution for a full listing of individual contributors.
+ * 
+ * All Waarp Project is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * Waarp is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Waarp . If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.waarp.openr66.protocol.snmp;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.waarp.common.logging.WaarpLogger;
+import org.waarp.common.logging.WaarpLoggerFactory;
+import org.waarp.common.utility.WaarpThreadFactory;
+
+/**
+ * Asynchronous dispatcher of SNMP notifications.<br>
+ * <br>
+ * Notifications are pushed into a bounded queue and sent by one dedicated thread, at most
+ * maxPerSecond per second, such that the caller (usually a transfer thread) never waits for the
+ * trap receiver. When the queue is full, the notification is dropped and counted. Notifications
+ * sharing the same key while still pending are coalesced: only the last one is sent.
+ */
+public class R66NotificationDispatcher implements Runnable {
+    /**
+     * Internal Logger
+     */
+    private static final WaarpLogger logger = WaarpLoggerFactory
+            .getLogger(R66NotificationDispatcher.class);
+
+    /**
+     * Default maximum number of pending notifications
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+    /**
+     * Default maximum number of notifications sent per second
+     */
+    public static final int DEFAULT_MAX_PER_SECOND = 100;
+
+    /**
+     * One notification to send
+     */
+    public static interface R66Notification {
+        /**
+         * 
+         * @return the coalescing key, or null if this notification must never be coalesced
+         */
+        public String getKey();
+
+        /**
+         * Really send the notification (called from the dispatcher thread)
+         */
+        public void send();
+    }
+
+    /**
+     * Contains either the key of a coalescable notification or the notification itself
+     */
+    private final BlockingQueue<Object> queue;
+    /**
+     * Last pending notification by key
+     */
+    private final ConcurrentHashMap<String, R66Notification> pendingByKey =
+            new ConcurrentHashMap<String, R66Notification>();
+    private final long minIntervalNanos;
+    private final ExecutorService executorService;
+    private volatile boolean running = true;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param queueSize
+     *            maximum number of pending notifications
+     * @param maxPerSecond
+     *            maximum number of notifications sent per second (0 or less meaning no limit)
+     */
+    public R66NotificationDispatcher(int queueSize, int maxPerSecond) {
+        queue = new ArrayBlockingQueue<Object>(queueSize > 0 ? queueSize : DEFAULT_QUEUE_SIZE);
+        minIntervalNanos = maxPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxPerSecond : 0;
+        executorService = Executors.newSingleThreadExecutor(new WaarpThreadFactory("SnmpNotifier"));
+        executorService.execute(this);
+    }
+
+    /**
+     * Push one notification to send, without ever blocking
+     * 
+     * @param notification
+     * @return True if the notification was queued or coalesced, False if dropped
+     */
+    public boolean dispatch(R66Notification notification) {
+        if (!running) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        String key = notification.getKey();
+        if (key == null) {
+            if (queue.offer(notification)) {
+                return true;
+            }
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (pendingByKey.put(key, notification) != null) {
+            // a previous one is still pending and its key already queued
+            coalesced.incrementAndGet();
+            return true;
+        }
+        if (queue.offer(key)) {
+            return true;
+        }
+        // the key is not queued: drop what is pending for it, this notification or a later one
+        // which coalesced with it meanwhile, but only once
+        if (pendingByKey.remove(key, notification) || pendingByKey.remove(key) != null) {
+            dropped.incrementAndGet();
+        }
+        return false;
+    }
+
+    @Override
+    public void run() {
+        long nextSend = System.nanoTime();
+        while (running) {
+            Object item;
+            try {
+                item = queue.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (item == null) {
+                continue;
+            }
+            R66Notification notification;
+            if (item instanceof String) {
+                notification = pendingByKey.remove(item);
+                if (notification == null) {
+                    continue;
+                }
+            } else {
+                notification = (R66Notification) item;
+            }
+            if (minIntervalNanos > 0) {
+                long wait = nextSend - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                nextSend = Math.max(nextSend, System.nanoTime() - minIntervalNanos) + minIntervalNanos;
+            }
+            try {
+                notification.send();
+                sent.incrementAndGet();
+            } catch (RuntimeException e) {
+                logger.debug("SNMP notification not sent", e);
+            }
+        }
+    }
+
+    /**
+     * Stop the dispatcher, dropping the pending notifications
+     */
+    public void stop() {
+        running = false;
+        executorService.shutdownNow();
+        dropped.addAndGet(queue.size());
+        queue.clear();
+        pendingByKey.clear();
+    }
+
+    /**
+     * @return the current number of pending notifications
+     */
+    public int getPending() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of notifications sent
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * @return the number of notifications dropped since the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of notifications replaced by a later one before being sent
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+}
@@ -29,6 +29,7 @@ import org.waarp.common.logging.WaarpLoggerFactory;
 import org.waarp.openr66.database.data.DbTaskRunner;
 import org.waarp.openr66.protocol.configuration.Configuration;
 import org.waarp.openr66.protocol.localhandler.packet.RequestPacket.TRANSFERMODE;
+import org.waarp.openr66.protocol.snmp.R66NotificationDispatcher.R66Notification;
 import org.waarp.openr66.protocol.utils.Version;
 import org.waarp.snmp.r66.WaarpPrivateMib;
 import org.waarp.snmp.utils.MemoryGauge32;
@@ -50,6 +51,13 @@ public class R66PrivateMib extends WaarpPrivateMib {
     private static WaarpLogger logger = WaarpLoggerFactory
             .getLogger(R66PrivateMib.class);
 
+    /**
+     * Asynchronous sender of all notifications
+     */
+    private final R66NotificationDispatcher dispatcher =
+            new R66NotificationDispatcher(Configuration.configuration.getSnmpQueueSize(),
+                    Configuration.configuration.getSnmpMaxPerSecond());
+
     /**
      * @param sysdesc
      * @param port
@@ -161,6 +169,37 @@ public class R66PrivateMib extends WaarpPrivateMib {
         notify(NotificationElements.TrapWarning, message, message2);
     }
 
+    /**
+     * Send a notification (trap or inform) asynchronously
+     * 
+     * @param message
+     * @param runner
+     * @param coalesce
+     *            if True, a still pending notification on the same Transfer Task and the same step
+     *            will be replaced by this one
+     */
+    private void notifyInternalTask(final String message, DbTaskRunner runner, boolean coalesce) {
+        final TaskInfo info;
+        try {
+            info = new TaskInfo(runner);
+        } catch (NullPointerException e) {
+            return;
+        }
+        final String key = coalesce ? info.specialId + ' ' + info.requester + ' ' + info.requested
+                + ' ' + info.globalLastStep + ' ' + info.step : null;
+        dispatcher.dispatch(new R66Notification() {
+            @Override
+            public String getKey() {
+                return key;
+            }
+
+            @Override
+            public void send() {
+                sendInternalTask(message, info);
+            }
+        });
+    }
+
     /**
      * Send a notification (trap or inform)
      * 
@@ -168,8 +207,19 @@ public class R66PrivateMib extends WaarpPrivateMib {
      * @param runner
      */
     public void notifyInternalTask(String message, DbTaskRunner runner) {
+        notifyInternalTask(message, runner, false);
+    }
+
+    /**
+     * Really send a notification (trap or inform) on a single Transfer Task (from the dispatcher
+     * thread)
+     * 
+     * @param message
+     * @param info
+     */
+    private void sendInternalTask(String message, TaskInfo info) {
         try {
-            long delay = (runner.getStart().getTime() -
+            long delay = (info.startTime -
                     agent.getUptimeSystemTime()) / 10;
             if (delay < 0)
                 delay = 0;
@@ -194,56 +244,55 @@ public class R66PrivateMib extends WaarpPrivateMib {
                                                     .getOID(rootOIDWaarpNotif,
                                                             NotificationTasks.globalStepInfo
                                                                     .getOID()),
-                                            new Gauge32(runner.getGloballaststep())),
+                                            new Gauge32(info.globalLastStep)),
                                     new VariableBinding(
                                             NotificationElements.InfoTask
                                                     .getOID(rootOIDWaarpNotif,
                                                             NotificationTasks.stepInfo
                                                                     .getOID()),
-                                            new Gauge32(runner.getStep() + 1)),
+                                            new Gauge32(info.step + 1)),
                                     new VariableBinding(
                                             NotificationElements.InfoTask
                                                     .getOID(rootOIDWaarpNotif,
                                                             NotificationTasks.rankFileInfo
                                                                     .getOID()),
-                                            new Gauge32(runner.getRank())),
+                                            new Gauge32(info.rank)),
                                     new VariableBinding(
                                             NotificationElements.InfoTask
                                                     .getOID(rootOIDWaarpNotif,
                                                             NotificationTasks.stepStatusInfo
                                                                     .getOID()),
-                                            new OctetString(runner.getStatus().getMesg())),
+                                            new OctetString(info.status)),
                                     new VariableBinding(
                                             NotificationElements.InfoTask
                                                     .getOID(rootOIDWaarpNotif,
                                                             NotificationTasks.filenameInfo
                                                                     .getOID()),
-                                            new OctetString(runner.getFilename())),
+                                            new OctetString(info.filename)),
                                     new VariableBinding(
                                             NotificationElements.InfoTask
                                                     .getOID(rootOIDWaarpNotif,
                                                             NotificationTasks.originalNameInfo
                                                                     .getOID()),
-                                            new OctetString(runner.getOriginalFilename())),
+                                            new OctetString(info.originalFilename)),
                                     new VariableBinding(
                                             NotificationElements.InfoTask
                                                     .getOID(rootOIDWaarpNotif,
                                                             NotificationTasks.idRuleInfo
                                                                     .getOID()),
-                                            new OctetString(runner.getRuleId())),
+                                            new OctetString(info.ruleId)),
                                     new VariableBinding(
                                             NotificationElements.InfoTask
                                                     .getOID(rootOIDWaarpNotif,
                                                             NotificationTasks.modeTransInfo
                                                                     .getOID()),
-                                            new OctetString(TRANSFERMODE.values()[runner.getMode()]
-                                                    .name())),
+                                            new OctetString(info.mode)),
                                     new VariableBinding(
                                             NotificationElements.InfoTask
                                                     .getOID(rootOIDWaarpNotif,
                                                             NotificationTasks.retrieveModeInfo
                                                                     .getOID()),
-                                            new OctetString(runner.isSender() ? "Sender" : "Receiver")),
+                                            new OctetString(info.retrieveMode)),
                                     new VariableBinding(
                                             NotificationElements.InfoTask
                                                     .getOID(rootOIDWaarpNotif,
@@ -255,25 +304,25 @@ public class R66PrivateMib extends WaarpPrivateMib {
                                                     .getOID(rootOIDWaarpNotif,
                                                             NotificationTasks.infoStatusInfo
                                                                     .getOID()),
-                                            new OctetString(runner.getErrorInfo().getMesg())),
+                                            new OctetString(info.infoStatus)),
                                     new VariableBinding(
                                             NotificationElements.InfoTask
                                                     .getOID(rootOIDWaarpNotif,
                                                             NotificationTasks.requesterInfo
                                                                     .getOID()),
-                                            new OctetString(runner.getRequester())),
+                                            new OctetString(info.requester)),
                                     new VariableBinding(
                                             NotificationElements.InfoTask
                                                     .getOID(rootOIDWaarpNotif,
                                                             NotificationTasks.requestedInfo
                                                                     .getOID()),
-                                            new OctetString(runner.getRequested())),
+                                            new OctetString(info.requested)),
                                     new VariableBinding(
                                             NotificationElements.InfoTask
                                                     .getOID(rootOIDWaarpNotif,
                                                             NotificationTasks.specialIdInfo
                                                                     .getOID()),
-                                            new OctetString("" + runner.getSpecialId())),
+                                            new OctetString(info.specialId)),
                                     // End of Task
                                     new VariableBinding(SnmpConstants.sysDescr,
                                             snmpv2.getDescr()),
@@ -316,7 +365,7 @@ public class R66PrivateMib extends WaarpPrivateMib {
         if (logger.isDebugEnabled())
             logger.debug("Notify: " + NotificationElements.InfoTask + ":" + message +
                     ":" + runner.toShortString());
-        notifyInternalTask(message, runner);
+        notifyInternalTask(message, runner, true);
     }
 
     /**
@@ -326,10 +375,32 @@ public class R66PrivateMib extends WaarpPrivateMib {
      * @param message
      * @param message2
      */
-    private void notify(NotificationElements element, String message, String message2) {
+    private void notify(final NotificationElements element, final String message,
+            final String message2) {
+        if (logger.isDebugEnabled())
+            logger.debug("Notify: " + element + ":" + message + ":" + message2);
+        dispatcher.dispatch(new R66Notification() {
+            @Override
+            public String getKey() {
+                return null;
+            }
+
+            @Override
+            public void send() {
+                sendNotify(element, message, message2);
+            }
+        });
+    }
+
+    /**
+     * Really send the Trap/Notification (from the dispatcher thread)
+     * 
+     * @param element
+     * @param message
+     * @param message2
+     */
+    private void sendNotify(NotificationElements element, String message, String message2) {
         try {
-            if (logger.isDebugEnabled())
-                logger.debug("Notify: " + element + ":" + message + ":" + message2);
             agent.getNotificationOriginator().notify(
                     new OctetString("public"),
                     element.getOID(rootOIDWaarpNotif),
@@ -353,6 +424,58 @@ public class R66PrivateMib extends WaarpPrivateMib {
         }
     }
 
+    /**
+     * Stop the asynchronous dispatcher of notifications
+     */
+    public void stopDispatcher() {
+        dispatcher.stop();
+    }
+
+    /**
+     * @return the asynchronous dispatcher of notifications
+     */
+    public R66NotificationDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Copy of the Transfer Task values taken when the notification is requested, since the
+     * runner goes on changing until the notification is really sent
+     */
+    private static class TaskInfo {
+        private final long startTime;
+        private final int globalLastStep;
+        private final int step;
+        private final int rank;
+        private final String status;
+        private final String filename;
+        private final String originalFilename;
+        private final String ruleId;
+        private final String mode;
+        private final String retrieveMode;
+        private final String infoStatus;
+        private final String requester;
+        private final String requested;
+        private final String specialId;
+
+        private TaskInfo(DbTaskRunner runner) {
+            startTime = runner.getStart().getTime();
+            globalLastStep = runner.getGloballaststep();
+            step = runner.getStep();
+            rank = runner.getRank();
+            status = runner.getStatus().getMesg();
+            filename = runner.getFilename();
+            originalFilename = runner.getOriginalFilename();
+            ruleId = runner.getRuleId();
+            mode = TRANSFERMODE.values()[runner.getMode()].name();
+            retrieveMode = runner.isSender() ? "Sender" : "Receiver";
+            infoStatus = runner.getErrorInfo().getMesg();
+            requester = runner.getRequester();
+            requested = runner.getRequested();
+            specialId = "" + runner.getSpecialId();
+        }
+    }
+
     public void updateServices(WaarpMOScalar scalar) {
     }
 
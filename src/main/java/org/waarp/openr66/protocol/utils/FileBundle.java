@@ -0,0 +1,253 @@
+/**
+ * This file is part of Waarp Project.
+ * 
+ * Copyright 2009, Frederic Bregier, and individual contributors by the @author tags. See the
+ * COPYRIGHT.txt in the distribution for a full listing of individual contributors.
+ * 
+ * All Waarp Project is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * Waarp is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Waarp . If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.waarp.openr66.protocol.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.waarp.common.logging.WaarpLogger;
+import org.waarp.common.logging.WaarpLoggerFactory;
+import org.waarp.common.utility.WaarpStringUtils;
+import org.waarp.openr66.protocol.exception.OpenR66ProtocolSystemException;
+
+/**
+ * Bundle of small files sent as one single transfer.<br>
+ * <br>
+ * A bundle is a Zip archive whose entries are the bundled files, followed by a last entry named
+ * {@link #MANIFEST} giving for each file one line "name TAB size TAB crc32". The archive is
+ * written in one pass, each file being streamed directly from its source into the archive.
+ */
+public class FileBundle {
+    /**
+     * Internal Logger
+     */
+    private static final WaarpLogger logger = WaarpLoggerFactory
+            .getLogger(FileBundle.class);
+
+    /**
+     * Name of the manifest entry within a bundle
+     */
+    public static final String MANIFEST = "BUNDLE.MANIFEST";
+
+    private static final String SEPARATOR = "\t";
+
+    private static final int BUFFER_SIZE = 0x10000;
+
+    /**
+     * Status of one file from a bundle
+     */
+    public static class EntryStatus {
+        public final String name;
+        public final long size;
+        public final boolean ok;
+        public final String reason;
+
+        EntryStatus(String name, long size, boolean ok, String reason) {
+            this.name = name;
+            this.size = size;
+            this.ok = ok;
+            this.reason = reason;
+        }
+
+        @Override
+        public String toString() {
+            return name + SEPARATOR + size + SEPARATOR + (ok ? "OK" : "KO" + SEPARATOR + reason);
+        }
+    }
+
+    private FileBundle() {
+    }
+
+    /**
+     * Create a bundle from the given files
+     * 
+     * @param files
+     *            the files to bundle
+     * @param names
+     *            the names of the files within the bundle (same order than files)
+     * @param bundle
+     *            the bundle file to create
+     * @throws OpenR66ProtocolSystemException
+     */
+    public static void createBundle(List<File> files, List<String> names, File bundle)
+            throws OpenR66ProtocolSystemException {
+        if (files.size() != names.size()) {
+            throw new OpenR66ProtocolSystemException("Files and names do not match");
+        }
+        StringBuilder manifest = new StringBuilder();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ZipOutputStream zip = null;
+        try {
+            zip = new ZipOutputStream(new FileOutputStream(bundle));
+            for (int i = 0; i < files.size(); i++) {
+                File file = files.get(i);
+                String name = names.get(i);
+                CRC32 crc = new CRC32();
+                long size = 0;
+                zip.putNextEntry(new ZipEntry(name));
+                InputStream in = new FileInputStream(file);
+                try {
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        zip.write(buffer, 0, read);
+                        crc.update(buffer, 0, read);
+                        size += read;
+                    }
+                } finally {
+                    in.close();
+                }
+                zip.closeEntry();
+                manifest.append(name).append(SEPARATOR).append(size).append(SEPARATOR)
+                        .append(Long.toHexString(crc.getValue())).append('\n');
+            }
+            zip.putNextEntry(new ZipEntry(MANIFEST));
+            zip.write(manifest.toString().getBytes(WaarpStringUtils.UTF8));
+            zip.closeEntry();
+            zip.close();
+            zip = null;
+        } catch (IOException e) {
+            throw new OpenR66ProtocolSystemException("Cannot create bundle " + bundle, e);
+        } finally {
+            if (zip != null) {
+                try {
+                    zip.close();
+                } catch (IOException e) {
+                }
+                bundle.delete();
+            }
+        }
+    }
+
+    /**
+     * Extract a bundle into the given directory, checking each file against the manifest
+     * 
+     * @param bundle
+     *            the bundle file
+     * @param directory
+     *            the target directory
+     * @return the status of each file listed in the manifest
+     * @throws OpenR66ProtocolSystemException
+     *             if the bundle cannot be read or has no manifest
+     */
+    public static List<EntryStatus> extractBundle(File bundle, File directory)
+            throws OpenR66ProtocolSystemException {
+        if (!FileUtils.createDir(directory)) {
+            throw new OpenR66ProtocolSystemException("Cannot create directory " + directory);
+        }
+        String canonicalDir;
+        Map<String, long[]> extracted = new HashMap<String, long[]>();
+        List<String[]> manifest = null;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ZipInputStream zip = null;
+        try {
+            canonicalDir = directory.getCanonicalPath() + File.separator;
+            zip = new ZipInputStream(new FileInputStream(bundle));
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (MANIFEST.equals(name)) {
+                    manifest = readManifest(zip);
+                    continue;
+                }
+                File target = new File(directory, name);
+                if (!target.getCanonicalPath().startsWith(canonicalDir)) {
+                    logger.warn("Bundle entry outside target directory ignored: " + name);
+                    continue;
+                }
+                FileUtils.createDir(target.getParentFile());
+                CRC32 crc = new CRC32();
+                long size = 0;
+                OutputStream out = new FileOutputStream(target);
+                try {
+                    int read;
+                    while ((read = zip.read(buffer)) > 0) {
+                        out.write(buffer, 0, read);
+                        crc.update(buffer, 0, read);
+                        size += read;
+                    }
+                } finally {
+                    out.close();
+                }
+                extracted.put(name, new long[] { size, crc.getValue() });
+            }
+        } catch (IOException e) {
+            throw new OpenR66ProtocolSystemException("Cannot extract bundle " + bundle, e);
+        } finally {
+            if (zip != null) {
+                try {
+                    zip.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        if (manifest == null) {
+            throw new OpenR66ProtocolSystemException("No manifest in bundle " + bundle);
+        }
+        List<EntryStatus> status = new ArrayList<EntryStatus>(manifest.size());
+        for (String[] line : manifest) {
+            String name = line[0];
+            long size = Long.parseLong(line[1]);
+            long[] found = extracted.get(name);
+            if (found == null) {
+                status.add(new EntryStatus(name, size, false, "missing"));
+            } else if (found[0] != size) {
+                status.add(new EntryStatus(name, size, false, "size " + found[0]));
+            } else if (found[1] != Long.parseLong(line[2], 16)) {
+                status.add(new EntryStatus(name, size, false, "crc " + Long.toHexString(found[1])));
+            } else {
+                status.add(new EntryStatus(name, size, true, null));
+            }
+        }
+        return status;
+    }
+
+    private static List<String[]> readManifest(InputStream in) throws IOException {
+        List<String[]> lines = new ArrayList<String[]>();
+        // do not close the reader since it would close the underlying Zip stream
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, WaarpStringUtils.UTF8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split(SEPARATOR);
+            if (fields.length != 3) {
+                throw new IOException("Invalid manifest line: " + line);
+            }
+            lines.add(fields);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * This file is part of Waarp Project.
+ * 
+ * Copyright 2009, Frederic Bregier, and individual contributors by the @author tags. See the
+ * COPYRIGHT.txt in the distribution for a full listing of individual contributors.
+ * 
+ * All Waarp Project is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * Waarp is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Waarp . If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.waarp.openr66.protocol.utils;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.waarp.common.digest.FilesystemBasedDigest.DigestAlgo;
+
+/**
+ * Bounded cache of file digests, so that an unchanged file is not hashed twice.<br>
+ * <br>
+ * Entries are keyed by the absolute path, the size, the last modification time and the algorithm of the
+ * file, so that any change of the file makes its previous digest unreachable. Since the modification
+ * time may have a granularity of one second or more, a file modified less than RACY_DELAY ago is never
+ * kept: it could be changed again without changing its key. The least recently used entries are evicted
+ * first.<br>
+ * <br>
+ * This key is not a proof of content: integrity checks (final digest of a transfer, digest sent to a
+ * partner) shall compute the digest from the file itself.
+ */
+public class FileDigestCache {
+    /**
+     * Delay in ms since the last modification below which a file is not cached
+     */
+    static final long RACY_DELAY = 2000;
+
+    private final int maxEntries;
+
+    private final Map<String, String> cache;
+
+    /**
+     * @param maxEntries
+     *            max number of digests kept
+     */
+    public FileDigestCache(final int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > FileDigestCache.this.maxEntries;
+            }
+        };
+    }
+
+    private static String getKey(File file, DigestAlgo algo) {
+        return file.getAbsolutePath() + '\n' + file.length() + '\n' + file.lastModified() + '\n' + algo.name;
+    }
+
+    /**
+     * 
+     * @param file
+     * @param algo
+     * @return the hexadecimal digest of the file if known for its current size and modification time, else
+     *         null
+     */
+    public String get(File file, DigestAlgo algo) {
+        if (!file.isFile()) {
+            return null;
+        }
+        String key = getKey(file, algo);
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    /**
+     * Register the hexadecimal digest of the file in its current state, unless modified too recently
+     * 
+     * @param file
+     * @param algo
+     * @param digest
+     */
+    public void put(File file, DigestAlgo algo, String digest) {
+        if (digest == null || !file.isFile()
+                || System.currentTimeMillis() - file.lastModified() < RACY_DELAY) {
+            return;
+        }
+        String key = getKey(file, algo);
+        synchronized (cache) {
+            cache.put(key, digest);
+        }
+    }
+
+    /**
+     * @return the number of digests currently kept
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+}
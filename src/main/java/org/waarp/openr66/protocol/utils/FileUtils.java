@@ -24,6 +24,7 @@ import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.util.Map;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -472,13 +473,70 @@ public class FileUtils {
      **/
     public final static String getHash(File f) throws OpenR66ProtocolSystemException {
         try {
-            return FilesystemBasedDigest.getHex(FilesystemBasedDigest.getHash(f,
-                    FilesystemBasedFileParameterImpl.useNio, Configuration.configuration.getDigest()));
+            return getHash(f, Configuration.configuration.getDigest());
         } catch (IOException e) {
             throw new OpenR66ProtocolSystemException(e);
         }
     }
 
+    /**
+     * Calculates and returns the hash of the contents of the given file, reading the file whatever the
+     * digest cache, as needed for integrity checks or for a digest sent to a partner.
+     * 
+     * @param f
+     * @param algo
+     * @return the hexadecimal hash of the given file
+     * @throws IOException
+     */
+    public final static String computeHash(File f, DigestAlgo algo) throws IOException {
+        return FilesystemBasedDigest.getHex(FilesystemBasedDigest.getHash(f,
+                FilesystemBasedFileParameterImpl.useNio, algo));
+    }
+
+    /**
+     * Calculates and returns the hash of the contents of the given file, using the digest cache if
+     * enabled so that an unchanged file is hashed only once (see FileDigestCache for its limits).
+     * 
+     * @param f
+     * @param algo
+     * @return the hexadecimal hash of the given file
+     * @throws IOException
+     */
+    public final static String getHash(File f, DigestAlgo algo) throws IOException {
+        FileDigestCache cache = Configuration.configuration.getFileDigestCache();
+        if (cache == null) {
+            return computeHash(f, algo);
+        }
+        String hash = cache.get(f, algo);
+        if (hash != null) {
+            return hash;
+        }
+        long length = f.length();
+        long lastModified = f.lastModified();
+        hash = computeHash(f, algo);
+        if (f.length() == length && f.lastModified() == lastModified) {
+            cache.put(f, algo, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Register already known hashes of the given file in the digest cache (if enabled)
+     * 
+     * @param f
+     * @param hashes
+     *            hexadecimal hashes per algorithm
+     */
+    public final static void registerHashes(File f, Map<DigestAlgo, String> hashes) {
+        FileDigestCache cache = Configuration.configuration.getFileDigestCache();
+        if (cache == null) {
+            return;
+        }
+        for (Map.Entry<DigestAlgo, String> entry : hashes.entrySet()) {
+            cache.put(f, entry.getKey(), entry.getValue());
+        }
+    }
+
     /**
      * 
      * @param buffer
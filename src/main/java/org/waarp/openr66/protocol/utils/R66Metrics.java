@@ -0,0 +1,289 @@
+/**
+ * This file is part of Waarp Project.
+ * 
+ * Copyright 2009, Frederic Bregier, and individual contributors by the @author tags. See the
+ * COPYRIGHT.txt in the distribution for a full listing of individual contributors.
+ * 
+ * All Waarp Project is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * Waarp is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Waarp . If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.waarp.openr66.protocol.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Registry of latency and throughput metrics of transfers, tagged by partner and rule.<br>
+ * <br>
+ * Recording is lock-free (one histogram with fixed buckets per phase, partner and rule), and the
+ * whole registry can be exported in the Prometheus text format.
+ */
+public class R66Metrics {
+    /**
+     * Measured phases
+     */
+    public static enum Phase {
+        connection, authentication, request, pretask, data, posttask, errortask, dbsave
+    }
+
+    /**
+     * Upper bounds of the buckets in seconds
+     */
+    private static final double[] BUCKETS = {
+            0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 60, 300, 1800 };
+    private static final long[] BUCKETS_NANOS = new long[BUCKETS.length];
+    static {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            BUCKETS_NANOS[i] = (long) (BUCKETS[i] * 1000000000L);
+        }
+    }
+    /**
+     * Maximum number of series, to bound the memory whatever the number of partners and rules
+     */
+    static final int MAX_SERIES = 10000;
+    /**
+     * Partner or rule used once MAX_SERIES is reached or if unknown
+     */
+    private static final String OTHER = "other";
+
+    /**
+     * Histogram of durations
+     */
+    public static class Histogram {
+        private final Phase phase;
+        private final String partner;
+        private final String rule;
+        /**
+         * Not cumulative, last one for values over all buckets
+         */
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sumNanos = new AtomicLong();
+
+        private Histogram(Phase phase, String partner, String rule) {
+            this.phase = phase;
+            this.partner = partner;
+            this.rule = rule;
+        }
+
+        /**
+         * @param nanos
+         *            the duration to record
+         */
+        public void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            int i = 0;
+            while (i < BUCKETS_NANOS.length && nanos > BUCKETS_NANOS[i]) {
+                i++;
+            }
+            buckets.incrementAndGet(i);
+            sumNanos.addAndGet(nanos);
+            count.incrementAndGet();
+        }
+
+        /**
+         * @return the number of recorded durations
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return the sum of recorded durations in nanoseconds
+         */
+        public long getSumNanos() {
+            return sumNanos.get();
+        }
+    }
+
+    /**
+     * Bytes transferred and number of transfers
+     */
+    private static class Throughput {
+        private final String partner;
+        private final String rule;
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong transfers = new AtomicLong();
+
+        private Throughput(String partner, String rule) {
+            this.partner = partner;
+            this.rule = rule;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Histogram> histograms =
+            new ConcurrentHashMap<String, Histogram>();
+    private static final ConcurrentHashMap<String, Throughput> throughputs =
+            new ConcurrentHashMap<String, Throughput>();
+
+    private R66Metrics() {
+    }
+
+    private static String key(String partner, String rule) {
+        return partner + '\u0000' + rule;
+    }
+
+    /**
+     * 
+     * @param phase
+     * @param partner
+     * @param rule
+     * @return the associated histogram, created if needed
+     */
+    public static Histogram getHistogram(Phase phase, String partner, String rule) {
+        if (partner == null) {
+            partner = OTHER;
+        }
+        if (rule == null) {
+            rule = OTHER;
+        }
+        String key = phase.name() + '\u0000' + key(partner, rule);
+        Histogram histogram = histograms.get(key);
+        if (histogram != null) {
+            return histogram;
+        }
+        if (histograms.size() >= MAX_SERIES) {
+            partner = OTHER;
+            rule = OTHER;
+            key = phase.name() + '\u0000' + key(partner, rule);
+        }
+        histogram = new Histogram(phase, partner, rule);
+        Histogram previous = histograms.putIfAbsent(key, histogram);
+        return previous != null ? previous : histogram;
+    }
+
+    /**
+     * Record one duration
+     * 
+     * @param phase
+     * @param partner
+     * @param rule
+     * @param startNanos
+     *            the start of the measure from System.nanoTime()
+     */
+    public static void record(Phase phase, String partner, String rule, long startNanos) {
+        getHistogram(phase, partner, rule).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Record one finished data transfer
+     * 
+     * @param partner
+     * @param rule
+     * @param bytes
+     */
+    public static void recordTransfer(String partner, String rule, long bytes) {
+        if (partner == null) {
+            partner = OTHER;
+        }
+        if (rule == null) {
+            rule = OTHER;
+        }
+        String key = key(partner, rule);
+        Throughput throughput = throughputs.get(key);
+        if (throughput == null) {
+            if (throughputs.size() >= MAX_SERIES) {
+                partner = OTHER;
+                rule = OTHER;
+                key = key(partner, rule);
+            }
+            throughput = new Throughput(partner, rule);
+            Throughput previous = throughputs.putIfAbsent(key, throughput);
+            if (previous != null) {
+                throughput = previous;
+            }
+        }
+        if (bytes > 0) {
+            throughput.bytes.addAndGet(bytes);
+        }
+        throughput.transfers.incrementAndGet();
+    }
+
+    /**
+     * Clear all metrics
+     */
+    public static void clear() {
+        histograms.clear();
+        throughputs.clear();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void appendLabels(StringBuilder builder, Histogram histogram) {
+        builder.append("phase=\"").append(histogram.phase.name())
+                .append("\",partner=\"").append(escape(histogram.partner))
+                .append("\",rule=\"").append(escape(histogram.rule)).append('"');
+    }
+
+    /**
+     * 
+     * @return all metrics in the Prometheus text format (version 0.0.4)
+     */
+    public static String exportPrometheus() {
+        StringBuilder builder = new StringBuilder();
+        List<Histogram> list = new ArrayList<Histogram>(histograms.values());
+        Collections.sort(list, new Comparator<Histogram>() {
+            @Override
+            public int compare(Histogram o1, Histogram o2) {
+                int result = o1.phase.compareTo(o2.phase);
+                if (result == 0) {
+                    result = o1.partner.compareTo(o2.partner);
+                }
+                if (result == 0) {
+                    result = o1.rule.compareTo(o2.rule);
+                }
+                return result;
+            }
+        });
+        builder.append("# HELP r66_phase_duration_seconds Duration of the phases of transfers\n")
+                .append("# TYPE r66_phase_duration_seconds histogram\n");
+        for (Histogram histogram : list) {
+            long cumulative = 0;
+            for (int i = 0; i <= BUCKETS.length; i++) {
+                cumulative += histogram.buckets.get(i);
+                builder.append("r66_phase_duration_seconds_bucket{");
+                appendLabels(builder, histogram);
+                builder.append(",le=\"").append(i < BUCKETS.length ? Double.toString(BUCKETS[i]) : "+Inf")
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            builder.append("r66_phase_duration_seconds_sum{");
+            appendLabels(builder, histogram);
+            builder.append("} ").append(histogram.sumNanos.get() / 1e9).append('\n');
+            builder.append("r66_phase_duration_seconds_count{");
+            appendLabels(builder, histogram);
+            builder.append("} ").append(cumulative).append('\n');
+        }
+        builder.append("# HELP r66_transfer_bytes_total Bytes of finished data transfers\n")
+                .append("# TYPE r66_transfer_bytes_total counter\n");
+        StringBuilder transfers = new StringBuilder();
+        transfers.append("# HELP r66_transfers_total Number of finished data transfers\n")
+                .append("# TYPE r66_transfers_total counter\n");
+        for (Throughput throughput : throughputs.values()) {
+            String labels = "{partner=\"" + escape(throughput.partner) + "\",rule=\"" +
+                    escape(throughput.rule) + "\"} ";
+            builder.append("r66_transfer_bytes_total").append(labels)
+                    .append(throughput.bytes.get()).append('\n');
+            transfers.append("r66_transfers_total").append(labels)
+                    .append(throughput.transfers.get()).append('\n');
+        }
+        builder.append(transfers);
+        return builder.toString();
+    }
+}
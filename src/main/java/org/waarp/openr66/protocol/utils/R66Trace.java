@@ -0,0 +1,292 @@
+/**
+ * This file is part of Waarp Project.
+ * 
+ * Copyright 2009, Frederic Bregier, and individual contributors by the @author tags. See the
+ * COPYRIGHT.txt in the distribution for a full listing of individual contributors.
+ * 
+ * All Waarp Project is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * Waarp is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Waarp . If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.waarp.openr66.protocol.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+import org.waarp.common.logging.WaarpLogger;
+import org.waarp.common.logging.WaarpLoggerFactory;
+import org.waarp.openr66.protocol.configuration.Configuration;
+
+/**
+ * Trace of the phases of one transfer on one LocalChannelReference (connection, states of the
+ * protocol, tasks, database saves).<br>
+ * <br>
+ * Tracing is enabled by the "tracetransfers" option. When disabled, no trace is created at all and
+ * callers only test a null reference. The trace id is sent to the partner within the request (JSON
+ * mode only) so that both sides of one transfer share the same id. Once finished, a trace is kept
+ * in an in-memory ring buffer of the last traces and dumped through the logger of this class (that
+ * can be redirected to a dedicated file by the logging configuration).
+ */
+public class R66Trace {
+    /**
+     * Internal Logger
+     */
+    private static final WaarpLogger logger = WaarpLoggerFactory.getLogger(R66Trace.class);
+
+    /**
+     * Number of finished traces kept in memory
+     */
+    public static final int RING_SIZE = 1024;
+    /**
+     * Maximum number of spans kept in one trace
+     */
+    static final int MAX_SPANS = 256;
+    /**
+     * Trace id accepted from a partner, since it goes as is into the logs
+     */
+    private static final Pattern TRACE_ID_PATTERN = Pattern.compile("[A-Za-z0-9._-]{1,128}");
+
+    private static final AtomicReferenceArray<R66Trace> ring = new AtomicReferenceArray<R66Trace>(
+            RING_SIZE);
+    private static final AtomicLong ringIndex = new AtomicLong();
+    private static final AtomicLong idGenerator = new AtomicLong();
+
+    /**
+     * One timed phase
+     */
+    public static class Span {
+        private final String name;
+        private final long startNanos;
+        private volatile long endNanos = -1;
+
+        private Span(String name, long startNanos) {
+            this.name = name;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * End this span (only the first call is taken into account)
+         */
+        public void end() {
+            if (endNanos < 0) {
+                endNanos = System.nanoTime();
+            }
+        }
+
+        /**
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    private volatile String traceId;
+    private volatile String transferKey;
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final List<Span> spans = new ArrayList<Span>();
+    /**
+     * Count and total duration of repeated phases, as database saves
+     */
+    private final Map<String, long[]> accumulated = new LinkedHashMap<String, long[]>();
+    private Span stateSpan;
+    private int droppedSpans = 0;
+    private boolean finished = false;
+
+    private R66Trace() {
+        traceId = Configuration.configuration.getHOST_ID() + "-"
+                + Long.toHexString(startMillis) + "-"
+                + Long.toHexString(idGenerator.incrementAndGet());
+    }
+
+    /**
+     * 
+     * @return a new trace, or null if tracing is disabled
+     */
+    public static R66Trace newTrace() {
+        if (Configuration.configuration == null || !Configuration.configuration.isTraceEnabled()) {
+            return null;
+        }
+        return new R66Trace();
+    }
+
+    /**
+     * @return the traceId
+     */
+    public String getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * 
+     * @param traceId
+     * @return True if this trace id can be adopted from a partner
+     */
+    public static boolean isValidTraceId(String traceId) {
+        return traceId != null && TRACE_ID_PATTERN.matcher(traceId).matches();
+    }
+
+    /**
+     * Adopt the trace id of the partner, in order to correlate both sides of the transfer (an
+     * invalid one is ignored and the local id is kept)
+     * 
+     * @param traceId
+     *            the traceId to set
+     */
+    public void setTraceId(String traceId) {
+        if (traceId == null || traceId.isEmpty()) {
+            return;
+        }
+        if (isValidTraceId(traceId)) {
+            this.traceId = traceId;
+        } else {
+            logger.debug("Invalid trace id from partner ignored, keep {}", this.traceId);
+        }
+    }
+
+    private Span addSpan(String name, long start) {
+        Span span = new Span(name, start);
+        if (finished || spans.size() >= MAX_SPANS) {
+            droppedSpans++;
+        } else {
+            spans.add(span);
+        }
+        return span;
+    }
+
+    /**
+     * Start a new span, to be ended by the caller
+     * 
+     * @param name
+     * @return the started span
+     */
+    public synchronized Span startSpan(String name) {
+        return addSpan(name, System.nanoTime());
+    }
+
+    /**
+     * Record a span started before and ending now
+     * 
+     * @param name
+     * @param start
+     *            start time as given by System.nanoTime()
+     */
+    public synchronized void record(String name, long start) {
+        addSpan(name, start).end();
+    }
+
+    /**
+     * Add a repeated phase started before and ending now into its total
+     * 
+     * @param name
+     * @param start
+     *            start time as given by System.nanoTime()
+     */
+    public synchronized void accumulate(String name, long start) {
+        long duration = System.nanoTime() - start;
+        long[] total = accumulated.get(name);
+        if (total == null) {
+            total = new long[2];
+            accumulated.put(name, total);
+        }
+        total[0]++;
+        total[1] += duration;
+    }
+
+    /**
+     * End the span of the previous state and start the span of the new state
+     * 
+     * @param state
+     */
+    public synchronized void newState(String state) {
+        if (stateSpan != null) {
+            stateSpan.end();
+        }
+        stateSpan = addSpan("state:" + state, System.nanoTime());
+    }
+
+    /**
+     * End this trace, keep it in the ring buffer and dump it
+     * 
+     * @param transferKey
+     *            the key of the transfer if any
+     */
+    public void finish(String transferKey) {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            this.transferKey = transferKey;
+            for (Span span : spans) {
+                span.end();
+            }
+        }
+        ring.set((int) (ringIndex.getAndIncrement() % RING_SIZE), this);
+        logger.info("{}", this);
+    }
+
+    /**
+     * 
+     * @return the last finished traces, from the oldest to the newest
+     */
+    public static List<R66Trace> getRecentTraces() {
+        long last = ringIndex.get();
+        long first = Math.max(0, last - RING_SIZE);
+        List<R66Trace> list = new ArrayList<R66Trace>((int) (last - first));
+        for (long i = first; i < last; i++) {
+            R66Trace trace = ring.get((int) (i % RING_SIZE));
+            if (trace != null) {
+                list.add(trace);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 
+     * @return the last finished traces, one per line
+     */
+    public static String exportRecent() {
+        StringBuilder builder = new StringBuilder();
+        for (R66Trace trace : getRecentTraces()) {
+            builder.append(trace).append('\n');
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("Trace ").append(traceId)
+                .append(" Transfer: ").append(transferKey)
+                .append(" Start: ").append(startMillis).append(" Spans:");
+        for (Span span : spans) {
+            long end = span.endNanos < 0 ? System.nanoTime() : span.endNanos;
+            builder.append(' ').append(span.name)
+                    .append("@").append((span.startNanos - startNanos) / 1000)
+                    .append('+').append((end - span.startNanos) / 1000).append("us");
+        }
+        for (Map.Entry<String, long[]> entry : accumulated.entrySet()) {
+            builder.append(' ').append(entry.getKey())
+                    .append('x').append(entry.getValue()[0])
+                    .append('=').append(entry.getValue()[1] / 1000).append("us");
+        }
+        if (droppedSpans > 0) {
+            builder.append(" Dropped: ").append(droppedSpans);
+        }
+        return builder.toString();
+    }
+}
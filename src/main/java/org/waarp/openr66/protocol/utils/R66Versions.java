@@ -24,7 +24,11 @@ public enum R66Versions {
     /**
      * Add support for FileInformation change
      */
-    V3_0_4;
+    V3_0_4,
+    /**
+     * Add indexes on runner table following its main access paths
+     */
+    V3_1_0;
 
     public String getVersion() {
         return this.name().substring(1).replace('_', '.');
@@ -25,7 +25,9 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.thrift.TException;
 import org.waarp.common.command.exception.CommandAbstractException;
@@ -36,9 +38,13 @@ import org.waarp.common.logging.WaarpLoggerFactory;
 import org.waarp.openr66.commander.ClientRunner;
 import org.waarp.openr66.context.R66Session;
 import org.waarp.openr66.context.filesystem.R66File;
+import org.waarp.openr66.dao.DAOFactory;
+import org.waarp.openr66.dao.TransferDAO;
+import org.waarp.openr66.dao.exception.DAOException;
 import org.waarp.openr66.database.DbConstant;
 import org.waarp.openr66.database.data.DbRule;
 import org.waarp.openr66.database.data.DbTaskRunner;
+import org.waarp.openr66.pojo.Transfer;
 import org.waarp.openr66.protocol.configuration.Configuration;
 import org.waarp.openr66.protocol.configuration.PartnerConfiguration;
 import org.waarp.openr66.protocol.localhandler.LocalChannelReference;
@@ -66,7 +72,12 @@ public class R66EmbeddedServiceImpl implements R66Service.Iface {
     private static final WaarpLogger logger = WaarpLoggerFactory
             .getLogger(R66EmbeddedServiceImpl.class);
 
-    private DbTaskRunner initRequest(R66Request request) {
+    /**
+     * 
+     * @param request
+     * @return the start time of the request, null if not specified
+     */
+    private Timestamp getStartTime(R66Request request) {
         Timestamp ttimestart = null;
         if (request.isSetStart()) {
             Date date;
@@ -84,6 +95,11 @@ public class R66EmbeddedServiceImpl implements R66Service.Iface {
                 ttimestart = new Timestamp(Long.parseLong(request.getDelay()));
             }
         }
+        return ttimestart;
+    }
+
+    private DbTaskRunner initRequest(R66Request request) {
+        Timestamp ttimestart = getStartTime(request);
         DbRule rule;
         try {
             rule = new DbRule(request.getRule());
@@ -180,6 +196,121 @@ public class R66EmbeddedServiceImpl implements R66Service.Iface {
         }
     }
 
+    /**
+     * Prepare a new transfer (not yet inserted) from the given request, using
+     * the given caches of rules and requester ids.
+     *
+     * @param request
+     * @param rules cache of rules by name
+     * @param requesters cache of requester ids by requested host
+     * @return the new DbTaskRunner or null if it cannot be prepared
+     */
+    private DbTaskRunner initTransfer(R66Request request, Map<String, DbRule> rules,
+            Map<String, String> requesters) {
+        Timestamp ttimestart = getStartTime(request);
+        DbRule rule = rules.get(request.getRule());
+        String requester = requesters.get(request.getDestuid());
+        try {
+            if (rule == null) {
+                rule = new DbRule(request.getRule());
+                rules.put(request.getRule(), rule);
+            }
+            if (requester == null) {
+                requester = Configuration.configuration.getHostId(
+                        DbConstant.admin.getSession(), request.getDestuid());
+                requesters.put(request.getDestuid(), requester);
+            }
+        } catch (WaarpDatabaseException e) {
+            logger.warn("Cannot get Rule or Host: " + request.getRule() + " "
+                    + request.getDestuid(), e);
+            return null;
+        }
+        int mode = rule.getMode();
+        if (request.isMd5()) {
+            mode = RequestPacket.getModeMD5(mode);
+        }
+        String sep = PartnerConfiguration.getSeparator(request.getDestuid());
+        RequestPacket requestPacket = new RequestPacket(request.getRule(),
+                mode, request.getFile(), request.getBlocksize(), 0,
+                DbConstant.ILLEGALVALUE, request.getInfo(), -1, sep);
+        // Not isRecv since it is the requester, so send => isRetrieve is true
+        boolean isRetrieve = !RequestPacket.isRecvMode(requestPacket.getMode());
+        DbTaskRunner taskRunner;
+        try {
+            taskRunner = new DbTaskRunner(rule, isRetrieve, requestPacket,
+                    request.getDestuid(), requester, ttimestart);
+        } catch (WaarpDatabaseException e) {
+            logger.warn("Cannot get task", e);
+            return null;
+        }
+        taskRunner.changeUpdatedInfo(AbstractDbData.UpdatedInfo.TOSUBMIT);
+        return taskRunner;
+    }
+
+    /**
+     * Schedule many new transfers at once: rules and partners are only read
+     * once for all the requests, and all the transfers are inserted within
+     * one database transaction.<br>
+     * Each request is handled as an asynchronous one. Requests refering to an
+     * existing transfer (tid set) are handled one by one as in
+     * {@link #transferRequestQuery(R66Request)}.
+     *
+     * @param requests
+     * @return the list of results, in the same order than the requests
+     * @throws TException
+     */
+    public List<R66Result> transferRequestQueries(List<R66Request> requests)
+            throws TException {
+        R66Result[] results = new R66Result[requests.size()];
+        DbTaskRunner[] runners = new DbTaskRunner[requests.size()];
+        List<Transfer> toInsert = new ArrayList<Transfer>(requests.size());
+        Map<String, DbRule> rules = new HashMap<String, DbRule>();
+        Map<String, String> requesters = new HashMap<String, String>();
+        for (int i = 0; i < results.length; i++) {
+            R66Request request = requests.get(i);
+            if (request.isSetTid() && request.getTid() != DbConstant.ILLEGALVALUE) {
+                results[i] = transferRequestQuery(request);
+                continue;
+            }
+            runners[i] = initTransfer(request, rules, requesters);
+            if (runners[i] == null) {
+                results[i] = new R66Result(request.getMode(), ErrorCode.Internal,
+                        "ERROR: Transfer NOT scheduled");
+            } else {
+                toInsert.add(runners[i].getTransfer());
+            }
+        }
+        boolean inserted = false;
+        TransferDAO transferAccess = null;
+        try {
+            transferAccess = DAOFactory.getInstance().getTransferDAO();
+            transferAccess.insert(toInsert);
+            inserted = true;
+        } catch (DAOException e) {
+            logger.warn("Cannot prepare tasks", e);
+        } finally {
+            if (transferAccess != null) {
+                transferAccess.close();
+            }
+        }
+        List<R66Result> list = new ArrayList<R66Result>(results.length);
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                R66Request request = requests.get(i);
+                if (inserted) {
+                    results[i] = new R66Result(request.getMode(), ErrorCode.InitOk,
+                            "Transfer Scheduled");
+                    setResultFromRunner(runners[i], results[i]);
+                } else {
+                    results[i] = new R66Result(request.getMode(), ErrorCode.CommandNotFound,
+                            "ERROR: Cannot prepare transfer");
+                }
+            }
+            list.add(results[i]);
+        }
+        return list;
+    }
+
     private void setResultFromRunner(DbTaskRunner runner, R66Result result) {
         result.setDestuid(runner.getRequested());
         result.setFromuid(runner.getRequester());
@@ -0,0 +1,112 @@
+package org.waarp.openr66.client;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClientAgentTest {
+
+    private File callerDir;
+    private File sendDir;
+
+    @Before
+    public void setUp() throws IOException {
+        callerDir = createDir("caller");
+        sendDir = createDir("send");
+    }
+
+    @After
+    public void wrapUp() {
+        delete(callerDir);
+        delete(sendDir);
+    }
+
+    private static File createDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, ".dir");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+        return dir;
+    }
+
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static void write(File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(1);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void testRelativeFileFromCallerDir() throws IOException {
+        write(new File(callerDir, "data.txt"));
+        assertEquals(new File(callerDir, "data.txt").getAbsolutePath(),
+                ClientAgent.resolveLocalFile(callerDir.getAbsolutePath(), "data.txt", sendDir));
+    }
+
+    @Test
+    public void testRuleDirectoryFirst() throws IOException {
+        write(new File(callerDir, "data.txt"));
+        write(new File(sendDir, "data.txt"));
+        assertEquals("data.txt",
+                ClientAgent.resolveLocalFile(callerDir.getAbsolutePath(), "data.txt", sendDir));
+    }
+
+    @Test
+    public void testUnchangedFilenames() throws IOException {
+        write(new File(callerDir, "data.txt"));
+        String caller = callerDir.getAbsolutePath();
+        // not found anywhere: left to the rule resolution
+        assertEquals("other.txt", ClientAgent.resolveLocalFile(caller, "other.txt", sendDir));
+        // receive rule: the name is the remote one
+        assertEquals("data.txt", ClientAgent.resolveLocalFile(caller, "data.txt", null));
+        // already absolute
+        String absolute = new File(sendDir, "data.txt").getAbsolutePath();
+        assertEquals(absolute, ClientAgent.resolveLocalFile(caller, absolute, sendDir));
+        // old caller without directory
+        assertEquals("data.txt", ClientAgent.resolveLocalFile("", "data.txt", sendDir));
+        assertNull(ClientAgent.resolveLocalFile(caller, null, sendDir));
+    }
+
+    @Test
+    public void testOptions() {
+        String[] args = new String[] { "config.xml", "-to", "hosta", "-agentport", "7000",
+                "-agentsecret", "/tmp/secret" };
+        assertEquals(7000, ClientAgent.getAgentPort(args));
+        assertEquals(new File("/tmp/secret"), ClientAgent.getSecretFile(args, 7000));
+        String[] noOption = new String[] { "config.xml", "-agentport" };
+        assertEquals(ClientAgent.DEFAULT_PORT, ClientAgent.getAgentPort(noOption));
+        assertEquals(new File(System.getProperty("user.home"), ".waarp-r66-agent-6670"),
+                ClientAgent.getSecretFile(noOption, ClientAgent.DEFAULT_PORT));
+        String[] wrongPort = new String[] { "config.xml", "-agentport", "port" };
+        assertEquals(ClientAgent.DEFAULT_PORT, ClientAgent.getAgentPort(wrongPort));
+    }
+
+    @Test
+    public void testReadSecret() throws IOException {
+        File file = new File(callerDir, "secret");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write("0123456789abcdef\n".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        assertEquals("0123456789abcdef", ClientAgent.readSecret(file));
+    }
+}
@@ -0,0 +1,117 @@
+package org.waarp.openr66.client;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.waarp.openr66.protocol.utils.R66Future;
+
+public class SpooledDirectoryTransferTest {
+
+    private static final List<String> HOSTS = Arrays.asList("hostA", "hostKO", "hostC");
+
+    private RecordingTransfer transfer;
+
+    @After
+    public void wrapUp() {
+        if (transfer != null && transfer.hostExecutor != null) {
+            transfer.hostExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Spooled directory in bundle mode, recording the bundle transfers instead of sending them
+     */
+    private static class RecordingTransfer extends SpooledDirectoryTransfer {
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxRunning = new AtomicInteger();
+        private final Set<Thread> threads = new CopyOnWriteArraySet<Thread>();
+        private final CountDownLatch allStarted;
+
+        private RecordingTransfer(int parallelHosts) {
+            super(new R66Future(true), "bundletest", new ArrayList<String>(), "status.json", "stop.file",
+                    "rule", "info", false, HOSTS, 0x10000, null, 1000, false, false, false, 5000, true, 0,
+                    new ArrayList<String>(), 0, false, parallelHosts, 10, 0, 1000, null, null);
+            allStarted = new CountDownLatch(HOSTS.size());
+        }
+
+        @Override
+        protected R66Future transferBundle(String host, String filename) {
+            threads.add(Thread.currentThread());
+            int current = running.incrementAndGet();
+            synchronized (maxRunning) {
+                maxRunning.set(Math.max(maxRunning.get(), current));
+            }
+            allStarted.countDown();
+            try {
+                // let the other transfers start when sent concurrently
+                allStarted.await(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            if ("hostC".equals(host)) {
+                throw new IllegalStateException("transfer crashed");
+            }
+            R66Future future = new R66Future(true);
+            if ("hostKO".equals(host)) {
+                future.setFailure(new Exception("transfer in error"));
+            } else {
+                future.setSuccess();
+            }
+            return future;
+        }
+    }
+
+    private static void assertResults(List<R66Future> futures) {
+        assertEquals(HOSTS.size(), futures.size());
+        assertTrue(futures.get(0).isSuccess());
+        assertFalse(futures.get(1).isSuccess());
+        assertEquals("transfer in error", futures.get(1).getCause().getMessage());
+        // a crashed transfer is reported as a failed one
+        assertFalse(futures.get(2).isSuccess());
+        assertEquals("transfer crashed", futures.get(2).getCause().getMessage());
+    }
+
+    @Test
+    public void testBundleSentToHostsConcurrently() {
+        transfer = new RecordingTransfer(3);
+        assertTrue(transfer.isBundleMode());
+        transfer.hostExecutor = Executors.newFixedThreadPool(transfer.parallelHosts);
+        List<R66Future> futures = transfer.transferBundleToHosts(HOSTS, "bundle.zip");
+        assertEquals(3, transfer.maxRunning.get());
+        assertFalse(transfer.threads.contains(Thread.currentThread()));
+        // results in the order of the hosts, whatever the order of completion
+        assertResults(futures);
+    }
+
+    @Test
+    public void testBundleSentToHostsWithinParallelLimit() {
+        transfer = new RecordingTransfer(2);
+        transfer.hostExecutor = Executors.newFixedThreadPool(transfer.parallelHosts);
+        List<R66Future> futures = transfer.transferBundleToHosts(HOSTS, "bundle.zip");
+        assertEquals(2, transfer.maxRunning.get());
+        assertResults(futures);
+    }
+
+    @Test
+    public void testBundleSentSequentially() {
+        transfer = new RecordingTransfer(1);
+        assertNull(transfer.hostExecutor);
+        List<R66Future> futures = transfer.transferBundleToHosts(HOSTS, "bundle.zip");
+        assertEquals(1, transfer.maxRunning.get());
+        assertEquals(1, transfer.threads.size());
+        assertTrue(transfer.threads.contains(Thread.currentThread()));
+        assertResults(futures);
+    }
+}
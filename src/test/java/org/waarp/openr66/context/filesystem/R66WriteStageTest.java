@@ -0,0 +1,152 @@
+package org.waarp.openr66.context.filesystem;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import io.netty.buffer.Unpooled;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.waarp.common.exception.FileTransferException;
+import org.waarp.common.file.DataBlock;
+import org.waarp.openr66.context.R66Session;
+
+public class R66WriteStageTest {
+
+    private static final int BLOCKSIZE = 1000;
+
+    private R66WriteStage stage;
+    private R66Session session;
+    private R66File file;
+    private final AtomicLong written = new AtomicLong();
+
+    @Before
+    public void setUp() throws Exception {
+        stage = new R66WriteStage(1, 1024 * 1024);
+        session = mock(R66Session.class);
+        file = mock(R66File.class);
+        when(session.getFile()).thenReturn(file);
+        when(file.getTrueFile()).thenReturn(
+                new File(System.getProperty("java.io.tmpdir"), "r66writestagetest"));
+        written.set(0);
+    }
+
+    @After
+    public void wrapUp() {
+        stage.shutdown();
+    }
+
+    private void sendBlocks(R66WriteStage.SessionWriter writer, int from, int nb) {
+        for (int rank = from; rank < from + nb; rank++) {
+            writer.write(Unpooled.wrappedBuffer(new byte[BLOCKSIZE]), rank);
+        }
+    }
+
+    @Test
+    public void testWriterKilledMidTransfer() throws Exception {
+        // the disk fails once 3500 bytes are written
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws FileTransferException {
+                DataBlock block = (DataBlock) invocation.getArguments()[0];
+                int size = block.getBlock().readableBytes();
+                if (written.get() + size > 3500) {
+                    throw new FileTransferException("Disk failure");
+                }
+                written.addAndGet(size);
+                return null;
+            }
+        }).when(file).writeDataBlock(any(DataBlock.class));
+        R66WriteStage.SessionWriter writer = stage.newSessionWriter(session, null);
+        sendBlocks(writer, 0, 10);
+        assertNotNull(writer.awaitCompletion());
+        assertNotNull(writer.getError());
+        int rank = writer.getWrittenRank(10);
+        assertTrue(rank < 10);
+        assertTrue((long) rank * BLOCKSIZE <= written.get());
+        assertEquals(0, written.get() % BLOCKSIZE);
+        // further blocks are not written, the saved rank does not move
+        sendBlocks(writer, 10, 2);
+        writer.awaitCompletion();
+        assertEquals(rank, writer.getWrittenRank(12));
+    }
+
+    @Test
+    public void testRankFollowsWrites() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                DataBlock block = (DataBlock) invocation.getArguments()[0];
+                started.countDown();
+                release.await();
+                written.addAndGet(block.getBlock().readableBytes());
+                return null;
+            }
+        }).when(file).writeDataBlock(any(DataBlock.class));
+        R66WriteStage.SessionWriter writer = stage.newSessionWriter(session, null);
+        // restart at rank 5
+        sendBlocks(writer, 5, 1);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        sendBlocks(writer, 6, 3);
+        // nothing on disk yet
+        assertEquals(5, writer.getWrittenRank(9));
+        final CountDownLatch completed = new CountDownLatch(1);
+        writer.whenComplete(new Runnable() {
+            @Override
+            public void run() {
+                completed.countDown();
+            }
+        });
+        assertEquals(1, completed.getCount());
+        release.countDown();
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        assertEquals(4 * BLOCKSIZE, written.get());
+        assertEquals(9, writer.getWrittenRank(9));
+        // nothing pending: run at once
+        final CountDownLatch immediate = new CountDownLatch(1);
+        writer.whenComplete(new Runnable() {
+            @Override
+            public void run() {
+                immediate.countDown();
+            }
+        });
+        assertEquals(0, immediate.getCount());
+    }
+
+    @Test
+    public void testAbortSkipsPendingBlocks() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                DataBlock block = (DataBlock) invocation.getArguments()[0];
+                started.countDown();
+                release.await();
+                written.addAndGet(block.getBlock().readableBytes());
+                return null;
+            }
+        }).when(file).writeDataBlock(any(DataBlock.class));
+        R66WriteStage.SessionWriter writer = stage.newSessionWriter(session, null);
+        sendBlocks(writer, 0, 1);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        sendBlocks(writer, 1, 5);
+        writer.abort();
+        release.countDown();
+        assertNotNull(writer.awaitCompletion());
+        // only the block in progress reached the disk
+        assertEquals(BLOCKSIZE, written.get());
+        assertEquals(1, writer.getWrittenRank(6));
+        verify(file, times(1)).writeDataBlock(any(DataBlock.class));
+    }
+}
@@ -0,0 +1,130 @@
+package org.waarp.openr66.context.task;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.waarp.openr66.protocol.utils.R66Future;
+import org.waarp.openr66.protocol.utils.R66FutureListener;
+
+public class TaskExecutionEngineTest {
+
+    private TaskExecutionEngine engine;
+
+    @After
+    public void wrapUp() {
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * Task blocking its thread until released
+     */
+    private static class BlockingTask extends AbstractTask {
+        private final CountDownLatch release;
+        private final AtomicInteger started;
+
+        private BlockingTask(CountDownLatch release, AtomicInteger started) {
+            super(TaskType.LOG, 0, "", "", null);
+            this.release = release;
+            this.started = started;
+        }
+
+        @Override
+        public void run() {
+            started.incrementAndGet();
+            try {
+                release.await();
+                futureCompletion.setSuccess();
+            } catch (InterruptedException e) {
+                futureCompletion.setFailure(e);
+            }
+        }
+    }
+
+    private static CountDownLatch done(AbstractTask task) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        task.getFutureCompletion().addListener(new R66FutureListener() {
+            public void operationComplete(R66Future future) {
+                latch.countDown();
+            }
+        });
+        return latch;
+    }
+
+    @Test
+    public void testSaturatedRuleLeavesOtherRulesRunning() throws Exception {
+        engine = new TaskExecutionEngine(2, null, 1, 0);
+        CountDownLatch releaseA = new CountDownLatch(1);
+        AtomicInteger startedA = new AtomicInteger();
+        BlockingTask[] tasksA = new BlockingTask[4];
+        for (int i = 0; i < tasksA.length; i++) {
+            tasksA[i] = new BlockingTask(releaseA, startedA);
+            engine.execute(tasksA[i], "ruleA");
+        }
+        // only one task of ruleA runs, the others wait without holding a thread
+        assertEquals(3, engine.getRuleWaiting("ruleA"));
+        BlockingTask taskB = new BlockingTask(new CountDownLatch(0), new AtomicInteger());
+        CountDownLatch doneB = done(taskB);
+        engine.execute(taskB, "ruleB");
+        assertTrue("ruleB shall not wait for ruleA", doneB.await(10, TimeUnit.SECONDS));
+        assertTrue(taskB.getFutureCompletion().isSuccess());
+        assertTrue(startedA.get() <= 1);
+        // ruleA tasks go on one by one once released
+        CountDownLatch lastA = done(tasksA[tasksA.length - 1]);
+        releaseA.countDown();
+        assertTrue(lastA.await(10, TimeUnit.SECONDS));
+        assertEquals(tasksA.length, startedA.get());
+        assertEquals(0, engine.getRuleWaiting("ruleA"));
+    }
+
+    @Test
+    public void testTypeLimit() throws Exception {
+        engine = new TaskExecutionEngine(4, "LOG:1", 0, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        BlockingTask first = new BlockingTask(release, started);
+        BlockingTask second = new BlockingTask(release, started);
+        CountDownLatch doneFirst = done(first);
+        CountDownLatch doneSecond = done(second);
+        engine.execute(first, "ruleA");
+        engine.execute(second, "ruleB");
+        Thread.sleep(200);
+        assertEquals(1, started.get());
+        release.countDown();
+        assertTrue(doneFirst.await(10, TimeUnit.SECONDS));
+        assertTrue(doneSecond.await(10, TimeUnit.SECONDS));
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    public void testQueueTimeout() throws Exception {
+        engine = new TaskExecutionEngine(2, null, 1, 100);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        BlockingTask running = new BlockingTask(release, started);
+        BlockingTask expired = new BlockingTask(release, started);
+        CountDownLatch doneRunning = done(running);
+        CountDownLatch doneExpired = done(expired);
+        engine.execute(running, "ruleA");
+        engine.execute(expired, "ruleA");
+        assertTrue(doneExpired.await(10, TimeUnit.SECONDS));
+        assertFalse(expired.getFutureCompletion().isSuccess());
+        assertEquals(0, engine.getRuleWaiting("ruleA"));
+        assertEquals(1, engine.getGlobalStatistics().getTimeouts());
+        release.countDown();
+        assertTrue(doneRunning.await(10, TimeUnit.SECONDS));
+        assertEquals(1, started.get());
+        // the permit is back
+        BlockingTask next = new BlockingTask(release, started);
+        CountDownLatch doneNext = done(next);
+        engine.execute(next, "ruleA");
+        assertTrue(doneNext.await(10, TimeUnit.SECONDS));
+        assertTrue(next.getFutureCompletion().isSuccess());
+    }
+}
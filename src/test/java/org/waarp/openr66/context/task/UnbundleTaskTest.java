@@ -0,0 +1,130 @@
+package org.waarp.openr66.context.task;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.waarp.openr66.context.R66Session;
+import org.waarp.openr66.context.filesystem.R66File;
+import org.waarp.openr66.protocol.utils.FileBundle;
+
+public class UnbundleTaskTest {
+
+    private File root;
+    private File target;
+    private File bundle;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("unbundle", ".dir");
+        assertTrue(root.delete());
+        assertTrue(root.mkdir());
+        target = new File(root, "target");
+        bundle = new File(root, "bundle.zip");
+    }
+
+    @After
+    public void wrapUp() {
+        delete(root);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static String read(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(content);
+        } finally {
+            in.close();
+        }
+        return new String(content, "UTF-8");
+    }
+
+    /**
+     * Write a bundle with the given entries, all listed in its manifest
+     */
+    private void writeBundle(String... names) throws IOException {
+        byte[] content = "content".getBytes("UTF-8");
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        StringBuilder manifest = new StringBuilder();
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(bundle));
+        try {
+            for (String name : names) {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(content);
+                zip.closeEntry();
+                manifest.append(name).append('\t').append(content.length).append('\t')
+                        .append(Long.toHexString(crc.getValue())).append('\n');
+            }
+            zip.putNextEntry(new ZipEntry(FileBundle.MANIFEST));
+            zip.write(manifest.toString().getBytes("UTF-8"));
+            zip.closeEntry();
+        } finally {
+            zip.close();
+        }
+    }
+
+    private UnbundleTask newTask() {
+        R66File file = mock(R66File.class);
+        when(file.getTrueFile()).thenReturn(bundle);
+        R66Session session = mock(R66Session.class);
+        when(session.getFile()).thenReturn(file);
+        // delay 1: delete the bundle once correctly extracted
+        return new UnbundleTask("#INPATH#/target", 1, "", session) {
+            @Override
+            protected String getReplacedValue(String arg, Object[] argFormat) {
+                return target.getAbsolutePath();
+            }
+        };
+    }
+
+    @Test
+    public void testUnbundle() throws Exception {
+        writeBundle("a.txt", "sub/b.txt");
+        UnbundleTask task = newTask();
+        task.run();
+        assertTrue(task.getFutureCompletion().isSuccess());
+        assertTrue(new File(target, "a.txt").isFile());
+        assertTrue(new File(target, "sub/b.txt").isFile());
+        assertTrue(new File(target, "bundle.zip.status").isFile());
+        assertFalse(bundle.exists());
+    }
+
+    @Test
+    public void testPathTraversal() throws Exception {
+        writeBundle("a.txt", "../evil.txt", "sub/../../evil2.txt");
+        UnbundleTask task = newTask();
+        task.run();
+        // entries outside the target directory are not written and make the task fail
+        assertTrue(task.getFutureCompletion().isDone());
+        assertFalse(task.getFutureCompletion().isSuccess());
+        assertFalse(new File(root, "evil.txt").exists());
+        assertFalse(new File(root, "evil2.txt").exists());
+        assertTrue(new File(target, "a.txt").isFile());
+        // kept for analysis
+        assertTrue(bundle.exists());
+        String status = read(new File(target, "bundle.zip.status"));
+        assertTrue(status, status.contains("../evil.txt\t7\tKO\tmissing"));
+    }
+}
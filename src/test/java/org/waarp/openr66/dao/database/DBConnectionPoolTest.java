@@ -0,0 +1,123 @@
+package org.waarp.openr66.dao.database;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.waarp.common.database.ConnectionFactory;
+import org.waarp.openr66.protocol.configuration.Configuration;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class DBConnectionPoolTest {
+
+    private static final String URL = "jdbc:h2:mem:dbconnectionpooltest;DB_CLOSE_DELAY=-1";
+
+    private ConnectionFactory factory;
+    private DBConnectionPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        Configuration.configuration.setDbPoolSize(1);
+        factory = mock(ConnectionFactory.class);
+        when(factory.getConnection()).thenAnswer(new Answer<Connection>() {
+            @Override
+            public Connection answer(InvocationOnMock invocation) throws SQLException {
+                return DriverManager.getConnection(URL, "sa", "");
+            }
+        });
+        pool = new DBConnectionPool(factory, 200);
+        Connection con = pool.getConnection();
+        con.createStatement().execute("CREATE TABLE IF NOT EXISTS pooltest (id INT)");
+        con.createStatement().execute("DELETE FROM pooltest");
+        con.close();
+    }
+
+    @After
+    public void wrapUp() {
+        pool.close();
+        Configuration.configuration.setDbPoolSize(0);
+    }
+
+    @Test
+    public void testReleaseResetsConnection() throws Exception {
+        Connection con = pool.getConnection();
+        assertEquals(1, pool.getActive());
+        con.setAutoCommit(false);
+        con.createStatement().execute("INSERT INTO pooltest VALUES (1)");
+        con.close();
+        assertTrue(con.isClosed());
+        assertEquals(0, pool.getActive());
+        assertEquals(1, pool.getIdle());
+        try {
+            con.createStatement();
+            fail("A closed connection shall not be usable");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        // same physical connection, back to auto commit, uncommitted insert rolled back
+        con = pool.getConnection();
+        assertTrue(con.getAutoCommit());
+        ResultSet res = con.createStatement().executeQuery("SELECT * FROM pooltest");
+        assertFalse(res.next());
+        con.close();
+        assertEquals(1, pool.getCreated());
+        verify(factory, times(1)).getConnection();
+    }
+
+    @Test
+    public void testStatementCacheReuse() throws Exception {
+        Connection con = pool.getConnection();
+        PreparedStatement first = con.prepareStatement("SELECT * FROM pooltest WHERE id = ?");
+        first.setInt(1, 1);
+        first.executeQuery().close();
+        first.close();
+        PreparedStatement second = con.prepareStatement("SELECT * FROM pooltest WHERE id = ?");
+        assertSame(first, second);
+        assertEquals(1, pool.getStatementHits());
+        assertEquals(1, pool.getStatementMisses());
+
+        // still in use: a new statement, not cached
+        PreparedStatement third = con.prepareStatement("SELECT * FROM pooltest WHERE id = ?");
+        assertNotSame(second, third);
+        assertEquals(2, pool.getStatementMisses());
+        third.close();
+
+        // statements left open are released with their connection
+        con.close();
+        con = pool.getConnection();
+        PreparedStatement fourth = con.prepareStatement("SELECT * FROM pooltest WHERE id = ?");
+        assertSame(first, fourth);
+        assertEquals(2, pool.getStatementHits());
+        fourth.close();
+        con.close();
+    }
+
+    @Test
+    public void testExhaustionTimeout() throws Exception {
+        Connection con = pool.getConnection();
+        try {
+            pool.getConnection();
+            fail("The pool shall be exhausted");
+        } catch (SQLException e) {
+            // expected
+        }
+        assertEquals(1, pool.getWaits());
+        assertEquals(1, pool.getTimeouts());
+        con.close();
+
+        con = pool.getConnection();
+        assertFalse(con.isClosed());
+        con.close();
+        assertEquals(1, pool.getCreated());
+    }
+}
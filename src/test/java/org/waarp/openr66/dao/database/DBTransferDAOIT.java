@@ -4,23 +4,32 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.waarp.openr66.context.ErrorCode;
+import org.waarp.openr66.database.data.DbTaskRunner;
 import org.waarp.openr66.dao.Filter;
 import org.waarp.openr66.dao.TransferDAO;
 import org.waarp.openr66.dao.exception.DAOException;
 import org.waarp.openr66.pojo.Transfer;
 import org.waarp.openr66.pojo.UpdatedInfo;
 import org.waarp.openr66.protocol.configuration.Configuration;
+import org.waarp.openr66.protocol.configuration.PartnerConfiguration;
+import org.waarp.openr66.protocol.utils.R66Versions;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.net.URL;
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public abstract class DBTransferDAOIT {
@@ -32,6 +41,49 @@ public abstract class DBTransferDAOIT {
     public abstract void initDB() throws SQLException;
     public abstract void cleanDB() throws SQLException;
 
+    /**
+     * @return the index creations done by upgradeDb to V3_1_0 for this database
+     */
+    public String[] getUpgradeRequests() {
+        return DbTaskRunner.getAccessIndexRequests("CREATE INDEX ");
+    }
+
+    /**
+     * Update the statistics of the runner table, so that the optimizer sees the selectivity of
+     * the indexes
+     */
+    public abstract void analyze() throws SQLException;
+
+    /**
+     * @param query
+     * @return the execution plan of this query as text
+     */
+    public String explain(String query) throws SQLException {
+        ResultSet res = con.createStatement().executeQuery("EXPLAIN " + query);
+        return getText(res);
+    }
+
+    /**
+     * @param res
+     * @return all the values of this result set as text
+     */
+    protected String getText(ResultSet res) throws SQLException {
+        StringBuilder builder = new StringBuilder();
+        ResultSetMetaData meta = res.getMetaData();
+        while (res.next()) {
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                builder.append(res.getString(i)).append(' ');
+            }
+            builder.append('\n');
+        }
+        res.close();
+        return builder.toString();
+    }
+
+    protected Connection getCon() {
+        return con;
+    }
+
     public void runScript(String script) {
         try {
             ScriptRunner runner = new ScriptRunner(con, false, true);
@@ -137,6 +189,33 @@ public abstract class DBTransferDAOIT {
         assertEquals(3, res2.getInt("blocksz"));
     }
 
+    @Test
+    public void testInsertList() throws Exception {
+        TransferDAO dao = getDAO(getConnection());
+        List<Transfer> transfers = new ArrayList<Transfer>();
+        for (int i = 0; i < 3; i++) {
+            Transfer transfer = new Transfer("server2", "bulkrule", 1, false,
+                    "file" + i, "info", 3);
+            transfer.setRequester("dummy");
+            transfer.setOwnerRequest("dummy");
+            transfer.setStart(new Timestamp(1112242l));
+            transfer.setStop(new Timestamp(122l));
+            transfers.add(transfer);
+        }
+        dao.insert(transfers);
+
+        ResultSet res = con.createStatement()
+            .executeQuery("SELECT COUNT(1) as count FROM runner");
+        res.next();
+        assertEquals(7, res.getInt("count"));
+
+        ResultSet res2 = con.createStatement()
+            .executeQuery("SELECT COUNT(DISTINCT specialid) as count " +
+                    "FROM runner WHERE idrule = 'bulkrule'");
+        res2.next();
+        assertEquals(3, res2.getInt("count"));
+    }
+
     @Test
     public void testUpdate() throws Exception {
         TransferDAO dao = getDAO(getConnection());
@@ -178,6 +257,74 @@ public abstract class DBTransferDAOIT {
         assertEquals(UpdatedInfo.TOSUBMIT.ordinal(), res.getInt("updatedInfo"));
     }
 
+    @Test
+    public void testUpdateDirtyFields() throws Exception {
+        TransferDAO dao = getDAO(getConnection());
+        Transfer transfer = dao.select(0l, "server1", "server2", "server1");
+
+        // Only the changed columns are written
+        con.createStatement().executeUpdate("UPDATE runner SET filename='other' WHERE specialid=0");
+        transfer.setRank(12);
+        dao.update(transfer);
+        ResultSet res = con.createStatement()
+            .executeQuery("SELECT * FROM runner WHERE specialid=0");
+        res.next();
+        assertEquals(12, res.getInt("rank"));
+        assertEquals("other", res.getString("filename"));
+
+        // Changes of an update matching no row are not lost
+        transfer.setFileInfo("notlost");
+        transfer.setId(1l);
+        dao.update(transfer);
+        transfer.setId(0l);
+        transfer.setRank(13);
+        dao.update(transfer);
+        res = con.createStatement()
+            .executeQuery("SELECT * FROM runner WHERE specialid=0");
+        res.next();
+        assertEquals(13, res.getInt("rank"));
+        assertEquals("notlost", res.getString("fileinfo"));
+        assertEquals(transfer.getFilename(), res.getString("filename"));
+    }
+
+    private Transfer finishedTransfer(long id, String owner, Transfer.TASKSTEP lastStep) {
+        return new Transfer(id, "default", 1, "file", "file", "info", false,
+                65536, true, owner, owner, "server2", "{}",
+                Transfer.TASKSTEP.ALLDONETASK, lastStep, 0, ErrorCode.CompleteOk,
+                ErrorCode.CompleteOk, 10, new Timestamp(192l),
+                new Timestamp(1511l), UpdatedInfo.RUNNING);
+    }
+
+    @Test
+    public void testUpdateFinishedToDone() throws Exception {
+        TransferDAO dao = getDAO(getConnection());
+        // sparse and negative ids, up to the maximum one
+        long[] finished = { -9000000000000000000l, -3l, 42l,
+                9000000000000000000l, Long.MAX_VALUE };
+        List<Transfer> transfers = new ArrayList<Transfer>();
+        for (long id : finished) {
+            transfers.add(finishedTransfer(id, "server1", Transfer.TASKSTEP.ALLDONETASK));
+        }
+        transfers.add(finishedTransfer(43l, "server1", Transfer.TASKSTEP.TRANSFERTASK));
+        transfers.add(finishedTransfer(44l, "other", Transfer.TASKSTEP.ALLDONETASK));
+        for (Transfer transfer : transfers) {
+            dao.insert(transfer);
+        }
+
+        // several chunks, the last one being partial
+        assertEquals(finished.length, dao.updateFinishedToDone("server1", 2));
+
+        ResultSet res = con.createStatement()
+            .executeQuery("SELECT specialid FROM runner WHERE updatedInfo = " +
+                    UpdatedInfo.DONE.ordinal() + " ORDER BY specialid");
+        for (long id : finished) {
+            assertEquals(true, res.next());
+            assertEquals(id, res.getLong("specialid"));
+        }
+        assertEquals(false, res.next());
+        // nothing left to change
+        assertEquals(0, dao.updateFinishedToDone("server1", 2));
+    }
 
     @Test
     public void testFind() throws Exception {
@@ -188,5 +335,90 @@ public abstract class DBTransferDAOIT {
         TransferDAO dao = getDAO(getConnection());
         assertEquals(3, dao.find(map).size());
     }
-}
 
+    /**
+     * @return the names, in upper case, of the indexes of the runner table
+     */
+    private Set<String> getRunnerIndexes() throws SQLException {
+        Set<String> names = new HashSet<String>();
+        // the stored table name depends on the database
+        for (String table : new String[] { "runner", "RUNNER" }) {
+            ResultSet res = con.getMetaData().getIndexInfo(null, null, table, false, true);
+            while (res.next()) {
+                if (res.getString("INDEX_NAME") != null) {
+                    names.add(res.getString("INDEX_NAME").toUpperCase());
+                }
+            }
+            res.close();
+        }
+        return names;
+    }
+
+    private void upgrade() throws SQLException {
+        for (String request : getUpgradeRequests()) {
+            con.createStatement().execute(request);
+        }
+    }
+
+    @Test
+    public void testUpgradeToV3_1_0() throws Exception {
+        // a database created before V3_1_0 is upgraded once
+        assertTrue(PartnerConfiguration.isVersion2GTVersion1(R66Versions.V2_4_25.getVersion(),
+                R66Versions.V3_1_0.getVersion()));
+        assertFalse(PartnerConfiguration.isVersion2GTVersion1(R66Versions.V3_1_0.getVersion(),
+                R66Versions.V3_1_0.getVersion()));
+        Set<String> before = getRunnerIndexes();
+        for (String name : DbTaskRunner.accessIndexNames) {
+            assertFalse(name, before.contains(name));
+        }
+
+        upgrade();
+
+        Set<String> after = getRunnerIndexes();
+        for (String name : DbTaskRunner.accessIndexNames) {
+            assertTrue(name + " in " + after, after.contains(name));
+        }
+        assertTrue(after.containsAll(before));
+        TransferDAO dao = getDAO(getConnection());
+        assertEquals(4, dao.getAll().size());
+    }
+
+    /**
+     * Insert many finished transfers and a few ones to select, then upgrade and analyze the table
+     */
+    protected void populateForPlans() throws Exception {
+        TransferDAO dao = getDAO(getConnection());
+        for (long id = 1000; id < 3000; id++) {
+            dao.insert(new Transfer(id, "default", 1, "file", "file", "info", false,
+                    65536, true, "server1", "server1", "server2", "{}",
+                    Transfer.TASKSTEP.ALLDONETASK, Transfer.TASKSTEP.ALLDONETASK, 0,
+                    ErrorCode.CompleteOk, ErrorCode.CompleteOk, 10, new Timestamp(id * 1000),
+                    new Timestamp(id * 1000 + 500), UpdatedInfo.DONE));
+        }
+        for (long id = 3000; id < 3005; id++) {
+            dao.insert(new Transfer(id, "default", 1, "file", "file", "info", false,
+                    65536, true, "server1", "server1", "server2", "{}",
+                    Transfer.TASKSTEP.ERRORTASK, Transfer.TASKSTEP.TRANSFERTASK, 0,
+                    ErrorCode.TransferError, ErrorCode.TransferError, 10, new Timestamp(id * 1000),
+                    new Timestamp(id * 1000 + 500), UpdatedInfo.INERROR));
+        }
+        upgrade();
+        analyze();
+    }
+
+    protected void assertPlanUses(String index, String where) throws SQLException {
+        String plan = explain("SELECT * FROM runner WHERE " + where + " ORDER BY starttrans");
+        assertTrue(index + " not used: " + plan, plan.toUpperCase().contains(index));
+    }
+
+    @Test
+    public void testAccessIndexesUsed() throws Exception {
+        populateForPlans();
+        assertPlanUses("IDX_RUNNER_INFO", "ownerreq = 'server1' AND updatedinfo = " +
+                UpdatedInfo.INERROR.ordinal());
+        assertPlanUses("IDX_RUNNER_STEP", "ownerreq = 'server1' AND globalstep = " +
+                Transfer.TASKSTEP.ERRORTASK.ordinal());
+        assertPlanUses("IDX_RUNNER_STATUS", "ownerreq = 'server1' AND infostatus = '" +
+                ErrorCode.TransferError.getCode() + "'");
+    }
+}
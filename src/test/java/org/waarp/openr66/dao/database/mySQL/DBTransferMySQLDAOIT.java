@@ -2,6 +2,7 @@ package org.waarp.openr66.dao.database.mySQL;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import org.junit.ClassRule;
@@ -43,5 +44,21 @@ public class DBTransferMySQLDAOIT extends DBTransferDAOIT {
     public void cleanDB() {
         runScript(cleanScript);
     }
-}
 
+    @Override
+    public void analyze() throws SQLException {
+        getCon().createStatement().execute("ANALYZE TABLE runner");
+    }
+
+    @Override
+    public String explain(String query) throws SQLException {
+        // only the index chosen, not the possible ones
+        ResultSet res = getCon().createStatement().executeQuery("EXPLAIN " + query);
+        StringBuilder builder = new StringBuilder();
+        while (res.next()) {
+            builder.append(res.getString("key")).append('\n');
+        }
+        res.close();
+        return builder.toString();
+    }
+}
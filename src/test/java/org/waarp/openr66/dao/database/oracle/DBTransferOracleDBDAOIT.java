@@ -43,5 +43,17 @@ public class DBTransferOracleDBDAOIT extends DBTransferDAOIT {
     public void cleanDB() {
         runScript(cleanScript);
     }
-}
 
+    @Override
+    public void analyze() throws SQLException {
+        getCon().createStatement().execute(
+                "BEGIN DBMS_STATS.GATHER_TABLE_STATS(USER, 'RUNNER', cascade => TRUE); END;");
+    }
+
+    @Override
+    public String explain(String query) throws SQLException {
+        getCon().createStatement().execute("EXPLAIN PLAN FOR " + query);
+        return getText(getCon().createStatement()
+                .executeQuery("SELECT PLAN_TABLE_OUTPUT FROM TABLE(DBMS_XPLAN.DISPLAY())"));
+    }
+}
@@ -5,11 +5,15 @@ import java.sql.DriverManager;
 import java.sql.SQLException;
 
 import org.junit.ClassRule;
+import org.junit.Test;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.waarp.openr66.dao.database.DBTransferDAO;
 import org.waarp.openr66.dao.database.DBTransferDAOIT;
 import org.waarp.openr66.dao.database.PostgreSQLTransferDAO;
 import org.waarp.openr66.dao.exception.DAOException;
+import org.waarp.openr66.database.data.DbTaskRunner;
+import org.waarp.openr66.database.model.DbModelPostgresql;
+import org.waarp.openr66.pojo.UpdatedInfo;
 
 public class DBTransferPostgreSQLDAOIT extends DBTransferDAOIT {
 
@@ -43,5 +47,26 @@ public class DBTransferPostgreSQLDAOIT extends DBTransferDAOIT {
     public void cleanDB() {
         runScript(cleanScript);
     }
+
+    @Override
+    public String[] getUpgradeRequests() {
+        String[] requests = DbTaskRunner.getAccessIndexRequests("CREATE INDEX ");
+        String[] all = new String[requests.length + 1];
+        System.arraycopy(requests, 0, all, 0, requests.length);
+        all[requests.length] = DbModelPostgresql.getToSubmitIndexRequest();
+        return all;
+    }
+
+    @Override
+    public void analyze() throws SQLException {
+        getCon().createStatement().execute("ANALYZE runner");
+    }
+
+    @Test
+    public void testToSubmitIndexUsed() throws Exception {
+        populateForPlans();
+        assertPlanUses("IDX_RUNNER_TOSUBMIT", "ownerreq = 'server1' AND updatedinfo = " +
+                UpdatedInfo.TOSUBMIT.ordinal());
+    }
 }
 
@@ -0,0 +1,77 @@
+package org.waarp.openr66.database.data;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.waarp.openr66.pojo.Transfer;
+
+public class DbTaskRunnerTest {
+
+    private static DbTaskRunner runner(int blocksize, int rank) {
+        Transfer transfer = new Transfer();
+        transfer.setBlockSize(blocksize);
+        transfer.setRank(rank);
+        return new DbTaskRunner(transfer);
+    }
+
+    @Test
+    public void testConvertRank() {
+        // proposed rank in blocks of the requester, converted to the smaller local blocks
+        assertEquals(20, DbTaskRunner.convertRank(10, 65536, 32768));
+        assertEquals(5, DbTaskRunner.convertRank(10, 32768, 65536));
+        // rounded down: never beyond the data already transferred
+        assertEquals(33, DbTaskRunner.convertRank(10, 10000, 3000));
+        assertEquals(2, DbTaskRunner.convertRank(7, 3000, 10000));
+        assertEquals(0, DbTaskRunner.convertRank(0, 65536, 8192));
+        // no overflow on large files
+        assertEquals(1 << 19, DbTaskRunner.convertRank(1 << 20, 65536, 131072));
+    }
+
+    @Test
+    public void testSetBlocksizeGrow() {
+        DbTaskRunner runner = runner(32768, 10);
+        runner.setBlocksize(65536);
+        assertEquals(65536, runner.getBlocksize());
+        assertEquals(5, runner.getRank());
+        // odd rank: the half block is sent again
+        runner = runner(32768, 11);
+        runner.setBlocksize(65536);
+        assertEquals(5, runner.getRank());
+    }
+
+    @Test
+    public void testSetBlocksizeShrink() {
+        DbTaskRunner runner = runner(65536, 5);
+        runner.setBlocksize(8192);
+        assertEquals(8192, runner.getBlocksize());
+        assertEquals(40, runner.getRank());
+    }
+
+    @Test
+    public void testSetBlocksizeNotPowerOfTwo() {
+        DbTaskRunner runner = runner(10000, 10);
+        runner.setBlocksize(3000);
+        assertEquals(3000, runner.getBlocksize());
+        assertEquals(33, runner.getRank());
+        assertTrue((long) runner.getRank() * runner.getBlocksize() <= 10L * 10000);
+
+        runner = runner(3000, 7);
+        runner.setBlocksize(10000);
+        assertEquals(2, runner.getRank());
+    }
+
+    @Test
+    public void testSetBlocksizeUnchanged() {
+        DbTaskRunner runner = runner(65536, 5);
+        runner.setBlocksize(0);
+        runner.setBlocksize(65536);
+        assertEquals(65536, runner.getBlocksize());
+        assertEquals(5, runner.getRank());
+
+        // not started yet: only the block size changes
+        runner = runner(65536, 0);
+        runner.setBlocksize(8192);
+        assertEquals(8192, runner.getBlocksize());
+        assertEquals(0, runner.getRank());
+    }
+}
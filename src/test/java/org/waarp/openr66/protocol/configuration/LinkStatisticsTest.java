@@ -0,0 +1,73 @@
+package org.waarp.openr66.protocol.configuration;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.waarp.openr66.protocol.configuration.PartnerConfiguration.LinkStatistics;
+
+public class LinkStatisticsTest {
+
+    private static final int MIN = 65536;
+    private static final int MAX = 4 * 1024 * 1024;
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void testUnknownLink() {
+        LinkStatistics statistics = PartnerConfiguration.getLinkStatistics("linktest-unknown");
+        assertEquals(-1, statistics.getThroughput());
+        assertEquals(MIN, statistics.getAdaptiveBlockSize(MIN, MAX));
+        // too small to be significant
+        statistics.recordThroughput(1000, SECOND);
+        assertEquals(-1, statistics.getThroughput());
+        assertEquals(MIN, statistics.getAdaptiveBlockSize(MIN, MAX));
+    }
+
+    @Test
+    public void testNoAdaptation() {
+        LinkStatistics statistics = PartnerConfiguration.getLinkStatistics("linktest-noadapt");
+        statistics.recordThroughput(100 * 1024 * 1024, SECOND);
+        assertEquals(MIN, statistics.getAdaptiveBlockSize(MIN, 0));
+        assertEquals(MIN, statistics.getAdaptiveBlockSize(MIN, MIN));
+    }
+
+    @Test
+    public void testThroughputOnly() {
+        LinkStatistics statistics = PartnerConfiguration.getLinkStatistics("linktest-throughput");
+        // 100 MB/s: 10 ms of data is 1 MB
+        statistics.recordThroughput(100 * 1024 * 1024, SECOND);
+        assertEquals(100 * 1024 * 1024, statistics.getThroughput());
+        assertEquals(1024 * 1024, statistics.getAdaptiveBlockSize(MIN, MAX));
+        // bounded by the limits
+        assertEquals(512 * 1024, statistics.getAdaptiveBlockSize(MIN, 512 * 1024));
+        assertEquals(2 * 1024 * 1024, statistics.getAdaptiveBlockSize(2 * 1024 * 1024, MAX));
+    }
+
+    @Test
+    public void testSlowLink() {
+        LinkStatistics statistics = PartnerConfiguration.getLinkStatistics("linktest-slow");
+        // 1 MB/s: 10 ms of data is less than the minimum
+        statistics.recordThroughput(10 * 1024 * 1024, 10 * SECOND);
+        assertEquals(MIN, statistics.getAdaptiveBlockSize(MIN, MAX));
+    }
+
+    @Test
+    public void testRoundedDownToPowerOfTwo() {
+        LinkStatistics statistics = PartnerConfiguration.getLinkStatistics("linktest-round");
+        // 150 MB/s: 10 ms of data is 1.5 MB
+        statistics.recordThroughput(150 * 1000 * 1000, SECOND);
+        assertEquals(1024 * 1024, statistics.getAdaptiveBlockSize(MIN, MAX));
+    }
+
+    @Test
+    public void testBandwidthDelayProduct() {
+        LinkStatistics statistics = PartnerConfiguration.getLinkStatistics("linktest-rtt");
+        statistics.recordThroughput(100 * 1024 * 1024, SECOND);
+        // 200 ms of RTT: 1/8 of the bandwidth delay product is 2.5 MB
+        statistics.recordRtt(SECOND / 5);
+        assertEquals(SECOND / 5, statistics.getRttNanos());
+        assertEquals(2 * 1024 * 1024, statistics.getAdaptiveBlockSize(MIN, MAX));
+        // moving average
+        statistics.recordRtt(SECOND / 5 + 8000);
+        assertEquals(SECOND / 5 + 1000, statistics.getRttNanos());
+    }
+}
@@ -0,0 +1,198 @@
+package org.waarp.openr66.protocol.http.adminssl;
+
+import static org.junit.Assert.*;
+
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpStaticResourceTest {
+
+    private File dir;
+    private byte[] css;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("static", ".dir");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            builder.append(".class").append(i).append(" { color: red; }\n");
+        }
+        css = builder.toString().getBytes("UTF-8");
+        write("style.css", css);
+        write("tiny.css", new byte[] { 'a' });
+        write("image.png", css);
+    }
+
+    @After
+    public void wrapUp() {
+        HttpStaticResource.clear();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private void write(String name, byte[] content) throws IOException {
+        FileOutputStream out = new FileOutputStream(new File(dir, name));
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static FullHttpRequest request(String ifNoneMatch, String acceptEncoding) {
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/res/file");
+        if (ifNoneMatch != null) {
+            request.headers().set(HttpHeaderNames.IF_NONE_MATCH, ifNoneMatch);
+        }
+        if (acceptEncoding != null) {
+            request.headers().set(HttpHeaderNames.ACCEPT_ENCODING, acceptEncoding);
+        }
+        return request;
+    }
+
+    /**
+     * @return the response written, or null if the resource was not handled
+     */
+    private FullHttpResponse write(String filename, FullHttpRequest request) {
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        if (!HttpStaticResource.writeResource(request, channel.pipeline().firstContext(), filename)) {
+            assertNull(channel.readOutbound());
+            return null;
+        }
+        FullHttpResponse response = (FullHttpResponse) channel.readOutbound();
+        assertNotNull(response);
+        // keep alive by default in HTTP/1.1
+        assertTrue(channel.isOpen());
+        return response;
+    }
+
+    private static byte[] content(FullHttpResponse response) {
+        byte[] bytes = new byte[response.content().readableBytes()];
+        response.content().readBytes(bytes);
+        response.release();
+        return bytes;
+    }
+
+    private static byte[] gunzip(byte[] source) throws IOException {
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(source));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private String path(String name) {
+        return new File(dir, name).getAbsolutePath();
+    }
+
+    @Test
+    public void testETag() {
+        FullHttpResponse response = write(path("style.css"), request(null, null));
+        assertEquals(HttpResponseStatus.OK, response.status());
+        String etag = response.headers().get(HttpHeaderNames.ETAG);
+        assertNotNull(etag);
+        assertEquals("private, max-age=3600", response.headers().get(HttpHeaderNames.CACHE_CONTROL));
+        assertArrayEquals(css, content(response));
+
+        response = write(path("style.css"), request(etag, null));
+        assertEquals(HttpResponseStatus.NOT_MODIFIED, response.status());
+        assertEquals(etag, response.headers().get(HttpHeaderNames.ETAG));
+        assertEquals("0", response.headers().get(HttpHeaderNames.CONTENT_LENGTH));
+        assertEquals(0, content(response).length);
+
+        response = write(path("style.css"), request("\"other\"", null));
+        assertEquals(HttpResponseStatus.OK, response.status());
+        content(response);
+
+        // another version of the file gets another ETag
+        File file = new File(path("style.css"));
+        file.setLastModified(file.lastModified() - 10000);
+        HttpStaticResource.clear();
+        response = write(path("style.css"), request(etag, null));
+        assertEquals(HttpResponseStatus.OK, response.status());
+        assertFalse(etag.equals(response.headers().get(HttpHeaderNames.ETAG)));
+        content(response);
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        FullHttpResponse response = write(path("style.css"), request(null, "deflate, gzip"));
+        assertEquals("gzip", response.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+        assertEquals("text/css", response.headers().get(HttpHeaderNames.CONTENT_TYPE));
+        assertEquals(HttpHeaderNames.ACCEPT_ENCODING.toString(), response.headers().get(HttpHeaderNames.VARY));
+        byte[] compressed = content(response);
+        assertTrue(compressed.length < css.length);
+        assertArrayEquals(css, gunzip(compressed));
+
+        // not accepted by the browser
+        response = write(path("style.css"), request(null, "deflate"));
+        assertNull(response.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+        assertEquals(HttpHeaderNames.ACCEPT_ENCODING.toString(), response.headers().get(HttpHeaderNames.VARY));
+        assertEquals(Integer.toString(css.length), response.headers().get(HttpHeaderNames.CONTENT_LENGTH));
+        assertArrayEquals(css, content(response));
+    }
+
+    @Test
+    public void testNoGzip() {
+        // not compressible content type
+        FullHttpResponse response = write(path("image.png"), request(null, "gzip"));
+        assertEquals("image/png", response.headers().get(HttpHeaderNames.CONTENT_TYPE));
+        assertNull(response.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+        assertNull(response.headers().get(HttpHeaderNames.VARY));
+        assertArrayEquals(css, content(response));
+
+        // compressed version not smaller
+        response = write(path("tiny.css"), request(null, "gzip"));
+        assertNull(response.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+        assertNull(response.headers().get(HttpHeaderNames.VARY));
+        assertArrayEquals(new byte[] { 'a' }, content(response));
+    }
+
+    @Test
+    public void testNotHandled() throws IOException {
+        File sub = new File(dir, "sub");
+        assertTrue(sub.mkdir());
+        write("sub" + File.separator + "inner.css", css);
+        // parent directory references are never served from here
+        assertNull(write(sub.getAbsolutePath() + File.separator + ".." + File.separator + "style.css",
+                request(null, null)));
+        assertNull(write(path("sub") + File.separator + "..", request(null, null)));
+        // missing file and directory
+        assertNull(write(path("missing.css"), request(null, null)));
+        assertNull(write(path("sub"), request(null, null)));
+        assertNotNull(write(path("sub" + File.separator + "inner.css"), request(null, null)));
+        new File(sub, "inner.css").delete();
+    }
+}
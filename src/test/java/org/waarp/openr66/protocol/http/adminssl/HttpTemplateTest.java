@@ -0,0 +1,96 @@
+package org.waarp.openr66.protocol.http.adminssl;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpTemplateTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("template", ".html");
+    }
+
+    @After
+    public void wrapUp() {
+        HttpTemplate.clear();
+        file.delete();
+    }
+
+    private void write(String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private HttpTemplate template(String content) throws Exception {
+        write(content);
+        return HttpTemplate.getTemplate(file.getAbsolutePath());
+    }
+
+    @Test
+    public void testFirstAndAll() throws Exception {
+        HttpTemplate template = template("<h1>XXXTITLEXXX</h1><p>XXXTITLEXXX</p><p>XXXTITLEXXX</p>");
+        Map<String, String> first = new HashMap<String, String>();
+        first.put("XXXTITLEXXX", "first");
+        // without value for the next occurrences, they are kept
+        assertEquals("<h1>first</h1><p>XXXTITLEXXX</p><p>XXXTITLEXXX</p>", template.render(first, null));
+        Map<String, String> all = new HashMap<String, String>();
+        all.put("XXXTITLEXXX", "all");
+        assertEquals("<h1>first</h1><p>all</p><p>all</p>", template.render(first, all));
+        assertEquals("<h1>all</h1><p>all</p><p>all</p>", template.render(null, all));
+        // each rendering starts again from the first occurrence
+        assertEquals("<h1>first</h1><p>all</p><p>all</p>", template.render(first, all));
+    }
+
+    @Test
+    public void testSinglePass() throws Exception {
+        HttpTemplate template = template("XXXTITLEXXX|XXXBODYXXX|XXXUNKNOWNXXX");
+        Map<String, String> all = new HashMap<String, String>();
+        // a value containing a placeholder is not replaced again
+        all.put("XXXTITLEXXX", "title XXXBODYXXX");
+        all.put("XXXBODYXXX", "body");
+        assertEquals("title XXXBODYXXX|body|XXXUNKNOWNXXX", template.render(null, all));
+        assertEquals("XXXTITLEXXX|XXXBODYXXX|XXXUNKNOWNXXX", template.render(null, null));
+    }
+
+    @Test
+    public void testPlaceholderBoundaries() throws Exception {
+        HttpTemplate template = template("XXXAXXXXXXBXXX XXXXCXXX XX1XX XXXX");
+        Map<String, String> all = new HashMap<String, String>();
+        all.put("XXXAXXX", "a");
+        all.put("XXXBXXX", "b");
+        all.put("XXXXCXXX", "c");
+        // adjacent placeholders, a longer prefix of 'X', and text which is not a placeholder
+        assertEquals("ab c XX1XX XXXX", template.render(null, all));
+    }
+
+    @Test
+    public void testCacheAndReload() throws Exception {
+        HttpTemplate template = template("XXXTITLEXXX");
+        assertSame(template, HttpTemplate.getTemplate(file.getAbsolutePath()));
+        long lastModified = file.lastModified();
+        write("new XXXTITLEXXX");
+        file.setLastModified(lastModified - 10000);
+        // changes on disk are checked at most once per second
+        Thread.sleep(1100);
+        HttpTemplate reloaded = HttpTemplate.getTemplate(file.getAbsolutePath());
+        assertNotSame(template, reloaded);
+        assertEquals("new XXXTITLEXXX", reloaded.render(null, null));
+        HttpTemplate.clear();
+        assertNotSame(reloaded, HttpTemplate.getTemplate(file.getAbsolutePath()));
+    }
+}
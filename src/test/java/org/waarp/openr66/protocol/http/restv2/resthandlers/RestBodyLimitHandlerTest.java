@@ -0,0 +1,138 @@
+package org.waarp.openr66.protocol.http.restv2.resthandlers;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+
+import org.junit.Test;
+
+public class RestBodyLimitHandlerTest {
+
+    private static final int MAX = 100;
+    private static final int MAX_BULK = 1000;
+
+    private static HttpRequest request(HttpMethod method, String uri, long length) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, method, uri);
+        if (length >= 0) {
+            HttpUtil.setContentLength(request, length);
+        } else {
+            HttpUtil.setTransferEncodingChunked(request, true);
+        }
+        return request;
+    }
+
+    private static HttpContent content(int size) {
+        return new DefaultHttpContent(Unpooled.wrappedBuffer(new byte[size]));
+    }
+
+    private static void assertRejected(EmbeddedChannel channel) {
+        FullHttpResponse response = (FullHttpResponse) channel.readOutbound();
+        assertNotNull(response);
+        assertEquals(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE, response.status());
+        assertEquals(0, HttpUtil.getContentLength(response));
+        response.release();
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void testContentLengthTooLarge() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RestBodyLimitHandler(MAX, MAX_BULK));
+        assertFalse(channel.writeInbound(request(HttpMethod.POST, "/v2/transfers", MAX + 1)));
+        assertNull(channel.readInbound());
+        assertRejected(channel);
+    }
+
+    @Test
+    public void testChunkedTooLarge() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RestBodyLimitHandler(MAX, MAX_BULK));
+        assertTrue(channel.writeInbound(request(HttpMethod.POST, "/v2/transfers", -1)));
+        HttpContent first = content(MAX);
+        assertTrue(channel.writeInbound(first));
+        HttpContent second = content(1);
+        channel.writeInbound(second);
+        assertEquals(0, second.refCnt());
+        assertRejected(channel);
+        // the request and the first chunk only went through
+        assertTrue(channel.readInbound() instanceof HttpRequest);
+        assertSame(first, channel.readInbound());
+        assertNull(channel.readInbound());
+        first.release();
+    }
+
+    @Test
+    public void testDiscardAfterReject() {
+        RestBodyLimitHandler handler = new RestBodyLimitHandler(MAX, MAX_BULK);
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.writeAndFlush(any())).thenReturn(mock(ChannelFuture.class));
+        handler.channelRead(ctx, request(HttpMethod.POST, "/v2/transfers", -1));
+        handler.channelRead(ctx, content(MAX + 1));
+        verify(ctx, times(1)).writeAndFlush(any(FullHttpResponse.class));
+        // the remaining content of the refused request is released, not forwarded
+        HttpContent more = content(10);
+        handler.channelRead(ctx, more);
+        HttpContent last = new DefaultLastHttpContent(Unpooled.wrappedBuffer(new byte[10]));
+        handler.channelRead(ctx, last);
+        assertEquals(0, more.refCnt());
+        assertEquals(0, last.refCnt());
+        verify(ctx, times(1)).fireChannelRead(any());
+        // a new request is handled again
+        handler.channelRead(ctx, request(HttpMethod.POST, "/v2/transfers", MAX));
+        verify(ctx, times(2)).fireChannelRead(any());
+    }
+
+    @Test
+    public void testBulkLimit() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RestBodyLimitHandler(MAX, MAX_BULK));
+        HttpRequest request = request(HttpMethod.POST, "/v2/transfers/bulk?mode=ndjson", MAX_BULK);
+        assertTrue(channel.writeInbound(request));
+        HttpContent last = new DefaultLastHttpContent(Unpooled.wrappedBuffer(new byte[MAX_BULK]));
+        assertTrue(channel.writeInbound(last));
+        assertSame(request, channel.readInbound());
+        assertSame(last, channel.readInbound());
+        last.release();
+        assertNull(channel.readOutbound());
+        assertTrue(channel.isOpen());
+
+        // the next request on the same connection gets its own bound
+        assertTrue(channel.writeInbound(request(HttpMethod.POST, "/v2/transfers/bulk/", MAX_BULK)));
+        channel.readInbound();
+        channel.finish();
+    }
+
+    @Test
+    public void testBulkLimitOnlyForBulkCreation() {
+        String[][] cases = {
+                { "PUT", "/v2/transfers/bulk" },
+                { "POST", "/v2/rules/bulk" },
+                { "POST", "/v2/transfers/notbulk" },
+                { "POST", "/v2/transfers/bulk/other" } };
+        for (String[] uri : cases) {
+            EmbeddedChannel channel = new EmbeddedChannel(new RestBodyLimitHandler(MAX, MAX_BULK));
+            channel.writeInbound(request(HttpMethod.valueOf(uri[0]), uri[1], MAX + 1));
+            assertNull(uri[1], channel.readInbound());
+            assertRejected(channel);
+        }
+    }
+
+    @Test
+    public void testMaxAggregatedSize() {
+        assertEquals(MAX_BULK, new RestBodyLimitHandler(MAX, MAX_BULK).getMaxAggregatedSize());
+        assertEquals(MAX, new RestBodyLimitHandler(MAX, 0).getMaxAggregatedSize());
+        assertEquals(Integer.MAX_VALUE,
+                new RestBodyLimitHandler(MAX, Long.MAX_VALUE).getMaxAggregatedSize());
+    }
+}
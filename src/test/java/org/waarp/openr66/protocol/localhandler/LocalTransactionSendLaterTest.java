@@ -0,0 +1,143 @@
+package org.waarp.openr66.protocol.localhandler;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.local.LocalChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.waarp.openr66.protocol.localhandler.LocalTransaction.SendLater;
+import org.waarp.openr66.protocol.localhandler.packet.LocalPacketFactory;
+import org.waarp.openr66.protocol.networkhandler.packet.NetworkPacket;
+
+public class LocalTransactionSendLaterTest {
+
+    private static final Integer LOCALID = 12;
+    private static final Integer REMOTEID = 34;
+
+    private ConcurrentHashMap<Integer, SendLater> sendLaters;
+    private SendLater sendLater;
+    private LocalChannelReference localChannelReference;
+    private LocalChannel localChannel;
+    private final List<Integer> written = new ArrayList<Integer>();
+
+    @Before
+    public void setUp() {
+        sendLaters = new ConcurrentHashMap<Integer, SendLater>();
+        sendLater = new SendLater(sendLaters, null, REMOTEID, LOCALID);
+        sendLaters.put(LOCALID, sendLater);
+        localChannel = mock(LocalChannel.class);
+        localChannelReference = mock(LocalChannelReference.class);
+        when(localChannelReference.getRemoteId()).thenReturn(REMOTEID);
+        when(localChannelReference.getLocalChannel()).thenReturn(localChannel);
+        written.clear();
+    }
+
+    private NetworkPacket packet(int value) {
+        return new NetworkPacket(LOCALID, REMOTEID, LocalPacketFactory.DATAPACKET,
+                Unpooled.buffer().writeInt(value));
+    }
+
+    private void recordWrites(final Runnable duringWrite) {
+        when(localChannel.write(any())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ByteBuf buf = (ByteBuf) invocation.getArguments()[0];
+                written.add(buf.getInt(0));
+                buf.release();
+                if (duringWrite != null && written.size() == 1) {
+                    duringWrite.run();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testDrainKeepsOrderAndCloses() {
+        recordWrites(new Runnable() {
+            @Override
+            public void run() {
+                // received while draining: sent after the waiting ones
+                assertTrue(sendLater.offer(packet(3)));
+            }
+        });
+        assertTrue(sendLater.offer(packet(1)));
+        assertTrue(sendLater.offer(packet(2)));
+        sendLater.drain(localChannelReference);
+        assertEquals(3, written.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, written.get(i).intValue());
+        }
+        verify(localChannel, times(1)).flush();
+        // closed and forgotten: next packets go directly
+        assertFalse(sendLaters.containsKey(LOCALID));
+        NetworkPacket next = packet(4);
+        assertFalse(sendLater.offer(next));
+        next.clear();
+    }
+
+    @Test
+    public void testSingleDrainer() throws Exception {
+        recordWrites(new Runnable() {
+            @Override
+            public void run() {
+                Thread other = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendLater.offer(packet(3));
+                        // a second drainer returns at once without sending anything
+                        sendLater.drain(localChannelReference);
+                    }
+                });
+                other.start();
+                try {
+                    other.join();
+                } catch (InterruptedException e) {
+                    fail("Interrupted");
+                }
+            }
+        });
+        sendLater.offer(packet(1));
+        sendLater.offer(packet(2));
+        sendLater.drain(localChannelReference);
+        assertEquals(3, written.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, written.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testBoundedQueue() {
+        for (int i = 0; i < LocalTransaction.SENDLATER_MAXPACKETS; i++) {
+            assertTrue(sendLater.offer(packet(i)));
+        }
+        NetworkPacket dropped = packet(-1);
+        ByteBuf buf = dropped.getBuffer();
+        // taken but dropped
+        assertTrue(sendLater.offer(dropped));
+        assertEquals(0, buf.refCnt());
+        recordWrites(null);
+        sendLater.drain(localChannelReference);
+        assertEquals(LocalTransaction.SENDLATER_MAXPACKETS, written.size());
+        assertFalse(written.contains(-1));
+    }
+
+    @Test
+    public void testAnswerOnTimeout() {
+        sendLater.offer(new NetworkPacket(LOCALID, REMOTEID, LocalPacketFactory.ENDREQUESTPACKET,
+                Unpooled.buffer(1)));
+        assertFalse(sendLater.answerOnTimeout);
+        sendLater.offer(packet(1));
+        assertTrue(sendLater.answerOnTimeout);
+    }
+}
@@ -0,0 +1,62 @@
+package org.waarp.openr66.protocol.localhandler.packet;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.After;
+import org.junit.Test;
+import org.waarp.openr66.protocol.configuration.Configuration;
+import org.waarp.openr66.protocol.configuration.PartnerConfiguration;
+import org.waarp.openr66.protocol.localhandler.LocalChannelReference;
+import org.waarp.openr66.protocol.utils.R66Trace;
+
+public class RequestPacketTest {
+
+    @After
+    public void wrapUp() {
+        Configuration.configuration.setTraceEnabled(false);
+    }
+
+    private static LocalChannelReference mockReference(boolean json, R66Trace trace) {
+        PartnerConfiguration partner = mock(PartnerConfiguration.class);
+        when(partner.useJson()).thenReturn(json);
+        LocalChannelReference lcr = mock(LocalChannelReference.class);
+        when(lcr.getPartner()).thenReturn(partner);
+        when(lcr.getTrace()).thenReturn(trace);
+        return lcr;
+    }
+
+    private static RequestPacket roundTrip(LocalChannelReference lcr) throws Exception {
+        RequestPacket packet = new RequestPacket("rule", RequestPacket.TRANSFERMODE.SENDMODE.ordinal(),
+                "file.txt", 65536, 0, 12L, "info", 100L, PartnerConfiguration.BAR_SEPARATOR_FIELD);
+        RequestPacket decoded = (RequestPacket) LocalPacketCodec.decodeNetworkPacket(
+                packet.getLocalPacket(lcr));
+        assertEquals("rule", decoded.getRulename());
+        assertEquals("file.txt", decoded.getFilename());
+        assertEquals(12L, decoded.getSpecialId());
+        return decoded;
+    }
+
+    @Test
+    public void testTraceIdJsonRoundTrip() throws Exception {
+        Configuration.configuration.setTraceEnabled(true);
+        R66Trace trace = R66Trace.newTrace();
+        RequestPacket decoded = roundTrip(mockReference(true, trace));
+        assertEquals(trace.getTraceId(), decoded.getTraceId());
+
+        // adopted by the other side
+        R66Trace other = R66Trace.newTrace();
+        assertNotEquals(trace.getTraceId(), other.getTraceId());
+        other.setTraceId(decoded.getTraceId());
+        assertEquals(trace.getTraceId(), other.getTraceId());
+    }
+
+    @Test
+    public void testNoTraceId() throws Exception {
+        // tracing disabled
+        assertNull(roundTrip(mockReference(true, null)).getTraceId());
+        // partner without JSON support
+        Configuration.configuration.setTraceEnabled(true);
+        assertNull(roundTrip(mockReference(false, R66Trace.newTrace())).getTraceId());
+    }
+}
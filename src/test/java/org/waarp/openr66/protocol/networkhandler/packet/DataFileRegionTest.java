@@ -0,0 +1,145 @@
+package org.waarp.openr66.protocol.networkhandler.packet;
+
+import static org.junit.Assert.*;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.waarp.common.digest.FilesystemBasedDigest;
+import org.waarp.common.digest.FilesystemBasedDigest.DigestAlgo;
+import org.waarp.openr66.protocol.localhandler.packet.DataPacket;
+import org.waarp.openr66.protocol.localhandler.packet.LocalPacketCodec;
+
+public class DataFileRegionTest {
+
+    private static final int LOCALID = 5;
+    private static final int REMOTEID = 7;
+    private static final int BLOCKSIZE = 1000;
+
+    private File file;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        // two full blocks and a last partial one
+        content = new byte[2 * BLOCKSIZE + 500];
+        new Random(42).nextBytes(content);
+        file = File.createTempFile("datafileregion", ".bin");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void wrapUp() {
+        file.delete();
+    }
+
+    /**
+     * Target accepting at most 100 bytes per write, so that the region is sent in several calls
+     */
+    private static class SlowChannel implements WritableByteChannel {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        public int write(ByteBuffer src) {
+            int size = Math.min(100, src.remaining());
+            byte[] bytes = new byte[size];
+            src.get(bytes);
+            out.write(bytes, 0, size);
+            return size;
+        }
+
+        public boolean isOpen() {
+            return true;
+        }
+
+        public void close() {
+        }
+    }
+
+    private static byte[] encode(int rank, byte[] data) throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new NetworkPacketCodec());
+        DataPacket packet = new DataPacket(rank, Unpooled.wrappedBuffer(data), null);
+        assertTrue(channel.writeOutbound(new NetworkPacket(LOCALID, REMOTEID, packet, null)));
+        ByteBuf buf = (ByteBuf) channel.readOutbound();
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        buf.release();
+        channel.finish();
+        return bytes;
+    }
+
+    @Test
+    public void testSameBytesAsDataPacket() throws Exception {
+        FilesystemBasedDigest digest = new FilesystemBasedDigest(DigestAlgo.MD5);
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel fileChannel = in.getChannel();
+            int rank = 0;
+            for (int position = 0; position < content.length; position += BLOCKSIZE, rank++) {
+                int length = Math.min(BLOCKSIZE, content.length - position);
+                DataFileRegion region = new DataFileRegion(LOCALID, REMOTEID, rank, fileChannel, position,
+                        length, digest);
+                SlowChannel target = new SlowChannel();
+                while (region.transferred() < region.count()) {
+                    region.transferTo(target, region.transferred());
+                }
+                byte[] sent = target.out.toByteArray();
+                byte[] data = Arrays.copyOfRange(content, position, position + length);
+                assertArrayEquals("block " + rank, encode(rank, data), sent);
+
+                // decoded as a DataPacket without per block digest
+                EmbeddedChannel channel = new EmbeddedChannel(new NetworkPacketCodec());
+                assertTrue(channel.writeInbound(Unpooled.wrappedBuffer(sent)));
+                NetworkPacket networkPacket = (NetworkPacket) channel.readInbound();
+                DataPacket packet = (DataPacket) LocalPacketCodec.decodeNetworkPacket(networkPacket.getBuffer());
+                assertEquals(rank, packet.getPacketRank());
+                assertEquals(length, packet.getLengthPacket());
+                assertEquals(0, packet.getKey().readableBytes());
+                assertTrue(packet.isKeyValid(DigestAlgo.MD5));
+                channel.finish();
+            }
+            assertEquals(3, rank);
+        } finally {
+            in.close();
+        }
+        // global digest computed from the bytes sent
+        FilesystemBasedDigest expected = new FilesystemBasedDigest(DigestAlgo.MD5);
+        expected.Update(content, 0, content.length);
+        assertEquals(FilesystemBasedDigest.getHex(expected.Final()),
+                FilesystemBasedDigest.getHex(digest.Final()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testFileShorterThanExpected() throws Exception {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            DataFileRegion region = new DataFileRegion(LOCALID, REMOTEID, 0, in.getChannel(),
+                    content.length - 10, BLOCKSIZE, null);
+            SlowChannel target = new SlowChannel();
+            while (region.transferred() < region.count()) {
+                region.transferTo(target, region.transferred());
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
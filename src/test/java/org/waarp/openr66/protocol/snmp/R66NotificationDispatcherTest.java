@@ -0,0 +1,180 @@
+package org.waarp.openr66.protocol.snmp;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.waarp.openr66.protocol.snmp.R66NotificationDispatcher.R66Notification;
+
+public class R66NotificationDispatcherTest {
+
+    private R66NotificationDispatcher dispatcher;
+    private final List<String> sentNames = new CopyOnWriteArrayList<String>();
+    private final List<Long> sentTimes = new CopyOnWriteArrayList<Long>();
+
+    @After
+    public void wrapUp() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    /**
+     * Notification recording when it is sent
+     */
+    private class Notification implements R66Notification {
+        private final String key;
+        private final String name;
+
+        private Notification(String key, String name) {
+            this.key = key;
+            this.name = name;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public void send() {
+            sentNames.add(name);
+            sentTimes.add(System.nanoTime());
+        }
+    }
+
+    /**
+     * Notification holding the dispatcher thread until released
+     */
+    private class Blocker extends Notification {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private Blocker() {
+            super(null, "blocker");
+        }
+
+        @Override
+        public void send() {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.send();
+        }
+    }
+
+    private Blocker block() throws InterruptedException {
+        Blocker blocker = new Blocker();
+        assertTrue(dispatcher.dispatch(blocker));
+        assertTrue(blocker.started.await(10, TimeUnit.SECONDS));
+        return blocker;
+    }
+
+    private void waitSent(long count) throws InterruptedException {
+        long limit = System.currentTimeMillis() + 10000;
+        while (dispatcher.getSent() < count && System.currentTimeMillis() < limit) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, dispatcher.getSent());
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        dispatcher = new R66NotificationDispatcher(10, 0);
+        Blocker blocker = block();
+        assertTrue(dispatcher.dispatch(new Notification("transfer1", "first")));
+        assertTrue(dispatcher.dispatch(new Notification("transfer2", "other")));
+        assertTrue(dispatcher.dispatch(new Notification("transfer1", "second")));
+        assertTrue(dispatcher.dispatch(new Notification("transfer1", "last")));
+        // notifications without key are never coalesced
+        assertTrue(dispatcher.dispatch(new Notification(null, "nokey")));
+        assertTrue(dispatcher.dispatch(new Notification(null, "nokey")));
+        assertEquals(4, dispatcher.getPending());
+        assertEquals(2, dispatcher.getCoalesced());
+        blocker.release.countDown();
+        waitSent(5);
+        // the last one of a key is sent at the place of the first one
+        assertEquals("[blocker, last, other, nokey, nokey]", sentNames.toString());
+
+        // once sent, the same key is queued again
+        assertTrue(dispatcher.dispatch(new Notification("transfer1", "again")));
+        waitSent(6);
+        assertEquals("again", sentNames.get(5));
+        assertEquals(2, dispatcher.getCoalesced());
+        assertEquals(0, dispatcher.getDropped());
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        dispatcher = new R66NotificationDispatcher(2, 0);
+        Blocker blocker = block();
+        assertTrue(dispatcher.dispatch(new Notification(null, "first")));
+        assertTrue(dispatcher.dispatch(new Notification("transfer1", "second")));
+        assertFalse(dispatcher.dispatch(new Notification(null, "dropped")));
+        assertFalse(dispatcher.dispatch(new Notification("transfer2", "dropped")));
+        assertEquals(2, dispatcher.getDropped());
+        // still coalesced with its queued key
+        assertTrue(dispatcher.dispatch(new Notification("transfer1", "third")));
+        assertEquals(1, dispatcher.getCoalesced());
+        blocker.release.countDown();
+        waitSent(3);
+        assertEquals("[blocker, first, third]", sentNames.toString());
+
+        // the dropped key left nothing pending behind it
+        assertTrue(dispatcher.dispatch(new Notification("transfer2", "later")));
+        waitSent(4);
+        assertEquals("later", sentNames.get(3));
+        assertEquals(2, dispatcher.getDropped());
+    }
+
+    @Test
+    public void testStopDropsPending() throws Exception {
+        dispatcher = new R66NotificationDispatcher(10, 0);
+        block();
+        dispatcher.dispatch(new Notification(null, "first"));
+        dispatcher.dispatch(new Notification("transfer1", "second"));
+        dispatcher.stop();
+        assertEquals(2, dispatcher.getDropped());
+        assertEquals(0, dispatcher.getPending());
+        assertFalse(dispatcher.dispatch(new Notification(null, "after")));
+        assertEquals(3, dispatcher.getDropped());
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        // at most 10 per second: 100 ms between two sends
+        dispatcher = new R66NotificationDispatcher(10, 10);
+        Blocker blocker = block();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(dispatcher.dispatch(new Notification(null, "n" + i)));
+        }
+        blocker.release.countDown();
+        waitSent(6);
+        // small tolerance for the time between the scheduling and the record of a send
+        long minInterval = TimeUnit.MILLISECONDS.toNanos(95);
+        // the blocker was scheduled before being held, so start after the first notification
+        for (int i = 2; i < sentTimes.size(); i++) {
+            assertTrue("interval " + i, sentTimes.get(i) - sentTimes.get(i - 1) >= minInterval);
+        }
+    }
+
+    @Test
+    public void testSendFailureNotCounted() throws Exception {
+        dispatcher = new R66NotificationDispatcher(10, 0);
+        assertTrue(dispatcher.dispatch(new Notification(null, "failing") {
+            @Override
+            public void send() {
+                throw new IllegalStateException("no receiver");
+            }
+        }));
+        assertTrue(dispatcher.dispatch(new Notification(null, "next")));
+        waitSent(1);
+        assertEquals("[next]", sentNames.toString());
+    }
+}
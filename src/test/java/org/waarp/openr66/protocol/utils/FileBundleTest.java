@@ -0,0 +1,141 @@
+package org.waarp.openr66.protocol.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.waarp.openr66.protocol.exception.OpenR66ProtocolSystemException;
+import org.waarp.openr66.protocol.utils.FileBundle.EntryStatus;
+
+public class FileBundleTest {
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("filebundle", ".dir");
+        assertTrue(root.delete());
+        assertTrue(root.mkdir());
+    }
+
+    @After
+    public void wrapUp() {
+        delete(root);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int pos = 0;
+            while (pos < content.length) {
+                pos += in.read(content, pos, content.length - pos);
+            }
+        } finally {
+            in.close();
+        }
+        return content;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(28);
+        List<File> files = new ArrayList<File>();
+        List<String> names = Arrays.asList("a.txt", "sub/b.bin", "empty");
+        List<byte[]> contents = new ArrayList<byte[]>();
+        for (String name : names) {
+            byte[] content = new byte["empty".equals(name) ? 0 : 100000 + random.nextInt(1000)];
+            random.nextBytes(content);
+            File file = new File(root, "source/" + name);
+            write(file, content);
+            files.add(file);
+            contents.add(content);
+        }
+        File bundle = new File(root, "bundle.zip");
+        FileBundle.createBundle(files, names, bundle);
+
+        File target = new File(root, "target");
+        List<EntryStatus> status = FileBundle.extractBundle(bundle, target);
+        assertEquals(names.size(), status.size());
+        for (int i = 0; i < names.size(); i++) {
+            EntryStatus entryStatus = status.get(i);
+            assertEquals(names.get(i), entryStatus.name);
+            assertTrue(entryStatus.toString(), entryStatus.ok);
+            assertEquals(contents.get(i).length, entryStatus.size);
+            assertArrayEquals(contents.get(i), read(new File(target, names.get(i))));
+        }
+        assertEquals("sub/b.bin\t" + contents.get(1).length + "\tOK", status.get(1).toString());
+    }
+
+    @Test
+    public void testManifestMismatch() throws Exception {
+        File bundle = new File(root, "bundle.zip");
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(bundle));
+        zip.putNextEntry(new ZipEntry("short.txt"));
+        zip.write("abc".getBytes("UTF-8"));
+        zip.closeEntry();
+        zip.putNextEntry(new ZipEntry("crc.txt"));
+        zip.write("abc".getBytes("UTF-8"));
+        zip.closeEntry();
+        zip.putNextEntry(new ZipEntry(FileBundle.MANIFEST));
+        zip.write(("short.txt\t4\t0\ncrc.txt\t3\t0\nmissing.txt\t1\t0\n").getBytes("UTF-8"));
+        zip.closeEntry();
+        zip.close();
+
+        List<EntryStatus> status = FileBundle.extractBundle(bundle, new File(root, "target"));
+        assertEquals(3, status.size());
+        assertEquals("short.txt\t4\tKO\tsize 3", status.get(0).toString());
+        assertFalse(status.get(1).ok);
+        assertTrue(status.get(1).reason.startsWith("crc "));
+        assertEquals("missing.txt\t1\tKO\tmissing", status.get(2).toString());
+    }
+
+    @Test(expected = OpenR66ProtocolSystemException.class)
+    public void testNoManifest() throws Exception {
+        File bundle = new File(root, "bundle.zip");
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(bundle));
+        zip.putNextEntry(new ZipEntry("a.txt"));
+        zip.write(1);
+        zip.closeEntry();
+        zip.close();
+        FileBundle.extractBundle(bundle, new File(root, "target"));
+    }
+
+    @Test(expected = OpenR66ProtocolSystemException.class)
+    public void testFilesAndNamesMismatch() throws Exception {
+        FileBundle.createBundle(Arrays.asList(new File(root, "a")), new ArrayList<String>(),
+                new File(root, "bundle.zip"));
+    }
+}
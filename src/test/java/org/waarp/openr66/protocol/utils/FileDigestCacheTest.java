@@ -0,0 +1,92 @@
+package org.waarp.openr66.protocol.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.waarp.common.digest.FilesystemBasedDigest.DigestAlgo;
+
+public class FileDigestCacheTest {
+
+    private File file;
+    private FileDigestCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("digestcache", ".txt");
+        write(file, "content");
+        cache = new FileDigestCache(2);
+    }
+
+    @After
+    public void wrapUp() {
+        file.delete();
+    }
+
+    private static void write(File target, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(target);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        // old enough to be cached
+        target.setLastModified(System.currentTimeMillis() - 10 * FileDigestCache.RACY_DELAY);
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        assertNull(cache.get(file, DigestAlgo.MD5));
+        cache.put(file, DigestAlgo.MD5, "md5digest");
+        assertEquals("md5digest", cache.get(file, DigestAlgo.MD5));
+        // other algorithm, other file
+        assertNull(cache.get(file, DigestAlgo.SHA1));
+        assertNull(cache.get(new File(file.getPath() + ".other"), DigestAlgo.MD5));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testInvalidation() throws IOException {
+        cache.put(file, DigestAlgo.MD5, "md5digest");
+        // same modification time but another size
+        long lastModified = file.lastModified();
+        write(file, "other content");
+        file.setLastModified(lastModified);
+        assertNull(cache.get(file, DigestAlgo.MD5));
+        // same size but another modification time
+        cache.put(file, DigestAlgo.MD5, "md5digest2");
+        assertEquals("md5digest2", cache.get(file, DigestAlgo.MD5));
+        file.setLastModified(lastModified - 5000);
+        assertNull(cache.get(file, DigestAlgo.MD5));
+        // deleted
+        cache.put(file, DigestAlgo.MD5, "md5digest3");
+        file.delete();
+        assertNull(cache.get(file, DigestAlgo.MD5));
+    }
+
+    @Test
+    public void testRecentlyModifiedNotCached() {
+        file.setLastModified(System.currentTimeMillis());
+        cache.put(file, DigestAlgo.MD5, "md5digest");
+        assertNull(cache.get(file, DigestAlgo.MD5));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        cache.put(file, DigestAlgo.MD5, "md5");
+        cache.put(file, DigestAlgo.SHA1, "sha1");
+        // most recently used
+        assertEquals("md5", cache.get(file, DigestAlgo.MD5));
+        cache.put(file, DigestAlgo.SHA256, "sha256");
+        assertEquals(2, cache.size());
+        assertNull(cache.get(file, DigestAlgo.SHA1));
+        assertEquals("md5", cache.get(file, DigestAlgo.MD5));
+        assertEquals("sha256", cache.get(file, DigestAlgo.SHA256));
+    }
+}
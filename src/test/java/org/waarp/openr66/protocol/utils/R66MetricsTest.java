@@ -0,0 +1,102 @@
+package org.waarp.openr66.protocol.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.waarp.openr66.protocol.utils.R66Metrics.Histogram;
+import org.waarp.openr66.protocol.utils.R66Metrics.Phase;
+
+public class R66MetricsTest {
+
+    private static final String LABELS = "phase=\"data\",partner=\"hostA\",rule=\"ruleA\"";
+
+    @Before
+    public void setUp() {
+        R66Metrics.clear();
+    }
+
+    @After
+    public void wrapUp() {
+        R66Metrics.clear();
+    }
+
+    private static void assertLine(String text, String line) {
+        assertTrue(line + " not in\n" + text, text.contains(line + '\n'));
+    }
+
+    @Test
+    public void testBuckets() {
+        Histogram histogram = R66Metrics.getHistogram(Phase.data, "hostA", "ruleA");
+        // negative durations count as 0, a bound belongs to its own bucket
+        histogram.record(-5);
+        histogram.record(1000000);
+        histogram.record(1000001);
+        histogram.record(2000L * 1000000000L);
+        assertEquals(4, histogram.getCount());
+        assertEquals(1000000 + 1000001 + 2000L * 1000000000L, histogram.getSumNanos());
+        assertSame(histogram, R66Metrics.getHistogram(Phase.data, "hostA", "ruleA"));
+
+        String text = R66Metrics.exportPrometheus();
+        assertLine(text, "r66_phase_duration_seconds_bucket{" + LABELS + ",le=\"0.001\"} 2");
+        assertLine(text, "r66_phase_duration_seconds_bucket{" + LABELS + ",le=\"0.005\"} 3");
+        assertLine(text, "r66_phase_duration_seconds_bucket{" + LABELS + ",le=\"1800.0\"} 3");
+        assertLine(text, "r66_phase_duration_seconds_bucket{" + LABELS + ",le=\"+Inf\"} 4");
+        assertLine(text, "r66_phase_duration_seconds_count{" + LABELS + "} 4");
+        assertTrue(text.contains("r66_phase_duration_seconds_sum{" + LABELS + "} 2000.002"));
+    }
+
+    @Test
+    public void testSeriesCap() {
+        Histogram first = R66Metrics.getHistogram(Phase.request, "host0", "rule");
+        for (int i = 1; i < R66Metrics.MAX_SERIES; i++) {
+            R66Metrics.getHistogram(Phase.request, "host" + i, "rule");
+        }
+        // existing series are kept, new ones go to other
+        assertSame(first, R66Metrics.getHistogram(Phase.request, "host0", "rule"));
+        Histogram other = R66Metrics.getHistogram(Phase.request, "newhost", "newrule");
+        assertSame(other, R66Metrics.getHistogram(Phase.request, "other", "other"));
+        assertSame(other, R66Metrics.getHistogram(Phase.request, "anotherhost", "rule"));
+        // unknown partner or rule
+        R66Metrics.clear();
+        assertSame(R66Metrics.getHistogram(Phase.request, null, null),
+                R66Metrics.getHistogram(Phase.request, "other", "other"));
+
+        for (int i = 0; i < R66Metrics.MAX_SERIES; i++) {
+            R66Metrics.recordTransfer("host" + i, "rule", 10);
+        }
+        R66Metrics.recordTransfer("newhost", "rule", 10);
+        R66Metrics.recordTransfer("anotherhost", "rule", 5);
+        String text = R66Metrics.exportPrometheus();
+        assertLine(text, "r66_transfer_bytes_total{partner=\"other\",rule=\"other\"} 15");
+        assertLine(text, "r66_transfers_total{partner=\"other\",rule=\"other\"} 2");
+        assertFalse(text.contains("newhost"));
+    }
+
+    @Test
+    public void testPrometheusText() {
+        R66Metrics.getHistogram(Phase.posttask, "hostB", "rule").record(1);
+        R66Metrics.getHistogram(Phase.pretask, "hostB", "rule").record(1);
+        R66Metrics.recordTransfer("hostA", "a\"b\\c", 100);
+        R66Metrics.recordTransfer("hostA", "a\"b\\c", -1);
+        String text = R66Metrics.exportPrometheus();
+        assertTrue(text.startsWith("# HELP r66_phase_duration_seconds Duration of the phases of transfers\n" +
+                "# TYPE r66_phase_duration_seconds histogram\n"));
+        assertLine(text, "# TYPE r66_transfer_bytes_total counter");
+        assertLine(text, "# TYPE r66_transfers_total counter");
+        // sorted by phase
+        assertTrue(text.indexOf("phase=\"pretask\"") < text.indexOf("phase=\"posttask\""));
+        // 12 buckets, +Inf, sum and count per histogram
+        int lines = 0;
+        for (String line : text.split("\n")) {
+            if (line.startsWith("r66_phase_duration_seconds")) {
+                lines++;
+            }
+        }
+        assertEquals(2 * 15, lines);
+        // escaped labels, negative sizes not added
+        assertLine(text, "r66_transfer_bytes_total{partner=\"hostA\",rule=\"a\\\"b\\\\c\"} 100");
+        assertLine(text, "r66_transfers_total{partner=\"hostA\",rule=\"a\\\"b\\\\c\"} 2");
+    }
+}
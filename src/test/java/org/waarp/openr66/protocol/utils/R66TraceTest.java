@@ -0,0 +1,94 @@
+package org.waarp.openr66.protocol.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.waarp.openr66.protocol.configuration.Configuration;
+
+public class R66TraceTest {
+
+    @Before
+    public void setUp() {
+        Configuration.configuration.setTraceEnabled(true);
+    }
+
+    @After
+    public void wrapUp() {
+        Configuration.configuration.setTraceEnabled(false);
+    }
+
+    @Test
+    public void testDisabled() {
+        Configuration.configuration.setTraceEnabled(false);
+        assertNull(R66Trace.newTrace());
+    }
+
+    @Test
+    public void testRingBuffer() {
+        List<R66Trace> traces = new ArrayList<R66Trace>();
+        for (int i = 0; i < R66Trace.RING_SIZE + 5; i++) {
+            R66Trace trace = R66Trace.newTrace();
+            traces.add(trace);
+            trace.finish("transfer" + i);
+        }
+        // finishing twice does not add it again
+        traces.get(traces.size() - 1).finish("again");
+        List<R66Trace> recent = R66Trace.getRecentTraces();
+        assertEquals(R66Trace.RING_SIZE, recent.size());
+        // from the oldest to the newest, the first ones being overwritten
+        assertEquals(traces.subList(5, traces.size()), recent);
+        assertTrue(recent.get(recent.size() - 1).toString().contains(
+                "Transfer: transfer" + (R66Trace.RING_SIZE + 4)));
+        assertTrue(R66Trace.exportRecent().endsWith(recent.get(recent.size() - 1) + "\n"));
+    }
+
+    @Test
+    public void testSpansCapped() {
+        R66Trace trace = R66Trace.newTrace();
+        for (int i = 0; i < R66Trace.MAX_SPANS; i++) {
+            trace.record("span" + i, System.nanoTime());
+        }
+        trace.newState("AUTHENTD");
+        trace.startSpan("overflow").end();
+        trace.accumulate("dbsave", System.nanoTime());
+        trace.accumulate("dbsave", System.nanoTime());
+        trace.finish(null);
+        // spans after the finish are dropped too
+        trace.record("late", System.nanoTime());
+        String text = trace.toString();
+        assertTrue(text.contains(" span" + (R66Trace.MAX_SPANS - 1) + "@"));
+        assertFalse(text.contains("state:AUTHENTD"));
+        assertFalse(text.contains("overflow"));
+        assertTrue(text.contains(" dbsavex2="));
+        assertTrue(text, text.endsWith(" Dropped: 3"));
+    }
+
+    @Test
+    public void testPartnerTraceId() {
+        R66Trace trace = R66Trace.newTrace();
+        String local = trace.getTraceId();
+        assertTrue(local, R66Trace.isValidTraceId(local));
+
+        trace.setTraceId("hostb-1655c0a8f1e-2a");
+        assertEquals("hostb-1655c0a8f1e-2a", trace.getTraceId());
+
+        // invalid ids keep the current one
+        StringBuilder tooLong = new StringBuilder();
+        for (int i = 0; i < 129; i++) {
+            tooLong.append('a');
+        }
+        String[] invalids = { null, "", "two words", "line\nforged log", "id\"}", tooLong.toString(),
+                "héte" };
+        for (String invalid : invalids) {
+            trace.setTraceId(invalid);
+            assertEquals("hostb-1655c0a8f1e-2a", trace.getTraceId());
+            assertFalse(R66Trace.isValidTraceId(invalid));
+        }
+        assertTrue(R66Trace.isValidTraceId(tooLong.substring(1)));
+    }
+}